@@ -0,0 +1,175 @@
+
+package chatty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of which channel is assigned to which connection, so that
+ * channels can be spread over several connections with only a limited number
+ * of channels each.
+ * 
+ * <p>
+ * Connections are used in the order they were added, so a channel is always
+ * assigned to the first connection that still has room. When a connection is
+ * removed (e.g. because it failed) its channels are returned, so they can be
+ * assigned to another connection.
+ * </p>
+ * 
+ * @author tduva
+ * @param <C> The type of the connection
+ */
+public class ConnectionPool<C> {
+    
+    private final Map<String, C> channels = new HashMap<>();
+    private final Map<C, Set<String>> connections = new LinkedHashMap<>();
+    
+    /**
+     * Add a connection that channels can be assigned to. Does nothing if the
+     * connection has already been added.
+     * 
+     * @param connection
+     */
+    public synchronized void add(C connection) {
+        if (!connections.containsKey(connection)) {
+            connections.put(connection, new HashSet<>());
+        }
+    }
+    
+    /**
+     * Remove the connection, so no more channels can be assigned to it.
+     * 
+     * @param connection
+     * @return The channels that were assigned to the connection (empty if
+     * none or the connection wasn't added)
+     */
+    public synchronized Set<String> remove(C connection) {
+        Set<String> removed = connections.remove(connection);
+        if (removed == null) {
+            return new HashSet<>();
+        }
+        for (String channel : removed) {
+            channels.remove(channel);
+        }
+        return removed;
+    }
+    
+    /**
+     * Whether the connection has been added (and not removed since).
+     * 
+     * @param connection
+     * @return
+     */
+    public synchronized boolean contains(C connection) {
+        return connections.containsKey(connection);
+    }
+    
+    /**
+     * Get the connection the channel is assigned to.
+     * 
+     * @param channel
+     * @return The connection, or null if the channel is not assigned
+     */
+    public synchronized C get(String channel) {
+        return channels.get(channel);
+    }
+    
+    /**
+     * Assign the channel to a connection, unless it is already assigned.
+     * 
+     * @param channel The channel
+     * @param max The maximum number of channels per connection, 0 or less
+     * for no limit
+     * @return The connection the channel is assigned to, or null if no
+     * connection has room for it
+     */
+    public synchronized C assign(String channel, int max) {
+        C current = channels.get(channel);
+        if (current != null) {
+            return current;
+        }
+        for (Map.Entry<C, Set<String>> entry : connections.entrySet()) {
+            if (max <= 0 || entry.getValue().size() < max) {
+                entry.getValue().add(channel);
+                channels.put(channel, entry.getKey());
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Assign the channel to the given connection, which is added if
+     * necessary. If the channel was assigned to another connection, it is
+     * removed from there.
+     * 
+     * @param channel
+     * @param connection
+     */
+    public synchronized void assign(String channel, C connection) {
+        unassign(channel);
+        add(connection);
+        connections.get(connection).add(channel);
+        channels.put(channel, connection);
+    }
+    
+    /**
+     * Remove the channel from the connection it is assigned to.
+     * 
+     * @param channel
+     */
+    public synchronized void unassign(String channel) {
+        C connection = channels.remove(channel);
+        if (connection != null) {
+            connections.get(connection).remove(channel);
+        }
+    }
+    
+    /**
+     * Remove the channel, but only if it is assigned to the given connection.
+     * 
+     * @param channel
+     * @param connection
+     */
+    public synchronized void unassign(String channel, C connection) {
+        if (channels.get(channel) == connection) {
+            unassign(channel);
+        }
+    }
+    
+    /**
+     * The channels assigned to the given connection.
+     * 
+     * @param connection
+     * @return A copy of the channels (empty if none or the connection wasn't
+     * added)
+     */
+    public synchronized Set<String> getChannels(C connection) {
+        Set<String> result = connections.get(connection);
+        return result != null ? new HashSet<>(result) : new HashSet<>();
+    }
+    
+    /**
+     * All connections, in the order they were added.
+     * 
+     * @return A copy of the connections
+     */
+    public synchronized List<C> getConnections() {
+        return new ArrayList<>(connections.keySet());
+    }
+    
+    @Override
+    public synchronized String toString() {
+        List<Integer> sizes = new ArrayList<>();
+        for (Set<String> assigned : connections.values()) {
+            sizes.add(assigned.size());
+        }
+        return sizes.toString();
+    }
+    
+}
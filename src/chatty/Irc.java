@@ -28,8 +28,7 @@ public abstract class Irc {
     private static final int JOIN_DELAY = 750;
     
     private final AddressManager addressManager = new AddressManager();
-    private final DelayedActionQueue<String> joinQueue
-            = DelayedActionQueue.create(new DelayedJoinAction(), JOIN_DELAY);
+    private final JoinQueue joinQueue;
     
     private final Object lock = new Object();
     
@@ -112,8 +111,21 @@ public abstract class Irc {
     private final String idPrefix;
     
     public Irc(String id) {
+        this(id, new JoinQueue());
+    }
+    
+    /**
+     * Create a connection that uses the given queue for JOINs, which can be
+     * shared with other connections, so that the delay between JOINs applies
+     * to all of them together.
+     * 
+     * @param id The id used for debug output
+     * @param joinQueue The queue to use for JOINs
+     */
+    public Irc(String id, JoinQueue joinQueue) {
         this.id = id;
         this.idPrefix = "["+id+"] ";
+        this.joinQueue = joinQueue;
     }
     
     private void info(String message) {
@@ -494,7 +506,7 @@ public abstract class Irc {
      */
     public void joinChannel(String channel) {
         info("JOINING: " + channel);
-        joinQueue.add(channel);
+        joinQueue.add(this, channel);
     }
     
     /**
@@ -515,16 +527,54 @@ public abstract class Irc {
         }
     }
     
+    /**
+     * Puts some time between JOINs. The same instance can be used by several
+     * connections (of the same account), in which case the delay applies to
+     * the JOINs of all of them.
+     */
+    public static class JoinQueue {
+        
+        private final DelayedActionQueue<DelayedJoin> queue
+                = DelayedActionQueue.create(new DelayedJoinAction(), JOIN_DELAY);
+        
+        private void add(Irc irc, String channel) {
+            queue.add(new DelayedJoin(irc, channel));
+        }
+        
+        /**
+         * Remove the JOINs that haven't been performed yet for the given
+         * connection.
+         * 
+         * @param irc 
+         */
+        private void clear(Irc irc) {
+            queue.removeIf(join -> join.irc == irc);
+        }
+
+    }
+    
     /**
      * Listener for the join queue, which is called when the next channel can
      * be joined.
      */
-    private class DelayedJoinAction implements DelayedActionListener<String> {
+    private static class DelayedJoinAction implements DelayedActionListener<DelayedJoin> {
 
         @Override
-        public void actionPerformed(String item) {
-            info("JOIN: "+item+" (delayed)");
-            joinChannelImmediately(item);
+        public void actionPerformed(DelayedJoin item) {
+            item.irc.info("JOIN: "+item.channel+" (delayed)");
+            item.irc.joinChannelImmediately(item.channel);
+        }
+        
+    }
+    
+    private static class DelayedJoin {
+        
+        private final Irc irc;
+        private final String channel;
+        
+        private DelayedJoin(Irc irc, String channel) {
+            this.irc = irc;
+            this.channel = channel;
         }
         
     }
@@ -606,7 +656,7 @@ public abstract class Irc {
     protected void disconnected(int reason, String reasonMessage) {
         // Clear any potential join queue, so it doesn't carry over to the next
         // connection
-        joinQueue.clear();
+        joinQueue.clear(this);
         
         // Retrieve state before changing it, but must be changed before calling
         // onDisconnect() which might check the state when trying to reconnect
@@ -0,0 +1,148 @@
+
+package chatty;
+
+import chatty.User.Message;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The messages of a user, stored in a ring buffer that grows as needed up to
+ * the max size and then overwrites the oldest message, so adding a message
+ * when the limit is reached doesn't have to move all other messages.
+ *
+ * <p>
+ * Not thread-safe, the User synchronizes access.
+ * </p>
+ *
+ * @author tduva
+ */
+class MessageHistory implements Iterable<Message> {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final int max;
+    private Message[] items;
+
+    /**
+     * Index of the oldest message in the array.
+     */
+    private int head;
+    private int size;
+
+    MessageHistory(int max) {
+        this.max = Math.max(max, 0);
+        this.items = new Message[Math.min(this.max, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Add a message, removing the oldest one if the max size is reached.
+     *
+     * @param message
+     */
+    public void add(Message message) {
+        if (max == 0) {
+            return;
+        }
+        if (size == items.length && size < max) {
+            grow();
+        }
+        if (size < items.length) {
+            items[(head + size) % items.length] = message;
+            size++;
+        }
+        else {
+            items[head] = message;
+            head = (head + 1) % items.length;
+        }
+    }
+
+    private void grow() {
+        Message[] newItems = new Message[Math.min(max, items.length * 2)];
+        for (int i = 0; i < size; i++) {
+            newItems[i] = items[(head + i) % items.length];
+        }
+        items = newItems;
+        head = 0;
+    }
+
+    /**
+     * Get a message.
+     *
+     * @param index The index, with 0 being the oldest message
+     * @return
+     */
+    public Message get(int index) {
+        checkIndex(index);
+        return items[(head + index) % items.length];
+    }
+
+    /**
+     * Replace a message.
+     *
+     * @param index The index, with 0 being the oldest message
+     * @param message
+     */
+    public void set(int index, Message message) {
+        checkIndex(index);
+        items[(head + index) % items.length] = message;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the messages as a List that doesn't change when messages are added
+     * to this history. The messages themselves are immutable, so this only
+     * copies the references into a single array.
+     *
+     * @return The messages, oldest first
+     */
+    public List<Message> toList() {
+        Message[] result = new Message[size];
+        int firstPart = Math.min(size, items.length - head);
+        System.arraycopy(items, head, result, 0, firstPart);
+        System.arraycopy(items, 0, result, firstPart, size - firstPart);
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Iterate over the messages, oldest first. Must not be used while the
+     * history is modified.
+     *
+     * @return
+     */
+    @Override
+    public Iterator<Message> iterator() {
+        return new Iterator<Message>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Message next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+        };
+    }
+
+}
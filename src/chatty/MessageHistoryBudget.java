@@ -0,0 +1,158 @@
+
+package chatty;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Limits the total number of messages stored by all users. When the limit is
+ * exceeded, the message history of the users that have been inactive the
+ * longest is cleared until enough space is free again.
+ *
+ * <p>
+ * Users report the current number of stored messages while holding their own
+ * lock, so clearing is done on a separate thread, which only takes the lock of
+ * a single user at a time, to prevent deadlocks.
+ * </p>
+ *
+ * @author tduva
+ */
+public class MessageHistoryBudget {
+
+    private static final Logger LOGGER = Logger.getLogger(MessageHistoryBudget.class.getName());
+
+    /**
+     * When clearing, go this much below the limit, so that clearing isn't
+     * necessary again for every new message.
+     */
+    private static final double CLEAR_TO = 0.9;
+
+    private final ExecutorService executor;
+
+    /**
+     * The number of messages per user, least recently active first.
+     */
+    private final LinkedHashMap<User, Integer> users = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int limit;
+    private int total;
+    private boolean clearPending;
+
+    /**
+     * Create a new instance.
+     *
+     * @param limit The max number of messages of all users, 0 for no limit
+     */
+    public MessageHistoryBudget(int limit) {
+        this.limit = limit;
+        ThreadPoolExecutor e = new ThreadPoolExecutor(1, 1,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "MessageHistoryBudget");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        e.allowCoreThreadTimeOut(true);
+        this.executor = e;
+    }
+
+    /**
+     * Change the limit, which clears history right away if the total is
+     * already above the new limit.
+     *
+     * @param limit The max number of messages of all users, 0 for no limit
+     */
+    public synchronized void setLimit(int limit) {
+        this.limit = limit;
+        checkLimit();
+    }
+
+    public synchronized int getTotal() {
+        return total;
+    }
+
+    /**
+     * Update the number of messages stored by a user.
+     *
+     * @param user The user
+     * @param count The current number of messages of the user
+     * @param active Whether this update is due to activity of the user (e.g.
+     * a new message), which marks the user as most recently active
+     */
+    public synchronized void update(User user, int count, boolean active) {
+        Integer previous;
+        if (count > 0) {
+            if (active) {
+                previous = users.put(user, count);
+            }
+            else {
+                previous = users.replace(user, count);
+                if (previous == null) {
+                    // Not in the map, so shouldn't be added as most recent
+                    return;
+                }
+            }
+        }
+        else {
+            previous = users.remove(user);
+        }
+        total += count - (previous != null ? previous : 0);
+        checkLimit();
+    }
+
+    /**
+     * Stop counting the messages of the user, for example because it has been
+     * removed from the UserManager.
+     *
+     * @param user The user
+     */
+    public synchronized void remove(User user) {
+        Integer previous = users.remove(user);
+        if (previous != null) {
+            total -= previous;
+        }
+    }
+
+    private void checkLimit() {
+        if (limit > 0 && total > limit && !clearPending) {
+            clearPending = true;
+            executor.execute(this::clear);
+        }
+    }
+
+    /**
+     * Clear the message history of inactive users until the total is below
+     * the limit. Runs in the executor.
+     */
+    private void clear() {
+        int count = 0;
+        int messages = 0;
+        while (true) {
+            User user;
+            synchronized (this) {
+                if (limit <= 0 || total <= limit * CLEAR_TO || users.isEmpty()) {
+                    clearPending = false;
+                    break;
+                }
+                Iterator<Map.Entry<User, Integer>> it = users.entrySet().iterator();
+                Map.Entry<User, Integer> entry = it.next();
+                user = entry.getKey();
+                // Remove now, in case the user doesn't report back for some reason
+                total -= entry.getValue();
+                it.remove();
+            }
+            // Without holding this lock
+            messages += user.clearLinesDueToLimit();
+            count++;
+        }
+        LOGGER.info("Cleared "+messages+" messages of "+count+" users (limit "+limit+")");
+    }
+
+}
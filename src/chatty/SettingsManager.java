@@ -170,6 +170,8 @@ public class SettingsManager {
         settings.addString("pubsub", "wss://pubsub-edge.twitch.tv");
         
         settings.addLong("maxReconnectionAttempts", -1);
+        // Spread channels over several connections, 0 for all on one
+        settings.addLong("channelsPerConnection", 0);
 
         // Auto-join channels
         settings.addString("channel", "");
@@ -269,6 +271,8 @@ public class SettingsManager {
         settings.addBoolean("animatedEmotes", true);
         settings.addLong("animationPause", 2);
         settings.addLong("animationPauseFrame", 2);
+        settings.addLong("animationFrameCache", 32);
+        settings.addLong("imageMemoryCache", 32);
         settings.addBoolean("legacyAnimations", false);
         settings.addList("ignoredEmotes", new ArrayList(), Setting.STRING);
         settings.addList("favoriteEmotes", new ArrayList(), Setting.LIST);
@@ -390,6 +394,7 @@ public class SettingsManager {
         settings.addMap("userNotes", new HashMap(), Setting.STRING);
         settings.addMap("userNotesChat", new HashMap(), Setting.STRING);
         settings.addLong("userDialogMessageLimit", 100);
+        settings.addLong("userMessagesTotalLimit", 200000);
 
         // History / Favorites
         settings.addMap("channelHistory",new TreeMap(), Setting.LONG);
@@ -407,6 +412,7 @@ public class SettingsManager {
 
         settings.addBoolean("historyServiceEnabled", false);
         settings.addLong("historyServiceLimit", 30);
+        settings.addBoolean("historyServiceStore", true);
         settings.addList("historyServiceExcluded", new ArrayList(), Setting.STRING);
         settings.addBoolean("historyMessageHighlight", false);
         settings.addBoolean("historyMessageMsgColors", false);
@@ -535,6 +541,8 @@ public class SettingsManager {
         settings.addBoolean("inputEnabled", true);
         settings.addLong("bufferSize", 500);
         settings.addMap("bufferSizes", new HashMap<>(), Setting.LONG);
+        settings.addMap("printBatching", new HashMap<>(), Setting.LONG);
+        settings.addLong("printBatchingThreshold", 40);
 
         settings.addString("liveStreamsSorting", "recent");
         settings.addBoolean("liveStreamsSortingFav", true);
@@ -711,6 +719,7 @@ public class SettingsManager {
         settings.addLong("repeatMsgMethod", 1);
         settings.addString("repeatMsgIgnored", "");
         settings.addString("repeatMsgMatch", "!status:M");
+        settings.addBoolean("repeatMsgChannel", false);
 
         // Chat Logging
         settings.addString("logMode", "always");
@@ -736,6 +745,8 @@ public class SettingsManager {
         settings.addBoolean("logSubdirectories", false);
         settings.addString("logTimestamp", "[yyyy-MM-dd HH:mm:ss]");
         settings.addBoolean("logLockFiles", true);
+        settings.addLong("logFlushDelay", 1);
+        settings.addBoolean("logIndexed", false);
         
         // TAB Completion
         settings.addBoolean("completionEnabled", true);
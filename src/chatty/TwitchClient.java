@@ -14,6 +14,7 @@ import chatty.Chatty.PathType;
 import chatty.Commands.CommandParsedArgs;
 import chatty.util.api.TwitchApiResultListener;
 import chatty.util.api.Emoticon;
+import chatty.util.api.CachedImage;
 import chatty.util.api.StreamInfoListener;
 import chatty.util.api.TokenInfo;
 import chatty.util.api.StreamInfo;
@@ -40,11 +41,16 @@ import chatty.util.Debugging;
 import chatty.util.EmoticonListener;
 import chatty.util.IconManager;
 import chatty.util.ffz.FrankerFaceZ;
+import chatty.util.gif.AnimationScheduler;
+import chatty.util.gif.DecodedFrameCache;
 import chatty.util.ffz.FrankerFaceZListener;
 import chatty.util.history.HistoryManager;
+import chatty.util.http.HttpMetrics;
+import chatty.util.http.HttpPool;
 import chatty.util.history.HistoryMessage;
 import chatty.util.history.QueuedMessage;
 import chatty.util.ImageCache;
+import chatty.util.ImageMemoryCache;
 import chatty.util.LogUtil;
 import chatty.util.MacAwtOptions;
 import chatty.util.MiscUtil;
@@ -229,6 +235,7 @@ public class TwitchClient {
     private Webserver webserver;
     private final SettingsManager settingsManager;
     private final SpamProtection spamProtection;
+    private final MessageHistoryBudget historyBudget;
     public final CustomCommands customCommands;
     public final Commands commands = new Commands();
     private final TimerCommand timerCommand;
@@ -341,6 +348,7 @@ public class TwitchClient {
         
         ImageCache.setDefaultPath(Chatty.getPathCreate(PathType.CACHE).resolve("img"));
         ImageCache.setCachingEnabled(settings.getBoolean("imageCache"));
+        ImageMemoryCache.setMaxBytes(settings.getLong("imageMemoryCache") * 1024 * 1024);
         ImageCache.deleteExpiredFiles();
         EmoticonSizeCache.loadFromFile();
 
@@ -378,10 +386,12 @@ public class TwitchClient {
 
         historyManager = new HistoryManager(settings);
         
+        historyBudget = new MessageHistoryBudget(settings.getInt("userMessagesTotalLimit"));
         c = new TwitchConnection(new Messages(), settings, "main", roomManager);
         c.setUserSettings(new User.UserSettings(
                 settings.getInt("userDialogMessageLimit"),
-                usercolorManager, addressbook, usericonManager));
+                usercolorManager, addressbook, usericonManager,
+                historyBudget));
         c.setCustomNamesManager(customNames);
         c.setBotNameManager(botNameManager);
         c.addChannelStateListener(new ChannelStateUpdater());
@@ -737,6 +747,7 @@ public class TwitchClient {
             c.closeChannel(channel);
             closeChannelStuff(room);
             g.removeChannel(channel);
+            g.repeatMsg.channelLeft(channel);
             chatLog.closeChannel(room.getFilename());
             updateStreamInfoChannelOpen(channel);
         }
@@ -2149,6 +2160,18 @@ public class TwitchClient {
             }
         } else if (command.equals("threadinfo")) {
             LogUtil.logThreadInfo();
+        } else if (command.equals("animationinfo")) {
+            g.printSystem(AnimationScheduler.getInfo());
+            g.printSystem(DecodedFrameCache.getInfo());
+        } else if (command.equals("imageinfo")) {
+            g.printSystem(CachedImage.getLoaderInfo());
+            g.printSystem(ImageMemoryCache.getInfo());
+        } else if (command.equals("httpinfo")) {
+            g.printSystem(HttpPool.getInfo());
+            g.printSystem(api.getQueueInfo());
+            for (String line : HttpMetrics.getInfo()) {
+                g.printSystem(line);
+            }
         } else if (command.equals("addusers")) {
             String[] split = parameter.split(" ", 2);
             int amount = Integer.parseInt(split[0]);
@@ -3449,13 +3472,11 @@ public class TwitchClient {
         g.printSystem(room, "### Pulling information from history service. ###");
 
         // Get the actual list of messages asynchronously
-        historyManager.getHistoricChatMessages(room, history -> {
-            for (int i = 0; i < history.size(); i++) {
-                HistoryMessage currentMsg = history.get(i);
-                User user = c.getUser(channelName, currentMsg.userName);
-                UserTagsUtil.updateUserFromTags(user, currentMsg.tags);
-                g.printMessage(user, currentMsg.message, currentMsg.action, currentMsg.tags);
-            }
+        historyManager.getHistoricChatMessages(room, stored -> {
+            printHistory(channelName, stored);
+            g.printSystem(room, "### Loaded "+stored.size()+" stored messages, requesting newer. ###");
+        }, history -> {
+            printHistory(channelName, history);
             g.printSystem(room, "### Finished with history logs. ###");
             historyManager.setMessageSeen(stream);
 
@@ -3467,6 +3488,15 @@ public class TwitchClient {
         });
     }
 
+    private void printHistory(String channelName, List<HistoryMessage> history) {
+        for (int i = 0; i < history.size(); i++) {
+            HistoryMessage currentMsg = history.get(i);
+            User user = c.getUser(channelName, currentMsg.userName);
+            UserTagsUtil.updateUserFromTags(user, currentMsg.tags);
+            g.printMessage(user, currentMsg.message, currentMsg.action, currentMsg.tags);
+        }
+    }
+
     private class EmoteListener implements EmoticonListener {
 
         @Override
@@ -3503,6 +3533,10 @@ public class TwitchClient {
         c.setSpamProtection(value);
     }
     
+    public void setUserMessagesTotalLimit(long value) {
+        historyBudget.setLimit((int) value);
+    }
+    
     /**
      * Exit the program. Do some cleanup first and save stuff to file (settings,
      * addressbook, chatlogs).
@@ -3518,6 +3552,7 @@ public class TwitchClient {
         frankerFaceZ.disconnectWs();
         eventSub.disconnect();
         g.cleanUp();
+        historyManager.close();
         chatLog.close();
         System.exit(0);
     }
@@ -3663,6 +3698,7 @@ public class TwitchClient {
         @Override
         public void onChannelLeft(Room room, boolean closeChannel) {
             chatLog.info(room.getFilename(), "You have left "+room.getDisplayName(), null);
+            g.repeatMsg.channelLeft(room.getChannel());
             if (closeChannel) {
                 closeChannel(room.getChannel());
             }
@@ -3745,7 +3781,7 @@ public class TwitchClient {
                     addressbookCommands(user.getChannel(), user, text);
                     modCommandAddStreamHighlight(user, text, tags);
                 }
-                historyManager.setMessageSeen(user.getStream());
+                historyManager.messageReceived(user, text, action, tags);
             }
         }
 
@@ -8,11 +8,13 @@ import chatty.ChannelStateManager.ChannelStateListener;
 import chatty.User.UserSettings;
 import chatty.gui.emoji.EmojiUtil;
 import chatty.util.BotNameManager;
+import chatty.util.OrderedExecutor;
 import chatty.util.irc.MsgTags;
 import chatty.util.StringUtil;
 import chatty.util.api.Emoticons;
 import chatty.util.irc.IrcBadges;
 import chatty.util.irc.UserTagsUtil;
+import chatty.util.settings.SettingKey;
 import chatty.util.settings.Settings;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,6 +29,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -89,8 +93,51 @@ public class TwitchConnection {
     protected UserManager users = new UserManager();
     
     private final RoomManager rooms;
+    
+    /**
+     * Shared by all connections, so the delay between JOINs applies to all of
+     * them together.
+     */
+    private final Irc.JoinQueue joinQueue = new Irc.JoinQueue();
 
     private final IrcConnection irc;
+    
+    /**
+     * Which channel is joined on which connection. Contains the main
+     * connection while it is registered and any additional pool connections
+     * (which are only created if a limit of channels per connection is set).
+     */
+    private final ConnectionPool<IrcConnection> pool = new ConnectionPool<>();
+    
+    /**
+     * Handles the received data of all connections on a single thread, so
+     * the listener is never called for several connections at the same time.
+     * The events of each connection stay in order.
+     */
+    private final OrderedExecutor events = new OrderedExecutor("IRC-Events", 1);
+    
+    /**
+     * Additional connections that are connecting or connected, not including
+     * the main connection.
+     */
+    private final List<IrcConnection> poolConnections = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Channels that should be joined, but currently don't have a connection
+     * they could be joined on (e.g. because their connection failed).
+     */
+    private final Set<String> unassignedChannels = new HashSet<>();
+    
+    private final SettingKey.LongKey channelsPerConnection;
+    private final AtomicInteger poolConnectionIds = new AtomicInteger();
+    private final String label;
+    
+    /**
+     * Counts how many times in a row a pool connection failed, reset when
+     * one is registered.
+     */
+    private int poolFailures;
+    private Timer rebalanceTimer;
 
     private final TwitchCommands twitchCommands;
     private final SpamProtection spamProtection;
@@ -101,8 +148,10 @@ public class TwitchConnection {
     public TwitchConnection(final ConnectionListener listener, Settings settings,
             String label, RoomManager rooms) {
         irc = new IrcConnection(label);
+        this.label = label;
         this.listener = listener;
         this.settings = settings;
+        this.channelsPerConnection = settings.longKey("channelsPerConnection");
         this.twitchCommands = new TwitchCommands(this);
         this.rooms = rooms;
         spamProtection = new SpamProtection();
@@ -136,6 +185,9 @@ public class TwitchConnection {
     
     public void debugConnection() {
         irc.debugConnection();
+        for (IrcConnection c : poolConnections) {
+            c.debugConnection();
+        }
     }
     
     public void addChannelStateListener(ChannelStateListener listener) {
@@ -197,7 +249,8 @@ public class TwitchConnection {
     }
     
     public boolean isUserlistLoaded(String channel) {
-        return irc.isRegistered() && irc.userlistReceived.contains(channel);
+        IrcConnection c = getConnection(channel);
+        return c.isRegistered() && c.userlistReceived.contains(channel);
     }
     
     public Set<String> getOpenChannels() {
@@ -255,7 +308,11 @@ public class TwitchConnection {
     }
 
     public Set<String> getJoinedChannels() {
-        return irc.getJoinedChannels();
+        Set<String> result = irc.getJoinedChannels();
+        for (IrcConnection c : poolConnections) {
+            result.addAll(c.getJoinedChannels());
+        }
+        return result;
     }
     
     public boolean isChannelOpen(String channel) {
@@ -266,10 +323,18 @@ public class TwitchConnection {
         if (channel.equals(WhisperManager.WHISPER_CHANNEL)) {
             return;
         }
+        IrcConnection c = getConnection(channel);
         partChannel(channel);
         openChannels.remove(channel);
         users.clear(channel);
-        irc.cancelJoinAttempt(channel);
+        c.cancelJoinAttempt(channel);
+        if (!c.onChannel(channel)) {
+            // Not joined yet, so no PART will remove it
+            pool.unassign(channel, c);
+        }
+        synchronized (unassignedChannels) {
+            unassignedChannels.remove(channel);
+        }
     }
     
     public void setAllOffline() {
@@ -278,14 +343,14 @@ public class TwitchConnection {
     
     public void rejoinChannel(String channel) {
         if (onChannel(channel)) {
-            irc.rejoinChannel.add(channel);
+            getConnection(channel).rejoinChannel.add(channel);
             partChannel(channel);
         }
     }
     
     public void partChannel(String channel) {
         if (onChannel(channel)) {
-            irc.partChannel(channel);
+            getConnection(channel).partChannel(channel);
         }
     }
 
@@ -298,7 +363,7 @@ public class TwitchConnection {
      * @return
      */
     public boolean onChannel(String channel, boolean showMessage) {
-        boolean onChannel = irc.joinedChannels.contains(channel);
+        boolean onChannel = getConnection(channel).onChannel(channel);
         if (showMessage && !onChannel) {
             if (channel == null || channel.isEmpty()) {
                 listener.onInfo("Not in a channel");
@@ -310,11 +375,11 @@ public class TwitchConnection {
     }
 
     public boolean onOwnerChannel(String ownerChannel) {
-        if (irc.joinedChannels.contains(ownerChannel)) {
+        if (onChannel(ownerChannel)) {
             return true;
         }
         for (Room room : rooms.getRoomsByOwner(ownerChannel)) {
-            if (irc.joinedChannels.contains(room.getChannel())) {
+            if (onChannel(room.getChannel())) {
                 return true;
             }
         }
@@ -432,11 +497,13 @@ public class TwitchConnection {
             irc.setState(Irc.STATE_OFFLINE);
             irc.connectionAttempts = 0;
         }
+        disconnectPool();
         boolean success = irc.disconnect();
         return success;
     }
     
     public void quit() {
+        disconnectPool();
         irc.disconnect();
     }
 
@@ -444,10 +511,16 @@ public class TwitchConnection {
         if (irc.getConnectionInfo() == null) {
             return "Not connected.";
         }
-        return String.format("Connected to: %s (%s, %s channels)",
+        String result = String.format("Connected to: %s (%s, %s channels)",
                 irc.getConnectionInfo(),
                 irc.getConnectedSince(),
                 irc.joinedChannels.size());
+        if (!poolConnections.isEmpty()) {
+            result += String.format(" + %d pool connections (channels assigned: %s)",
+                    poolConnections.size(),
+                    pool);
+        }
+        return result;
     }
     
     public boolean autoRequestModsEnabled() {
@@ -526,23 +599,164 @@ public class TwitchConnection {
                 sentMessages.messageSent(channel, message);
             }
             spamProtection.increase();
+            // Send on the channel's connection, so any response is received
+            // there as well
+            IrcConnection c = getConnection(channel);
+            if (!c.isRegistered()) {
+                c = irc;
+            }
             if (action) {
-                irc.sendActionMessage(channel, message);
+                c.sendActionMessage(channel, message);
             } else {
-                irc.sendMessage(channel, message, tags);
+                c.sendMessage(channel, message, tags);
             }
             return true;
         }
     }
 
     public int getNumJoinedChannels() {
-        return irc.joinedChannels.size();
+        int result = irc.joinedChannels.size();
+        for (IrcConnection c : poolConnections) {
+            result += c.joinedChannels.size();
+        }
+        return result;
     }
     
-    
+    /**
+     * Get the connection the channel is assigned to.
+     * 
+     * @param channel The channel
+     * @return The connection, or the main connection if the channel isn't
+     * assigned to any
+     */
+    private IrcConnection getConnection(String channel) {
+        IrcConnection c = pool.get(channel);
+        return c != null ? c : irc;
+    }
 
+    /**
+     * Join the channel on the connection it is assigned to. If a limit of
+     * channels per connection is set and no connection has room for it, a
+     * new pool connection is created, which will join the channel once it is
+     * registered.
+     * 
+     * @param channel The channel
+     */
     private void join(String channel) {
-        irc.joinChannel(channel);
+        IrcConnection c;
+        synchronized (pool) {
+            c = pool.assign(channel, channelsPerConnection.getInt());
+            if (c == null) {
+                if (!irc.isRegistered()) {
+                    // Joined once the main connection is registered again
+                    synchronized (unassignedChannels) {
+                        unassignedChannels.add(channel);
+                    }
+                    return;
+                }
+                c = addPoolConnection();
+                pool.assign(channel, c);
+            }
+        }
+        if (c.isRegistered()) {
+            c.joinChannel(channel);
+        }
+    }
+    
+    /**
+     * Create and connect an additional connection, which is added to the pool.
+     * 
+     * @return The new connection
+     */
+    private IrcConnection addPoolConnection() {
+        IrcConnection c = new IrcConnection(label+"-"+poolConnectionIds.incrementAndGet());
+        poolConnections.add(c);
+        pool.add(c);
+        LOGGER.info("Adding pool connection "+c.idPrefix+"(channels assigned: "+pool+")");
+        new Thread("IRC connect") {
+            @Override
+            public void run() {
+                c.connect(server, serverPorts, username, password, getSecuredPorts());
+            }
+        }.start();
+        return c;
+    }
+    
+    /**
+     * Join all channels that are assigned to the given pool connection, which
+     * has just been registered.
+     * 
+     * @param c The connection
+     */
+    private void poolConnectionRegistered(IrcConnection c) {
+        synchronized (unassignedChannels) {
+            poolFailures = 0;
+        }
+        for (String channel : pool.getChannels(c)) {
+            c.joinChannel(channel);
+        }
+    }
+    
+    /**
+     * Join the given channels (that lost their connection) again on other
+     * connections. This is delayed, longer if connections keep failing, so a
+     * connection that fails right away doesn't cause new connections to be
+     * created over and over.
+     * 
+     * @param channels The channels
+     */
+    private void scheduleRebalance(Collection<String> channels) {
+        synchronized (unassignedChannels) {
+            unassignedChannels.addAll(channels);
+            poolFailures++;
+            if (rebalanceTimer == null) {
+                int delay = getReconnectionDelay(poolFailures);
+                LOGGER.info("Rejoining "+unassignedChannels.size()+" channels in "+delay+"s");
+                rebalanceTimer = new Timer();
+                rebalanceTimer.schedule(new TimerTask() {
+
+                    @Override
+                    public void run() {
+                        rebalance();
+                    }
+                }, delay * 1000);
+            }
+        }
+    }
+    
+    private void rebalance() {
+        Set<String> channels;
+        synchronized (unassignedChannels) {
+            if (rebalanceTimer != null) {
+                rebalanceTimer.cancel();
+                rebalanceTimer = null;
+            }
+            channels = new HashSet<>(unassignedChannels);
+            unassignedChannels.clear();
+        }
+        for (String channel : channels) {
+            join(channel);
+        }
+    }
+    
+    /**
+     * Disconnect all pool connections and forget about channels still waiting
+     * to be joined again.
+     */
+    private void disconnectPool() {
+        synchronized (unassignedChannels) {
+            if (rebalanceTimer != null) {
+                rebalanceTimer.cancel();
+                rebalanceTimer = null;
+            }
+            unassignedChannels.clear();
+            poolFailures = 0;
+        }
+        for (IrcConnection c : poolConnections) {
+            poolConnections.remove(c);
+            pool.remove(c);
+            c.disconnect();
+        }
     }
     
     /**
@@ -656,7 +870,7 @@ public class TwitchConnection {
         
         
         public IrcConnection(String id) {
-            super(id);
+            super(id, joinQueue);
             this.idPrefix= "["+id+"] ";
         }
         
@@ -711,6 +925,9 @@ public class TwitchConnection {
 
         @Override
         void onConnectionPrepare(String server) {
+            if (this != irc) {
+                return;
+            }
             listener.onConnectionPrepare(server);
         }
         
@@ -725,20 +942,21 @@ public class TwitchConnection {
         
         @Override
         void onConnectionAttemptCancel() {
+            if (this != irc) {
+                return;
+            }
             listener.onGlobalInfo(Language.getString("chat.cancelConnect"));
         }
         
         @Override
         void onConnect() {
-            if (this == irc) {
-                send("CAP REQ :twitch.tv/tags");
-                send("CAP REQ :twitch.tv/commands");
-                if (settings.getBoolean("membershipEnabled")) {
-                    send("CAP REQ :twitch.tv/membership");
-                }
-                send("CAP END");
-                //send("TWITCHCLIENT 4");
+            send("CAP REQ :twitch.tv/tags");
+            send("CAP REQ :twitch.tv/commands");
+            if (settings.getBoolean("membershipEnabled")) {
+                send("CAP REQ :twitch.tv/membership");
             }
+            send("CAP END");
+            //send("TWITCHCLIENT 4");
             userlistReceived.clear();
         }
 
@@ -747,9 +965,16 @@ public class TwitchConnection {
             connectionAttempts = 1;
 
             if (this != irc) {
+                if (!poolConnections.contains(this)) {
+                    // Pool was disconnected while this was still connecting
+                    disconnect();
+                    return;
+                }
+                poolConnectionRegistered(this);
                 return;
             }
             
+            pool.add(this);
             
             if (autojoin != null) {
                 listener.onJoinScheduled(Arrays.asList(autojoin));
@@ -762,18 +987,47 @@ public class TwitchConnection {
                  */
                 autojoin = null;
             } else {
-                joinChannels(getOpenChannels());
+                // Channels may still be joined on pool connections
+                Set<String> toJoin = getOpenChannels();
+                synchronized (unassignedChannels) {
+                    toJoin.addAll(unassignedChannels);
+                    unassignedChannels.clear();
+                }
+                toJoin.removeIf(channel -> pool.get(channel) != null);
+                joinChannels(toJoin);
             }
             listener.onRegistered();
         }
         
         @Override
         void onDisconnect(int reason, String reasonMessage) {
+            // After the data received before the disconnect has been handled
+            events.execute(this, () -> handleDisconnect(reason, reasonMessage));
+        }
+        
+        @Override
+        protected void received(String data) {
+            events.execute(this, () -> super.received(data));
+        }
+        
+        private void handleDisconnect(int reason, String reasonMessage) {
             joinedChannels.clear();
             joinChecker.cancelAll();
+            Set<String> dropped = pool.remove(this);
             
             if (this == irc) {
-                channelStates.reset();
+                if (poolConnections.isEmpty()) {
+                    channelStates.reset();
+                }
+                else {
+                    // Other channels are still joined on pool connections
+                    for (String channel : dropped) {
+                        channelStates.reset(channel);
+                    }
+                    if (reason != Irc.REQUESTED_DISCONNECT) {
+                        scheduleRebalance(dropped);
+                    }
+                }
                 listener.onGlobalInfo(Language.getString("chat.disconnected")
                         +Helper.makeDisconnectReason(reason, reasonMessage));
 
@@ -790,6 +1044,19 @@ public class TwitchConnection {
                 }
                 listener.onDisconnect(reason, reasonMessage);
             }
+            else {
+                poolConnections.remove(this);
+                if (reason != Irc.REQUESTED_DISCONNECT && !dropped.isEmpty()) {
+                    for (String channel : dropped) {
+                        if (isChannelOpen(channel)) {
+                            info(channel, "Connection for this channel lost"
+                                    + Helper.makeDisconnectReason(reason, reasonMessage)
+                                    + ", joining again..", null);
+                        }
+                    }
+                    scheduleRebalance(dropped);
+                }
+            }
         }
         
         private void startReconnectTimer(int reason) {
@@ -813,12 +1080,11 @@ public class TwitchConnection {
 
         @Override
         void onJoinAttempt(String channel) {
-            channel = StringUtil.toLowerCase(channel);
-            joinChecker.joinAttempt(channel);
-            if (this == irc) {
-                listener.onJoinAttempt(rooms.getRoom(channel));
-                openChannels.add(channel);
-            }
+            String chan = StringUtil.toLowerCase(channel);
+            joinChecker.joinAttempt(chan);
+            openChannels.add(chan);
+            // Called from the join queue, so pass on to the events thread
+            events.execute(this, () -> listener.onJoinAttempt(rooms.getRoom(chan)));
         }
 
         @Override
@@ -834,7 +1100,7 @@ public class TwitchConnection {
                 boolean onChannel = onChannel(channel);
                 // Change before notifying listener
                 joinedChannels.add(channel);
-                if (this == irc && !onChannel) {
+                if (!onChannel) {
                     listener.onChannelJoined(user);
                 }
             } else {
@@ -880,25 +1146,22 @@ public class TwitchConnection {
                  * Local User Leaving Channel
                  */
                 joinChecker.cancel(channel);
-                if (this == irc) {
-                    userOffline(channel, nick);
-                }
+                userOffline(channel, nick);
                 joinedChannels.remove(channel);
-                if (this == irc) {
-                    if (rejoinChannel.contains(channel)) {
-                        rejoinChannel.remove(channel);
-                        listener.onChannelLeft(rooms.getRoom(channel), false);
-                        rejoin = true;
-                    }
-                    else {
-                        // Remove users for this channel, clearing the userlist in the
-                        // GUI shouldn't be necessary if this channel is closed since
-                        // the GUI userlist is removed as well.
-                        users.clear(channel);
-                        listener.onChannelLeft(rooms.getRoom(channel), true);
-                    }
-                    channelStates.reset(channel);
+                pool.unassign(channel, this);
+                if (rejoinChannel.contains(channel)) {
+                    rejoinChannel.remove(channel);
+                    listener.onChannelLeft(rooms.getRoom(channel), false);
+                    rejoin = true;
+                }
+                else {
+                    // Remove users for this channel, clearing the userlist in the
+                    // GUI shouldn't be necessary if this channel is closed since
+                    // the GUI userlist is removed as well.
+                    users.clear(channel);
+                    listener.onChannelLeft(rooms.getRoom(channel), true);
                 }
+                channelStates.reset(channel);
                 // Leaving the channel on the userlist connection means
                 // the userlist can no longer be considered as received for
                 // this channel.
@@ -925,9 +1188,7 @@ public class TwitchConnection {
             if (modeAdded) {
                 user.setMode(mode);
                 if (mode.equals("o")) {
-                    if (this == irc) {
-                        listener.onMod(user);
-                    }
+                    listener.onMod(user);
                     if (!isUserlistLoaded(channel)) {
                         userJoined(user);
                     }
@@ -935,9 +1196,7 @@ public class TwitchConnection {
             } else {
                 user.setMode("");
                 if (mode.equals("o")) {
-                    if (this == irc) {
-                        listener.onUnmod(user);
-                    }
+                    listener.onUnmod(user);
                 }
             }
             // Notify userlist to update the changed user, but only if he is still
@@ -959,9 +1218,6 @@ public class TwitchConnection {
         void onChannelMessage(String channel, String nick, String from, String text,
                 MsgTags tags, boolean action) {
             channel = StringUtil.toLowerCase(channel);
-            if (this != irc) {
-                return;
-            }
             if (nick.isEmpty()) {
                 return;
             }
@@ -994,7 +1250,8 @@ public class TwitchConnection {
         @Override
         void onNotice(String channel, String text, MsgTags tags) {
             channel = StringUtil.toLowerCase(channel);
-            if (this != irc) {
+            if (this != irc && this != getConnection(channel)) {
+                // Pool connections only handle their own channels
                 return;
             }
             String msg_id = tags.get("msg-id");
@@ -1269,7 +1526,9 @@ public class TwitchConnection {
         @Override
         protected void setState(int state) {
             super.setState(state);
-            listener.onConnectionStateChanged(state);
+            if (this == irc) {
+                listener.onConnectionStateChanged(state);
+            }
         }
 
         /**
@@ -1306,7 +1565,10 @@ public class TwitchConnection {
         
         @Override
         public void onGlobalUserstate(MsgTags tags) {
-            updateUserstate(null, tags);
+            // Same for all connections of the account
+            if (this == irc) {
+                updateUserstate(null, tags);
+            }
         }
         
         private void updateUserstate(String channel, MsgTags tags) {
@@ -1432,7 +1694,7 @@ public class TwitchConnection {
             if (nick.isEmpty()) {
                 return;
             }
-            if (command.equals("WHISPER")) {
+            if (command.equals("WHISPER") && this == irc) {
                 User user = userJoined(WhisperManager.WHISPER_CHANNEL, nick);
                 updateUserFromTags(user, tags);
                 listener.onWhisper(user, text, tags.get("emotes"));
@@ -9,6 +9,7 @@ import chatty.util.colors.HtmlColors;
 import chatty.gui.NamedColor;
 import chatty.gui.components.textpane.ModLogInfo;
 import chatty.util.Debugging;
+import chatty.util.SimilarityFingerprint;
 import chatty.util.StringUtil;
 import chatty.util.api.eventsub.payloads.ModActionPayload;
 import chatty.util.api.eventsub.payloads.SuspiciousMessagePayload;
@@ -121,7 +122,7 @@ public class User implements Comparable<User> {
     //==========
     // Messages
     //==========
-    private List<Message> lines;
+    private MessageHistory lines;
 
     private int numberOfMessages;
     private int numberOfLines;
@@ -589,33 +590,65 @@ public class User implements Comparable<User> {
      */
     private void addLine(Message line) {
         if (lines == null) {
-            lines = new ArrayList<>(1);
+            lines = new MessageHistory(userSettings.maxLines);
         }
         lines.add(line);
-        if (lines.size() > userSettings.maxLines) {
-            lines.remove(0);
-        }
         numberOfLines++;
+        updateHistoryBudget(true);
+    }
+    
+    /**
+     * Stop counting the message history of this user for the total limit,
+     * should be called when the user is removed.
+     */
+    public synchronized void removeFromHistoryBudget() {
+        if (userSettings.historyBudget != null) {
+            userSettings.historyBudget.remove(this);
+        }
+    }
+    
+    private void updateHistoryBudget(boolean active) {
+        if (userSettings.historyBudget != null) {
+            userSettings.historyBudget.update(this, lines != null ? lines.size() : 0, active);
+        }
     }
     
     /**
-     * Returns a copy of the current messages (defensive copying because it
-     * might be used while being modified concurrently).
+     * Returns the current messages. The returned List is not affected by
+     * messages being added later, so it can be used while the messages are
+     * modified concurrently.
      * 
-     * @return 
+     * @return The messages, oldest first (must not be modified)
      */
     public synchronized List<Message> getMessages() {
         if (lines == null) {
             return new ArrayList<>();
         }
-        return new ArrayList<>(lines);
+        return lines.toList();
     }
     
     public synchronized int getNumberOfSimilarChatMessages(String compareMsg, int method, long timeframe, float minSimilarity, int minLen, char[] ignoredChars) {
+        return getNumberOfSimilarChatMessages(SimilarityFingerprint.create(compareMsg, ignoredChars), method, timeframe, minSimilarity, minLen, ignoredChars);
+    }
+    
+    /**
+     * Count the messages similar to the given one. The fingerprint of each
+     * stored message is only created once and then reused for further
+     * comparisons.
+     * 
+     * @param compareMsg The fingerprint of the message to compare
+     * @param method The comparison algorithm (1 or 2)
+     * @param timeframe How far back messages are checked (seconds)
+     * @param minSimilarity The minimum similarity to count a message
+     * @param minLen The minimum length of messages to check
+     * @param ignoredChars Sorted characters to ignore, must be the same the
+     * compareMsg fingerprint was created with
+     * @return The number of similar messages
+     */
+    public synchronized int getNumberOfSimilarChatMessages(SimilarityFingerprint compareMsg, int method, long timeframe, float minSimilarity, int minLen, char[] ignoredChars) {
         if (lines == null) {
             return 0;
         }
-        compareMsg = StringUtil.prepareForSimilarityComparison(compareMsg, ignoredChars);
         int result = 0;
         long checkUntilTime = System.currentTimeMillis() - timeframe * 1000;
         for (int i=lines.size() - 1; i>=0; i--) {
@@ -626,8 +659,8 @@ public class User implements Comparable<User> {
                     break;
                 }
                 if (msg.text.length() >= minLen) {
-                    String text = StringUtil.prepareForSimilarityComparison(msg.text, ignoredChars);
-                    if (StringUtil.checkSimilarity(compareMsg, text, minSimilarity, method) > 0) {
+                    SimilarityFingerprint fingerprint = msg.getFingerprint(ignoredChars);
+                    if (compareMsg.checkSimilarity(fingerprint, minSimilarity, method) > 0) {
                         result++;
                     }
                 }
@@ -762,15 +795,34 @@ public class User implements Comparable<User> {
                 && System.currentTimeMillis() - getLastLineTime() >= duration) {
             int size = lines.size();
             lines = null;
+            updateHistoryBudget(false);
             return size;
         }
         return 0;
     }
     
+    /**
+     * Clear all lines because the limit of messages of all users was reached.
+     * This keeps the number of lines, so it's visible that lines have been
+     * cleared.
+     * 
+     * @return The number of lines removed
+     */
+    public synchronized int clearLinesDueToLimit() {
+        if (lines == null) {
+            return 0;
+        }
+        int size = lines.size();
+        lines = null;
+        updateHistoryBudget(false);
+        return size;
+    }
+    
     public synchronized void clearLines() {
         lines = null;
         numberOfMessages = 0;
         numberOfLines = 0;
+        updateHistoryBudget(false);
     }
     
     public synchronized void clearNumberOfMessages() {
@@ -1325,6 +1377,7 @@ public class User implements Comparable<User> {
         public final boolean action;
         public final String id;
         public final SuspiciousMessagePayload lowTrust;
+        private volatile SimilarityFingerprint fingerprint;
         
         public TextMessage(long time, String message, boolean action, String id, SuspiciousMessagePayload lowTrust) {
             super(time);
@@ -1334,6 +1387,23 @@ public class User implements Comparable<User> {
             this.lowTrust = lowTrust;
         }
         
+        /**
+         * Get the fingerprint for similarity comparisons, which is created
+         * when first needed and kept as long as the ignored characters stay
+         * the same.
+         * 
+         * @param ignoredChars Sorted characters to ignore (may be null)
+         * @return The fingerprint
+         */
+        public SimilarityFingerprint getFingerprint(char[] ignoredChars) {
+            SimilarityFingerprint result = fingerprint;
+            if (result == null || !result.isFor(ignoredChars)) {
+                result = SimilarityFingerprint.create(text, ignoredChars);
+                fingerprint = result;
+            }
+            return result;
+        }
+        
         public String getText() {
             return text;
         }
@@ -1664,9 +1734,16 @@ public class User implements Comparable<User> {
         private final UsercolorManager colorManager;
         private final Addressbook addressbook;
         private final UsericonManager iconManager;
+        private final MessageHistoryBudget historyBudget;
         
         public UserSettings(int maxLines, UsercolorManager colorManager,
                             Addressbook addressbook, UsericonManager iconManager) {
+            this(maxLines, colorManager, addressbook, iconManager, null);
+        }
+        
+        public UserSettings(int maxLines, UsercolorManager colorManager,
+                            Addressbook addressbook, UsericonManager iconManager,
+                            MessageHistoryBudget historyBudget) {
             if (maxLines < 0) {
                 maxLines = 100;
             }
@@ -1674,6 +1751,7 @@ public class User implements Comparable<User> {
             this.colorManager = colorManager;
             this.addressbook = addressbook;
             this.iconManager = iconManager;
+            this.historyBudget = historyBudget;
         }
         
     }
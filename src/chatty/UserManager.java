@@ -7,8 +7,8 @@ import chatty.util.api.usericons.UsericonManager;
 import chatty.util.BotNameManager;
 import chatty.util.StringUtil;
 import chatty.util.settings.Settings;
-import java.util.Map.Entry;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -20,6 +20,15 @@ import java.util.logging.Logger;
  * Although it could be useful to add some caching again (e.g. for showing
  * user type in userlist before the user said something).
  * 
+ * <p>
+ * Users are stored in concurrent maps per channel, with an additional index by
+ * username, so that getting users (which happens for every message on the IRC
+ * thread, but also from other threads) doesn't have to wait for a single lock
+ * and looking up a name in all channels doesn't have to check every channel.
+ * Only adding and removing users is synchronized, to keep both maps
+ * consistent.
+ * </p>
+ * 
  * @author tduva
  */
 public class UserManager {
@@ -33,9 +42,17 @@ public class UserManager {
     private volatile String localUsername;
     public final User specialUser = new User("[specialUser]", Room.createRegular("[nochannel]"));
     
-    private final HashMap<String, HashMap<String, User>> users = new HashMap<>();
-    private final HashMap<String, String> cachedColors = new HashMap<>();
-    private boolean capitalizedNames = false;
+    /**
+     * Channel -> (username -> User)
+     */
+    private final Map<String, Map<String, User>> users = new ConcurrentHashMap<>();
+    
+    /**
+     * Username -> (channel -> User)
+     */
+    private final Map<String, Map<String, User>> usersByName = new ConcurrentHashMap<>();
+    private final Map<String, String> cachedColors = new ConcurrentHashMap<>();
+    private volatile boolean capitalizedNames = false;
     
     private final User errorUser = new User("[Error]", Room.createRegular("#[error]"));
 
@@ -134,18 +151,17 @@ public class UserManager {
     }
     
     /**
-     * Gets a Map of all User objects in the given channel.
+     * Gets a Map of all User objects in the given channel. The Map must not
+     * be modified.
      * 
      * @param channel
      * @return 
      */
-    public synchronized HashMap<String, User> getUsersByChannel(String channel) {
-        HashMap<String, User> result = users.get(channel);
-        if (result == null) {
-            result = new HashMap<>();
-            users.put(channel, result);
+    public Map<String, User> getUsersByChannel(String channel) {
+        if (channel == null) {
+            return Collections.emptyMap();
         }
-        return result;
+        return users.computeIfAbsent(channel, c -> new ConcurrentHashMap<>());
     }
 
     /**
@@ -156,18 +172,15 @@ public class UserManager {
      * @param name The username to search for
      * @return The List of User-objects.
      */
-    public synchronized List<User> getUsersByName(String name) {
-        name = StringUtil.toLowerCase(name);
-        List<User> result = new ArrayList<>();
-        Iterator<HashMap<String, User>> it = users.values().iterator();
-        while (it.hasNext()) {
-            HashMap<String, User> channelUsers = it.next();
-            User user = channelUsers.get(name);
-            if (user != null) {
-                result.add(user);
-            }
+    public List<User> getUsersByName(String name) {
+        if (name == null) {
+            return new ArrayList<>();
         }
-        return result;
+        Map<String, User> byChannel = usersByName.get(StringUtil.toLowerCase(name));
+        if (byChannel == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(byChannel.values());
     }
 
     /**
@@ -178,8 +191,15 @@ public class UserManager {
      * @param name
      * @return The {@code User} object or null if none exists
      */
-    public synchronized User getUserIfExists(String channel, String name) {
-        return getUsersByChannel(channel).get(name);
+    public User getUserIfExists(String channel, String name) {
+        if (channel == null || name == null) {
+            return null;
+        }
+        Map<String, User> channelUsers = users.get(channel);
+        if (channelUsers == null) {
+            return null;
+        }
+        return channelUsers.get(name);
     }
     
     /**
@@ -191,12 +211,28 @@ public class UserManager {
      * @return The matching User object
      * @see User
      */
-    public synchronized User getUser(Room room, String name) {
+    public User getUser(Room room, String name) {
         // Not sure if this makes sense
         if (name == null || name.isEmpty()) {
             return errorUser;
         }
         name = StringUtil.toLowerCase(name);
+        User user = getUserIfExists(room.getChannel(), name);
+        if (user != null) {
+            return user;
+        }
+        return createUser(room, name);
+    }
+    
+    /**
+     * Create a new User and add it, unless another thread already added one
+     * in the meantime.
+     * 
+     * @param room
+     * @param name The lowercase name
+     * @return The new or already existing User
+     */
+    private synchronized User createUser(Room room, String name) {
         User user = getUserIfExists(room.getChannel(), name);
         if (user == null) {
             // Capitalize name if enabled (might still be overwritten by setting
@@ -241,8 +277,9 @@ public class UserManager {
                     user.setDisplayNick(specialUser.getDisplayNick());
                 }
             }
-            // Put User into the map for the channel
+            // Put User into the map for the channel and the name index
             getUsersByChannel(room.getChannel()).put(name, user);
+            usersByName.computeIfAbsent(name, n -> new ConcurrentHashMap<>()).put(room.getChannel(), user);
         }
         return user;
     }
@@ -254,21 +291,11 @@ public class UserManager {
      * @param name The username to be searched for
      * @return A Map with channel->User association
      */
-    public synchronized HashMap<String,User> getChannelsAndUsersByUserName(String name) {
-        String lowercaseName = StringUtil.toLowerCase(name);
+    public HashMap<String,User> getChannelsAndUsersByUserName(String name) {
         HashMap<String,User> result = new HashMap<>();
-        
-        Iterator<Entry<String, HashMap<String, User>>> it = users.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<String, HashMap<String, User>> channel = it.next();
-            
-            String channelName = channel.getKey();
-            HashMap<String,User> channelUsers = channel.getValue();
-            
-            User user = channelUsers.get(lowercaseName);
-            if (user != null) {
-                result.put(channelName,user);
-            }
+        Map<String, User> byChannel = usersByName.get(StringUtil.toLowerCase(name));
+        if (byChannel != null) {
+            result.putAll(byChannel);
         }
         return result;
     }
@@ -277,7 +304,11 @@ public class UserManager {
      * Remove all users.
      */
     public synchronized void clear() {
+        for (Map<String, User> channelUsers : users.values()) {
+            channelUsers.values().forEach(User::removeFromHistoryBudget);
+        }
         users.clear();
+        usersByName.clear();
     }
     
     /**
@@ -286,10 +317,24 @@ public class UserManager {
      * @param channel 
      */
     public synchronized void clear(String channel) {
-        getUsersByChannel(channel).clear();
+        if (channel == null) {
+            return;
+        }
+        Map<String, User> channelUsers = users.get(channel);
+        if (channelUsers == null) {
+            return;
+        }
+        for (Map.Entry<String, User> entry : channelUsers.entrySet()) {
+            usersByName.computeIfPresent(entry.getKey(), (n, byChannel) -> {
+                byChannel.remove(channel);
+                return byChannel.isEmpty() ? null : byChannel;
+            });
+            entry.getValue().removeFromHistoryBudget();
+        }
+        channelUsers.clear();
     }
     
-    public synchronized void clearLinesOfInactiveUsers() {
+    public void clearLinesOfInactiveUsers() {
         if (settings == null) {
             return;
         }
@@ -314,13 +359,11 @@ public class UserManager {
      * @return The number of users affected (whether something actually changed
      * or not)
      */
-    public synchronized int clearLines(String channel, boolean messageNumberOnly) {
+    public int clearLines(String channel, boolean messageNumberOnly) {
         if (channel == null) {
             int result = 0;
             for (String chan : users.keySet()) {
-                if (chan != null) {
-                    result += clearLines(chan, messageNumberOnly);
-                }
+                result += clearLines(chan, messageNumberOnly);
             }
             return result;
         }
@@ -345,10 +388,9 @@ public class UserManager {
     /**
      * Set all users offline.
      */
-    public synchronized void setAllOffline() {
-        Iterator<HashMap<String,User>> it = users.values().iterator();
-        while (it.hasNext()) {
-            setAllOffline(it.next());
+    public void setAllOffline() {
+        for (Map<String, User> usersInChannel : users.values()) {
+            setAllOffline(usersInChannel);
         }
     }
     
@@ -357,9 +399,10 @@ public class UserManager {
      * 
      * @param channel 
      */
-    public synchronized void setAllOffline(String channel) {
+    public void setAllOffline(String channel) {
         if (channel == null) {
             setAllOffline();
+            return;
         }
         Map<String, User> usersInChannel = users.get(channel);
         if (usersInChannel != null) {
@@ -384,7 +427,7 @@ public class UserManager {
      * @param userName String The name of the user
      * @param color String The color as a string representation
      */
-    protected synchronized void setColorForUsername(String userName, String color) {
+    protected void setColorForUsername(String userName, String color) {
         userName = StringUtil.toLowerCase(userName);
         cachedColors.put(userName,color);
         
@@ -402,7 +445,7 @@ public class UserManager {
      * @param modsList
      * @return 
      */
-    protected synchronized List<User> modsListReceived(Room room, List<String> modsList) {
+    protected List<User> modsListReceived(Room room, List<String> modsList) {
         // Demod everyone on the channel
         Map<String,User> usersToDemod = getUsersByChannel(room.getChannel());
         for (User user : usersToDemod.values()) {
@@ -6,6 +6,7 @@ import chatty.Addressbook;
 import chatty.Helper;
 import chatty.Logging;
 import chatty.User;
+import chatty.util.AhoCorasick;
 import chatty.util.DateTime;
 import chatty.util.Debugging;
 import chatty.util.MiscUtil;
@@ -22,6 +23,7 @@ import chatty.util.commands.Parameters;
 import chatty.util.irc.MsgTags;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -55,28 +57,35 @@ public class Highlighter {
     
     private final String type;
     
+    // Synchronized on lastHighlighted
     private final Map<String, Long> lastHighlighted = new HashMap<>();
     private final Map<String, HighlightItem> lastHighlightedItem = new HashMap<>();
-    private final List<HighlightItem> items = new ArrayList<>();
-    private final List<HighlightItem> blacklistItems = new ArrayList<>();
-    private HighlightItem usernameItem;
+    
+    /**
+     * The items are replaced as a whole, so that matching (which may be done
+     * outside the EDT) always uses a consistent state.
+     */
+    private volatile CompiledItems items = new CompiledItems(new ArrayList<>());
+    private volatile List<HighlightItem> blacklistItems = new ArrayList<>();
+    private volatile HighlightItem usernameItem;
+    private volatile boolean includeAllTextMatches;
+    private volatile Replacer2 substitutes;
+    private volatile boolean substitutesDefault;
+    
+    // Last match, for check()
     private HighlightItem lastMatchItem;
     private List<HighlightItem> lastMatchItems;
     private Color lastMatchColor;
     private Color lastMatchBackgroundColor;
     private boolean lastMatchNoNotification;
     private boolean lastMatchNoSound;
-    private boolean includeAllTextMatches;
     private List<Match> lastTextMatches;
     private String lastReplacement;
-    private Replacer2 substitutes;
-    private boolean substitutesDefault;
     
     // Settings
-    private boolean highlightUsername;
-    private boolean highlightNextMessages;
-    private boolean hasOverrideIgnored;
-    private boolean hasSubstitutesEnabled;
+    private volatile boolean highlightUsername;
+    private volatile boolean highlightNextMessages;
+    private volatile boolean hasSubstitutesEnabled;
     
     public Highlighter(String type) {
         this.type = type;
@@ -89,18 +98,12 @@ public class Highlighter {
      * @throws NullPointerException if newItems is null
      */
     public void update(List<String> newItems) {
-        compile(newItems, items, "");
-        hasOverrideIgnored = false;
-        items.forEach(item -> {
-            if (item.overrideIgnored()) {
-                hasOverrideIgnored = true;
-            }
-        });
+        items = new CompiledItems(compile(newItems, ""));
         updateSubstitutesState();
     }
     
     public void updateBlacklist(List<String> newItems) {
-        compile(newItems, blacklistItems, "Blacklist");
+        blacklistItems = compile(newItems, "Blacklist");
     }
     
     public void setSubstitutitesDefault(boolean value) {
@@ -109,29 +112,31 @@ public class Highlighter {
     }
     
     private void updateSubstitutesState() {
-        hasSubstitutesEnabled = false;
-        for (HighlightItem item : items) {
+        boolean enabled = false;
+        for (HighlightItem item : items.items) {
             if (item.substitutesEnabled(substitutesDefault)) {
-                hasSubstitutesEnabled = true;
+                enabled = true;
                 break;
             }
         }
+        hasSubstitutesEnabled = enabled;
     }
     
     public void updateSubstitutes(Replacer2 replacer) {
         this.substitutes = replacer;
     }
     
-    private void compile(List<String> newItems, List<HighlightItem> into, String typeSuffix) {
-        into.clear();
+    private List<HighlightItem> compile(List<String> newItems, String typeSuffix) {
+        List<HighlightItem> result = new ArrayList<>();
         for (String item : newItems) {
             if (item != null && !item.isEmpty()) {
                 HighlightItem compiled = new HighlightItem(item, type+typeSuffix);
                 if (!compiled.hasError()) {
-                    into.add(compiled);
+                    result.add(compiled);
                 }
             }
         }
+        return result;
     }
     
     /**
@@ -238,7 +243,7 @@ public class Highlighter {
      * @return 
      */
     public boolean hasOverrideIgnored() {
-        return hasOverrideIgnored;
+        return items.hasOverrideIgnored;
     }
     
     /**
@@ -284,6 +289,64 @@ public class Highlighter {
                          String text, int msgStart, int msgEnd,
                          String channel, Addressbook ab, User user,
                          User localUser, MsgTags tags, boolean ignored) {
+        Result result = match(type, text, msgStart, msgEnd, channel, ab, user, localUser, tags, ignored);
+        if (result == null) {
+            /**
+             * The other last match variables are only valid after a match
+             * anyway, so only the text matches are reset.
+             */
+            lastTextMatches = null;
+            return false;
+        }
+        lastMatchItem = result.item;
+        lastMatchItems = result.items;
+        lastMatchColor = result.getColor();
+        lastMatchBackgroundColor = result.getBackgroundColor();
+        lastMatchNoNotification = result.noNotification();
+        lastMatchNoSound = result.noSound();
+        lastReplacement = result.getReplacement();
+        lastTextMatches = result.textMatches;
+        return true;
+    }
+    
+    /**
+     * Same as {@link #check(HighlightItem.Type, String, int, int, String, Addressbook, User, User, MsgTags, boolean)},
+     * except that the match is returned instead of stored in the last match
+     * variables.
+     * <p>
+     * This can be used from any thread, since the only state changed is the
+     * one for "Highlight follow-up" (which is synchronized). Messages from the
+     * same user should still be matched in order, since follow-up and some
+     * item prefixes (like the number of messages of the user) depend on
+     * previous messages.
+     * 
+     * @param type What kind of message this is, REGULAR, INFO or ANY (which
+     * means the type is ignored)
+     * @param text The text of the message to check
+     * @param msgStart
+     * @param msgEnd
+     * @param channel The channel of this message
+     * @param ab The Addressbook for checking channel category
+     * @param user The User associated with this message, for checking username
+     * and user Addressbook category
+     * @param localUser
+     * @param tags
+     * @param ignored When true items don't match if the "config:!ignore" prefix
+     * hasn't been set
+     * @return The match, or null if the message doesn't match
+     */
+    public Result match(HighlightItem.Type type,
+                        String text, int msgStart, int msgEnd,
+                        String channel, Addressbook ab, User user,
+                        User localUser, MsgTags tags, boolean ignored) {
+        
+        // Use the same state for the whole check, even if changed meanwhile
+        CompiledItems items = this.items;
+        List<HighlightItem> blacklistItems = this.blacklistItems;
+        HighlightItem usernameItem = this.usernameItem;
+        boolean includeAllTextMatches = this.includeAllTextMatches;
+        boolean substitutesDefault = this.substitutesDefault;
+        Replacer2 substitutes = this.substitutes;
         
         Replacer2.Result subResult = null;
         if (substitutes != null && hasSubstitutesEnabled) {
@@ -302,28 +365,33 @@ public class Highlighter {
             }
         }
         
-        /**
-         * All last match variables filled in case of match, except for text
-         * matches, so reset here.
-         */
-        lastTextMatches = null;
-        
         // Try to match own name first (if enabled)
         if (highlightUsername
                 && usernameItem != null
                 && (blacklist == null || !blacklist.block)
                 && !ignored
                 && usernameItem.matches(type, text, -1, -1, blacklist, channel, ab, user, localUser, tags)) {
-            fillLastMatchVariables(usernameItem, text, -1, -1, null);
             addMatch(user, usernameItem);
-            return true;
+            return new Result(usernameItem, null,
+                    usernameItem.getTextMatches(text, -1, -1, null));
         }
         
         // Then try to match against the items
-        boolean alreadyMatched = false;
-        for (HighlightItem item : items) {
+        HighlightItem matchItem = null;
+        List<HighlightItem> matchItems = null;
+        List<Match> textMatches = null;
+        BitSet excluded = items.prefilter.getExcluded(user, text);
+        BitSet subExcluded = subResult != null
+                ? items.prefilter.getExcluded(user, subResult.getChangedText())
+                : null;
+        for (int i = 0; i < items.items.size(); i++) {
+            HighlightItem item = items.items.get(i);
             // On what does matching take place (changed text or not)
             boolean subEnabled = item.substitutesEnabled(substitutesDefault) && subResult != null;
+            if ((subEnabled ? subExcluded : excluded).get(i)) {
+                // Can't match anyway, so skip the more expensive check
+                continue;
+            }
             String itemText = text;
             int itemMsgStart = msgStart;
             int itemMsgEnd = msgEnd;
@@ -343,56 +411,48 @@ public class Highlighter {
                     && !ignoredBlocks
                     && item.matches(type, itemText, itemMsgStart, itemMsgEnd, item.overrideBlacklist ? null : itemBlacklist, channel, ab, user, localUser, tags)) {
                 // Item matched
-                if (!alreadyMatched) {
+                if (matchItem == null) {
                     // Only for the first match
-                    fillLastMatchVariables(item, itemText, itemMsgStart, itemMsgEnd, itemSubResult);
+                    matchItem = item;
+                    textMatches = item.getTextMatches(itemText, itemMsgStart, itemMsgEnd, itemSubResult);
                     addMatch(user, item);
-                    alreadyMatched = true;
                 }
                 else if (includeAllTextMatches) {
                     List<Match> matches = item.getTextMatches(itemText, itemMsgStart, itemMsgEnd, itemSubResult);
-                    if (lastTextMatches == null && matches != null) {
+                    if (textMatches == null && matches != null) {
                         // Can happen if first match has no pattern
-                        lastTextMatches = new ArrayList<>();
+                        textMatches = new ArrayList<>();
                     }
-                    if (Match.addAllIfNotAlreadyMatched(lastTextMatches, matches)) {
-                        lastMatchItems.add(item);
+                    if (Match.addAllIfNotAlreadyMatched(textMatches, matches)) {
+                        if (matchItems == null) {
+                            matchItems = new ArrayList<>();
+                            matchItems.add(matchItem);
+                        }
+                        matchItems.add(item);
                     }
                 }
                 if (!includeAllTextMatches) {
                     // Finish here if not all text matches should be included
-                    return true;
+                    return new Result(matchItem, null, textMatches);
                 }
             }
         }
-        if (alreadyMatched) {
+        if (matchItem != null) {
             // Only applies if all text matches should be included
-            if (lastTextMatches != null) {
-                Collections.sort(lastTextMatches);
+            if (textMatches != null) {
+                Collections.sort(textMatches);
             }
-            return true;
+            return new Result(matchItem, matchItems, textMatches);
         }
         
         // Then see if there is a recent match ("Highlight follow-up")
-        if (user != null && hasRecentMatch(user.getName())) {
-            fillLastMatchVariables(lastHighlightedItem.get(user.getName()), null, -1, -1, null);
-            return true;
-        }
-        return false;
-    }
-    
-    private void fillLastMatchVariables(HighlightItem item, String text, int msgStart, int msgEnd, Replacer2.Result subResult) {
-        lastMatchItem = item;
-        lastMatchItems = new ArrayList<>();
-        lastMatchItems.add(item);
-        lastMatchColor = item.getColor();
-        lastMatchBackgroundColor = item.getBackgroundColor();
-        lastMatchNoNotification = item.noNotification();
-        lastMatchNoSound = item.noSound();
-        lastReplacement = item.getReplacement();
-        if (text != null) {
-            lastTextMatches = item.getTextMatches(text, msgStart, msgEnd, subResult);
+        if (user != null) {
+            HighlightItem recentMatch = getRecentMatch(user.getName());
+            if (recentMatch != null) {
+                return new Result(recentMatch, null, null);
+            }
         }
+        return null;
     }
     
     /**
@@ -422,17 +482,22 @@ public class Highlighter {
             return;
         }
         String username = user.getName();
-        lastHighlighted.put(username, MiscUtil.ems());
-        lastHighlightedItem.put(username, item);
+        synchronized (lastHighlighted) {
+            lastHighlighted.put(username, MiscUtil.ems());
+            lastHighlightedItem.put(username, item);
+        }
     }
     
-    private boolean hasRecentMatch(String fromUsername) {
-        clearRecentMatches();
-        HighlightItem item = lastHighlightedItem.get(fromUsername);
+    private HighlightItem getRecentMatch(String fromUsername) {
+        HighlightItem item;
+        synchronized (lastHighlighted) {
+            clearRecentMatches();
+            item = lastHighlightedItem.get(fromUsername);
+        }
         if (item == null) {
-            return false;
+            return null;
         }
-        return highlightNextMessages || item.followUp > 0;
+        return highlightNextMessages || item.followUp > 0 ? item : null;
     }
     
     private void clearRecentMatches() {
@@ -446,6 +511,178 @@ public class Highlighter {
         }
     }
     
+    /**
+     * The result of a successful {@link #match(HighlightItem.Type, String, int, int, String, Addressbook, User, User, MsgTags, boolean) match}.
+     * Immutable, so it can be created on one thread and used on another.
+     */
+    public static class Result {
+        
+        /**
+         * The item that caused the match, which determines color, whether to
+         * notify and so on.
+         */
+        public final HighlightItem item;
+        
+        /**
+         * All items that contributed to the text matches (only more than one
+         * if all text matches should be included).
+         */
+        public final List<HighlightItem> items;
+        
+        /**
+         * The text matches, may be null.
+         */
+        public final List<Match> textMatches;
+        
+        private Result(HighlightItem item, List<HighlightItem> items, List<Match> textMatches) {
+            this.item = item;
+            this.items = items != null
+                    ? Collections.unmodifiableList(items)
+                    : Collections.singletonList(item);
+            this.textMatches = textMatches != null
+                    ? Collections.unmodifiableList(textMatches)
+                    : null;
+        }
+        
+        public Color getColor() {
+            return item.getColor();
+        }
+        
+        public Color getBackgroundColor() {
+            return item.getBackgroundColor();
+        }
+        
+        public boolean noNotification() {
+            return item.noNotification();
+        }
+        
+        public boolean noSound() {
+            return item.noSound();
+        }
+        
+        public String getReplacement() {
+            return item.getReplacement();
+        }
+        
+        /**
+         * Get the item if it has a foreground and/or background color.
+         * 
+         * @return The item, or null if it has no color
+         */
+        public HighlightItem getColorSource() {
+            if (item.getColor() != null || item.getBackgroundColor() != null) {
+                return item;
+            }
+            return null;
+        }
+        
+    }
+    
+    /**
+     * The items with the Prefilter created for them, so they can be replaced
+     * together.
+     */
+    private static class CompiledItems {
+        
+        private final List<HighlightItem> items;
+        private final Prefilter prefilter;
+        private final boolean hasOverrideIgnored;
+        
+        CompiledItems(List<HighlightItem> items) {
+            this.items = items;
+            this.prefilter = new Prefilter(items);
+            boolean overrideIgnored = false;
+            for (HighlightItem item : items) {
+                if (item.overrideIgnored()) {
+                    overrideIgnored = true;
+                    break;
+                }
+            }
+            this.hasOverrideIgnored = overrideIgnored;
+        }
+        
+    }
+    
+    /**
+     * Checks which items can't match a message because it doesn't contain the
+     * text required by the item or isn't from the required user. The text of
+     * all items is searched for in a single pass over the message, so the
+     * regular (more expensive) matching only has to be done for the remaining
+     * items.
+     * 
+     * <p>
+     * This only checks requirements that are necessary for an item to match,
+     * so any item that isn't excluded still has to be checked normally.
+     * </p>
+     */
+    private static class Prefilter {
+        
+        private final BitSet requiresText = new BitSet();
+        private final BitSet requiresUsername = new BitSet();
+        private final AhoCorasick<Integer> caseInsensitive = new AhoCorasick<>(true);
+        private final AhoCorasick<Integer> caseSensitive = new AhoCorasick<>(false);
+        private final Map<String, BitSet> byUsername = new HashMap<>();
+        
+        Prefilter(List<HighlightItem> items) {
+            for (int i = 0; i < items.size(); i++) {
+                HighlightItem item = items.get(i);
+                String text = item.requiredText;
+                boolean cs = item.requiredTextCaseSensitive;
+                if (text == null) {
+                    text = item.additionalRequiredText;
+                    cs = item.additionalRequiredTextCaseSensitive;
+                }
+                if (!StringUtil.isNullOrEmpty(text)) {
+                    requiresText.set(i);
+                    if (cs) {
+                        caseSensitive.add(text, i);
+                    }
+                    else {
+                        caseInsensitive.add(text, i);
+                    }
+                }
+                if (item.requiredUsername != null) {
+                    requiresUsername.set(i);
+                    BitSet set = byUsername.get(item.requiredUsername);
+                    if (set == null) {
+                        set = new BitSet();
+                        byUsername.put(item.requiredUsername, set);
+                    }
+                    set.set(i);
+                }
+            }
+            caseInsensitive.build();
+            caseSensitive.build();
+        }
+        
+        /**
+         * Get the indices of the items that can't match the given message.
+         * 
+         * @param user The user of the message, may be null
+         * @param text The text of the message
+         * @return The BitSet with the index of each excluded item set
+         */
+        public BitSet getExcluded(User user, String text) {
+            BitSet excluded = (BitSet) requiresText.clone();
+            if (!excluded.isEmpty()) {
+                caseInsensitive.find(text, i -> excluded.clear(i));
+                caseSensitive.find(text, i -> excluded.clear(i));
+            }
+            if (!requiresUsername.isEmpty()) {
+                BitSet userExcluded = (BitSet) requiresUsername.clone();
+                if (user != null) {
+                    BitSet allowed = byUsername.get(user.getName());
+                    if (allowed != null) {
+                        userExcluded.andNot(allowed);
+                    }
+                }
+                excluded.or(userExcluded);
+            }
+            return excluded;
+        }
+        
+    }
+    
     /**
      * A single Highlight item that parses the item string and prepares it for
      * matching. It provides methods to check if an error occured parsing, as
@@ -641,6 +878,25 @@ public class Highlighter {
         // Debugging
         //--------------------------
         private String textWithoutPrefix = "";
+        
+        //--------------------------
+        // Prefilter
+        //--------------------------
+        /**
+         * Text that the main pattern requires to be contained in the message.
+         */
+        private String requiredText;
+        private boolean requiredTextCaseSensitive;
+        /**
+         * Text that an additional pattern requires to be contained in the
+         * message.
+         */
+        private String additionalRequiredText;
+        private boolean additionalRequiredTextCaseSensitive;
+        /**
+         * Username (lowercase) required by the "user:" prefix.
+         */
+        private String requiredUsername;
         private boolean invalidRegexLog;
         private String mainPrefix;
         private String error;
@@ -801,7 +1057,11 @@ public class Highlighter {
                     });
                 }
                 else if (item.startsWith("user:")) {
-                    Pattern p = compilePattern(Pattern.quote(parsePrefix(item, "user:").toLowerCase(Locale.ENGLISH)));
+                    String username = parsePrefix(item, "user:").toLowerCase(Locale.ENGLISH);
+                    Pattern p = compilePattern(Pattern.quote(username));
+                    if (requiredUsername == null) {
+                        requiredUsername = username;
+                    }
                     addUserItem("Username", p, user -> {
                         return p.matcher(user.getName()).matches();
                     });
@@ -1301,6 +1561,8 @@ public class Highlighter {
                 else {
                     textWithoutPrefix = item;
                     pattern = compilePattern("(?iu)" + Pattern.quote(item));
+                    requiredText = getLiteralPrefixText("text:", item);
+                    requiredTextCaseSensitive = false;
                 }
             }
         }
@@ -1634,6 +1896,8 @@ public class Highlighter {
                     textWithoutPrefix = withoutPrefix;
                     mainPrefix = prefix;
                     this.pattern = compilePattern(completePattern);
+                    requiredText = getLiteralPrefixText(prefix, withoutPrefix);
+                    requiredTextCaseSensitive = isCaseSensitiveLiteralPrefix(prefix);
                     matchMessageText = prefix.startsWith("msg");
                     return true;
                 }
@@ -1660,6 +1924,10 @@ public class Highlighter {
                 }
                 String completePattern = patternPrefixes.get(prefix).apply(value);
                 Pattern compiled = compilePattern(completePattern);
+                if (isPositiveMatch && additionalRequiredText == null) {
+                    additionalRequiredText = getLiteralPrefixText(prefix, value);
+                    additionalRequiredTextCaseSensitive = isCaseSensitiveLiteralPrefix(prefix);
+                }
                 if (isPositiveMatch) {
                     matchItems.add(new Item("Additional regex (" + prefix.substring(0, prefix.length() - 1) + ")", compiled, true) {
 
@@ -1690,6 +1958,52 @@ public class Highlighter {
             return false;
         }
         
+        /**
+         * Text matching prefixes that match the text literally (although
+         * possibly case-insensitive or with additional requirements like word
+         * boundaries), so the text has to be contained in the message for the
+         * pattern to match. The value is whether it's case-sensitive.
+         */
+        private static final Map<String, Boolean> literalPrefixes = new HashMap<>();
+        
+        static {
+            for (String prefix : new String[]{"text:", "w:", "start:", "startw:"}) {
+                literalPrefixes.put(prefix, false);
+                literalPrefixes.put("msg"+prefix, false);
+            }
+            for (String prefix : new String[]{"cs:", "wcs:"}) {
+                literalPrefixes.put(prefix, true);
+                literalPrefixes.put("msg"+prefix, true);
+            }
+        }
+        
+        /**
+         * Get the text that has to be contained in a message for the pattern
+         * of the given prefix to match.
+         * 
+         * @param prefix The text matching prefix
+         * @param value The value of the prefix
+         * @return The text, or null if the prefix is not matching literally
+         */
+        private static String getLiteralPrefixText(String prefix, String value) {
+            if (!literalPrefixes.containsKey(prefix)) {
+                return null;
+            }
+            if (!literalPrefixes.get(prefix)) {
+                // Case-insensitive matching in AhoCorasick doesn't fold these
+                for (int i = 0; i < value.length(); i++) {
+                    if (Character.isSurrogate(value.charAt(i))) {
+                        return null;
+                    }
+                }
+            }
+            return value;
+        }
+        
+        private static boolean isCaseSensitiveLiteralPrefix(String prefix) {
+            return literalPrefixes.getOrDefault(prefix, false);
+        }
+        
         /**
          * Adds a prefix and associated pattern builder to the static map.
          * 
@@ -74,9 +74,11 @@ import chatty.gui.components.settings.NotificationSettings;
 import chatty.gui.components.settings.SettingsDialog;
 import chatty.gui.components.textpane.AutoModMessage;
 import chatty.gui.components.textpane.InfoMessage;
+import chatty.gui.components.textpane.ChannelTextPane;
 import chatty.gui.components.textpane.ModLogInfo;
 import chatty.gui.components.textpane.SubscriberMessage;
 import chatty.gui.components.textpane.UserNotice;
+import chatty.gui.components.textpane.MessagePreparer;
 import chatty.gui.components.userinfo.UserInfoManager;
 import chatty.gui.components.userinfo.UserNotes;
 import chatty.gui.emoji.EmojiUtil;
@@ -101,6 +103,7 @@ import chatty.util.hotkeys.HotkeyManager;
 import chatty.util.irc.MsgTags;
 import chatty.util.settings.FileManager;
 import chatty.util.settings.Setting;
+import chatty.util.settings.SettingKey;
 import chatty.util.settings.SettingChangeListener;
 import chatty.util.settings.Settings;
 import chatty.util.settings.SettingsListener;
@@ -187,6 +190,8 @@ public class MainGui extends JFrame implements Runnable {
     private final Highlighter filter = new Highlighter("filter");
     public final RepeatMsgHelper repeatMsg;
     private final MsgColorManager msgColorManager;
+    private final MessageSettings msgSettings;
+    private final OrderedExecutor messageClassifier = new OrderedExecutor("MessageClassifier", 2);
     private StyleManager styleManager;
     private TrayIconManager trayIcon;
     private final StateUpdater state = new StateUpdater();
@@ -207,6 +212,7 @@ public class MainGui extends JFrame implements Runnable {
     public MainGui(TwitchClient client) {
         this.client = client;
         msgColorManager = new MsgColorManager(client.settings);
+        msgSettings = new MessageSettings(client.settings);
         localEmotes = new LocalEmotesSetting(client.settings, this);
         repeatMsg = new RepeatMsgHelper(client.settings);
         SwingUtilities.invokeLater(this);
@@ -257,7 +263,7 @@ public class MainGui extends JFrame implements Runnable {
         GuiUtil.installEscapeCloseOperation(connectionDialog);
         tokenDialog = new TokenDialog(this);
         tokenGetDialog = new TokenGetDialog(this);
-        userInfoDialog = new UserInfoManager(this, client.settings, contextMenuListener, client.api);
+        userInfoDialog = new UserInfoManager(this, client.settings, contextMenuListener, client.api, client.chatLog);
         aboutDialog = new About();
         setHelpWindowIcons();
         favoritesDialog = new FavoritesDialog(this, client.channelFavorites, contextMenuListener);
@@ -3792,271 +3798,410 @@ public class MainGui extends JFrame implements Runnable {
 
     public void printMessage(User user, String text2, boolean action, MsgTags tags0, final String timestamp) {
         client.resolveSourceData(user, tags0, tags1 -> {
-
-
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                /**
-                 * Replace the ZWF replacement (which consists of two chars)
-                 * with the ZFW before anything that relies on character
-                 * position (like Highlights or Emote parsing) is performed.
-                 * Twitch emote indices work with codepoint counts, so it's
-                 * fine.
-                 */
-                boolean decodeZWF = client.settings.getLong("emojiZWJ") > 0;
-                String text = decodeZWF ? EmojiUtil.decodeZWJ(text2) : text2;
-                
-                MsgTags tags = tags1;
-                Channel chan;
-                String channel = user.getChannel();
-                boolean whisper = false;
-                int bitsAmount = tags.getBits();
-                User localUser = client.getLocalUser(channel);
-                
-                // Disable Cheer emotes altogether if disabled in the settings
-                int bitsForEmotes = bitsAmount;
-                if (client.settings.getString("cheersType").equals("none")) {
-                    bitsForEmotes = 0;
-                }
-                
-                /**
-                 * Check if special channel and change target according to
-                 * settings
-                 */
-                if (channel.equals(WhisperManager.WHISPER_CHANNEL)) {
-                    int whisperSetting = (int)client.settings.getLong("whisperDisplayMode");
-                    if (whisperSetting == WhisperManager.DISPLAY_ONE_WINDOW) {
-                        chan = channels.getChannel(client.roomManager.getRoom(channel));
-                    } else if (whisperSetting == WhisperManager.DISPLAY_PER_USER) {
-                        if (!userIgnored(user, true)) {
-                            chan = channels.getChannel(client.roomManager.getRoom("$"+user.getName()));
-                        } else {
-                            chan = channels.getActiveChannel();
-                        }
-                    } else {
-                        chan = channels.getActiveChannel();
-                    }
-                    whisper = true;
-                } else {
-                    chan = channels.getChannel(user.getRoom());
-                }
-                // If channel was changed from the given one, change accordingly
-                channel = chan.getChannel();
-                
-                // Adds a tag if repeated msg is detected according to settings
-                tags = repeatMsg.check(user, localUser, text, tags);
-                if (Chatty.DEBUG && !tags.hasValue("id")) {
-                    /**
-                     * Could be weird to add for non-testing since the message
-                     * can't actually be deleted or whatever.
-                     */
-                    tags = MsgTags.addTag(tags, "id", String.valueOf(User.MSG_ID++));
-                }
-                
-                boolean isOwnMessage = isOwnUsername(user.getName()) || (whisper && action);
-                boolean ignoredUser = (userIgnored(user, whisper) && !isOwnMessage);
-                // May be necessary to check even if ignoredUser, to get ignore matchings later on
-                boolean ignored = checkMsg(ignoreList, "ignore", text, -2, -2, user, localUser, tags, isOwnMessage, false) || ignoredUser;
-                if (!HistoryUtil.checkAllowMatch(tags, "Ignore", ignoreList.getLastMatchItem(), client.settings)) {
+            /**
+             * Checking ignore/highlight/filter and everything else that
+             * doesn't depend on the GUI is done in the background, ordered
+             * per channel, so only printing is left to the EDT.
+             */
+            messageClassifier.execute(user.getChannel(), () -> {
+                ClassifiedMessage m = classifyMessage(user, text2, action, tags1, timestamp);
+                // Other events of the channel use invokeInChannelOrder()
+                SwingUtilities.invokeLater(() -> {
+                    printClassifiedMessage(m);
+                });
+            });
+        });
+    }
+    
+    /**
+     * Run the action on the EDT, but only after the chat messages of the
+     * channel that were received before have been classified and printed,
+     * so that e.g. a ban or deleted message can find the messages it applies
+     * to (and the User history stays in order).
+     * 
+     * @param channel The channel
+     * @param action The action to run on the EDT
+     */
+    private void invokeInChannelOrder(String channel, Runnable action) {
+        messageClassifier.executeAfter(channel, SwingUtilities::invokeLater, action);
+    }
+    
+    /**
+     * The result of the part of processing a chat message that can be done
+     * outside the EDT.
+     */
+    private static class ClassifiedMessage {
+        
+        private final User user;
+        private final String text;
+        private final boolean action;
+        private final String timestamp;
+        private final MsgTags tags;
+        private final User localUser;
+        private final boolean whisper;
+        private final boolean isOwnMessage;
+        private final int bitsAmount;
+        private final int bitsForEmotes;
+        private final TagEmotes tagEmotes;
+        
+        private boolean ignored;
+        private boolean ignoredUser;
+        private Highlighter.Result ignoreMatch;
+        private Highlighter.Result highlightMatch;
+        
+        /**
+         * Whether the message has already been logged to the channel log (if
+         * enabled), otherwise it's logged when the channel is known.
+         */
+        private boolean logged;
+        
+        /**
+         * The message to add to routing targets when ignored (only if ignored
+         * through an ignore item).
+         */
+        private UserMessage ignoredMessage;
+        
+        /**
+         * The message to print (if the settings allow it for ignored
+         * messages).
+         */
+        private UserMessage message;
+        private final RoutingTargets routingTargets = new RoutingTargets();
+        
+        private ClassifiedMessage(User user, String text, boolean action,
+                String timestamp, MsgTags tags, User localUser, boolean whisper,
+                boolean isOwnMessage, int bitsAmount, int bitsForEmotes,
+                TagEmotes tagEmotes) {
+            this.user = user;
+            this.text = text;
+            this.action = action;
+            this.timestamp = timestamp;
+            this.tags = tags;
+            this.localUser = localUser;
+            this.whisper = whisper;
+            this.isOwnMessage = isOwnMessage;
+            this.bitsAmount = bitsAmount;
+            this.bitsForEmotes = bitsForEmotes;
+            this.tagEmotes = tagEmotes;
+        }
+        
+        private boolean highlighted() {
+            return highlightMatch != null;
+        }
+        
+    }
+    
+    /**
+     * Check ignore, highlight and filter and create the message to print. This
+     * is not run in the EDT, so it may only access thread-safe state. Messages
+     * of the same channel must be classified in order, since matching may
+     * depend on earlier messages (e.g. repeated messages or "Highlight
+     * follow-up"), which is why the User is also updated here.
+     */
+    private ClassifiedMessage classifyMessage(User user, String text2, boolean action, MsgTags tags, String timestamp) {
+        /**
+         * Replace the ZWF replacement (which consists of two chars) with the
+         * ZFW before anything that relies on character position (like
+         * Highlights or Emote parsing) is performed. Twitch emote indices work
+         * with codepoint counts, so it's fine.
+         */
+        boolean decodeZWF = msgSettings.emojiZWJ.get() > 0;
+        String text = decodeZWF ? EmojiUtil.decodeZWJ(text2) : text2;
+        
+        String channel = user.getChannel();
+        boolean whisper = channel.equals(WhisperManager.WHISPER_CHANNEL);
+        int bitsAmount = tags.getBits();
+        User localUser = client.getLocalUser(channel);
+        
+        // Disable Cheer emotes altogether if disabled in the settings
+        int bitsForEmotes = bitsAmount;
+        if (msgSettings.cheersType.get().equals("none")) {
+            bitsForEmotes = 0;
+        }
+        
+        TagEmotes tagEmotes = Emoticons.parseEmotesTag(tags.getRawEmotes());
+        
+        // Already start analyzing the text while still classifying
+        MessagePreparer.Prepared prepared = MessagePreparer.prepare(text, user,
+                tagEmotes != null, bitsForEmotes > 0, emoticons.getCurrentSnapshot());
+        
+        // Adds a tag if repeated msg is detected according to settings
+        tags = repeatMsg.check(user, localUser, text, tags);
+        if (Chatty.DEBUG && !tags.hasValue("id")) {
+            /**
+             * Could be weird to add for non-testing since the message
+             * can't actually be deleted or whatever.
+             */
+            tags = MsgTags.addTag(tags, "id", String.valueOf(User.MSG_ID++));
+        }
+        
+        boolean isOwnMessage = isOwnUsername(user.getName()) || (whisper && action);
+        boolean ignoredUser = (userIgnored(user, whisper) && !isOwnMessage);
+        // May be necessary to check even if ignoredUser, to get ignore matchings later on
+        Highlighter.Result ignoreMatch = matchMsg(ignoreList, "ignore", text, -2, -2, user, localUser, tags, isOwnMessage, false);
+        boolean ignored = ignoreMatch != null || ignoredUser;
+        if (!HistoryUtil.checkAllowMatch(tags, "Ignore", ignoreMatch != null ? ignoreMatch.item : null, client.settings)) {
+            ignored = false;
+            ignoredUser = false;
+        }
+        
+        Highlighter.Result highlightMatch = null;
+        if ((msgSettings.highlightIgnored.get()
+                || msgSettings.highlightOverrideIgnored.get()
+                || highlighter.hasOverrideIgnored()
+                || !ignored)
+                && !msgSettings.noHighlightUsers.contains(user.getName())) {
+            boolean rejectIgnoredWithoutPrefix = msgSettings.highlightOverrideIgnored.get()
+                                      || msgSettings.highlightIgnored.get()
+                                      ? false : ignored;
+            highlightMatch = matchMsg(highlighter, "highlight", text, -2, -2, user, localUser, tags, isOwnMessage, rejectIgnoredWithoutPrefix);
+            if (highlightMatch != null
+                    && !HistoryUtil.checkAllowMatch(tags, "Highlight", highlightMatch.item, client.settings)) {
+                highlightMatch = null;
+            }
+            if (highlightMatch != null) {
+                if (msgSettings.highlightOverrideIgnored.get()
+                        || highlightMatch.item.overrideIgnored()) {
                     ignored = false;
-                    ignoredUser = false;
                 }
-                
-                boolean highlighted = false;
-                List<Match> highlightMatches = null;
-                if ((client.settings.getBoolean("highlightIgnored")
-                        || client.settings.getBoolean("highlightOverrideIgnored")
-                        || highlighter.hasOverrideIgnored()
-                        || !ignored)
-                        && !client.settings.listContains("noHighlightUsers", user.getName())) {
-                    boolean rejectIgnoredWithoutPrefix = client.settings.getBoolean("highlightOverrideIgnored")
-                                              || client.settings.getBoolean("highlightIgnored")
-                                              ? false : ignored;
-                    highlighted = checkMsg(highlighter, "highlight", text, -2, -2, user, localUser, tags, isOwnMessage, rejectIgnoredWithoutPrefix);
-                    if (!HistoryUtil.checkAllowMatch(tags, "Highlight", highlighter.getLastMatchItem(), client.settings)) {
-                        highlighted = false;
-                    }
-                    if (highlighted) {
-                        if (client.settings.getBoolean("highlightOverrideIgnored")
-                                || highlighter.getLastMatchItem().overrideIgnored()) {
-                            ignored = false;
-                        }
-                        tags = MsgTags.addTag(tags, MsgTags.IS_HIGHLIGHTED, "true");
-                    }
-                }
-                
-                boolean allowLog = !tags.isHistoricMsg();
-                if ((!ignored || client.settings.getBoolean("logIgnored"))
-                        && allowLog) {
-                    client.chatLog.bits(chan.getFilename(), user, bitsAmount);
-                    client.chatLog.message(chan.getFilename(), user, text, action, null);
+                tags = MsgTags.addTag(tags, MsgTags.IS_HIGHLIGHTED, "true");
+            }
+        }
+        boolean highlighted = highlightMatch != null;
+        
+        ClassifiedMessage m = new ClassifiedMessage(user, text, action,
+                timestamp, tags, localUser, whisper, isOwnMessage, bitsAmount,
+                bitsForEmotes, tagEmotes);
+        m.ignored = ignored;
+        m.ignoredUser = ignoredUser;
+        m.ignoreMatch = ignoreMatch;
+        m.highlightMatch = highlightMatch;
+        
+        // Whispers may be output in the active channel, so log that later
+        boolean allowLog = !tags.isHistoricMsg();
+        if ((!ignored || msgSettings.logIgnored.get())
+                && allowLog && !whisper) {
+            client.chatLog.bits(user.getRoom().getFilename(), user, bitsAmount);
+            client.chatLog.message(user.getRoom().getFilename(), user, text, action, null);
+            m.logged = true;
+        }
+        
+        if (ignored && !ignoredUser) {
+            // Text matches might not be valid if ignore was through
+            // ignored users list
+            m.routingTargets.add(ignoreMatch.item);
+            UserMessage message = new UserMessage(user, text, tagEmotes, null, bitsForEmotes, ignoreMatch.textMatches, null, null, tags);
+            message.whisper = whisper;
+            message.ignoreSource = ignoreMatch.items;
+            m.ignoredMessage = message;
+        }
+        
+        long ignoreMode = msgSettings.ignoreMode.get();
+        if (!ignored || ignoreMode > IgnoredMessages.MODE_COUNT) {
+            Highlighter.Result filterMatch = matchMsg(filter, "filter", text, -2, -2, user, localUser, tags, isOwnMessage, false);
+            
+            // Print message, but determine how exactly
+            UserMessage message = new UserMessage(user, text, tagEmotes, tags.getId(), bitsForEmotes,
+                    highlighted ? highlightMatch.textMatches : null,
+                    filterMatch != null ? filterMatch.textMatches : null,
+                    filterMatch != null ? filterMatch.getReplacement() : null,
+                    tags);
+            message.localUser = localUser;
+            message.prepared = prepared;
+            
+            // Message comes from a history service
+            if (tags.isHistoricMsg()) {
+                message.historicTimeStamp = tags.getHistoricTimeStamp();
+            }
+            
+            // Custom color
+            boolean hlByPoints = tags.isHighlightedMessage() && msgSettings.highlightByPoints.get();
+            if (highlighted) {
+                message.color = highlightMatch.getColor();
+                message.backgroundColor = highlightMatch.getBackgroundColor();
+                message.colorSource = highlightMatch.getColorSource();
+                message.highlightSource = highlightMatch.items;
+                m.routingTargets.add(highlightMatch.item);
+            }
+            if (!(highlighted || hlByPoints) || msgSettings.msgColorsPrefer.get()) {
+                MsgColorItem colorItem = msgColorManager.getMsgColor(user, localUser, text, -2, -2, tags);
+                if (!HistoryUtil.checkAllowMatch(tags, "msgColors", colorItem.getMatcher(), client.settings)) {
+                    colorItem = MsgColorManager.EMPTY;
                 }
-                
-                TagEmotes tagEmotes = Emoticons.parseEmotesTag(tags.getRawEmotes());
-                
-                // Do stuff if highlighted, without printing message
-                if (highlighted) {
-                    highlightMatches = highlighter.getLastTextMatches();
-                    // Only update channel state for live messages, not historic ones
-                    if (!tags.isHistoricMsg()) {
-                        if (!highlighter.getLastMatchNoNotification()) {
-                            channels.setChannelHighlighted(chan);
-                        } else {
-                            channels.setChannelNewMessage(chan);
-                        }
-                        // Only trigger notifications for live messages, not historic ones
-                        notificationManager.highlight(user, localUser, text, tags,
-                                highlighter.getLastMatchNoNotification(),
-                                highlighter.getLastMatchNoSound(),
-                                isOwnMessage, whisper, bitsAmount > 0);
-                    }
-                } else if (!ignored) {
-                    // Only trigger notifications and channel state updates for live messages, not historic ones
-                    if (!tags.isHistoricMsg()) {
-                        if (whisper) {
-                            notificationManager.whisper(user, localUser, text, isOwnMessage);
-                        } else {
-                            notificationManager.message(user, localUser, text, tags, isOwnMessage,
-                                    bitsAmount > 0);
-                        }
-                        if (!isOwnMessage) {
-                            channels.setChannelNewMessage(chan);
-                        }
-                    }
+                if (!colorItem.isEmpty()) {
+                    message.color = colorItem.getForegroundIfEnabled();
+                    message.backgroundColor = colorItem.getBackgroundIfEnabled();
+                    message.colorSource = colorItem;
+                    m.routingTargets.add(colorItem.getMatcher());
                 }
-                
-                RoutingTargets routingTargets = new RoutingTargets();
-                
-                // Do stuff if ignored, without printing message
-                if (ignored) {
-                    List<Match> ignoreMatches = null;
-                    Object ignoreSource = null;
-                    if (!ignoredUser) {
-                        // Text matches might not be valid if ignore was through
-                        // ignored users list
-                        ignoreMatches = ignoreList.getLastTextMatches();
-                        ignoreSource = ignoreList.getLastMatchItems();
-                        routingTargets.add(ignoreList.getLastMatchItem());
-                        UserMessage message = new UserMessage(user, text, tagEmotes, null, bitsForEmotes, ignoreMatches, null, null, tags);
-                        message.whisper = whisper;
-                        message.ignoreSource = ignoreSource;
-                        routingManager.addUserMessage(routingTargets, message, localUser);
-                    }
-                    // No match item is set when ignored by "Ignored Users" list
-                    if (ignoredUser || !ignoreList.getLastMatchItem().hide()) {
-                        ignoredMessages.addMessage(channel, user, text, action,
-                                tagEmotes, bitsForEmotes, whisper, ignoreMatches,
-                                ignoreSource, tags);
-                        ignoredMessagesHelper.ignoredMessage(channel);
-                    }
-                    if ((ignoredUser || !ignoreList.getLastMatchItem().noLog())
-                            && allowLog) {
-                        client.chatLog.message("ignored", user, text, action, channel);
-                    }
+            }
+            
+            message.whisper = whisper;
+            message.action = action;
+            if (highlighted || hlByPoints) {
+                // Only set message.highlighted instead of highlighted
+                // if hlByPoints, since that would affect other stuff as
+                // well
+                message.highlighted = true;
+            } else if (ignored && ignoreMode == IgnoredMessages.MODE_COMPACT) {
+                message.ignored_compact = true;
+            }
+            m.message = message;
+        }
+        
+        // Update User
+        String hypeChatAmount = tags.getHypeChatAmountText();
+        if (hypeChatAmount != null) {
+            user.addSub(processMessage(text), tags.getHypeChatInfo(), tags.getId(), tags.getSourceId(), tags.getSourceChannel());
+        }
+        else {
+            // Stuff independent of highlight/ignore
+            if (timestamp == null) {
+                user.addMessage(processMessage(text), action, tags.getId(), tags.getSourceId(), tags.getSourceChannel(), tags.getHistoricTimeStamp());
+            } else {
+                user.addMessage(processMessage(text), action, tags.getId(), timestamp);
+            }
+        }
+        if (highlighted) {
+            user.setHighlighted();
+        }
+        return m;
+    }
+    
+    /**
+     * Output a message classified by
+     * {@link #classifyMessage(User, String, boolean, MsgTags, String)}. Must
+     * be run in the EDT.
+     * 
+     * @param m 
+     */
+    private void printClassifiedMessage(ClassifiedMessage m) {
+        User user = m.user;
+        String text = m.text;
+        boolean action = m.action;
+        MsgTags tags = m.tags;
+        User localUser = m.localUser;
+        boolean whisper = m.whisper;
+        boolean isOwnMessage = m.isOwnMessage;
+        boolean ignored = m.ignored;
+        boolean ignoredUser = m.ignoredUser;
+        boolean highlighted = m.highlighted();
+        Channel chan;
+        String channel = user.getChannel();
+        
+        /**
+         * Check if special channel and change target according to
+         * settings
+         */
+        if (whisper) {
+            int whisperSetting = msgSettings.whisperDisplayMode.getInt();
+            if (whisperSetting == WhisperManager.DISPLAY_ONE_WINDOW) {
+                chan = channels.getChannel(client.roomManager.getRoom(channel));
+            } else if (whisperSetting == WhisperManager.DISPLAY_PER_USER) {
+                if (!userIgnored(user, true)) {
+                    chan = channels.getChannel(client.roomManager.getRoom("$"+user.getName()));
+                } else {
+                    chan = channels.getActiveChannel();
                 }
-                long ignoreMode = client.settings.getLong("ignoreMode");
-                
-                // Print or don't print depending on ignore
-                if (ignored && (ignoreMode <= IgnoredMessages.MODE_COUNT || 
-                        !showIgnoredInfo())) {
-                    // Don't print message
-                    if (isOwnMessage && channels.isChannel(channel)) {
-                        // Don't log to file
-                        printInfo(chan, InfoMessage.createInfo("Own message ignored."));
-                    }
+            } else {
+                chan = channels.getActiveChannel();
+            }
+        } else {
+            chan = channels.getChannel(user.getRoom());
+        }
+        // If channel was changed from the given one, change accordingly
+        channel = chan.getChannel();
+        
+        boolean allowLog = !tags.isHistoricMsg();
+        if ((!ignored || msgSettings.logIgnored.get())
+                && allowLog && !m.logged) {
+            client.chatLog.bits(chan.getFilename(), user, m.bitsAmount);
+            client.chatLog.message(chan.getFilename(), user, text, action, null);
+        }
+        
+        // Do stuff if highlighted, without printing message
+        if (highlighted) {
+            // Only update channel state for live messages, not historic ones
+            if (!tags.isHistoricMsg()) {
+                if (!m.highlightMatch.noNotification()) {
+                    channels.setChannelHighlighted(chan);
                 } else {
-                    boolean hasReplacements = checkMsg(filter, "filter", text, -2, -2, user, localUser, tags, isOwnMessage, false);
-
-                    // Print message, but determine how exactly
-                    UserMessage message = new UserMessage(user, text, tagEmotes, tags.getId(), bitsForEmotes,
-                            highlightMatches,
-                            hasReplacements ? filter.getLastTextMatches() : null,
-                            hasReplacements ? filter.getLastReplacement() : null,
-                            tags);
-                    message.localUser = localUser;
-
-                    // Message comes from a history service
-                    if (tags.isHistoricMsg()) {
-                        message.historicTimeStamp = tags.getHistoricTimeStamp();
-                    }
-
-                    // Custom color
-                    boolean hlByPoints = tags.isHighlightedMessage() && client.settings.getBoolean("highlightByPoints");
-                    if (highlighted) {
-                        message.color = highlighter.getLastMatchColor();
-                        message.backgroundColor = highlighter.getLastMatchBackgroundColor();
-                        message.colorSource = highlighter.getColorSource();
-                        message.highlightSource = highlighter.getLastMatchItems();
-                        routingTargets.add(highlighter.getLastMatchItem());
-                    }
-                    if (!(highlighted || hlByPoints) || client.settings.getBoolean("msgColorsPrefer")) {
-                        MsgColorItem colorItem = msgColorManager.getMsgColor(user, localUser, text, -2, -2, tags);
-                        if (!HistoryUtil.checkAllowMatch(tags, "msgColors", colorItem.getMatcher(), client.settings)) {
-                            colorItem = MsgColorManager.EMPTY;
-                        }
-                        if (!colorItem.isEmpty()) {
-                            message.color = colorItem.getForegroundIfEnabled();
-                            message.backgroundColor = colorItem.getBackgroundIfEnabled();
-                            message.colorSource = colorItem;
-                            routingTargets.add(colorItem.getMatcher());
-                        }
-                    }
-                    
-                    message.whisper = whisper;
-                    message.action = action;
-                    if (highlighted || hlByPoints) {
-                        // Only set message.highlighted instead of highlighted
-                        // if hlByPoints, since that would affect other stuff as
-                        // well
-                        message.highlighted = true;
-                    } else if (ignored && ignoreMode == IgnoredMessages.MODE_COMPACT) {
-                        message.ignored_compact = true;
-                    }
-                    chan.printMessage(message, timestamp);
-                    if (highlighted) {
-                        if (!highlighter.getLastMatchItem().hide()) {
-                            highlightedMessages.addMessage(channel, message);
-                        }
-                        if (!highlighter.getLastMatchItem().noLog()
-                                && allowLog) {
-                            client.chatLog.message("highlighted", user, text, action, channel);
-                        }
-                    }
-                    if (client.settings.listContains("streamChatChannels", channel)) {
-                        streamChat.printMessage(message);
-                    }
-                    
-                    // With ignore mode compact (output name only) don't add
-                    if (!ignored) {
-                        routingManager.addUserMessage(routingTargets, message, localUser);
-                    }
+                    channels.setChannelNewMessage(chan);
+                }
+                // Only trigger notifications for live messages, not historic ones
+                notificationManager.highlight(user, localUser, text, tags,
+                        m.highlightMatch.noNotification(),
+                        m.highlightMatch.noSound(),
+                        isOwnMessage, whisper, m.bitsAmount > 0);
+            }
+        } else if (!ignored) {
+            // Only trigger notifications and channel state updates for live messages, not historic ones
+            if (!tags.isHistoricMsg()) {
+                if (whisper) {
+                    notificationManager.whisper(user, localUser, text, isOwnMessage);
+                } else {
+                    notificationManager.message(user, localUser, text, tags, isOwnMessage,
+                            m.bitsAmount > 0);
                 }
-                
-                CopyMessages.copyMessage(client.settings, user, text, highlighted);
-                
-                // Update User
-                String hypeChatAmount = tags.getHypeChatAmountText();
-                if (hypeChatAmount != null) {
-                    user.addSub(processMessage(text), tags.getHypeChatInfo(), tags.getId(), tags.getSourceId(), tags.getSourceChannel());
+                if (!isOwnMessage) {
+                    channels.setChannelNewMessage(chan);
                 }
-                else {
-                    // Stuff independent of highlight/ignore
-                    if (timestamp == null) {
-                        user.addMessage(processMessage(text), action, tags.getId(), tags.getSourceId(), tags.getSourceChannel(), tags.getHistoricTimeStamp());
-                    } else {
-                        user.addMessage(processMessage(text), action, tags.getId(), timestamp);
-                    }
+            }
+        }
+        
+        // Do stuff if ignored, without printing message
+        if (ignored) {
+            List<Match> ignoreMatches = null;
+            Object ignoreSource = null;
+            if (m.ignoredMessage != null) {
+                ignoreMatches = m.ignoreMatch.textMatches;
+                ignoreSource = m.ignoreMatch.items;
+                routingManager.addUserMessage(m.routingTargets, m.ignoredMessage, localUser);
+            }
+            // No match item is set when ignored by "Ignored Users" list
+            if (ignoredUser || !m.ignoreMatch.item.hide()) {
+                ignoredMessages.addMessage(channel, user, text, action,
+                        m.tagEmotes, m.bitsForEmotes, whisper, ignoreMatches,
+                        ignoreSource, tags);
+                ignoredMessagesHelper.ignoredMessage(channel);
+            }
+            if ((ignoredUser || !m.ignoreMatch.item.noLog())
+                    && allowLog) {
+                client.chatLog.message("ignored", user, text, action, channel);
+            }
+        }
+        
+        // Print or don't print depending on ignore
+        if (m.message == null || (ignored && !showIgnoredInfo())) {
+            // Don't print message
+            if (isOwnMessage && channels.isChannel(channel)) {
+                // Don't log to file
+                printInfo(chan, InfoMessage.createInfo("Own message ignored."));
+            }
+        } else {
+            UserMessage message = m.message;
+            chan.printMessage(message, m.timestamp);
+            if (highlighted) {
+                if (!m.highlightMatch.item.hide()) {
+                    highlightedMessages.addMessage(channel, message);
                 }
-                if (highlighted) {
-                    user.setHighlighted();
+                if (!m.highlightMatch.item.noLog()
+                        && allowLog) {
+                    client.chatLog.message("highlighted", user, text, action, channel);
                 }
-                updateUserInfoDialog(user);
             }
-        });
-        
+            if (msgSettings.streamChatChannels.contains(channel)) {
+                streamChat.printMessage(message);
+            }
+            
+            // With ignore mode compact (output name only) don't add
+            if (!ignored) {
+                routingManager.addUserMessage(m.routingTargets, message, localUser);
+            }
+        }
         
-        });
+        CopyMessages.copyMessage(client.settings, user, text, highlighted);
+        updateUserInfoDialog(user);
     }
     
     public void printSubscriberMessage(final User user, final String text,
@@ -4064,7 +4209,7 @@ public class MainGui extends JFrame implements Runnable {
         client.resolveSourceData(user, tags0, tags -> {
             
             
-        SwingUtilities.invokeLater(() -> {
+        invokeInChannelOrder(user.getChannel(), () -> {
             SubscriberMessage m = new SubscriberMessage(user, text, message, tags);
 
             boolean printed = printUsernoticeInternal(m);
@@ -4092,7 +4237,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param tags 
      */
     public void printPointsNotice(final User user, final String text, final String message, final MsgTags tags, final String redemptionId, boolean isUpdate, String status) {
-        SwingUtilities.invokeLater(() -> {
+        invokeInChannelOrder(user.getChannel(), () -> {
             if (isUpdate && redemptionId != null && status != null) {
                 channels.getChannel(user.getRoom()).printInfoMessage(InfoMessage.createAppend(redemptionId, String.format("(%s)", status)));
             }
@@ -4118,7 +4263,7 @@ public class MainGui extends JFrame implements Runnable {
         client.resolveSourceData(user, tags0, tags -> {
             
             
-            SwingUtilities.invokeLater(() -> {
+            invokeInChannelOrder(user.getChannel(), () -> {
                 UserNotice m = new UserNotice(type, user, text, message, tags);
                 printUsernoticeInternal(m);
             });
@@ -4159,20 +4304,20 @@ public class MainGui extends JFrame implements Runnable {
      * @return 
      */
     private boolean userIgnored(User user, boolean whisper) {
-        String setting = whisper ? "ignoredUsersWhisper" : "ignoredUsers";
-        return client.settings.listContains(setting, user.getName());
+        SettingKey.ListKey setting = whisper ? msgSettings.ignoredUsersWhisper : msgSettings.ignoredUsers;
+        return setting.contains(user.getName());
     }
     
     private String processMessage(String text) {
-        int mode = (int)client.settings.getLong("filterCombiningCharacters");
+        int mode = msgSettings.filterCombiningCharacters.getInt();
         return Helper.filterCombiningCharacters(text, "****", mode);
     }
     
     private boolean checkHighlight(HighlightItem.Type type, String text, int msgStart, int msgEnd,
             String channel, Addressbook ab, User user, User localUser, MsgTags tags, Highlighter hl,
             String setting, boolean isOwnMessage, boolean ignored) {
-        if (client.settings.getBoolean(setting + "Enabled")) {
-            if (client.settings.getBoolean(setting + "OwnText") ||
+        if (msgSettings.getBoolean(setting + "Enabled")) {
+            if (msgSettings.getBoolean(setting + "OwnText") ||
                     !isOwnMessage) {
                 return hl.check(type, text, msgStart, msgEnd, channel, ab, user, localUser, tags, ignored);
             }
@@ -4180,11 +4325,22 @@ public class MainGui extends JFrame implements Runnable {
         return false;
     }
     
-    private boolean checkMsg(Highlighter hl, String setting, String text, int msgStart, int msgEnd,
+    /**
+     * Match a regular chat message, without changing the state of the
+     * Highlighter, so it can be used outside the EDT.
+     * 
+     * @return The match, or null if disabled or not matched
+     */
+    private Highlighter.Result matchMsg(Highlighter hl, String setting, String text, int msgStart, int msgEnd,
             User user, User localUser, MsgTags tags, boolean isOwnMessage,
             boolean ignored) {
-        return checkHighlight(HighlightItem.Type.REGULAR, text, msgStart, msgEnd, null, null,
-                user, localUser, tags, hl, setting, isOwnMessage, ignored);
+        if (msgSettings.getBoolean(setting + "Enabled")) {
+            if (msgSettings.getBoolean(setting + "OwnText") ||
+                    !isOwnMessage) {
+                return hl.match(HighlightItem.Type.REGULAR, text, msgStart, msgEnd, null, null, user, localUser, tags, ignored);
+            }
+        }
+        return null;
     }
     
     private boolean checkInfoMsg(Highlighter hl, String setting, String text, int msgStart, int msgEnd,
@@ -4205,17 +4361,79 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     private boolean showIgnoredInfo() {
-        return !client.settings.getBoolean("ignoreShowNotDialog") ||
+        return !msgSettings.ignoreShowNotDialog.get() ||
                 !ignoredMessages.isVisible();
     }
     
+    /**
+     * Settings that are read for every chat message, as handles that can be
+     * read without looking up the name or locking.
+     */
+    private static class MessageSettings {
+        
+        private final Settings settings;
+        private final Map<String, SettingKey.BooleanKey> highlighterKeys = new HashMap<>();
+        
+        private final SettingKey.LongKey emojiZWJ;
+        private final SettingKey.StringKey cheersType;
+        private final SettingKey.LongKey whisperDisplayMode;
+        private final SettingKey.BooleanKey highlightIgnored;
+        private final SettingKey.BooleanKey highlightOverrideIgnored;
+        private final SettingKey.ListKey noHighlightUsers;
+        private final SettingKey.BooleanKey logIgnored;
+        private final SettingKey.LongKey ignoreMode;
+        private final SettingKey.BooleanKey ignoreShowNotDialog;
+        private final SettingKey.BooleanKey highlightByPoints;
+        private final SettingKey.BooleanKey msgColorsPrefer;
+        private final SettingKey.ListKey streamChatChannels;
+        private final SettingKey.ListKey ignoredUsers;
+        private final SettingKey.ListKey ignoredUsersWhisper;
+        private final SettingKey.LongKey filterCombiningCharacters;
+        
+        MessageSettings(Settings settings) {
+            this.settings = settings;
+            emojiZWJ = settings.longKey("emojiZWJ");
+            cheersType = settings.stringKey("cheersType");
+            whisperDisplayMode = settings.longKey("whisperDisplayMode");
+            highlightIgnored = settings.booleanKey("highlightIgnored");
+            highlightOverrideIgnored = settings.booleanKey("highlightOverrideIgnored");
+            noHighlightUsers = settings.listKey("noHighlightUsers");
+            logIgnored = settings.booleanKey("logIgnored");
+            ignoreMode = settings.longKey("ignoreMode");
+            ignoreShowNotDialog = settings.booleanKey("ignoreShowNotDialog");
+            highlightByPoints = settings.booleanKey("highlightByPoints");
+            msgColorsPrefer = settings.booleanKey("msgColorsPrefer");
+            streamChatChannels = settings.listKey("streamChatChannels");
+            ignoredUsers = settings.listKey("ignoredUsers");
+            ignoredUsersWhisper = settings.listKey("ignoredUsersWhisper");
+            filterCombiningCharacters = settings.longKey("filterCombiningCharacters");
+            for (String type : new String[]{"highlight", "ignore", "filter"}) {
+                highlighterKeys.put(type+"Enabled", settings.booleanKey(type+"Enabled"));
+                highlighterKeys.put(type+"OwnText", settings.booleanKey(type+"OwnText"));
+            }
+        }
+        
+        /**
+         * Get one of the Highlighter related settings, falling back to a
+         * regular lookup for other settings.
+         */
+        boolean getBoolean(String settingName) {
+            SettingKey.BooleanKey key = highlighterKeys.get(settingName);
+            if (key != null) {
+                return key.get();
+            }
+            return settings.getBoolean(settingName);
+        }
+        
+    }
+    
     private boolean isOwnUsername(String name) {
         String ownUsername = client.getUsername();
         return ownUsername != null && ownUsername.equalsIgnoreCase(name);
     }
     
     public void userBanned(final User user, final long duration, final String reason, final String id) {
-        SwingUtilities.invokeLater(new Runnable() {
+        invokeInChannelOrder(user.getChannel(), new Runnable() {
 
             @Override
             public void run() {
@@ -4233,7 +4451,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void msgDeleted(final User user, String targetMsgId, String msg) {
-        SwingUtilities.invokeLater(() -> {
+        invokeInChannelOrder(user.getChannel(), () -> {
             channels.getChannel(user.getRoom()).userBanned(user, -2, null, targetMsgId);
             user.addMsgDeleted(targetMsgId, msg);
             updateUserInfoDialog(user);
@@ -4251,7 +4469,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void clearChat(final Room room) {
-        SwingUtilities.invokeLater(new Runnable() {
+        Runnable action = new Runnable() {
             @Override
             public void run() {
                 Channel panel;
@@ -4267,7 +4485,12 @@ public class MainGui extends JFrame implements Runnable {
                     panel.clearChat();
                 }
             }
-        });
+        };
+        if (room == null) {
+            SwingUtilities.invokeLater(action);
+        } else {
+            invokeInChannelOrder(room.getChannel(), action);
+        }
     }
     
     public void testHotkey() {
@@ -4502,7 +4725,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param user The User object of who was the target of this event (mod/..).
      */
     public void printCompact(final String type, final User user) {
-        SwingUtilities.invokeLater(new Runnable() {
+        invokeInChannelOrder(user.getChannel(), new Runnable() {
             @Override
             public void run() {
                 channels.getChannel(user.getRoom()).printCompact(type, user);
@@ -4511,18 +4734,32 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     /**
-     * Perform search in the currently selected channel. Should only be called
-     * from the EDT.
+     * Perform search in the given channel. Should only be called from the EDT.
+     * 
+     * <p>
+     * The search itself may run in the background, so the result is given to
+     * the listener asynchronously (on the EDT) once it's done, or immediately
+     * if it's already available (e.g. moving to the next match of the same
+     * search, or no channel given).
+     * </p>
      * 
-     * @param chan
-     * @param searchText 
-     * @return  
+     * @param chan The channel to search in, may be null (no result then)
+     * @param searchText The text to search for (plain text or regex, depending
+     * on the regex parameter), an empty text gives an empty result
+     * @param caseSensitive Whether to match case
+     * @param regex Whether the search text is a regular expression
+     * @param older Move to the next older match if true, newer if false
+     * @param resultListener Receives the result, which contains the number of
+     * matches or an error message
      */
-    public boolean search(Channel chan, final String searchText) {
+    public void search(Channel chan, final String searchText,
+            boolean caseSensitive, boolean regex, boolean older,
+            Consumer<ChannelTextPane.SearchResult> resultListener) {
         if (chan == null) {
-            return false;
+            resultListener.accept(new ChannelTextPane.SearchResult(0, 0, null));
+            return;
         }
-        return chan.search(searchText);
+        chan.search(searchText, caseSensitive, regex, older, resultListener);
     }
     
     public void resetSearch(Channel chan) {
@@ -5897,6 +6134,8 @@ public class MainGui extends JFrame implements Runnable {
                     emotesDialog.setEmoteScale(((Long)value).intValue());
                 } else if (setting.equals("smilies")) {
                     updateSmilies();
+                } else if (setting.equals("imageMemoryCache")) {
+                    ImageMemoryCache.setMaxBytes((Long)value * 1024 * 1024);
                 }
             }
             if (setting.equals("liveStreamsSorting")
@@ -5923,6 +6162,9 @@ public class MainGui extends JFrame implements Runnable {
             if (setting.equals("spamProtection")) {
                 client.setLinesPerSeconds((String)value);
             }
+            if (setting.equals("userMessagesTotalLimit")) {
+                client.setUserMessagesTotalLimit((Long)value);
+            }
             if (setting.equals("urlCommandEnabled")) {
                 UrlOpener.setCustomCommandEnabled((Boolean)value);
             }
@@ -50,6 +50,7 @@ public class StyleManager implements StyleServer {
             "banReasonAppended", "banDurationAppended",
             "banDurationMessage", "banReasonMessage", "displayNamesMode",
             "paragraphSpacing", "bufferSizes", "userlistFont",
+            "printBatching", "printBatchingThreshold",
             "showImageTooltips", "showTooltipImages", "highlightMatches",
             "nickColorCorrection",
             "mentions", "mentionsInfo", "markHoveredUser", "highlightMatchesAll",
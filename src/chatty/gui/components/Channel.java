@@ -28,6 +28,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
+import java.util.function.Consumer;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JPanel;
@@ -365,8 +366,9 @@ public final class Channel extends JPanel {
     
     // Messages
     
-    public boolean search(String searchText) {
-        return text.search(searchText);
+    public void search(String searchText, boolean caseSensitive, boolean regex,
+            boolean older, Consumer<ChannelTextPane.SearchResult> resultListener) {
+        text.search(searchText, caseSensitive, regex, older, resultListener);
     }
     
     public void resetSearch() {
@@ -418,6 +420,7 @@ public final class Channel extends JPanel {
         users.setBackground(styleManager.getColor("background"));
         users.setForeground(styleManager.getColor("foreground"));
         refreshBufferSize();
+        refreshPrintBatching();
     }
     
     private void refreshBufferSize() {
@@ -425,6 +428,12 @@ public final class Channel extends JPanel {
         text.setBufferSize(bufferSize != null ? bufferSize.intValue() : -1);
     }
     
+    private void refreshPrintBatching() {
+        Long mode = (Long)main.getSettings().mapGet("printBatching", StringUtil.toLowerCase(getChannel()));
+        text.setPrintBatching(mode != null ? mode.intValue() : ChannelTextPane.PRINT_BATCHING_AUTO,
+                (int)main.getSettings().getLong("printBatchingThreshold"));
+    }
+    
     public void clearChat() {
         text.clearAll();
     }
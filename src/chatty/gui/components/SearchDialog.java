@@ -3,8 +3,10 @@ package chatty.gui.components;
 
 import chatty.gui.GuiUtil;
 import chatty.gui.MainGui;
+import chatty.gui.components.textpane.ChannelTextPane;
 import chatty.lang.Language;
 import java.awt.Color;
+import java.awt.FlowLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
@@ -16,8 +18,10 @@ import java.awt.event.WindowEvent;
 import java.util.HashMap;
 import java.util.Map;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
+import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.Timer;
 
@@ -36,6 +40,10 @@ public class SearchDialog extends JDialog {
     private final Timer timer;
     private final JTextField searchText = new JTextField(20);
     private final JButton searchButton = new JButton(Language.getString("searchDialog.button.search"));
+    private final JButton newerButton = new JButton(Language.getString("searchDialog.button.newer"));
+    private final JCheckBox caseSensitive = new JCheckBox(Language.getString("searchDialog.caseSensitive"));
+    private final JCheckBox regex = new JCheckBox(Language.getString("searchDialog.regex"));
+    private final JLabel results = new JLabel(" ");
     //private final JCheckBox highlightAll = new JCheckBox("Highlight all occurences");
     
     private Channel chan;
@@ -76,6 +84,25 @@ public class SearchDialog extends JDialog {
         GuiUtil.smallButtonInsets(searchButton);
         searchButton.setFocusable(false);
         add(searchButton, gbc);
+        gbc.gridx = 2;
+        GuiUtil.smallButtonInsets(newerButton);
+        newerButton.setFocusable(false);
+        add(newerButton, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        gbc.insets = new Insets(0, 5, 5, 5);
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        caseSensitive.setFocusable(false);
+        regex.setFocusable(false);
+        options.add(caseSensitive);
+        options.add(regex);
+        add(options, gbc);
+        gbc.gridx = 1;
+        gbc.gridwidth = 2;
+        gbc.anchor = GridBagConstraints.EAST;
+        gbc.fill = GridBagConstraints.NONE;
+        add(results, gbc);
 
         timer = new Timer(NO_RESULT_COLOR_TIME, new ActionListener() {
 
@@ -89,14 +116,14 @@ public class SearchDialog extends JDialog {
 
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (!g.search(chan, searchText.getText())) {
-                    searchText.setBackground(COLOR_NO_RESULT);
-                    timer.restart();
-                }
+                boolean older = e.getSource() != newerButton;
+                g.search(chan, searchText.getText(), caseSensitive.isSelected(),
+                        regex.isSelected(), older, result -> showResult(result));
             }
         };
         searchText.addActionListener(listener);
         searchButton.addActionListener(listener);
+        newerButton.addActionListener(listener);
 
         addWindowListener(new WindowAdapter() {
             @Override
@@ -104,6 +131,8 @@ public class SearchDialog extends JDialog {
                 g.resetSearch(chan);
                 searchText.setText(null);
                 searchText.setBackground(COLOR_NORMAL);
+                results.setText(" ");
+                results.setToolTipText(null);
             }
         });
         
@@ -114,4 +143,19 @@ public class SearchDialog extends JDialog {
         this.chan = chan;
     }
     
+    private void showResult(ChannelTextPane.SearchResult result) {
+        if (result.error != null) {
+            results.setText(Language.getString("searchDialog.invalidRegex"));
+            results.setToolTipText(result.error);
+        } else {
+            results.setText(Language.getString("searchDialog.results", result.current, result.count));
+            results.setToolTipText(null);
+        }
+        if (!result.found()) {
+            searchText.setBackground(COLOR_NO_RESULT);
+            timer.restart();
+        }
+        pack();
+    }
+    
 }
@@ -8,6 +8,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 
 /**
  * Stuff.
@@ -38,6 +39,13 @@ public class AdvancedSettings extends SettingsPanel {
                 "Enables the membership capability while connecting, which allows receiving of joins/parts/userlist"),
                 d.makeGbc(0, 4, 2, 1, GridBagConstraints.NORTHWEST));
         
+        connection.add(new JLabel("Channels per connection:"),
+                d.makeGbc(0, 5, 1, 1, GridBagConstraints.EAST));
+        JTextField channelsPerConnection = d.addSimpleLongSetting("channelsPerConnection", 3, true);
+        channelsPerConnection.setToolTipText("Join channels on additional connections once this many are joined on one (0 = all channels on one connection)");
+        connection.add(channelsPerConnection,
+                d.makeGbc(1, 5, 1, 1, GridBagConstraints.WEST));
+        
         JPanel login = addTitledPanel("Login Settings (login under <Main Menu - Login>)", 2);
         
         login.add(d.addSimpleBooleanSetting("allowTokenOverride",
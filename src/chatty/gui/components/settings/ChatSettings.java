@@ -46,7 +46,9 @@ public class ChatSettings extends SettingsPanel {
         
         SettingsUtil.addLabeledComponent(main, "bufferSize", 0, 4, 1, WEST, d.addSimpleLongSetting("bufferSize", 3, true));
         
-        BufferSizes bufferSizes = new BufferSizes(d);
+        PerTabSetting bufferSizes = new PerTabSetting(d,
+                "Per-tab buffer size (scrollback)", "info-buffer_sizes.html",
+                "bufferSizes", "Buffer Size");
         JButton bufferSizesButton = new JButton("Per tab buffer sizes");
         GuiUtil.smallButtonInsets(bufferSizesButton);
         bufferSizesButton.addActionListener(e -> {
@@ -58,6 +60,22 @@ public class ChatSettings extends SettingsPanel {
         main.add(bufferSizesButton,
                 gbc);
         
+        SettingsUtil.addLabeledComponent(main, "printBatchingThreshold", 0, 5, 1, WEST, d.addSimpleLongSetting("printBatchingThreshold", 3, true));
+        
+        PerTabSetting printBatching = new PerTabSetting(d,
+                "Per-tab message batching", "info-print_batching.html",
+                "printBatching", "Mode");
+        JButton printBatchingButton = new JButton("Per tab batching");
+        GuiUtil.smallButtonInsets(printBatchingButton);
+        printBatchingButton.addActionListener(e -> {
+            printBatching.setLocationRelativeTo(ChatSettings.this);
+            printBatching.setVisible(true);
+        });
+        
+        gbc = d.makeGbc(2, 5, 1, 1, GridBagConstraints.WEST);
+        main.add(printBatchingButton,
+                gbc);
+        
         gbc = d.makeGbc(0, 6, 3, 1, GridBagConstraints.WEST);
         main.add(d.addSimpleBooleanSetting("showImageTooltips"), gbc);
         
@@ -146,26 +164,28 @@ public class ChatSettings extends SettingsPanel {
         pauseChat.add(commandPanel, gbc);
     }
     
-    private static class BufferSizes extends JDialog {
-        
-        private static final String INFO = SettingsUtil.getInfo("info-buffer_sizes.html", null);
+    /**
+     * Dialog for editing a map setting with a value per tab name.
+     */
+    private static class PerTabSetting extends JDialog {
         
-        private BufferSizes(SettingsDialog d) {
+        private PerTabSetting(SettingsDialog d, String title, String infoFile,
+                String settingName, String valueName) {
             super(d);
             setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
             setLayout(new GridBagLayout());
-            setTitle("Per-tab buffer size (scrollback)");
+            setTitle(title);
             
             GridBagConstraints gbc;
             
             gbc = d.makeGbc(0, 0, 1, 1);
-            add(new JLabel(INFO), gbc);
+            add(new JLabel(SettingsUtil.getInfo(infoFile, null)), gbc);
             
             gbc = d.makeGbc(0, 1, 1, 1);
             gbc.fill = GridBagConstraints.BOTH;
             gbc.weightx = 1;
             gbc.weighty = 1;
-            SimpleTableEditor<Long> editor = d.addLongMapSetting("bufferSizes", 300, 200, "Tab Name", "Buffer Size");
+            SimpleTableEditor<Long> editor = d.addLongMapSetting(settingName, 300, 200, "Tab Name", valueName);
             add(editor, gbc);
             
             gbc = d.makeGbc(0, 2, 1, 1);
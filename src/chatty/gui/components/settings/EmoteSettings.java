@@ -117,19 +117,27 @@ public class EmoteSettings extends SettingsPanel {
                 0, 8, 4, GridBagConstraints.WEST,
                 animatePauseFrameSetting);
         
+        SettingsUtil.addLabeledComponent(main, "animationFrameCache",
+                0, 9, 4, GridBagConstraints.WEST,
+                d.addSimpleLongSetting("animationFrameCache", 4, true));
+        
+        SettingsUtil.addLabeledComponent(main, "imageMemoryCache",
+                0, 10, 4, GridBagConstraints.WEST,
+                d.addSimpleLongSetting("imageMemoryCache", 4, true));
+        
         //--------------------------
         // WebP
         //--------------------------
         JLabel webpTest = new JLabel("WebP not supported.");
         main.add(webpTest,
-                SettingsDialog.makeGbc(2, 9, 3, 1, GridBagConstraints.WEST));
+                SettingsDialog.makeGbc(2, 11, 3, 1, GridBagConstraints.WEST));
         WebPUtil.runIfWebPAvailable(() -> {
             webpTest.setText("WebP is supported.");
         });
         
         main.add(
                 d.addSimpleBooleanSetting("webp"),
-                d.makeGbc(0, 9, 2, 1, GridBagConstraints.WEST));
+                d.makeGbc(0, 11, 2, 1, GridBagConstraints.WEST));
         
         //==========================
         // Provider specific
@@ -131,7 +131,10 @@ public class HistorySettings extends SettingsPanel implements ActionListener {
         excludedChannels.setDataFormatter(formatter);
         externalHistory.add(excludedChannels, SettingsDialog.makeGbcSub2(0, 6, 2, 1, GridBagConstraints.WEST));
         
-        SettingsUtil.addSubsettings(historyServiceEnabled, historyServiceLimit, excludedChannels);
+        JCheckBox historyServiceStore = d.addSimpleBooleanSetting("historyServiceStore");
+        SettingsUtil.addStandardSetting(externalHistory, "historyServiceStore", 7, historyServiceStore, true);
+        
+        SettingsUtil.addSubsettings(historyServiceEnabled, historyServiceLimit, excludedChannels, historyServiceStore);
     }
 
     @Override
@@ -264,6 +264,13 @@ public class LogSettings extends SettingsPanel {
         otherSettings.add(d.addSimpleBooleanSetting("logLockFiles"),
                 d.makeGbcCloser(2, 2, 1, 1, GridBagConstraints.WEST));
         
+        SettingsUtil.addLabeledComponent(otherSettings, "logFlushDelay",
+                0, 3, 1, GridBagConstraints.WEST,
+                d.addSimpleLongSetting("logFlushDelay", 3, true));
+        
+        otherSettings.add(d.addSimpleBooleanSetting("logIndexed"),
+                d.makeGbcCloser(2, 3, 1, 1, GridBagConstraints.WEST));
+        
         /**
          * Add panels to the dialog
          */
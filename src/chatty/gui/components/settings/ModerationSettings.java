@@ -108,8 +108,11 @@ public class ModerationSettings extends SettingsPanel {
         SettingsUtil.addLabeledComponent(userInfoMsg, "userDialogMessageLimit", 0, 5, 1, EAST,
                 d.addSimpleLongSetting("userDialogMessageLimit", 3, true));
         
+        SettingsUtil.addLabeledComponent(userInfoMsg, "userMessagesTotalLimit", 0, 6, 1, EAST,
+                d.addSimpleLongSetting("userMessagesTotalLimit", 6, true));
+        
         SettingsUtil.addLabeledComponent(userInfoMsg, "userMessagesHighlight",
-                0, 6, 2, GridBagConstraints.EAST,
+                0, 7, 2, GridBagConstraints.EAST,
                 new HighlightOptions("userMessagesHighlight", d));
         
         userInfoTabs.addTab(Language.getString("settings.userInfo.tab.general"), userInfoGeneral);
@@ -146,6 +149,9 @@ public class ModerationSettings extends SettingsPanel {
         SettingsUtil.addLabeledComponent(repeatMsgPanel, "repeatMsgLen", 0, 4, 1, GridBagConstraints.EAST,
                 d.addSimpleLongSetting("repeatMsgLen", 4, true));
         
+        repeatMsgPanel.add(d.addSimpleBooleanSetting("repeatMsgChannel"),
+                SettingsDialog.makeGbc(2, 4, 2, 1, GridBagConstraints.WEST));
+        
         EditorStringSetting editor = d.addEditorStringSetting("repeatMsgMatch", 10, true, "Restrict detection", false, SettingConstants.HTML_PREFIX+SettingsUtil.getInfo("info-restriction-repeat.html", null));
         editor.setShowInfoByDefault(true);
         editor.setLinkLabelListener(d.getLinkLabelListener());
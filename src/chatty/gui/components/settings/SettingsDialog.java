@@ -103,14 +103,14 @@ public class SettingsDialog extends JDialog implements ActionListener {
             "inputFont",
             "bttvEmotes", "botNamesBTTV", "botNamesFFZ", "ffzEvent", "seventv",
             "logPath", "logTimestamp", "logSplit", "logSubdirectories",
-            "logLockFiles", "logMessageTemplate",
+            "logLockFiles", "logFlushDelay", "logIndexed", "logMessageTemplate",
             "laf", "lafTheme", "lafFontScale", "language", "timezone", "locale",
             "userDialogMessageLimit", "cachePath", "imgPath", "exportPath",
             "webp", "inputLimitsEnabled"
     ));
     
     private final Set<String> reconnectRequiredDef = new HashSet<>(Arrays.asList(
-            "membershipEnabled"
+            "membershipEnabled", "channelsPerConnection"
     ));
     
     private boolean restartRequired = false;
@@ -34,6 +34,7 @@ import chatty.util.StringUtil;
 import chatty.util.Timestamp;
 import chatty.util.api.CheerEmoticon;
 import chatty.util.api.Emoticon;
+import chatty.util.api.EmoticonIndex;
 import chatty.util.api.Emoticons;
 import chatty.util.api.Emoticons.TagEmotes;
 import chatty.util.api.CachedImage;
@@ -55,8 +56,6 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 import java.awt.image.BufferedImage;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.Map.Entry;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -64,6 +63,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.swing.*;
 import javax.swing.border.Border;
 import javax.swing.event.CaretEvent;
@@ -74,7 +74,6 @@ import chatty.util.api.CachedImage.CachedImageUser;
 import chatty.util.api.IgnoredEmotes;
 import chatty.util.api.usericons.UsericonFactory;
 import chatty.util.api.usericons.UsericonManager;
-import java.util.function.Function;
 import chatty.gui.transparency.TransparencyComponent;
 import chatty.util.api.eventsub.payloads.ModActionPayload;
 import chatty.util.api.eventsub.payloads.SuspiciousMessagePayload;
@@ -112,6 +111,23 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     
     private final DefaultStyledDocument doc;
     
+    /**
+     * The lines by user/id, for finding them without searching the whole
+     * document.
+     */
+    private final LineIndex lineIndex;
+    
+    /**
+     * The text of the lines, for searching.
+     */
+    private final SearchIndex searchIndex;
+    
+    /**
+     * The start of the line currently being printed, null if no line has been
+     * started since the last finished line.
+     */
+    private Position currentLineStart;
+    
     private static AtomicLong idCounter = new AtomicLong();
     
     private static final Color BACKGROUND_COLOR = new Color(250,250,250);
@@ -130,11 +146,13 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      */
     private static final int BUFFER_SIZE_MIN = 10;
     private static final int BUFFER_SIZE_MAX = 10000;
-
+    
     /**
-     * The Matcher to use for finding URLs in messages.
+     * Modes for collecting chat messages to print them together.
      */
-    private static final Matcher urlMatcher = Helper.getUrlPattern().matcher("");
+    public static final int PRINT_BATCHING_OFF = PrintBatching.OFF;
+    public static final int PRINT_BATCHING_ON = PrintBatching.ON;
+    public static final int PRINT_BATCHING_AUTO = PrintBatching.AUTO;
     
     public MainGui main;
     private Channel channel;
@@ -174,6 +192,19 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      */
     private boolean newlineRequired = false;
     
+    /**
+     * Collects chat messages on busy channels to print them together.
+     */
+    private final PrintBatching printBatching = new PrintBatching(this::printBatch);
+    
+    /**
+     * While a batch is printed, removing old lines and scrolling down is only
+     * done once at the end.
+     */
+    private boolean batchInProgress;
+    private int batchRemoveLines;
+    private boolean batchScrollDown;
+    
     public enum Setting {
         TIMESTAMP_ENABLED, EMOTICONS_ENABLED, AUTO_SCROLL, USERICONS_ENABLED,
         
@@ -247,6 +278,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         setEditorKit(kit);
         this.setDocument(new MyDocument());
         doc = (DefaultStyledDocument)getStyledDocument();
+        lineIndex = new LineIndex(doc);
+        searchIndex = new SearchIndex(doc);
         setEditable(false);
         DefaultCaret caret = new NoScrollCaret();
         caret.setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
@@ -295,6 +328,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         if (updateTimer != null) {
             updateTimer.stop();
         }
+        printBatching.cleanUp();
         scrollManager.cleanUp();
         linkController.cleanUp();
         // Clearing the images returns false on imageUpdate() to stop animator
@@ -546,7 +580,50 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
 
     public void printMessage(Message message, String timestamp) {
         if (message instanceof UserMessage) {
-            printUserMessage((UserMessage)message, timestamp);
+            printBatching.messageReceived();
+            if (printBatching.isEnabled()) {
+                printBatching.add(() -> printUserMessage((UserMessage)message, timestamp));
+            }
+            else {
+                printBatching.flush();
+                printUserMessage((UserMessage)message, timestamp);
+            }
+        }
+    }
+    
+    /**
+     * Set when chat messages should be collected to be printed together.
+     * 
+     * @param mode See {@link PrintBatching#setMode(int, int)}
+     * @param threshold Messages per second for automatic mode
+     */
+    public void setPrintBatching(int mode, int threshold) {
+        printBatching.setMode(mode, threshold);
+    }
+    
+    /**
+     * Print several messages at once, with removing old lines and scrolling
+     * down only performed once for all of them.
+     * 
+     * @param prints 
+     */
+    private void printBatch(java.util.List<Runnable> prints) {
+        batchInProgress = true;
+        try {
+            for (Runnable print : prints) {
+                print.run();
+            }
+        } finally {
+            batchInProgress = false;
+            if (batchRemoveLines > 0) {
+                int amount = batchRemoveLines;
+                batchRemoveLines = 0;
+                removeFirstLines(amount);
+            }
+            if (batchScrollDown) {
+                batchScrollDown = false;
+                scrollDownIfNecessary();
+            }
         }
     }
     
@@ -598,7 +675,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
             // Output with emotes, but don't turn URLs into clickable links
             boolean ignoreLinks = !isAnnouncement;
             java.util.List<Match> highlightMatches = Match.shiftMatchList(message.highlightMatches, -offset);
-            printSpecialsNormal(message.attachedMessage, message.user, style, message.emotes, ignoreLinks, false, highlightMatches, null, null, message.tags);
+            printSpecialsNormal(message.attachedMessage, message.user, style, message.emotes, ignoreLinks, false, highlightMatches, null, null, message.tags, null);
             if (showBrackets) {
                 print("]", style);
             }
@@ -686,7 +763,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         print(" ", style);
         printSpecialsNormal(text, user, style, emotes, false, message.bits > 0,
                 message.highlightMatches,
-                message.replaceMatches, message.replacement, message.tags);
+                message.replaceMatches, message.replacement, message.tags,
+                message.prepared);
         
         if (message.highlighted) {
             setLineHighlighted(doc.getLength(), message.highlightSource);
@@ -721,6 +799,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     }
 
     public void printInfoMessage(InfoMessage message) {
+        printBatching.flush();
         if (message.msgType == InfoMessage.Type.APPEND) {
             appendToMessage(message);
             return;
@@ -808,8 +887,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         if (message.objectId == null) {
             return;
         }
-        Element line = findLineBy(element -> element.getAttributes().containsAttribute(Attribute.OBJECT_ID, message.objectId));
-        if (line != null) {
+        Element line = lineIndex.getLineByObjectId(message.objectId);
+        if (line != null && line.getAttributes().containsAttribute(Attribute.OBJECT_ID, message.objectId)) {
             changeInfo(line, attributes -> {
                 attributes.addAttribute(Attribute.INFO_TEXT, message.text);
             });
@@ -1170,10 +1249,13 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     }
 
     public void printLowTrustInfo(User user, SuspiciousMessagePayload data) {        
-        for (Userline userLine : getUserLines(user)) {
-            String elementId = getIdFromElement(userLine.userElement);
-            if (elementId != null && elementId.equals(data.aboutMessageId)) {
-                changeInfo(userLine.line, attributes -> attributes.addAttribute(Attribute.LOW_TRUST_INFO, data));
+        printBatching.flush();
+        Element line = lineIndex.getLineById(data.aboutMessageId);
+        if (line != null) {
+            Element userElement = getUserElementFromLine(line, false);
+            if (getUserFromElement(userElement, false) == user
+                    && data.aboutMessageId.equals(getIdFromElement(userElement))) {
+                changeInfo(line, attributes -> attributes.addAttribute(Attribute.LOW_TRUST_INFO, data));
                 return;
             }
         }
@@ -1191,9 +1273,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      * @return 
      */
     private Element findPreviousBanMessage(User user, String newMessage) {
-        Element root = doc.getDefaultRootElement();
-        for (int i=root.getElementCount()-1;i>=0;i--) {
-            Element line = root.getElement(i);
+        for (Element line : lineIndex.getLines(user)) {
             if (isLineFromUserAndId(line, user, null, true)) {
                 // Stop immediately a message from that user is found first
                 return null;
@@ -1227,6 +1307,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      * @param targetMsgId The id of the deleted message, null if no specific message
      */
     public void userBanned(User user, long duration, String reason, String targetMsgId) {
+        printBatching.flush();
         if (styles.isEnabled(Setting.SHOW_BANMESSAGES)) {
             //-----------------------
             // For extra ban message
@@ -1334,8 +1415,24 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         
     }
     
+    /**
+     * Get the lines associated with the given user, newest first.
+     * 
+     * @param searchUser The user, if null all lines with any user are returned
+     * @return 
+     */
     private java.util.List<Userline> getUserLines(User searchUser) {
         java.util.List<Userline> result = new ArrayList<>();
+        if (searchUser != null) {
+            for (Element line : lineIndex.getLines(searchUser)) {
+                Element userElement = getUserElementFromLine(line, false);
+                if (userElement != null
+                        && userElement.getAttributes().getAttribute(Attribute.USER) == searchUser) {
+                    result.add(new Userline(searchUser, userElement, line));
+                }
+            }
+            return result;
+        }
         Element root = doc.getDefaultRootElement();
         for (int i = root.getElementCount() - 1; i >= 0; i--) {
             Element line = root.getElement(i);
@@ -1351,34 +1448,23 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     }
     
     /**
-     * Searches the Document for all lines by the given user.
+     * Gets all lines by the given user, newest first.
      * 
-     * @param nick
+     * @param user
+     * @param id If non-null, only lines with this message id
+     * @param onlyUserMessages Only chat messages
      * @return 
      */
-    private ArrayList<Integer> getLinesFromUser(User user, String id, boolean onlyUserMessages) {
-        Element root = doc.getDefaultRootElement();
-        ArrayList<Integer> result = new ArrayList<>();
-        for (int i=0;i<root.getElementCount();i++) {
-            Element line = root.getElement(i);
+    private java.util.List<Element> getLinesFromUser(User user, String id, boolean onlyUserMessages) {
+        java.util.List<Element> result = new ArrayList<>();
+        for (Element line : lineIndex.getLines(user)) {
             if (isLineFromUserAndId(line, user, id, onlyUserMessages)) {
-                result.add(i);
+                result.add(line);
             }
         }
         return result;
     }
     
-    private Element findLineBy(Function<Element, Boolean> test) {
-        Element root = doc.getDefaultRootElement();
-        for (int i=root.getElementCount()-1;i>=0;i--) {
-            Element line = root.getElement(i);
-            if (test.apply(line)) {
-                return line;
-            }
-        }
-        return null;
-    }
-    
     private void applyToLines(Consumer<Element> worker) {
         Element root = doc.getDefaultRootElement();
         for (int i=root.getElementCount()-1;i>=0;i--) {
@@ -1868,9 +1954,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
                 currentSelection = line;
 
                 currentUser = user;
-                ArrayList<Integer> lines = getLinesFromUser(user, null, true);
-                for (Integer lineNumber : lines) {
-                    Element otherLine = doc.getDefaultRootElement().getElement(lineNumber);
+                for (Element otherLine : getLinesFromUser(user, null, true)) {
                     if (otherLine != currentSelection) {
                         highlightLine(otherLine, false);
                     }
@@ -1995,7 +2079,137 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         
     }
     
-    private Element lastSearchPos = null;
+    /**
+     * The current search, with the hits being null while the search is still
+     * running or no search was performed yet.
+     */
+    private SearchIndex.Query searchQuery;
+    private java.util.List<SearchIndex.Line> searchHits;
+    private int searchPos = -1;
+    private int searchGeneration;
+    private SearchIndex.Line searchShown;
+    
+    /**
+     * The result of a search, for displaying how many matches there are.
+     */
+    public static class SearchResult {
+        
+        /**
+         * The number of the currently shown match (counting from the newest),
+         * or 0 if none is currently shown.
+         */
+        public final int current;
+        
+        /**
+         * The total number of matches.
+         */
+        public final int count;
+        
+        /**
+         * Error message if the search couldn't be performed, null otherwise.
+         */
+        public final String error;
+        
+        public SearchResult(int current, int count, String error) {
+            this.current = current;
+            this.count = count;
+            this.error = error;
+        }
+        
+        public boolean found() {
+            return current > 0;
+        }
+        
+    }
+    
+    /**
+     * Perform search in the chat buffer. A new search (different text or
+     * options) searches all lines on a background thread and shows the newest
+     * match, otherwise it moves to the next older/newer match of the previous
+     * search. When moving beyond the last match, the search starts at the
+     * newest match again next time.
+     * 
+     * @param searchText The text to search for
+     * @param caseSensitive Whether to match case
+     * @param regex Whether the search text is a regular expression
+     * @param older Move to the next older match if true, newer if false
+     * @param resultListener Receives the result, either immediately or later
+     * on the EDT
+     */
+    public void search(String searchText, boolean caseSensitive, boolean regex,
+            boolean older, Consumer<SearchResult> resultListener) {
+        printBatching.flush();
+        if (searchText == null || searchText.isEmpty()) {
+            resultListener.accept(new SearchResult(0, 0, null));
+            return;
+        }
+        SearchIndex.Query query;
+        try {
+            query = new SearchIndex.Query(searchText, caseSensitive, regex);
+        } catch (PatternSyntaxException ex) {
+            resultListener.accept(new SearchResult(0, 0, ex.getDescription()));
+            return;
+        }
+        if (searchHits != null && query.isSame(searchQuery)) {
+            resultListener.accept(moveSearch(older));
+            return;
+        }
+        resetSearch();
+        searchQuery = query;
+        int generation = searchGeneration;
+        searchIndex.search(query, hits -> {
+            if (generation == searchGeneration) {
+                searchHits = hits;
+                resultListener.accept(moveSearch(older));
+            }
+        });
+    }
+    
+    /**
+     * Show the next match of the current search.
+     * 
+     * @param older Move to the next older match if true, newer if false
+     * @return 
+     */
+    private SearchResult moveSearch(boolean older) {
+        // Remove matches in lines that have been removed (oldest first)
+        int removed = 0;
+        while (removed < searchHits.size() && searchHits.get(removed).isRemoved()) {
+            removed++;
+        }
+        searchHits.subList(0, removed).clear();
+        if (searchPos != -1) {
+            searchPos -= removed;
+            if (searchPos < 0) {
+                searchPos = -1;
+            }
+        }
+        
+        if (searchPos == -1) {
+            searchPos = searchHits.size() - 1;
+        }
+        else if (older) {
+            searchPos--;
+        }
+        else {
+            searchPos++;
+        }
+        clearSearchShown();
+        if (searchPos < 0 || searchPos >= searchHits.size()) {
+            searchPos = -1;
+            scrollManager.scrollDown();
+            return new SearchResult(0, searchHits.size(), null);
+        }
+        SearchIndex.Line line = searchHits.get(searchPos);
+        Element element = doc.getDefaultRootElement().getElement(doc.getDefaultRootElement().getElementIndex(line.getOffset()));
+        int startOffset = element.getStartOffset();
+        int length = element.getEndOffset() - 1 - startOffset;
+        doc.setCharacterAttributes(startOffset, length, styles.searchResult(false), false);
+        scrollManager.cancelScrollDownRequest();
+        scrollManager.scrollToOffset(startOffset);
+        searchShown = line;
+        return new SearchResult(searchHits.size() - searchPos, searchHits.size(), null);
+    }
     
     /**
      * Checks if the given line exists in this document.
@@ -2014,70 +2228,17 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     }
     
     /**
-     * Perform search in the chat buffer. Starts searching for the given text
-     * backwards from the last found position.
-     * 
-     * @param searchText 
-     * @return  
+     * Remove the search result style from the currently shown match.
      */
-    public boolean search(String searchText) {
-        if (searchText == null || searchText.isEmpty()) {
-            return false;
-        }
-        clearSearchResult();
-        int count = doc.getDefaultRootElement().getElementCount();
-        if (lastSearchPos != null && !doesLineExist(lastSearchPos)) {
-            //System.out.println(lastSearchPos+"doesnt exist");
-            lastSearchPos = null;
-        }
-        // Determine if search should start immediately.
-        boolean startSearch = lastSearchPos == null;
-        searchText = StringUtil.toLowerCase(searchText);
-        // Loop through all lines
-        for (int i=count-1;i>=0;i--) {
-            //System.out.println(i+"/"+count);
-            Element element = doc.getDefaultRootElement().getElement(i);
-            if (element == lastSearchPos) {
-                // If this lines contained the last result, start searching
-                // on next line
-                startSearch = true;
-                if (i == 0) {
-                    lastSearchPos = null;
-                }
-                continue;
-            }
-            if (!startSearch) {
-                continue;
-            }
-            int startOffset = element.getStartOffset();
-            int endOffset = element.getEndOffset() - 1;
-            int length = endOffset - startOffset;
-            try {
-                String text = doc.getText(startOffset, length);
-                if (StringUtil.toLowerCase(text).contains(searchText)) {
-                    //this.setCaretPosition(startOffset);
-                    //this.moveCaretPosition(endOffset);
-                    doc.setCharacterAttributes(startOffset, length, styles.searchResult(false), false);
-                    scrollManager.cancelScrollDownRequest();
-                    scrollManager.scrollToOffset(startOffset);
-                    //System.out.println(text);
-//                    if (i == 0) {
-//                        lastSearchPos = null;
-//                    } else {
-                        lastSearchPos = element;
-//                    }
-                    break;
-                }
-            } catch (BadLocationException ex) {
-                LOGGER.warning("Bad location");
+    private void clearSearchShown() {
+        if (searchShown != null) {
+            if (!searchShown.isRemoved()) {
+                Element element = doc.getDefaultRootElement().getElement(doc.getDefaultRootElement().getElementIndex(searchShown.getOffset()));
+                int startOffset = element.getStartOffset();
+                doc.setCharacterAttributes(startOffset, element.getEndOffset() - 1 - startOffset, styles.clearSearchResult(), false);
             }
-            lastSearchPos = null;
+            searchShown = null;
         }
-        if (lastSearchPos == null) {
-            scrollManager.scrollDown();
-            return false;
-        }
-        return true;
     }
     
     /**
@@ -2086,7 +2247,11 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      */
     public void resetSearch() {
         clearSearchResult();
-        lastSearchPos = null;
+        searchShown = null;
+        searchQuery = null;
+        searchHits = null;
+        searchPos = -1;
+        searchGeneration++;
     }
     
     /**
@@ -2418,7 +2583,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      * scroll position.
      */
     private void clearSomeChat() {
-        int count = doc.getDefaultRootElement().getElementCount();
+        // Lines that will be removed after the batch don't count
+        int count = doc.getDefaultRootElement().getElementCount() - batchRemoveLines;
         int max = styles.bufferSize();
         
         boolean regularRequirement =
@@ -2433,7 +2599,11 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         boolean failsafe = count > max * 2;
         
         if (regularRequirement || failsafe) {
-            removeFirstLines(2);
+            if (batchInProgress) {
+                batchRemoveLines += 2;
+            } else {
+                removeFirstLines(2);
+            }
         }
     }
 
@@ -2446,14 +2616,18 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         if (amount < 1) {
             amount = 1;
         }
-        if (doc.getDefaultRootElement().getElementCount() == 0) {
+        int count = doc.getDefaultRootElement().getElementCount();
+        if (count == 0) {
             return;
         }
+        if (amount > count) {
+            amount = count;
+        }
         Element firstToRemove = doc.getDefaultRootElement().getElement(0);
         Element lastToRemove = doc.getDefaultRootElement().getElement(amount - 1);
-        // TODO: change to fix for amount, maybe change to removing elements
-        clearImages(firstToRemove);
-        clearImages(lastToRemove);
+        for (int i = 0; i < amount; i++) {
+            clearImages(doc.getDefaultRootElement().getElement(i));
+        }
         //System.out.println(firstToRemove+" "+lastToRemove);
         int startOffset = firstToRemove.getStartOffset();
         int endOffset = lastToRemove.getEndOffset();
@@ -2461,6 +2635,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
             endOffset = doc.getLength();
         }
         //System.out.println(startOffset+" "+endOffset+" "+doc.getLength());
+        lineIndex.removeBefore(lastToRemove.getEndOffset());
+        searchIndex.removeBefore(lastToRemove.getEndOffset());
         try {
             doc.remove(startOffset,endOffset);
         } catch (BadLocationException ex) {
@@ -2469,6 +2645,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
    }
     
     public void removeOldLines() {
+        printBatching.flush();
         if (messageTimeout > 0) {
             Element paragraph = doc.getDefaultRootElement().getElement(0);
             if (doc.getLength() > 1 && getTimeAgo(paragraph) > messageTimeout * 1000) {
@@ -2479,6 +2656,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
                 // (visible if alternating backgrounds are showing)
                 if (doc.getDefaultRootElement().getElementCount() > 1) {
                     // Can't use this if it's the last element
+                    lineIndex.removeBefore(paragraph.getEndOffset());
+                    searchIndex.removeBefore(paragraph.getEndOffset());
                     doc.removeElement(doc.getDefaultRootElement().getElement(0));
                 } else {
                     clearAll();
@@ -2490,7 +2669,11 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     }
     
     public void clearAll() {
+        printBatching.flush();
         try {
+            lineIndex.clear();
+            searchIndex.clear();
+            currentLineStart = null;
             doc.remove(0, doc.getLength());
             resetNewlineRequired();
             kit.clearImages();
@@ -2527,6 +2710,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      * @param user 
      */
     public void printCompact(String type, User user) {
+        printBatching.flush();
         String seperator = ", ";
         if (startCompactMode(type)) {
             // If compact mode has actually been started for this print,
@@ -2591,6 +2775,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      */
     protected void finishLine() {
         newlineRequired = true;
+        addToLineIndex();
         lineSelection.onLineAdded(getLastLine(doc));
         even = !even;
         setVariableLineAttributes(doc.getLength() - 1, even, true);
@@ -2598,11 +2783,54 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     
     boolean even = false;
     
+    /**
+     * Add the lines printed since the last finished line to the line index
+     * (usually only one, unless it was split up because it was too long).
+     */
+    private void addToLineIndex() {
+        Element root = doc.getDefaultRootElement();
+        int first = root.getElementCount() - 1;
+        if (currentLineStart != null) {
+            first = root.getElementIndex(currentLineStart.getOffset());
+            currentLineStart = null;
+        }
+        for (int i = first; i < root.getElementCount(); i++) {
+            Element line = root.getElement(i);
+            Element userElement = getUserElementFromLine(line, false);
+            java.util.List<User> users = new ArrayList<>(2);
+            addUser(users, getUserFromElement(userElement, false));
+            addUser(users, getUserFromLine(line));
+            Element firstElement = line.getElement(0);
+            if (firstElement != null) {
+                Object banUser = firstElement.getAttributes().getAttribute(Attribute.IS_BAN_MESSAGE);
+                if (banUser instanceof User) {
+                    addUser(users, (User) banUser);
+                }
+            }
+            lineIndex.add(line, users,
+                    getIdFromElement(userElement),
+                    line.getAttributes().getAttribute(Attribute.OBJECT_ID));
+            
+            SearchIndex.Line searchLine = searchIndex.add(line);
+            // Add to current search results (so new lines can be found as well)
+            if (searchHits != null && searchLine != null && searchLine.matches(searchQuery)) {
+                searchHits.add(searchLine);
+            }
+        }
+    }
+    
+    private static void addUser(java.util.List<User> users, User user) {
+        if (user != null && !users.contains(user)) {
+            users.add(user);
+        }
+    }
+    
    /**
      * Prints a regular-styled line (ended with a newline).
      * @param line 
      */
     public void printLine(String line) {
+        printBatching.flush();
         printLine(line, styles.info());
     }
 
@@ -2629,7 +2857,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         
         findSpecialLinks(ranges, rangesStyle, tags, style);
         findLinks(text, ranges, rangesStyle, styles.isEnabled(Setting.LINKS_CUSTOM_COLOR)
-                                                 ? style : styles.info());
+                                                 ? style : styles.info(), null);
         
         if (styles.isEnabled(Setting.MENTIONS_INFO)) {
             findMentions(text, ranges, rangesStyle, style, Setting.MENTIONS_INFO);
@@ -2646,7 +2874,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
             TagEmotes emotes, boolean ignoreLinks, boolean containsBits,
             java.util.List<Match> highlightMatches,
             java.util.List<Match> replacements, String replacement,
-            MsgTags tags) {
+            MsgTags tags, MessagePreparer.Prepared prepared) {
         // Where stuff was found
         TreeMap<Integer,Integer> ranges = new TreeMap<>();
         // The style of the stuff (basicially metadata)
@@ -2664,13 +2892,29 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         
         if (!ignoreLinks) {
             findLinks(text, ranges, rangesStyle, styles.isEnabled(Setting.LINKS_CUSTOM_COLOR)
-                                                 ? style : styles.standard());
+                                                 ? style : styles.standard(), prepared);
         }
         
         if (styles.isEnabled(Setting.EMOTICONS_ENABLED)) {
-            findEmoticons(text, user, ranges, rangesStyle, emotes, tags != null && tags.hasGigantifiedEmote());
+            boolean gigantified = tags != null && tags.hasGigantifiedEmote();
+            MessagePreparer.EmoteMatches preparedEmotes = null;
+            if (prepared != null && !user.isLocalUser()) {
+                preparedEmotes = prepared.getEmotes(text, main.emoticons.getSnapshot());
+            }
+            if (preparedEmotes != null) {
+                addPreparedEmoticons(text, user, ranges, rangesStyle, emotes, gigantified, preparedEmotes);
+            }
+            else {
+                findEmoticons(text, user, ranges, rangesStyle, emotes, gigantified);
+            }
+            findCombinedEmotes(ranges, rangesStyle);
             if (containsBits) {
-                findBits(main.emoticons.getCheerEmotes(), text, ranges, rangesStyle, user);
+                if (preparedEmotes != null && preparedEmotes.bits != null) {
+                    addPreparedBits(preparedEmotes.bits, ranges, rangesStyle, user);
+                }
+                else {
+                    findBits(main.emoticons.getCheerEmotes(), text, ranges, rangesStyle, user);
+                }
             }
         }
         
@@ -2700,6 +2944,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
             Map<Integer, MutableAttributeSet> rangesStyle,
             java.util.List<Match> highlightMatches) {
         // Actually print everything
+        RenderPlan.Builder plan = new RenderPlan.Builder();
         int lastPrintedPos = 0;
         Iterator<Entry<Integer, Integer>> rangesIt = ranges.entrySet().iterator();
         while (rangesIt.hasNext()) {
@@ -2718,35 +2963,37 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
                  * If there is anything between this special element and the
                  * previous printed section, print that first as regular text.
                  */
-                specialPrint(user, text, lastPrintedPos, start, style, highlightMatches);
+                specialPrint(plan, user, text, lastPrintedPos, start, style, highlightMatches);
             }
             AttributeSet rangeStyle = rangesStyle.get(start);
             String rangeText;
             if (rangeStyle.containsAttribute(Attribute.IS_REPLACEMENT, true)) {
                 rangeText = (String)rangeStyle.getAttribute(Attribute.REPLACED_WITH);
                 if (!rangeText.isEmpty()) {
-                    print(rangeText, rangeStyle);
+                    plan.add(rangeText, rangeStyle);
                 }
             } else {
                 if (styles.isEnabled(Setting.HIGHLIGHT_MATCHES_ALL)
                         && StyleConstants.getIcon(rangeStyle) == null) {
-                    specialPrint(user, text, start, end+1, rangeStyle, highlightMatches);
+                    specialPrint(plan, user, text, start, end+1, rangeStyle, highlightMatches);
                 } else {
-                    print(text.substring(start, end+1), rangeStyle);
+                    plan.add(text.substring(start, end+1), rangeStyle);
                 }
             }
             lastPrintedPos = end + 1;
         }
         // If anything is left, print that as well as regular text
         if (lastPrintedPos < text.length()) {
-            specialPrint(user, text, lastPrintedPos, text.length(), style, highlightMatches);
+            specialPrint(plan, user, text, lastPrintedPos, text.length(), style, highlightMatches);
         }
+        print(plan.build());
     }
     
     /**
-     * Prints the given range of text from start to end, adding the attribute
-     * for drawing Highlight/Ignore matches.
+     * Adds the given range of text from start to end to the plan, adding the
+     * attribute for drawing Highlight/Ignore matches.
      * 
+     * @param plan
      * @param user
      * @param text
      * @param start
@@ -2754,7 +3001,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      * @param style
      * @param highlightMatches Should be sorted by start index
      */
-    private void specialPrint(User user, String text, int start, int end, AttributeSet style, java.util.List<Match> highlightMatches) {
+    private void specialPrint(RenderPlan.Builder plan, User user, String text, int start, int end, AttributeSet style, java.util.List<Match> highlightMatches) {
         if (highlightMatches != null) {
             for (Match m : highlightMatches) {
                 if (m.start < end && m.end > start) {
@@ -2770,14 +3017,14 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
                     if (from > start) {
                         // Print before match normally
                         String processed = processText(user, text.substring(start, from));
-                        print(processed, style);
+                        plan.add(processed, style);
                     }
                     
                     // Print match
                     String processed = processText(user, text.substring(from, to));
                     MutableAttributeSet styleCopy = new SimpleAttributeSet(style);
                     styleCopy.addAttribute(Attribute.HIGHLIGHT_WORD, true);
-                    print(processed, styleCopy);
+                    plan.add(processed, styleCopy);
                     
                     // Continue after match
                     start = to;
@@ -2785,7 +3032,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
             }
         }
         if (start < end) {
-            print(processText(user, text.substring(start, end)), style);
+            plan.add(processText(user, text.substring(start, end)), style);
         }
     }
     
@@ -2870,29 +3117,17 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     }
     
     private void findLinks(String text, Map<Integer, Integer> ranges,
-            Map<Integer, MutableAttributeSet> rangesStyle, AttributeSet baseStyle) {
-        // Find links
-        urlMatcher.reset(text);
-        while (urlMatcher.find()) {
-            int start = urlMatcher.start();
-            int end = urlMatcher.end() - 1;
-            if (!inRanges(start, ranges) && !inRanges(end, ranges)) {
-                String foundUrl = urlMatcher.group();
-                
-                // Check if URL contains ( ) like http://example.com/test(abc)
-                // or is just contained in ( ) like (http://example.com)
-                // (of course this won't work perfectly, but it should be ok)
-                if (foundUrl.endsWith(")") && !foundUrl.contains("(")) {
-                    foundUrl = foundUrl.substring(0, foundUrl.length() - 1);
-                    end--;
-                }
-                if (checkUrl(foundUrl)) {
-                    ranges.put(start, end);
-                    if (!foundUrl.startsWith("http")) {
-                        foundUrl = "http://"+foundUrl;
-                    }
-                    rangesStyle.put(start, styles.url(foundUrl, baseStyle));
-                }
+            Map<Integer, MutableAttributeSet> rangesStyle, AttributeSet baseStyle,
+            MessagePreparer.Prepared prepared) {
+        // Use links already found in the background, if available
+        java.util.List<MessagePreparer.LinkMatch> links = prepared != null ? prepared.getLinks(text) : null;
+        if (links == null) {
+            links = MessagePreparer.findLinks(text);
+        }
+        for (MessagePreparer.LinkMatch link : links) {
+            if (!inRanges(link.start, ranges) && !inRanges(link.matchEnd, ranges)) {
+                ranges.put(link.start, link.end);
+                rangesStyle.put(link.start, styles.url(link.url, baseStyle));
             }
         }
     }
@@ -2991,7 +3226,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
             Map<Integer, MutableAttributeSet> rangesStyle, TagEmotes tagEmotes, boolean gigantified) {
         
         Set<String> accessToSets = user.isLocalUser() ? main.emoticons.getLocalEmotesets() : null;
-        findEmoticons(user, main.emoticons.getCustomEmotes(), text, ranges, rangesStyle, accessToSets);
+        findEmoticons(user, main.emoticons.getIndex(main.emoticons.getCustomEmotes()), text, ranges, rangesStyle, accessToSets);
         
         //-------
         // Emoji
@@ -3012,9 +3247,9 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         
         // Sent messages
         if (user.isLocalUser()) {
-            findEmoticons(main.emoticons.getUsableGlobalTwitchEmotes(), text, ranges, rangesStyle);
+            findEmoticons(main.emoticons.getIndex(main.emoticons.getUsableGlobalTwitchEmotes()), text, ranges, rangesStyle);
             findEmoticons(main.emoticons.getUsableFollowerEmotes(user.getStream()), text, ranges, rangesStyle);
-            findEmoticons(main.emoticons.getSmilies(), text, ranges, rangesStyle);
+            findEmoticons(main.emoticons.getIndex(main.emoticons.getSmilies()), text, ranges, rangesStyle);
         }
         
         //-------------
@@ -3022,26 +3257,75 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         //-------------
         // By stream emotes first so they can overwrite third-party global emotes
         Set<Emoticon> channelEmotes = main.emoticons.getEmoticonsByStream(user.getStream());
-        findEmoticons(channelEmotes, text, ranges, rangesStyle);
+        findEmoticons(main.emoticons.getIndex(channelEmotes), text, ranges, rangesStyle);
         
         // All-channels emotes
         if (user.isLocalUser()) {
-            findEmoticons(main.emoticons.getUsableGlobalOtherEmotes(), text, ranges, rangesStyle);
+            findEmoticons(main.emoticons.getIndex(main.emoticons.getUsableGlobalOtherEmotes()), text, ranges, rangesStyle);
         }
         else {
             if (tagEmotes == null) {
                 // Not sure that this should even occur
                 Set<Emoticon> emoticons = main.emoticons.getGlobalTwitchEmotes();
-                findEmoticons(emoticons, text, ranges, rangesStyle);
+                findEmoticons(main.emoticons.getIndex(emoticons), text, ranges, rangesStyle);
             }
             Set<Emoticon> emoticons = main.emoticons.getOtherGlobalEmotes();
-            findEmoticons(emoticons, text, ranges, rangesStyle);
+            findEmoticons(main.emoticons.getIndex(emoticons), text, ranges, rangesStyle);
+        }
+    }
+    
+    /**
+     * Adds the emotes found by the {@link MessagePreparer} for a message of
+     * another user, in the same order and with the same checks as
+     * {@link #findEmoticons(String, User, Map, Map, TagEmotes, boolean)}
+     * would, so the result is the same.
+     */
+    private void addPreparedEmoticons(String text, User user, Map<Integer, Integer> ranges,
+            Map<Integer, MutableAttributeSet> rangesStyle, TagEmotes tagEmotes, boolean gigantified,
+            MessagePreparer.EmoteMatches prepared) {
+        addEmoticons(user, prepared.custom, ranges, rangesStyle);
+        
+        if (prepared.emoji != null) {
+            addEmoticons(user, prepared.emoji, ranges, rangesStyle);
+        }
+        
+        if (tagEmotes != null) {
+            Map<String, Emoticon> emoticonsById = main.emoticons.getEmoticonsById();
+            addTwitchTagsEmoticons(user, emoticonsById, text, ranges, rangesStyle, tagEmotes, gigantified);
         }
         
-        //---------
-        // Special
-        //---------
-        // Special Combined Emotes
+        addEmoticons(null, prepared.stream, ranges, rangesStyle);
+        
+        if (tagEmotes == null) {
+            if (prepared.globalTwitch != null) {
+                addEmoticons(null, prepared.globalTwitch, ranges, rangesStyle);
+            }
+            else {
+                findEmoticons(main.emoticons.getIndex(main.emoticons.getGlobalTwitchEmotes()), text, ranges, rangesStyle);
+            }
+        }
+        addEmoticons(null, prepared.otherGlobal, ranges, rangesStyle);
+    }
+    
+    /**
+     * Add emotes that have already been found, if they are allowed for the
+     * given user and not ignored.
+     */
+    private void addEmoticons(User user, java.util.List<EmoticonIndex.Match> matches,
+            Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle) {
+        for (EmoticonIndex.Match match : matches) {
+            if (match.emote.matchesUser(user, null)
+                    && !main.emoticons.isEmoteIgnored(match.emote, IgnoredEmotes.CHAT)) {
+                addEmoticon(match.emote, match.start, match.end, ranges, rangesStyle, false);
+            }
+        }
+    }
+    
+    /**
+     * Combine emotes with overlay emotes directly following them.
+     */
+    private void findCombinedEmotes(Map<Integer, Integer> ranges,
+            Map<Integer, MutableAttributeSet> rangesStyle) {
         CombinedEmotesInfo cei = ChattyMisc.getCombinedEmotesInfo();
         if (!cei.isEmpty()) {
             int baseStart = -1;
@@ -3185,6 +3469,35 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         findEmoticons(null, emoticons, text, ranges, rangesStyle);
     }
     
+    private void findEmoticons(EmoticonIndex index, String text,
+            Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle) {
+        findEmoticons(null, index, text, ranges, rangesStyle, null);
+    }
+    
+    /**
+     * Find emotes using an index, which gives the same result as checking
+     * each emote of the set the index was created from, but only has to run
+     * the regex for emotes that aren't just a word.
+     * 
+     * @param user
+     * @param index
+     * @param text
+     * @param ranges
+     * @param rangesStyle
+     * @param accessToSets 
+     */
+    private void findEmoticons(User user, EmoticonIndex index, String text,
+            Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle,
+            Set<String> accessToSets) {
+        java.util.List<EmoticonIndex.Match> matches = index.find(text, emoticon -> {
+            return emoticon.matchesUser(user, accessToSets)
+                    && !main.emoticons.isEmoteIgnored(emoticon, IgnoredEmotes.CHAT);
+        });
+        for (EmoticonIndex.Match match : matches) {
+            addEmoticon(match.emote, match.start, match.end, ranges, rangesStyle, false);
+        }
+    }
+    
     private void findEmoticons(User user, Set<Emoticon> emoticons, String text,
             Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle) {
         findEmoticons(user, emoticons, text, ranges, rangesStyle, null);
@@ -3253,6 +3566,31 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         }
     }
     
+    /**
+     * Add cheers found by the {@link MessagePreparer}, the same as
+     * {@link #findBits(Set, String, Map, Map, User)} would.
+     */
+    private void addPreparedBits(java.util.List<MessagePreparer.BitsMatch> matches,
+            Map<Integer, Integer> ranges,
+            Map<Integer, MutableAttributeSet> rangesStyle,
+            User user) {
+        for (MessagePreparer.BitsMatch match : matches) {
+            CheerEmoticon emote = match.emote;
+            if (!emote.matchesUser(user, null)) {
+                continue;
+            }
+            int start = match.start;
+            int end = match.end;
+            int bitsLength = match.bitsLength;
+            boolean ignored = main.emoticons.isEmoteIgnored(emote, IgnoredEmotes.CHAT);
+            if (!ignored && addEmoticon(emote, start, end - bitsLength, ranges, rangesStyle, false)) {
+                addFormattedText(emote.color, end - bitsLength + 1, end, ranges, rangesStyle);
+            } else {
+                addFormattedText(emote.color, start, end, ranges, rangesStyle);
+            }
+        }
+    }
+    
     private boolean addEmoticon(Emoticon emoticon, int start, int end,
             Map<Integer, Integer> ranges,
             Map<Integer, MutableAttributeSet> rangesStyle, boolean gigantified) {
@@ -3300,21 +3638,6 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         return false;
     }
 
-    /**
-     * Checks if the Url can be later used as a URI.
-     * 
-     * @param uriToCheck
-     * @return 
-     */
-    private boolean checkUrl(String uriToCheck) {
-        try {
-            new URI(uriToCheck);
-        } catch (URISyntaxException ex) {
-            return false;
-        }
-        return true;
-    }
-    
     public static Element getLastLine(Document doc) {
         return doc.getDefaultRootElement().getElement(doc.getDefaultRootElement().getElementCount() - 1);
     }
@@ -3341,6 +3664,19 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
      * @param style 
      */
     private void print(final String text, final AttributeSet style) {
+        print(text, style, true);
+    }
+    
+    /**
+     * Prints the given text in the given style.
+     * 
+     * @param text
+     * @param style
+     * @param finish If false, the paragraph attributes are not updated and no
+     * scrolling down is requested, so this can be done once for several
+     * sections of the same line
+     */
+    private void print(final String text, final AttributeSet style, boolean finish) {
         try {
             String newline = "";
             if (newlineRequired) {
@@ -3363,27 +3699,64 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
                 }
                 String part = text.substring(0, breakTarget);
                 String remaining = text.substring(breakTarget);
+                int textStart = doc.getLength() + newline.length();
                 doc.insertString(doc.getLength(), newline+part, style);
+                markLineStart(textStart);
                 doc.setParagraphAttributes(doc.getLength(), 1, styles.paragraph(), true);
                 newlineRequired = true;
-                print(remaining, style);
+                print(remaining, style, finish);
             }
             else {
                 //System.out.println("1:"+doc.getLength());
+                int textStart = doc.getLength() + newline.length();
                 doc.insertString(doc.getLength(), newline+text, style);
+                markLineStart(textStart);
                 //System.out.println("2:"+doc.getLength());
                 //this.getHighlighter().addHighlight(doc.getLength(), 10, null);
                 // TODO: check how this works
-                doc.setParagraphAttributes(doc.getLength(), 1, styles.paragraph(), true);
-                scrollDownIfNecessary();
+                if (finish) {
+                    doc.setParagraphAttributes(doc.getLength(), 1, styles.paragraph(), true);
+                    scrollDownIfNecessary();
+                }
             }
         } catch (BadLocationException e) {
             System.err.println("BadLocationException");
         }
     }
 
+    /**
+     * Inserts all segments of the given plan into the document. The paragraph
+     * attributes are only set and scrolling down only requested after the
+     * last segment, instead of for every segment (e.g. every emote).
+     * 
+     * @param plan 
+     */
+    private void print(RenderPlan plan) {
+        java.util.List<RenderPlan.Segment> segments = plan.getSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            RenderPlan.Segment segment = segments.get(i);
+            print(segment.text, segment.style, i == segments.size() - 1);
+        }
+    }
+
+    /**
+     * Remember where the current line started, if not already done.
+     * 
+     * @param offset
+     * @throws BadLocationException 
+     */
+    private void markLineStart(int offset) throws BadLocationException {
+        if (currentLineStart == null) {
+            currentLineStart = doc.createPosition(offset);
+        }
+    }
+
     private void scrollDownIfNecessary() {
-        if (lastSearchPos == null) {
+        if (batchInProgress) {
+            batchScrollDown = true;
+            return;
+        }
+        if (searchPos == -1) {
             if (scrollManager.isScrollPositionNearEnd()
                     || scrollManager.scrolledUpTimeout()) {
                 /**
@@ -3432,7 +3805,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     protected void printTimestamp(AttributeSet style, long time) {
         Timestamp timestamp = styles.timestampFormat();
         if (timestamp != null) {
-            print(timestamp.make(time, channel != null ? channel.getRoom() : null)+" ", styles.timestamp(style));
+            print(timestamp.make(time, channel != null ? channel.getRoom() : null, true), styles.timestamp(style));
         }
         else {
             // Inserts the linebreak with a style that shouldn't break anything
@@ -3451,12 +3824,13 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         if (timestampFormat != null) {
             return timestampFormat.make(
                 Long.parseLong(timestamp),
-                channel != null ? channel.getRoom() : null) + " ";
+                channel != null ? channel.getRoom() : null, true);
         }
         return "";
     }
     
     public void refreshStyles() {
+        printBatching.flush();
         styles.refresh();
     }
     
@@ -0,0 +1,198 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.User;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+
+/**
+ * Index of the lines in a document by the users, message ids and object ids
+ * they are associated with, so finding the lines of a user (e.g. when banned)
+ * doesn't require going through the whole document.
+ * 
+ * <p>
+ * Line elements may be replaced by the document when it's changed, so the
+ * position of the start of the line is stored instead, which the document
+ * keeps updated. The index only narrows down which lines to look at, the
+ * caller should still check the line attributes.
+ * </p>
+ * 
+ * <p>
+ * Lines must be added in the order they appear in the document and lines
+ * removed from the start of the document must be removed from the index as
+ * well. This should only be used on the EDT.
+ * </p>
+ * 
+ * @author tduva
+ */
+class LineIndex {
+    
+    private static final Logger LOGGER = Logger.getLogger(LineIndex.class.getName());
+    
+    private final Document doc;
+    
+    /**
+     * All entries, in the order they appear in the document.
+     */
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    
+    private final Map<User, ArrayDeque<Entry>> byUser = new HashMap<>();
+    private final Map<String, Entry> byId = new HashMap<>();
+    private final Map<Object, Entry> byObjectId = new HashMap<>();
+    
+    LineIndex(Document doc) {
+        this.doc = doc;
+    }
+    
+    /**
+     * Add a line at the end of the document. Lines that are not associated
+     * with anything are not added.
+     * 
+     * @param line The line element
+     * @param users The users the line is associated with, may be empty
+     * @param id The message id, may be null
+     * @param objectId The object id, may be null
+     */
+    public void add(Element line, Collection<User> users, String id, Object objectId) {
+        if (users.isEmpty() && id == null && objectId == null) {
+            return;
+        }
+        Position pos;
+        try {
+            pos = doc.createPosition(line.getStartOffset());
+        } catch (BadLocationException ex) {
+            LOGGER.warning("Bad location adding line to index");
+            return;
+        }
+        Entry entry = new Entry(pos, new ArrayList<>(users), id, objectId);
+        entries.add(entry);
+        for (User user : entry.users) {
+            byUser.computeIfAbsent(user, u -> new ArrayDeque<>()).add(entry);
+        }
+        if (id != null) {
+            byId.put(id, entry);
+        }
+        if (objectId != null) {
+            byObjectId.put(objectId, entry);
+        }
+    }
+    
+    /**
+     * Remove all lines that start before the given offset. Must be called
+     * before the text is actually removed from the document.
+     * 
+     * @param offset
+     */
+    public void removeBefore(int offset) {
+        while (!entries.isEmpty() && entries.peekFirst().pos.getOffset() < offset) {
+            Entry entry = entries.pollFirst();
+            for (User user : entry.users) {
+                ArrayDeque<Entry> userEntries = byUser.get(user);
+                // Entries are in the same order, so it has to be the first
+                if (userEntries != null && userEntries.peekFirst() == entry) {
+                    userEntries.pollFirst();
+                    if (userEntries.isEmpty()) {
+                        byUser.remove(user);
+                    }
+                }
+            }
+            if (entry.id != null) {
+                byId.remove(entry.id, entry);
+            }
+            if (entry.objectId != null) {
+                byObjectId.remove(entry.objectId, entry);
+            }
+        }
+    }
+    
+    public void clear() {
+        entries.clear();
+        byUser.clear();
+        byId.clear();
+        byObjectId.clear();
+    }
+    
+    /**
+     * Get the lines associated with the given user.
+     * 
+     * @param user
+     * @return The lines, newest first (never null)
+     */
+    public List<Element> getLines(User user) {
+        ArrayDeque<Entry> userEntries = byUser.get(user);
+        if (userEntries == null) {
+            return Collections.emptyList();
+        }
+        List<Element> result = new ArrayList<>(userEntries.size());
+        Iterator<Entry> it = userEntries.descendingIterator();
+        while (it.hasNext()) {
+            result.add(getLine(it.next()));
+        }
+        return result;
+    }
+    
+    /**
+     * Get the newest line with the given message id.
+     * 
+     * @param id
+     * @return The line, or null if none was found
+     */
+    public Element getLineById(String id) {
+        return getLine(byId.get(id));
+    }
+    
+    /**
+     * Get the newest line with the given object id.
+     * 
+     * @param objectId
+     * @return The line, or null if none was found
+     */
+    public Element getLineByObjectId(Object objectId) {
+        return getLine(byObjectId.get(objectId));
+    }
+    
+    /**
+     * The number of lines in the index.
+     * 
+     * @return
+     */
+    public int size() {
+        return entries.size();
+    }
+    
+    private Element getLine(Entry entry) {
+        if (entry == null) {
+            return null;
+        }
+        Element root = doc.getDefaultRootElement();
+        return root.getElement(root.getElementIndex(entry.pos.getOffset()));
+    }
+    
+    private static class Entry {
+        
+        private final Position pos;
+        private final List<User> users;
+        private final String id;
+        private final Object objectId;
+        
+        Entry(Position pos, List<User> users, String id, Object objectId) {
+            this.pos = pos;
+            this.users = users;
+            this.id = id;
+            this.objectId = objectId;
+        }
+        
+    }
+    
+}
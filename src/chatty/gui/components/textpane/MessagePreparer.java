@@ -0,0 +1,392 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.Helper;
+import chatty.User;
+import chatty.gui.emoji.EmojiUtil;
+import chatty.util.Debugging;
+import chatty.util.api.CheerEmoticon;
+import chatty.util.api.EmoticonIndex;
+import chatty.util.api.EmoticonSnapshot;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+
+/**
+ * Analyzes message text on a background thread before it is printed, so that
+ * less has to be done on the EDT when the message is actually inserted into
+ * the chat.
+ * 
+ * <p>
+ * This finds links, and for messages of other users also emotes and cheers,
+ * using an {@link EmoticonSnapshot} of the emotes at the time the message was
+ * received. The text pane then only has to check the matches against what
+ * must stay on the EDT (which emotes are ignored, emotes from the emotes tag,
+ * overlapping matches) and create the styles. Mentions depend on the users of
+ * the individual chat, so they are still found when printing.
+ * </p>
+ * 
+ * <p>
+ * Preparing is only an optimization, if the result isn't ready yet when the
+ * message is printed, the queue was full or the emotes have changed since
+ * then, the text pane just does the work itself, so nothing ever waits for it.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class MessagePreparer {
+    
+    private static final Logger LOGGER = Logger.getLogger(MessagePreparer.class.getName());
+    
+    private static final int THREADS = 2;
+    private static final int QUEUE_SIZE = 1000;
+    
+    private static final ThreadPoolExecutor EXECUTOR;
+    
+    static {
+        AtomicInteger count = new AtomicInteger();
+        EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS,
+                30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE),
+                r -> {
+                    Thread thread = new Thread(r, "MessagePreparer-"+count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * Start finding links in the given text. This can be called from any
+     * thread.
+     * 
+     * @param text The text, exactly as it will be printed
+     * @return The object to retrieve the result from later (never null)
+     */
+    public static Prepared prepare(String text) {
+        return prepare(text, null, false, false, null);
+    }
+    
+    /**
+     * Start preparing the given text. This can be called from any thread.
+     * 
+     * @param text The text, exactly as it will be printed
+     * @param user The user that sent the message, emotes are only found if
+     * this is not the local user (which has different emotes available), may
+     * be null
+     * @param hasTagEmotes Whether the message has emotes from the emotes tag,
+     * in which case global Twitch emotes don't have to be found
+     * @param bits Whether to find cheers
+     * @param emotes The current snapshot of the emotes, may be null (no emotes
+     * are found then)
+     * @return The object to retrieve the result from later (never null)
+     */
+    public static Prepared prepare(String text, User user, boolean hasTagEmotes,
+            boolean bits, EmoticonSnapshot emotes) {
+        if (user == null || user.isLocalUser()) {
+            emotes = null;
+        }
+        String stream = user != null ? user.getStream() : null;
+        Prepared result = new Prepared(text, stream, hasTagEmotes, bits, emotes);
+        if (text != null) {
+            EXECUTOR.execute(result.task);
+        }
+        return result;
+    }
+    
+    /**
+     * Find links in the given text. Uses its own Matcher, so it can be run
+     * on any thread. The text pane also uses this directly if the prepared
+     * result isn't available.
+     * 
+     * @param text
+     * @return The found links (never null)
+     */
+    static List<LinkMatch> findLinks(String text) {
+        List<LinkMatch> result = null;
+        Matcher m = Helper.getUrlPattern().matcher(text);
+        while (m.find()) {
+            int start = m.start();
+            int matchEnd = m.end() - 1;
+            int end = matchEnd;
+            String foundUrl = m.group();
+            
+            // Check if URL contains ( ) like http://example.com/test(abc)
+            // or is just contained in ( ) like (http://example.com)
+            // (of course this won't work perfectly, but it should be ok)
+            if (foundUrl.endsWith(")") && !foundUrl.contains("(")) {
+                foundUrl = foundUrl.substring(0, foundUrl.length() - 1);
+                end--;
+            }
+            if (checkUrl(foundUrl)) {
+                if (!foundUrl.startsWith("http")) {
+                    foundUrl = "http://"+foundUrl;
+                }
+                if (result == null) {
+                    result = new ArrayList<>();
+                }
+                result.add(new LinkMatch(start, matchEnd, end, foundUrl));
+            }
+        }
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        return result;
+    }
+    
+    /**
+     * Find emotes and cheers in the given text, using the snapshot of the
+     * emotes. Matches are not filtered by anything, since that is done when
+     * adding them (the emotes need to be checked for the stream the message
+     * is in and whether they are ignored anyway).
+     * 
+     * @param text
+     * @param stream The stream the message is in
+     * @param hasTagEmotes
+     * @param bits
+     * @param emotes
+     * @return The matches (never null)
+     */
+    static EmoteMatches findEmotes(String text, String stream,
+            boolean hasTagEmotes, boolean bits, EmoticonSnapshot emotes) {
+        List<EmoticonIndex.Match> emoji = null;
+        if (Debugging.isEnabled("emoji2") || EmojiUtil.mightContainEmoji(text)) {
+            emoji = emotes.getEmoji().find(text, null);
+        }
+        return new EmoteMatches(
+                emotes.getCustom().find(text, null),
+                emoji,
+                emotes.getByStream(stream).find(text, null),
+                hasTagEmotes ? null : emotes.getGlobalTwitch().find(text, null),
+                emotes.getOtherGlobal().find(text, null),
+                bits ? findBits(text, emotes.getCheers()) : null);
+    }
+    
+    private static List<BitsMatch> findBits(String text, List<CheerEmoticon> cheers) {
+        List<BitsMatch> result = new ArrayList<>();
+        for (CheerEmoticon emote : cheers) {
+            Matcher m = emote.newMatcher(text);
+            while (m.find()) {
+                try {
+                    int bits = Integer.parseInt(m.group(1));
+                    if (bits >= emote.min_bits) {
+                        result.add(new BitsMatch(emote, m.start(), m.end() - 1, m.group(1).length()));
+                    }
+                } catch (NumberFormatException ex) {
+                    System.out.println("Error parsing cheer: " + ex);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Checks if the Url can be later used as a URI.
+     * 
+     * @param uriToCheck
+     * @return
+     */
+    private static boolean checkUrl(String uriToCheck) {
+        try {
+            new URI(uriToCheck);
+        } catch (URISyntaxException ex) {
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * The result of preparing a text, which may or may not be done yet.
+     */
+    public static class Prepared {
+        
+        private final String text;
+        private final EmoticonSnapshot emotes;
+        private final FutureTask<Result> task;
+        
+        private Prepared(String text, String stream, boolean hasTagEmotes,
+                boolean bits, EmoticonSnapshot emotes) {
+            this.text = text;
+            this.emotes = emotes;
+            this.task = new FutureTask<>(() -> {
+                return new Result(findLinks(text),
+                        emotes != null ? findEmotes(text, stream, hasTagEmotes, bits, emotes) : null);
+            });
+        }
+        
+        /**
+         * Get the links found in the text, if already done.
+         * 
+         * @param text The text the links are needed for, if it's not the same
+         * as the prepared text the result can't be used
+         * @return The links, or null if not done or the text doesn't match
+         */
+        List<LinkMatch> getLinks(String text) {
+            Result result = getResult(text);
+            return result != null ? result.links : null;
+        }
+        
+        /**
+         * Get the emotes found in the text, if already done.
+         * 
+         * @param text The text the emotes are needed for, if it's not the same
+         * as the prepared text the result can't be used
+         * @param current The current snapshot of the emotes, if it's not the
+         * same the emotes have changed and the result can't be used
+         * @return The emotes, or null if not done, no emotes were prepared or
+         * the text or emotes don't match
+         */
+        EmoteMatches getEmotes(String text, EmoticonSnapshot current) {
+            if (emotes == null || emotes != current) {
+                return null;
+            }
+            Result result = getResult(text);
+            return result != null ? result.emotes : null;
+        }
+        
+        private Result getResult(String text) {
+            if (!task.isDone() || !text.equals(this.text)) {
+                return null;
+            }
+            try {
+                return task.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                LOGGER.warning("Error preparing message: "+ex);
+                return null;
+            }
+        }
+        
+    }
+    
+    private static class Result {
+        
+        private final List<LinkMatch> links;
+        private final EmoteMatches emotes;
+        
+        private Result(List<LinkMatch> links, EmoteMatches emotes) {
+            this.links = links;
+            this.emotes = emotes;
+        }
+        
+    }
+    
+    /**
+     * Emotes found in a text, by the emote set they were found in, each in
+     * the order they have to be added in.
+     */
+    static class EmoteMatches {
+        
+        public final List<EmoticonIndex.Match> custom;
+        
+        /**
+         * Null if the text didn't look like it contains Emoji.
+         */
+        public final List<EmoticonIndex.Match> emoji;
+        public final List<EmoticonIndex.Match> stream;
+        
+        /**
+         * Null if the message has emotes from the emotes tag.
+         */
+        public final List<EmoticonIndex.Match> globalTwitch;
+        public final List<EmoticonIndex.Match> otherGlobal;
+        
+        /**
+         * Null if no cheers were searched for.
+         */
+        public final List<BitsMatch> bits;
+        
+        EmoteMatches(List<EmoticonIndex.Match> custom,
+                List<EmoticonIndex.Match> emoji,
+                List<EmoticonIndex.Match> stream,
+                List<EmoticonIndex.Match> globalTwitch,
+                List<EmoticonIndex.Match> otherGlobal,
+                List<BitsMatch> bits) {
+            this.custom = custom;
+            this.emoji = emoji;
+            this.stream = stream;
+            this.globalTwitch = globalTwitch;
+            this.otherGlobal = otherGlobal;
+            this.bits = bits;
+        }
+        
+    }
+    
+    /**
+     * A cheer found in a text, with at least the minimum amount of bits of the
+     * cheer emote.
+     */
+    static class BitsMatch {
+        
+        public final CheerEmoticon emote;
+        
+        /**
+         * Start index (inclusive).
+         */
+        public final int start;
+        
+        /**
+         * End index (inclusive), including the amount of bits.
+         */
+        public final int end;
+        
+        /**
+         * The number of characters of the amount of bits at the end.
+         */
+        public final int bitsLength;
+        
+        BitsMatch(CheerEmoticon emote, int start, int end, int bitsLength) {
+            this.emote = emote;
+            this.start = start;
+            this.end = end;
+            this.bitsLength = bitsLength;
+        }
+        
+    }
+    
+    /**
+     * A link found in a text.
+     */
+    static class LinkMatch {
+        
+        /**
+         * Start index (inclusive).
+         */
+        public final int start;
+        
+        /**
+         * End index of the matched text (inclusive), before removing a closing
+         * bracket.
+         */
+        public final int matchEnd;
+        
+        /**
+         * End index of the actual link (inclusive).
+         */
+        public final int end;
+        
+        /**
+         * The URL to open, with "http://" prepended if necessary.
+         */
+        public final String url;
+        
+        LinkMatch(int start, int matchEnd, int end, String url) {
+            this.start = start;
+            this.matchEnd = matchEnd;
+            this.end = end;
+            this.url = url;
+        }
+        
+    }
+    
+}
@@ -83,7 +83,21 @@ class MyEditorKit extends StyledEditorKit {
             synchronized(imageViews) {
                 Map<Long, WeakReference<MyIconView>> data = imageViews.get(oldImage);
                 if (data != null) {
-                    imageViews.put(newImage, data);
+                    /**
+                     * The new image may be shared with other icons (e.g. the
+                     * same emote loaded from the memory cache), so add to the
+                     * views that may already be stored for it.
+                     */
+                    Map<Long, WeakReference<MyIconView>> existing = imageViews.get(newImage);
+                    if (existing == data) {
+                        return;
+                    }
+                    if (existing != null) {
+                        existing.putAll(data);
+                    }
+                    else {
+                        imageViews.put(newImage, data);
+                    }
                     imageViews.remove(oldImage);
                 }
             }
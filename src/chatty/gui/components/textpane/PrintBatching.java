@@ -0,0 +1,141 @@
+
+package chatty.gui.components.textpane;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.swing.Timer;
+
+/**
+ * Collects chat messages that arrive within a short time (about one frame),
+ * so they can be printed together instead of one by one. This means the
+ * scrolling, removing of old lines and the layout/repaint (which happens after
+ * the EDT is done with the current event) only have to be done once per batch.
+ * 
+ * <p>
+ * Batching can be always on, off or automatically enabled when the number of
+ * messages per second reaches a threshold. Anything else printed must call
+ * {@link #flush()} first, so the order stays the same.
+ * </p>
+ * 
+ * <p>
+ * This should only be used on the EDT.
+ * </p>
+ * 
+ * @author tduva
+ */
+class PrintBatching {
+    
+    public static final int OFF = 0;
+    public static final int ON = 1;
+    public static final int AUTO = 2;
+    
+    /**
+     * How long to collect messages for, in milliseconds.
+     */
+    private static final int DELAY = 16;
+    
+    private final Consumer<List<Runnable>> printer;
+    private final Timer timer;
+    private final List<Runnable> queue = new ArrayList<>();
+    
+    private int mode = OFF;
+    private int threshold;
+    
+    private long rateIntervalStart;
+    private int rateIntervalCount;
+    private int rate;
+    
+    /**
+     * Create a new instance.
+     * 
+     * @param printer Receives the collected prints, in the order they were
+     * added, to perform them all at once
+     */
+    PrintBatching(Consumer<List<Runnable>> printer) {
+        this.printer = printer;
+        this.timer = new Timer(DELAY, e -> flush());
+        this.timer.setRepeats(false);
+    }
+    
+    /**
+     * Set how batching should be used.
+     * 
+     * @param mode {@link #OFF}, {@link #ON} or {@link #AUTO}
+     * @param threshold The messages per second at which batching is enabled
+     * in {@link #AUTO} mode, 0 to never enable
+     */
+    public void setMode(int mode, int threshold) {
+        this.mode = mode;
+        this.threshold = threshold;
+        if (mode == OFF) {
+            flush();
+        }
+    }
+    
+    /**
+     * Should be called for every message that could be batched, to update the
+     * message rate.
+     */
+    public void messageReceived() {
+        long now = System.currentTimeMillis();
+        long passed = now - rateIntervalStart;
+        if (passed >= 1000) {
+            // Rate in the previous interval, lower if no message for a while
+            rate = (int) (rateIntervalCount * 1000 / passed);
+            rateIntervalStart = now;
+            rateIntervalCount = 0;
+        }
+        rateIntervalCount++;
+    }
+    
+    /**
+     * Check whether messages should currently be added to a batch.
+     * 
+     * @return true if {@link #add(Runnable)} should be used
+     */
+    public boolean isEnabled() {
+        switch (mode) {
+            case ON:
+                return true;
+            case AUTO:
+                return threshold > 0
+                        && Math.max(rate, rateIntervalCount) >= threshold;
+        }
+        return false;
+    }
+    
+    /**
+     * Add a print to the current batch, which will be performed soon.
+     * 
+     * @param print
+     */
+    public void add(Runnable print) {
+        queue.add(print);
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+    
+    /**
+     * Perform all collected prints now, if there are any.
+     */
+    public void flush() {
+        timer.stop();
+        if (queue.isEmpty()) {
+            return;
+        }
+        List<Runnable> prints = new ArrayList<>(queue);
+        queue.clear();
+        printer.accept(prints);
+    }
+    
+    /**
+     * Discard all collected prints and stop the timer.
+     */
+    public void cleanUp() {
+        timer.stop();
+        queue.clear();
+    }
+    
+}
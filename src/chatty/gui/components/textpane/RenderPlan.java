@@ -0,0 +1,84 @@
+
+package chatty.gui.components.textpane;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.text.AttributeSet;
+
+/**
+ * The text of a message split up into segments, each with the style it should
+ * be inserted into the document with.
+ * 
+ * <p>
+ * Building the plan (finding links, emotes and so on) is separate from
+ * inserting it, so that the actual document changes happen in one go. Once
+ * built the plan can't be changed anymore, however the attribute sets are not
+ * copied, so they must not be modified after adding them.
+ * </p>
+ * 
+ * @author tduva
+ */
+class RenderPlan {
+    
+    private final List<Segment> segments;
+    
+    private RenderPlan(List<Segment> segments) {
+        this.segments = Collections.unmodifiableList(segments);
+    }
+    
+    public List<Segment> getSegments() {
+        return segments;
+    }
+    
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+    
+    @Override
+    public String toString() {
+        return segments.toString();
+    }
+    
+    public static class Segment {
+        
+        public final String text;
+        public final AttributeSet style;
+        
+        private Segment(String text, AttributeSet style) {
+            this.text = text;
+            this.style = style;
+        }
+        
+        @Override
+        public String toString() {
+            return "'"+text+"'";
+        }
+        
+    }
+    
+    public static class Builder {
+        
+        private final List<Segment> segments = new ArrayList<>();
+        
+        /**
+         * Add text with the given style. Segments are not combined even if
+         * they have the same style, since each one may be something separate
+         * (like an emote image).
+         * 
+         * @param text The text
+         * @param style The style
+         * @return This builder
+         */
+        public Builder add(String text, AttributeSet style) {
+            segments.add(new Segment(text, style));
+            return this;
+        }
+        
+        public RenderPlan build() {
+            return new RenderPlan(new ArrayList<>(segments));
+        }
+        
+    }
+    
+}
@@ -0,0 +1,392 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.util.StringUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+
+/**
+ * Keeps the text of the lines of a document, so it can be searched on a
+ * background thread without having to get the text from the document again
+ * for every search.
+ * 
+ * <p>
+ * Lines have to be added in document order once they are finished and removed
+ * when they are removed from the start of the document. Changes to the text of
+ * lines already added (e.g. deleted messages) are noticed through a
+ * DocumentListener and the text is updated when the next search is started.
+ * </p>
+ * 
+ * <p>
+ * Each index searches on its own thread, so a slow search (e.g. a complex
+ * regex on a large buffer) doesn't delay searches in other documents. Starting
+ * a new search stops the previous one of the same index.
+ * </p>
+ * 
+ * <p>
+ * Except for the actual search, this should only be used on the EDT.
+ * </p>
+ * 
+ * @author tduva
+ */
+class SearchIndex {
+    
+    private static final Logger LOGGER = Logger.getLogger(SearchIndex.class.getName());
+    
+    private final ExecutorService executor;
+    
+    private final Document doc;
+    
+    /**
+     * The lines, in document order.
+     */
+    private final List<Line> lines = new ArrayList<>();
+    
+    private boolean dirty;
+    private long serialCounter;
+    
+    /**
+     * The id of the most recently started search, older searches stop when
+     * they notice it has changed.
+     */
+    private volatile long currentSearch;
+    
+    SearchIndex(Document doc) {
+        this.doc = doc;
+        ThreadPoolExecutor searchExecutor = new ThreadPoolExecutor(1, 1,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "SearchIndex");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        searchExecutor.allowCoreThreadTimeOut(true);
+        this.executor = searchExecutor;
+        doc.addDocumentListener(new DocumentListener() {
+            
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                inserted(e.getOffset());
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                removed(e.getOffset(), e.getChange(doc.getDefaultRootElement()) != null);
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Only attributes changed
+            }
+        });
+    }
+    
+    /**
+     * Add a line at the end of the document.
+     * 
+     * @param element The line element
+     * @return The added line
+     */
+    public Line add(Element element) {
+        try {
+            Line line = new Line(doc.createPosition(element.getStartOffset()), serialCounter++);
+            line.update(doc);
+            lines.add(line);
+            return line;
+        } catch (BadLocationException ex) {
+            LOGGER.warning("Bad location adding line to search index");
+            return null;
+        }
+    }
+    
+    /**
+     * Remove all lines that start before the given offset. Must be called
+     * before the text is actually removed from the document.
+     * 
+     * @param offset
+     */
+    public void removeBefore(int offset) {
+        int count = 0;
+        while (count < lines.size() && lines.get(count).start.getOffset() < offset) {
+            lines.get(count).removed = true;
+            count++;
+        }
+        lines.subList(0, count).clear();
+    }
+    
+    public void clear() {
+        for (Line line : lines) {
+            line.removed = true;
+        }
+        lines.clear();
+    }
+    
+    public int size() {
+        return lines.size();
+    }
+    
+    /**
+     * Whether the text of any line has changed since the last search.
+     * 
+     * @return 
+     */
+    boolean hasChanges() {
+        return dirty;
+    }
+    
+    /**
+     * Mark the line containing the inserted text as changed. Text inserted
+     * after the end of a line (e.g. a new line being appended) doesn't change
+     * it.
+     * 
+     * @param offset Where the text was inserted
+     */
+    private void inserted(int offset) {
+        int index = findLine(offset);
+        if (index != -1) {
+            Line line = lines.get(index);
+            Element root = doc.getDefaultRootElement();
+            Element element = root.getElement(root.getElementIndex(line.start.getOffset()));
+            // The end offset includes the newline
+            if (offset < element.getEndOffset() - 1) {
+                markDirty(line);
+            }
+        }
+    }
+    
+    /**
+     * Mark the line containing the removed text as changed. Removing whole
+     * lines in front of a line (e.g. old lines being removed from the start)
+     * doesn't change it.
+     * 
+     * @param offset Where the text was removed
+     * @param linesRemoved Whether lines were removed or joined
+     */
+    private void removed(int offset, boolean linesRemoved) {
+        int index = findLine(offset);
+        if (index != -1) {
+            Line line = lines.get(index);
+            if (!linesRemoved || line.start.getOffset() != offset) {
+                markDirty(line);
+            }
+        }
+    }
+    
+    private void markDirty(Line line) {
+        line.dirty = true;
+        dirty = true;
+    }
+    
+    /**
+     * Find the last line starting at or before the given offset.
+     * 
+     * @param offset
+     * @return The index, or -1 if there is none
+     */
+    private int findLine(int offset) {
+        int low = 0;
+        int high = lines.size() - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lines.get(mid).start.getOffset() <= offset) {
+                result = mid;
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Update the text of changed lines.
+     */
+    private void update() {
+        if (dirty) {
+            for (Line line : lines) {
+                if (line.dirty) {
+                    line.update(doc);
+                }
+            }
+            dirty = false;
+        }
+    }
+    
+    /**
+     * Search all current lines on a background thread. If another search is
+     * started before this one is finished, this one is stopped and the result
+     * is not called.
+     * 
+     * @param query What to search for
+     * @param result Receives the matching lines in document order, on the EDT
+     */
+    public void search(Query query, Consumer<List<Line>> result) {
+        long searchId = ++currentSearch;
+        update();
+        List<Line> snapshot = new ArrayList<>(lines);
+        long lastSerial = snapshot.isEmpty() ? -1 : snapshot.get(snapshot.size() - 1).serial;
+        List<String> texts = new ArrayList<>(snapshot.size());
+        List<String> lowerTexts = new ArrayList<>(snapshot.size());
+        for (Line line : snapshot) {
+            texts.add(line.text);
+            lowerTexts.add(line.lowerText);
+        }
+        executor.execute(() -> {
+            List<Line> found = new ArrayList<>();
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (searchId != currentSearch) {
+                    return;
+                }
+                if (query.matches(texts.get(i), lowerTexts.get(i))) {
+                    found.add(snapshot.get(i));
+                }
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (searchId != currentSearch) {
+                    return;
+                }
+                found.removeIf(line -> line.removed);
+                // Check lines added in the meantime
+                int added = lines.size();
+                while (added > 0 && lines.get(added - 1).serial > lastSerial) {
+                    added--;
+                }
+                for (int i = added; i < lines.size(); i++) {
+                    if (lines.get(i).matches(query)) {
+                        found.add(lines.get(i));
+                    }
+                }
+                result.accept(found);
+            });
+        });
+    }
+    
+    /**
+     * A single line of text in the document.
+     */
+    public static class Line {
+        
+        private final Position start;
+        private final long serial;
+        private String text;
+        private String lowerText;
+        private boolean dirty;
+        private boolean removed;
+        
+        private Line(Position start, long serial) {
+            this.start = start;
+            this.serial = serial;
+        }
+        
+        private void update(Document doc) {
+            Element root = doc.getDefaultRootElement();
+            Element element = root.getElement(root.getElementIndex(start.getOffset()));
+            try {
+                text = doc.getText(element.getStartOffset(), element.getEndOffset() - element.getStartOffset() - 1);
+            } catch (BadLocationException ex) {
+                text = "";
+            }
+            lowerText = StringUtil.toLowerCase(text);
+            dirty = false;
+        }
+        
+        /**
+         * Check if the current text of this line matches the query. Only use
+         * on the EDT.
+         * 
+         * @param query
+         * @return
+         */
+        public boolean matches(Query query) {
+            return query.matches(text, lowerText);
+        }
+        
+        /**
+         * Whether the line has been removed from the document.
+         * 
+         * @return
+         */
+        public boolean isRemoved() {
+            return removed;
+        }
+        
+        /**
+         * The current start offset of the line in the document.
+         * 
+         * @return
+         */
+        public int getOffset() {
+            return start.getOffset();
+        }
+        
+    }
+    
+    /**
+     * What to search for.
+     */
+    public static class Query {
+        
+        private final String text;
+        private final String lowerText;
+        private final boolean caseSensitive;
+        private final Pattern pattern;
+        
+        /**
+         * Create a new query.
+         * 
+         * @param text The text to search for
+         * @param caseSensitive Whether to match case
+         * @param regex Whether the text is a regular expression
+         * @throws PatternSyntaxException If regex is enabled and the text is
+         * not a valid regular expression
+         */
+        public Query(String text, boolean caseSensitive, boolean regex) {
+            this.text = text;
+            this.lowerText = StringUtil.toLowerCase(text);
+            this.caseSensitive = caseSensitive;
+            if (regex) {
+                this.pattern = Pattern.compile(text, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            }
+            else {
+                this.pattern = null;
+            }
+        }
+        
+        private boolean matches(String lineText, String lowerLineText) {
+            if (pattern != null) {
+                return pattern.matcher(lineText).find();
+            }
+            if (caseSensitive) {
+                return lineText.contains(text);
+            }
+            return lowerLineText.contains(lowerText);
+        }
+        
+        public boolean isSame(Query other) {
+            return other != null
+                    && text.equals(other.text)
+                    && caseSensitive == other.caseSensitive
+                    && (pattern == null) == (other.pattern == null);
+        }
+        
+    }
+    
+}
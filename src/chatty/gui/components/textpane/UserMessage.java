@@ -31,6 +31,7 @@ public class UserMessage extends Message {
     public Object routingSource;
     public User localUser;
     public long historicTimeStamp;
+    public MessagePreparer.Prepared prepared;
     
     public UserMessage(User user, String text, Emoticons.TagEmotes emotes,
             String id, int bits, List<Match> highlightMatches,
@@ -57,6 +58,7 @@ public class UserMessage extends Message {
         result.routingSource = routingSource;
         result.localUser = localUser;
         result.historicTimeStamp = historicTimeStamp;
+        result.prepared = prepared;
         return result;
     }
     
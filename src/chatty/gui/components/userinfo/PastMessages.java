@@ -7,6 +7,7 @@ import chatty.util.MiscUtil;
 import chatty.util.RepeatMsgHelper;
 import chatty.util.StringUtil;
 import chatty.util.Timestamp;
+import chatty.util.chatlog.IndexedLog;
 import chatty.util.colors.ColorCorrectionNew;
 import chatty.util.settings.Settings;
 import java.text.SimpleDateFormat;
@@ -35,6 +36,13 @@ public class PastMessages extends JTextArea {
     private final RepeatMsgHelper repeatHelper;
     private final Settings settings;
     
+    /**
+     * Messages from the log, which are only shown for the user they were
+     * searched for.
+     */
+    private User logUser;
+    private List<IndexedLog.Record> logRecords;
+    
     private final Map<Integer, Integer> highlights = new HashMap<>();
     private int highlightStart;
     private final DefaultHighlighter.DefaultHighlightPainter highlightPainter;
@@ -59,6 +67,18 @@ public class PastMessages extends JTextArea {
         return currentMessageIdMessage;
     }
     
+    /**
+     * Set messages found in the log, to be shown before the messages stored in
+     * the User, until another user is shown.
+     * 
+     * @param user The user the messages were searched for
+     * @param records The messages, null if searching failed
+     */
+    public void setLogRecords(User user, List<IndexedLog.Record> records) {
+        this.logUser = user;
+        this.logRecords = records;
+    }
+    
     public void update(User user, String currentMessageId) {
         setText(null);
         if (user != null) {
@@ -91,6 +111,13 @@ public class PastMessages extends JTextArea {
     
     private String makeLines(User user, String currentMessageId) {
         StringBuilder b = new StringBuilder();
+        if (user != logUser) {
+            logUser = null;
+            logRecords = null;
+        }
+        else {
+            makeLogLines(user, b);
+        }
         if (user.linesCleared()) {
             b.append("<some lines cleared due to user inactivity>\n");
         }
@@ -321,6 +348,34 @@ public class PastMessages extends JTextArea {
         return b.toString();
     }
 
+    private void makeLogLines(User user, StringBuilder b) {
+        if (logRecords == null) {
+            b.append("<searching log failed>\n");
+            return;
+        }
+        if (logRecords.isEmpty()) {
+            b.append("<no older messages found in log>\n");
+            return;
+        }
+        b.append("<").append(logRecords.size()).append(" older messages from log>\n");
+        int currentDay = 0;
+        for (IndexedLog.Record r : logRecords) {
+            LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(r.time), ZoneId.systemDefault());
+            if (date.getDayOfMonth() != currentDay) {
+                currentDay = date.getDayOfMonth();
+                b.append("- ");
+                b.append(date.format(DateTimeFormatter.ofLocalizedDate(FormatStyle.FULL)));
+                b.append(" -");
+                b.append("\n");
+            }
+            b.append(timestampFormat.make(r.time, user.getRoom()));
+            b.append(r.action ? "* " : " ");
+            b.append(r.text);
+            b.append("\n");
+        }
+        b.append("<end of log>\n");
+    }
+
     public void setTimestampFormat(Timestamp timestampFormat) {
         if (timestampFormat != null) {
             this.timestampFormat = timestampFormat;
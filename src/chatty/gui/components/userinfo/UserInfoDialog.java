@@ -19,6 +19,7 @@ import chatty.util.api.Follower;
 import chatty.util.api.FollowerInfo;
 import chatty.util.api.TwitchApi;
 import chatty.util.api.UserInfo;
+import chatty.util.chatlog.IndexedLog;
 import chatty.util.commands.CustomCommand;
 import chatty.util.commands.Parameters;
 import chatty.util.settings.Settings;
@@ -28,6 +29,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.SimpleDateFormat;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -51,6 +53,7 @@ public class UserInfoDialog extends JDialog {
     private final JButton closeButton = new JButton(Language.getString("dialog.button.close"));
     private final JCheckBox pinnedDialog = new JCheckBox(Language.getString("userDialog.setting.pin"));
     private final JButton notesButton = new JButton("Notes");
+    private final JButton logButton = new JButton(Language.getString("userDialog.searchLog"));
     private final JCheckBox singleMessage = new JCheckBox(SINGLE_MESSAGE_CHECK);
     private final BanReasons banReasons;
     private final Buttons buttons;
@@ -74,6 +77,8 @@ public class UserInfoDialog extends JDialog {
     
     private final UserInfoRequester requester;
     
+    private static final int LOG_SEARCH_LIMIT = 200;
+    
     private final Settings settings;
     
     public UserInfoDialog(final Window parent, UserInfoListener listener,
@@ -151,7 +156,14 @@ public class UserInfoDialog extends JDialog {
                 }
             });
         });
-        topPanel.add(notesButton, gbc);
+        GuiUtil.smallButtonInsets(logButton);
+        logButton.setToolTipText(Language.getString("userDialog.searchLog.tip"));
+        logButton.addActionListener(e -> searchLog());
+        logButton.setVisible(requester != null && requester.isLogSearchAvailable());
+        JPanel notesPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 2, 0));
+        notesPanel.add(logButton);
+        notesPanel.add(notesButton);
+        topPanel.add(notesPanel, gbc);
         
         gbc = makeGbc(3, 1, 1, 1);
         gbc.insets = new Insets(2, 8, 2, 8);
@@ -371,6 +383,29 @@ public class UserInfoDialog extends JDialog {
         pastMessages.update(currentUser, currentMsgId != null ? currentMsgId : currentAutoModMsgId);
     }
     
+    /**
+     * Search the log for messages of the current user that are older than the
+     * ones stored in the User and show them above those.
+     */
+    private void searchLog() {
+        if (currentUser == null || requester == null) {
+            return;
+        }
+        User user = currentUser;
+        List<User.Message> messages = user.getMessages();
+        long before = messages.isEmpty() ? System.currentTimeMillis() : messages.get(0).getTime();
+        logButton.setEnabled(false);
+        requester.searchLog(user.getRoom().getFilename(), user.getName(), before, LOG_SEARCH_LIMIT, result -> {
+            SwingUtilities.invokeLater(() -> {
+                logButton.setEnabled(true);
+                if (user == currentUser) {
+                    pastMessages.setLogRecords(user, result);
+                    updateMessages();
+                }
+            });
+        });
+    }
+    
     public void setTimestampFormat(Timestamp timestampFormat) {
         pastMessages.setTimestampFormat(timestampFormat);
         updateMessages();
@@ -12,6 +12,8 @@ import chatty.util.api.Follower;
 import chatty.util.api.FollowerInfo;
 import chatty.util.api.TwitchApi;
 import chatty.util.api.UserInfo;
+import chatty.util.chatlog.ChatLog;
+import chatty.util.chatlog.IndexedLog;
 import chatty.util.commands.CustomCommand;
 import chatty.util.commands.Parameters;
 import chatty.util.settings.Settings;
@@ -47,7 +49,8 @@ public class UserInfoManager {
     private Timestamp timestampFormat;
     
     public UserInfoManager(final MainGui owner, Settings settings,
-            final ContextMenuListener contextMenuListener, TwitchApi api) {
+            final ContextMenuListener contextMenuListener, TwitchApi api,
+            ChatLog chatLog) {
         this.main = owner;
         this.settings = settings;
         this.contextMenuListener = contextMenuListener;
@@ -82,6 +85,18 @@ public class UserInfoManager {
             public void requestFollowerInfo(String stream) {
                 api.getFollowers(stream, false);
             }
+            
+            @Override
+            public boolean isLogSearchAvailable() {
+                return chatLog.isIndexedEnabled();
+            }
+            
+            @Override
+            public void searchLog(String channel, String username, long before, int limit, Consumer<List<IndexedLog.Record>> result) {
+                chatLog.queryIndexed(channel,
+                        new IndexedLog.Query().user(username).time(0, before).limit(limit),
+                        result);
+            }
 
         };
     }
@@ -3,6 +3,8 @@ package chatty.gui.components.userinfo;
 
 import chatty.util.api.Follower;
 import chatty.util.api.UserInfo;
+import chatty.util.chatlog.IndexedLog;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -16,4 +18,18 @@ public interface UserInfoRequester {
     UserInfo getCachedUserInfo(String channel, Consumer<UserInfo> result);
     
     void requestFollowerInfo(String stream);
+    
+    boolean isLogSearchAvailable();
+    
+    /**
+     * Search the indexed chat log for messages of a user.
+     * 
+     * @param channel The log channel
+     * @param username The username
+     * @param before Only messages before this time (in milliseconds)
+     * @param limit Max number of messages (the most recent are returned)
+     * @param result Receives the result (oldest first), or null on error, may
+     * be called from another thread
+     */
+    void searchLog(String channel, String username, long before, int limit, Consumer<List<IndexedLog.Record>> result);
 }
@@ -0,0 +1,165 @@
+package chatty.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * Find which of a number of words occur in a text, in a single pass over the
+ * text (Aho-Corasick automaton).
+ * 
+ * <p>
+ * Add all words with {@link #add(String, Object)}, then call {@link #build()}
+ * once before using {@link #find(CharSequence, Consumer)}. Adding words after
+ * building is not supported. After building this can be used from several
+ * threads at the same time.
+ * </p>
+ * 
+ * <p>
+ * If case-insensitive, both the words and the text are folded the same way
+ * the "(?iu)" regex flags compare characters (lowercase of uppercase), so it
+ * finds at least all occurences such a regex would find. Supplementary
+ * characters are not folded.
+ * </p>
+ * 
+ * @author tduva
+ * @param <T> The type of the value associated with a word
+ */
+public class AhoCorasick<T> {
+    
+    private final Node<T> root = new Node<>();
+    private final boolean caseInsensitive;
+    private boolean built;
+    private int size;
+    
+    public AhoCorasick(boolean caseInsensitive) {
+        this.caseInsensitive = caseInsensitive;
+    }
+    
+    /**
+     * Add a word to find.
+     * 
+     * @param word The word, empty words are ignored
+     * @param value The value returned when the word is found
+     * @throws IllegalStateException if already built
+     */
+    public void add(String word, T value) {
+        if (built) {
+            throw new IllegalStateException("Already built");
+        }
+        if (word.isEmpty()) {
+            return;
+        }
+        Node<T> node = root;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.getOrCreate(fold(word.charAt(i)));
+        }
+        if (node.values.isEmpty()) {
+            node.values = new ArrayList<>(1);
+        }
+        node.values.add(value);
+        size++;
+    }
+    
+    /**
+     * Prepare for searching, which can only be done once.
+     */
+    public void build() {
+        if (built) {
+            return;
+        }
+        built = true;
+        Queue<Node<T>> queue = new ArrayDeque<>();
+        for (Node<T> child : root.children.values()) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node<T> node = queue.poll();
+            for (Map.Entry<Character, Node<T>> entry : node.children.entrySet()) {
+                char c = entry.getKey();
+                Node<T> child = entry.getValue();
+                Node<T> fail = node.fail;
+                while (fail != null && !fail.children.containsKey(c)) {
+                    fail = fail.fail;
+                }
+                child.fail = fail == null ? root : fail.children.get(c);
+                // Include words ending at the fallback node
+                if (!child.fail.values.isEmpty()) {
+                    List<T> values = new ArrayList<>(child.values);
+                    values.addAll(child.fail.values);
+                    child.values = values;
+                }
+                queue.add(child);
+            }
+        }
+    }
+    
+    /**
+     * Find all words that occur in the given text.
+     * 
+     * @param text The text to search in
+     * @param found Receives the value of each found word, for each occurence
+     * @throws IllegalStateException if not built yet
+     */
+    public void find(CharSequence text, Consumer<T> found) {
+        if (!built) {
+            throw new IllegalStateException("Not built");
+        }
+        if (size == 0) {
+            return;
+        }
+        Node<T> node = root;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            Node<T> next = node.children.get(c);
+            while (next == null && node != root) {
+                node = node.fail;
+                next = node.children.get(c);
+            }
+            node = next == null ? root : next;
+            for (T value : node.values) {
+                found.accept(value);
+            }
+        }
+    }
+    
+    /**
+     * The number of words that have been added.
+     * 
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+    
+    private char fold(char c) {
+        if (caseInsensitive) {
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+        return c;
+    }
+    
+    private static class Node<T> {
+        
+        private final Map<Character, Node<T>> children = new HashMap<>();
+        private List<T> values = Collections.emptyList();
+        private Node<T> fail;
+        
+        private Node<T> getOrCreate(char c) {
+            Node<T> node = children.get(c);
+            if (node == null) {
+                node = new Node<>();
+                children.put(c, node);
+            }
+            return node;
+        }
+        
+    }
+    
+}
@@ -5,12 +5,14 @@ import chatty.Helper;
 import chatty.util.api.Emoticon;
 import chatty.util.api.EmoticonUpdate;
 import chatty.util.api.TwitchApi;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -67,10 +69,20 @@ public class BTTVEmotes {
     private void requestNow(String url, String stream) {
         UrlRequest request = new UrlRequest(url);
         request.setLabel("BTTV");
-        request.async((result, responseCode) -> {
-            if (responseCode == 200 && result != null) {
-                loadEmotes(result, stream);
-                RetryManager.getInstance().setSuccess(url);
+        request.asyncReader((reader, responseCode) -> {
+            if (responseCode == 200 && reader != null) {
+                try {
+                    loadEmotes(reader, stream);
+                    RetryManager.getInstance().setSuccess(url);
+                }
+                catch (IOException ex) {
+                    LOGGER.warning("|[BTTV] Error reading emotes: "+ex);
+                    RetryManager.getInstance().setError(url);
+                }
+                catch (ParseException ex) {
+                    LOGGER.warning("|[BTTV] Error parsing emotes: "+ex);
+                    RetryManager.getInstance().setSuccess(url);
+                }
             }
             else if (String.valueOf(responseCode).startsWith("4")) {
                 RetryManager.getInstance().setNotFound(url);
@@ -93,24 +105,49 @@ public class BTTVEmotes {
      * restriction. The channel restriction can be "$global$" which means all
      * channels.
      * 
-     * @param json The JSON
+     * <p>
+     * The emotes are parsed one after another from the response, so only a
+     * single emote at a time has to be kept as JSON.
+     * </p>
+     * 
+     * @param reader The response containing the JSON
      * @param streamRestriction
      * @return 
+     * @throws IOException
+     * @throws ParseException 
      */
-    private int loadEmotes(String json, String streamRestriction) {
-        Set<Emoticon> emotes;
+    private int loadEmotes(Reader reader, String streamRestriction) throws IOException, ParseException {
+        Set<Emoticon> emotes = new HashSet<>();
         Set<String> bots = new HashSet<>();
         if (streamRestriction != null && streamRestriction.equals(GLOBAL)) {
             streamRestriction = null;
         }
         
+        String channelRestriction = streamRestriction;
+        Consumer<Object> emoteConsumer = o -> {
+            if (o instanceof JSONObject) {
+                Emoticon emote = parseEmote((JSONObject) o, TEMPLATE,
+                        channelRestriction);
+                if (emote != null) {
+                    emotes.add(emote);
+                }
+            }
+        };
+        JSONStream stream = new JSONStream();
         if (streamRestriction == null) {
-            emotes = parseGlobalEmotes(json);
+            stream.onArrayItem("", emoteConsumer);
         }
         else {
-            emotes = parseChannelEmotes(json, streamRestriction);
-            bots = parseBots(json);
+            stream.onArrayItem("channelEmotes", emoteConsumer);
+            stream.onArrayItem("sharedEmotes", emoteConsumer);
+            stream.onArrayItem("bots", o -> {
+                if (o instanceof String) {
+                    bots.add((String) o);
+                }
+            });
         }
+        stream.parse(reader);
+        
         LOGGER.info("|[BTTV] Found " + emotes.size() + " emotes / "+bots.size()+" bots");
         EmoticonUpdate.Builder updateBuilder = new EmoticonUpdate.Builder(emotes);
         updateBuilder.setTypeToRemove(Emoticon.Type.BTTV);
@@ -120,92 +157,6 @@ public class BTTVEmotes {
         return emotes.size();
     }
     
-    /**
-     * Parse list of bots from the given JSON.
-     * 
-     * @param json
-     * @return 
-     */
-    private static Set<String> parseBots(String json) {
-        Set<String> result = new HashSet<>();
-        if (json == null) {
-            return result;
-        }
-        JSONParser parser = new JSONParser();
-        try {
-            JSONObject root = (JSONObject)parser.parse(json);
-            JSONArray botsArray = (JSONArray)root.get("bots");
-            if (botsArray == null) {
-                // No bots for this channel
-                return result;
-            }
-            for (Object o : botsArray) {
-                result.add((String)o);
-            }
-        } catch (ParseException | ClassCastException ex) {
-            LOGGER.warning("|[BTTV] Error parsing bots: "+ex);
-        }
-        return result;
-    }
-    
-    private static Set<Emoticon> parseGlobalEmotes(String json) {
-        try {
-            JSONParser parser = new JSONParser();
-            JSONArray root = (JSONArray)parser.parse(json);
-            if (root != null) {
-                return parseEmotes(root, null);
-            }
-        }
-        catch (Exception ex) {
-            LOGGER.warning("|[BTTV] Error parsing global emotes: "+ex);
-        }
-        return new HashSet<>();
-    }
-    
-    private static Set<Emoticon> parseChannelEmotes(String json, String streamRestriction) {
-        Set<Emoticon> result = new HashSet<>();
-        try {
-            JSONParser parser = new JSONParser();
-            JSONObject root = (JSONObject)parser.parse(json);
-            if (root != null) {
-                
-                result.addAll(parseEmotes((JSONArray)root.get("channelEmotes"), streamRestriction));
-                result.addAll(parseEmotes((JSONArray)root.get("sharedEmotes"), streamRestriction));
-            }
-        }
-        catch (Exception ex) {
-            LOGGER.warning("|[BTTV] Error parsing channel emotes: "+ex);
-        }
-        return result;
-    }
-    
-    /**
-     * Parse emotes from the given JSON.
-     * 
-     * @param json
-     * @param channelRestriction
-     * @return 
-     */
-    private static Set<Emoticon> parseEmotes(JSONArray data, String channelRestriction) {
-        Set<Emoticon> emotes = new HashSet<>();
-        try {
-            for (Object o : data) {
-                if (o instanceof JSONObject) {
-                    Emoticon emote = parseEmote((JSONObject)o, TEMPLATE,
-                            channelRestriction);
-                    if (emote != null) {
-                        emotes.add(emote);
-                    }
-                }
-            }
-        } catch (ClassCastException ex) {
-            // ClassCastException is also caught in parseEmote(), so it won't
-            // quit completely when one emote is invalid.
-            LOGGER.warning("|[BTTV] Error parsing emotes: "+ex);
-        }
-        return emotes;
-    }
-    
     /**
      * Parse a single emote from the given JSONObject.
      * 
@@ -0,0 +1,105 @@
+
+package chatty.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts identical messages from different users in a channel within a
+ * timeframe, to detect the same message being copy-pasted by several users.
+ * Messages are compared by their prepared similarity text (so whitespace and
+ * ignored characters don't matter), which only requires a hash lookup per
+ * message instead of comparing it to other messages.
+ * 
+ * <p>
+ * Not thread-safe.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class ChannelRepeatCounter {
+    
+    /**
+     * Max number of messages to remember, so busy channels with a long
+     * timeframe don't use too much memory.
+     */
+    private static final int MAX_ENTRIES = 5000;
+    
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final Map<String, Counts> counts = new HashMap<>();
+    
+    /**
+     * Add a message and return how often it occured from other users.
+     * 
+     * @param text The prepared message text
+     * @param username The user that sent the message
+     * @param time The time the message was received (milliseconds)
+     * @param timeframe How far back messages count (milliseconds)
+     * @return The number of identical messages from other users in the
+     * timeframe, not including this one
+     */
+    public int add(String text, String username, long time, long timeframe) {
+        removeOld(time - timeframe);
+        Counts c = counts.computeIfAbsent(text, t -> new Counts());
+        int result = c.total - c.byUser.getOrDefault(username, 0);
+        c.total++;
+        c.byUser.merge(username, 1, Integer::sum);
+        entries.add(new Entry(text, username, time));
+        if (entries.size() > MAX_ENTRIES) {
+            remove(entries.pollFirst());
+        }
+        return result;
+    }
+    
+    public void clear() {
+        entries.clear();
+        counts.clear();
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    private void removeOld(long until) {
+        while (!entries.isEmpty() && entries.peekFirst().time < until) {
+            remove(entries.pollFirst());
+        }
+    }
+    
+    private void remove(Entry entry) {
+        Counts c = counts.get(entry.text);
+        if (c == null) {
+            return;
+        }
+        c.total--;
+        if (c.total <= 0) {
+            counts.remove(entry.text);
+        }
+        else {
+            c.byUser.computeIfPresent(entry.username, (k, v) -> v > 1 ? v - 1 : null);
+        }
+    }
+    
+    private static class Entry {
+        
+        private final String text;
+        private final String username;
+        private final long time;
+        
+        Entry(String text, String username, long time) {
+            this.text = text;
+            this.username = username;
+            this.time = time;
+        }
+        
+    }
+    
+    private static class Counts {
+        
+        private int total;
+        private final Map<String, Integer> byUser = new HashMap<>();
+        
+    }
+    
+}
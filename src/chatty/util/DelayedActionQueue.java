@@ -3,6 +3,7 @@ package chatty.util;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 /**
@@ -68,6 +69,15 @@ public class DelayedActionQueue<E> {
         q.clear();
     }
     
+    /**
+     * Removes all elements from the queue that match the given filter.
+     * 
+     * @param filter 
+     */
+    public void removeIf(Predicate<E> filter) {
+        q.removeIf(filter);
+    }
+    
     /**
      * Thread that reads an item (or blocks if none is available) sends it to
      * the listener and then waits for the specified delay.
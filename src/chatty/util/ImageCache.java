@@ -2,6 +2,7 @@
 package chatty.util;
 
 import chatty.util.gif.GifUtil;
+import chatty.util.http.HttpPool;
 import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.MediaTracker;
@@ -12,9 +13,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
@@ -26,11 +30,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.ImageIcon;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
 
 /**
  * Allows the use of getImage() methods that get an image from an URL, while
@@ -68,6 +76,12 @@ public class ImageCache {
     private static volatile Path defaultPath = Paths.get("");
     private static volatile boolean cachingEnabled = true;
     
+    /**
+     * Directories that have already been created (or already existed), so
+     * they don't have to be checked again for every image.
+     */
+    private static final Set<Path> createdDirs = ConcurrentHashMap.newKeySet();
+    
     /**
      * Sets the default image cache Path, used by some functions.
      * 
@@ -129,6 +143,8 @@ public class ImageCache {
      * @return The number of deleted files, or -1 if failed
      */
     private static int clearCache(Path path, String prefix) {
+        createdDirs.clear();
+        ImageMemoryCache.clear();
         try {
             File dir = path.toRealPath().toFile();
             String fullPrefix;
@@ -378,6 +394,12 @@ public class ImageCache {
      * written to the cache.
      * </p>
      * 
+     * <p>
+     * Recently loaded images are also kept in the {@link ImageMemoryCache},
+     * in which case the files are not accessed at all (as long as the image
+     * isn't expired).
+     * </p>
+     * 
      * @param url The URL to get the image from (also used to determine the
      * cache filename
      * @param path The Path to use as cache directory
@@ -392,24 +414,56 @@ public class ImageCache {
         String id = sha1(request.requestedURL.toString());
         
         path = path.resolve(GLOBAL_PREFIX+prefix).resolve(id.substring(0, 1));
-        path.toFile().mkdirs();
         Path file = path.resolve(getFilename(prefix, id));
-        ImageResult result = null;
+        String memoryKey = getMemoryKey(file, request);
+        ImageResult result = ImageMemoryCache.getDecoded(memoryKey, expireTime);
+        if (result != null) {
+            try {
+                request.setCacheFile(file);
+            } catch (MalformedURLException ex) {
+                // Only informational
+            }
+            return result;
+        }
+        createDirs(path);
         
         Object o = getLockObject(id);
         synchronized(o) {
             result = getCachedImage2(request, file, expireTime);
         }
         removeLockObject(id);
+        if (result != null) {
+            ImageMemoryCache.putDecoded(memoryKey, result, file.toFile().lastModified());
+        }
         return result;
     }
     
+    /**
+     * The key for the decoded image in the memory cache, depending on the file
+     * (which depends on the URL) and anything affecting the size.
+     */
+    private static String getMemoryKey(Path file, ImageRequest request) {
+        return String.format(Locale.ROOT, "%s|%d|%s|%d|%s|%s",
+                file, request.urlFactor, request.scaleFactor, request.maxHeight,
+                request.defaultSize, request.resize);
+    }
+    
+    private static void createDirs(Path dir) {
+        if (!createdDirs.contains(dir)) {
+            File f = dir.toFile();
+            if (f.mkdirs() || f.isDirectory()) {
+                createdDirs.add(dir);
+            }
+        }
+    }
+    
     private static ImageResult getCachedImage2(ImageRequest request, Path file, int expireTime) {
         ImageResult fromFile = getImageFromFile(file, request);
         if (fromFile == null) {
             // The image was NOT read from file successfully
             //System.out.println("Loading image from server (cache not found)"+url);
             if (saveFile(request.requestedURL, file)) {
+                ImageMemoryCache.removeEncoded(file.toString());
                 fromFile = getImageFromFile(file, request);
             }
         } else {
@@ -418,6 +472,7 @@ public class ImageCache {
                 //System.out.println("Loading image from server (expired)"+url);
                 if (saveFile(request.requestedURL, file)) {
                     // Only use new image from file if it was saved successfully
+                    ImageMemoryCache.removeEncoded(file.toString());
                     fromFile = getImageFromFile(file, request);
                 }
             }
@@ -440,6 +495,20 @@ public class ImageCache {
     
     private static boolean saveFile(URL url, Path file) {
         try {
+            URI uri = getHttpUri(url);
+            if (uri != null) {
+                // Reuse connections, since images are often from the same host
+                return HttpPool.execute(new HttpGet(uri), 30*1000, 30*1000, response -> {
+                    if (!HttpPool.isSuccess(response) || response.getEntity() == null) {
+                        EntityUtils.consume(response.getEntity());
+                        LOGGER.warning("Error saving " + url + " to " + file + ": HTTP " + response.getCode());
+                        return false;
+                    }
+                    try (InputStream is = response.getEntity().getContent()) {
+                        return Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING) > 0;
+                    }
+                });
+            }
             URLConnection c = url.openConnection();
             try (InputStream is = c.getInputStream()) {
                 long written = Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING);
@@ -453,11 +522,35 @@ public class ImageCache {
         return false;
     }
     
+    /**
+     * Get the URI for a http/https URL, for use with the HttpPool.
+     * 
+     * @param url
+     * @return The URI, or null if it's another protocol or not a valid URI
+     */
+    private static URI getHttpUri(URL url) {
+        String protocol = url.getProtocol();
+        if (protocol.equals("http") || protocol.equals("https")) {
+            try {
+                return url.toURI();
+            } catch (URISyntaxException ex) {
+                // Use URLConnection instead
+            }
+        }
+        return null;
+    }
+    
     private static ImageResult getImageFromFile(Path file, ImageRequest request) {
         try {
             request.setCacheFile(file);
-            return GifUtil.getGifFromUrl(request);
-        } catch (FileNotFoundException ex) {
+            String key = file.toString();
+            byte[] data = ImageMemoryCache.getEncoded(key);
+            if (data == null) {
+                data = Files.readAllBytes(file);
+                ImageMemoryCache.putEncoded(key, data);
+            }
+            return GifUtil.getGifFromBytes(data, request);
+        } catch (FileNotFoundException | NoSuchFileException ex) {
             // Fail silently, images are expected to often be not cached yet
         } catch (Exception ex) {
             LOGGER.warning("Error loading image from file: "+ex+" "+Debugging.getStacktrace(ex));
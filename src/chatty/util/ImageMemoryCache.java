@@ -0,0 +1,194 @@
+
+package chatty.util;
+
+import chatty.util.ImageCache.ImageResult;
+import chatty.util.gif.AnimatedImageSource;
+import java.awt.Image;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.swing.ImageIcon;
+
+/**
+ * Keeps recently loaded images in memory, in front of the {@link ImageCache}
+ * files, so images that are requested again (e.g. an emote that is used again
+ * after the CachedImage was removed) don't have to be read from disk and
+ * decoded again.
+ * 
+ * <p>
+ * Both decoded images (by URL and scaling) and the encoded file contents (by
+ * file, so a different scaling of the same image only has to be decoded) are
+ * stored. All entries share a single size limit, which is an estimate of the
+ * memory used, and the least recently used entries are removed first.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class ImageMemoryCache {
+    
+    private static final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private static long maxBytes = 32 * 1024 * 1024;
+    private static long bytes;
+    private static long hits;
+    private static long misses;
+    
+    /**
+     * Set the max size of all entries. Removes entries if necessary.
+     * 
+     * @param limit The size in bytes, 0 to disable caching
+     */
+    public static synchronized void setMaxBytes(long limit) {
+        maxBytes = Math.max(limit, 0);
+        trim(maxBytes);
+    }
+    
+    /**
+     * Get a decoded image.
+     * 
+     * @param key The key identifying the URL and scaling
+     * @param maxAge Entries older than this (in seconds, 0 or less for no
+     * limit) are not returned, based on when the image data was last updated
+     * @return A new ImageResult with a new ImageIcon (the Image itself is
+     * shared), or null if none is cached
+     */
+    public static ImageResult getDecoded(String key, int maxAge) {
+        Entry entry = getEntry("d:"+key, maxAge);
+        if (entry == null) {
+            return null;
+        }
+        ImageResult cached = (ImageResult) entry.value;
+        ImageIcon icon = new ImageIcon(cached.icon.getImage(), cached.icon.getDescription());
+        return new ImageResult(icon, cached.actualBaseSize, cached.loadedAsGif);
+    }
+    
+    /**
+     * Add a decoded image.
+     * 
+     * @param key The key identifying the URL and scaling
+     * @param result The result, only added if it's a valid image
+     * @param time When the image data was last updated (milliseconds)
+     */
+    public static void putDecoded(String key, ImageResult result, long time) {
+        if (result != null && result.isValidImage()) {
+            // Store separate ImageIcon, in case the returned one is modified
+            ImageIcon icon = new ImageIcon(result.icon.getImage(), result.icon.getDescription());
+            putEntry("d:"+key, new ImageResult(icon, result.actualBaseSize, result.loadedAsGif),
+                    getSize(result), time);
+        }
+    }
+    
+    /**
+     * Get the encoded image data of a file.
+     * 
+     * @param file The file (as String, for use as key)
+     * @return The data (must not be modified), or null if none is cached
+     */
+    public static byte[] getEncoded(String file) {
+        Entry entry = getEntry("e:"+file, 0);
+        return entry != null ? (byte[]) entry.value : null;
+    }
+    
+    /**
+     * Add the encoded image data of a file.
+     * 
+     * @param file The file (as String, for use as key)
+     * @param data The data (must not be modified after this)
+     */
+    public static void putEncoded(String file, byte[] data) {
+        putEntry("e:"+file, data, data.length + 16, 0);
+    }
+    
+    /**
+     * Remove the encoded image data of a file, for example because the file
+     * changed.
+     * 
+     * @param file The file (as String, for use as key)
+     */
+    public static synchronized void removeEncoded(String file) {
+        remove("e:"+file);
+    }
+    
+    private static synchronized Entry getEntry(String key, int maxAge) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (maxAge > 0 && System.currentTimeMillis() - entry.time > maxAge * 1000L) {
+            remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry;
+    }
+    
+    private static synchronized void putEntry(String key, Object value, long size, long time) {
+        if (size > maxBytes) {
+            return;
+        }
+        remove(key);
+        trim(maxBytes - size);
+        cache.put(key, new Entry(value, size, time));
+        bytes += size;
+    }
+    
+    private static void remove(String key) {
+        Entry removed = cache.remove(key);
+        if (removed != null) {
+            bytes -= removed.size;
+        }
+    }
+    
+    private static void trim(long target) {
+        Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+        while (bytes > target && it.hasNext()) {
+            bytes -= it.next().getValue().size;
+            it.remove();
+        }
+    }
+    
+    /**
+     * Estimated memory used by a decoded image. Animated images store their
+     * frames compressed, so roughly one byte per pixel is assumed for those.
+     */
+    private static long getSize(ImageResult result) {
+        long pixels = (long) result.icon.getIconWidth() * result.icon.getIconHeight();
+        Image image = result.icon.getImage();
+        if (image.getSource() instanceof AnimatedImageSource) {
+            int frames = ((AnimatedImageSource) image.getSource()).getAnimatedImage().getFrameCount();
+            return pixels * frames + 64;
+        }
+        return pixels * 4 + 64;
+    }
+    
+    public static synchronized long getBytes() {
+        return bytes;
+    }
+    
+    public static synchronized void clear() {
+        cache.clear();
+        bytes = 0;
+    }
+    
+    public static synchronized String getInfo() {
+        return String.format("[Image Memory Cache] %d entries, %dKB/%dKB, %d hits, %d misses",
+                cache.size(), bytes / 1024, maxBytes / 1024, hits, misses);
+    }
+    
+    private static class Entry {
+        
+        private final Object value;
+        private final long size;
+        private final long time;
+        
+        private Entry(Object value, long size, long time) {
+            this.value = value;
+            this.size = size;
+            this.time = time;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,284 @@
+
+package chatty.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Parses JSON as a stream of events, only building the parts that are
+ * actually needed, instead of a tree of the whole document.
+ * 
+ * <p>
+ * Each item of an array at a registered path is built as a small separate
+ * tree (e.g. a JSONObject for one emote) and given to the consumer, after
+ * which it can be discarded. Registered values are collected as they are
+ * encountered. Everything else is skipped.
+ * </p>
+ * 
+ * <p>
+ * A path consists of the object keys from the root, separated by dots (e.g.
+ * "emote_set.emotes"). A "*" matches any key. Arrays that are not registered
+ * don't add to the path. The root itself is the empty path.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class JSONStream {
+    
+    private final Map<String, Consumer<Object>> itemPaths = new HashMap<>();
+    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Integer> counts = new HashMap<>();
+    
+    /**
+     * Give each item of the array at the given path to the consumer, in the
+     * order they appear in.
+     * 
+     * @param path The path of the array
+     * @param consumer Receives each item (JSONObject, JSONArray, String,
+     * Number, Boolean or null)
+     * @return This object
+     */
+    public JSONStream onArrayItem(String path, Consumer<Object> consumer) {
+        itemPaths.put(path, consumer);
+        return this;
+    }
+    
+    /**
+     * Collect the primitive value at the given path, which can then be
+     * retrieved with {@link #getValue(String)} after parsing.
+     * 
+     * @param path The path of the value
+     * @return This object
+     */
+    public JSONStream onValue(String path) {
+        values.put(path, null);
+        return this;
+    }
+    
+    /**
+     * The value found at the given path.
+     * 
+     * @param path The path as registered with {@link #onValue(String)}
+     * @return The value, or null if none was found
+     */
+    public Object getValue(String path) {
+        return values.get(path);
+    }
+    
+    /**
+     * The number of items of the array at the given path (summed up, if it
+     * matched several arrays).
+     * 
+     * @param path The path as registered with
+     * {@link #onArrayItem(String, Consumer)}
+     * @return The number of items, or -1 if the array wasn't found
+     */
+    public int getCount(String path) {
+        return counts.getOrDefault(path, -1);
+    }
+    
+    public void parse(String json) throws ParseException {
+        try {
+            parse(new StringReader(json));
+        }
+        catch (IOException ex) {
+            // Shouldn't happen for a String
+            throw new ParseException(ParseException.ERROR_UNEXPECTED_EXCEPTION, ex);
+        }
+    }
+    
+    /**
+     * Parse the JSON read from the given reader. The consumers are called
+     * during parsing.
+     * 
+     * @param reader The reader
+     * @throws IOException If reading fails
+     * @throws ParseException If the JSON is invalid
+     */
+    public void parse(Reader reader) throws IOException, ParseException {
+        new JSONParser().parse(reader, new Handler());
+    }
+    
+    private static boolean matches(String pattern, List<String> keys) {
+        int keyIndex = 0;
+        int start = 0;
+        if (pattern.isEmpty()) {
+            return keys.isEmpty();
+        }
+        while (start <= pattern.length()) {
+            int end = pattern.indexOf('.', start);
+            if (end == -1) {
+                end = pattern.length();
+            }
+            if (keyIndex >= keys.size()) {
+                return false;
+            }
+            String segment = pattern.substring(start, end);
+            if (!segment.equals("*") && !segment.equals(keys.get(keyIndex))) {
+                return false;
+            }
+            keyIndex++;
+            start = end + 1;
+        }
+        return keyIndex == keys.size();
+    }
+    
+    private String findPath(Iterable<String> paths, List<String> keys) {
+        for (String path : paths) {
+            if (matches(path, keys)) {
+                return path;
+            }
+        }
+        return null;
+    }
+    
+    private class Handler implements ContentHandler {
+        
+        /**
+         * The object keys leading to the current position.
+         */
+        private final List<String> keys = new ArrayList<>();
+        
+        /**
+         * The containers of the item currently being built.
+         */
+        private final List<Object> building = new ArrayList<>();
+        
+        /**
+         * The path of the registered array currently in, or null.
+         */
+        private String itemPath;
+        private Consumer<Object> itemConsumer;
+        
+        @Override
+        public void startJSON() {
+        }
+        
+        @Override
+        public void endJSON() {
+        }
+        
+        @Override
+        public boolean startObject() {
+            if (isBuilding()) {
+                startContainer(new JSONObject());
+            }
+            return true;
+        }
+        
+        @Override
+        public boolean endObject() {
+            endContainer();
+            return true;
+        }
+        
+        @Override
+        public boolean startObjectEntry(String key) {
+            keys.add(key);
+            return true;
+        }
+        
+        @Override
+        public boolean endObjectEntry() {
+            keys.remove(keys.size() - 1);
+            return true;
+        }
+        
+        @Override
+        public boolean startArray() {
+            if (isBuilding()) {
+                startContainer(new JSONArray());
+            }
+            else {
+                String path = findPath(itemPaths.keySet(), keys);
+                if (path != null) {
+                    itemPath = path;
+                    itemConsumer = itemPaths.get(path);
+                    counts.putIfAbsent(path, 0);
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public boolean endArray() {
+            if (!building.isEmpty()) {
+                endContainer();
+            }
+            else {
+                // End of the registered array (or an unregistered one)
+                itemPath = null;
+                itemConsumer = null;
+            }
+            return true;
+        }
+        
+        @Override
+        public boolean primitive(Object value) {
+            if (isBuilding()) {
+                addValue(value);
+                if (building.isEmpty()) {
+                    itemDone(value);
+                }
+            }
+            else if (!values.isEmpty()) {
+                String path = findPath(values.keySet(), keys);
+                if (path != null) {
+                    values.put(path, value);
+                }
+            }
+            return true;
+        }
+        
+        private boolean isBuilding() {
+            return itemPath != null;
+        }
+        
+        private void startContainer(Object container) {
+            addValue(container);
+            building.add(container);
+        }
+        
+        private void endContainer() {
+            if (building.isEmpty()) {
+                return;
+            }
+            Object container = building.remove(building.size() - 1);
+            if (building.isEmpty()) {
+                itemDone(container);
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void addValue(Object value) {
+            if (building.isEmpty()) {
+                return;
+            }
+            Object parent = building.get(building.size() - 1);
+            if (parent instanceof JSONObject) {
+                ((JSONObject) parent).put(keys.get(keys.size() - 1), value);
+            }
+            else {
+                ((JSONArray) parent).add(value);
+            }
+        }
+        
+        private void itemDone(Object item) {
+            counts.put(itemPath, counts.get(itemPath) + 1);
+            itemConsumer.accept(item);
+        }
+        
+    }
+    
+}
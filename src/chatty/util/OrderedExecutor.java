@@ -0,0 +1,134 @@
+
+package chatty.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks on a pool of threads, but tasks with the same key one after the
+ * other, in the order they were added. Tasks with different keys may run at
+ * the same time.
+ * 
+ * <p>
+ * For example with the channel as key, messages of different channels can be
+ * processed in parallel, while the messages of each channel stay in order.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class OrderedExecutor {
+    
+    private static final Logger LOGGER = Logger.getLogger(OrderedExecutor.class.getName());
+    
+    /**
+     * How many tasks of a key to run at most before giving other keys a
+     * chance (the remaining tasks of the key are queued again).
+     */
+    private static final int BATCH_SIZE = 50;
+    
+    private final ThreadPoolExecutor executor;
+    private final Map<Object, Queue<Runnable>> queues = new HashMap<>();
+    
+    public OrderedExecutor(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, name+"-"+count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * Add a task. Runs after all tasks previously added with the same key
+     * have finished.
+     * 
+     * @param key The key, must be usable as HashMap key
+     * @param task The task
+     */
+    public void execute(Object key, Runnable task) {
+        synchronized (queues) {
+            Queue<Runnable> queue = queues.get(key);
+            if (queue != null) {
+                // Already being run, so will be picked up from there
+                queue.add(task);
+                return;
+            }
+            queue = new ArrayDeque<>();
+            queue.add(task);
+            queues.put(key, queue);
+        }
+        executor.execute(() -> run(key));
+    }
+    
+    /**
+     * Pass the action on to the target (e.g. the EDT) once all tasks
+     * previously added with the same key have finished. If those tasks also
+     * passed something on to the same target, the action runs after that.
+     * 
+     * <p>
+     * For example a ban can be added like this, so it is only applied on the
+     * EDT after the messages received before it have been printed.
+     * </p>
+     * 
+     * @param key The key, must be usable as HashMap key
+     * @param target The executor to run the action on
+     * @param action The action
+     */
+    public void executeAfter(Object key, Executor target, Runnable action) {
+        execute(key, () -> target.execute(action));
+    }
+    
+    private void run(Object key) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Runnable task;
+            synchronized (queues) {
+                Queue<Runnable> queue = queues.get(key);
+                task = queue.peek();
+                if (task == null) {
+                    queues.remove(key);
+                    return;
+                }
+            }
+            try {
+                task.run();
+            }
+            catch (Exception ex) {
+                LOGGER.log(Level.WARNING, "Error running task", ex);
+            }
+            synchronized (queues) {
+                queues.get(key).poll();
+            }
+        }
+        // More tasks may be left, continue after the other keys
+        executor.execute(() -> run(key));
+    }
+    
+    /**
+     * The number of tasks that haven't finished yet.
+     * 
+     * @return
+     */
+    public int getQueued() {
+        synchronized (queues) {
+            int result = 0;
+            for (Queue<Runnable> queue : queues.values()) {
+                result += queue.size();
+            }
+            return result;
+        }
+    }
+    
+}
@@ -7,6 +7,8 @@ import chatty.gui.Highlighter;
 import chatty.gui.Highlighter.HighlightItem;
 import chatty.util.irc.MsgTags;
 import chatty.util.settings.Settings;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  *
@@ -25,6 +27,12 @@ public class RepeatMsgHelper {
     private float minSim;
     private int method;
     private char[] ignoredChars;
+    private boolean channelWide;
+    
+    /**
+     * Identical messages from different users, per channel.
+     */
+    private final Map<String, ChannelRepeatCounter> channels = new HashMap<>();
     
     public RepeatMsgHelper(Settings settings) {
         this.settings = settings;
@@ -38,7 +46,8 @@ public class RepeatMsgHelper {
     }
     
     /**
-     * Must be used in EDT.
+     * Can be used from any thread, however messages of the same user should
+     * be checked in order (and added to the User before the next one).
      * 
      * @param user
      * @param localUser
@@ -46,7 +55,7 @@ public class RepeatMsgHelper {
      * @param tags
      * @return 
      */
-    public MsgTags check(User user, User localUser, String text, MsgTags tags) {
+    public synchronized MsgTags check(User user, User localUser, String text, MsgTags tags) {
         if (matcher == null) {
             return tags;
         }
@@ -56,7 +65,12 @@ public class RepeatMsgHelper {
         if (!matcher.matches(Highlighter.HighlightItem.Type.REGULAR, text, user, localUser, tags)) {
             return tags;
         }
-        int repCount = user.getNumberOfSimilarChatMessages(text, method, time, minSim, minLen, ignoredChars) + 1;
+        SimilarityFingerprint fingerprint = SimilarityFingerprint.create(text, ignoredChars);
+        int repCount = user.getNumberOfSimilarChatMessages(fingerprint, method, time, minSim, minLen, ignoredChars) + 1;
+        if (channelWide) {
+            ChannelRepeatCounter counter = channels.computeIfAbsent(user.getChannel(), c -> new ChannelRepeatCounter());
+            repCount += counter.add(fingerprint.getText(), user.getName(), System.currentTimeMillis(), time * 1000);
+        }
         if (repCount >= minRep) {
             // Plus one count to include the current message
             return MsgTags.addTag(tags, TAGS_KEY, String.valueOf(repCount));
@@ -65,14 +79,14 @@ public class RepeatMsgHelper {
     }
     
     /**
-     * Must be used in EDT.
+     * Can be used from any thread.
      * 
      * @param user
      * @param a
      * @param b
      * @return 
      */
-    public int getPercentage(User user, String a, String b) {
+    public synchronized int getPercentage(User user, String a, String b) {
         if (matcher == null) {
             return 0;
         }
@@ -85,6 +99,16 @@ public class RepeatMsgHelper {
         return (int)Math.floor(sim * 100);
     }
     
+    /**
+     * Remove the counted messages of a channel that has been left or closed.
+     * Can be used from any thread.
+     * 
+     * @param channel 
+     */
+    public synchronized void channelLeft(String channel) {
+        channels.remove(channel);
+    }
+    
     public static int getRepeatMsg(MsgTags tags) {
         String value = tags.get(TAGS_KEY);
         if (value != null) {
@@ -98,7 +122,7 @@ public class RepeatMsgHelper {
         return 0;
     }
     
-    public void loadSettings() {
+    public synchronized void loadSettings() {
         if (settings.getBoolean("repeatMsg")) {
             matcher = new HighlightItem(settings.getString("repeatMsgMatch"));
             time = settings.getLong("repeatMsgTime");
@@ -110,9 +134,14 @@ public class RepeatMsgHelper {
             if (ignoredChars.length == 0) {
                 ignoredChars = null;
             }
+            channelWide = settings.getBoolean("repeatMsgChannel");
         }
         else {
             matcher = null;
+            channelWide = false;
+        }
+        if (!channelWide) {
+            channels.clear();
         }
     }
     
@@ -0,0 +1,184 @@
+
+package chatty.util;
+
+import java.util.Arrays;
+
+/**
+ * The prepared form of a message for similarity comparisons, so that removing
+ * whitespace/ignored characters and splitting into bigrams only has to be done
+ * once per message, instead of every time it is compared to another message.
+ * 
+ * <p>
+ * The result of {@link #checkSimilarity(SimilarityFingerprint, float, int)} is
+ * the same as {@link StringUtil#checkSimilarity(String, String, float, int)}
+ * with the prepared Strings, however the bigrams are stored as sorted arrays,
+ * so comparing only requires going through both arrays once. Before that,
+ * upper bounds based on the length and number of bigrams are checked, which
+ * often allows skipping the comparison completely.
+ * </p>
+ * 
+ * <p>
+ * Instances are immutable.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class SimilarityFingerprint {
+    
+    private static final int[] EMPTY = new int[0];
+    
+    private final char[] ignoredChars;
+    private final String text;
+    
+    /**
+     * All bigrams, sorted, including duplicates.
+     */
+    private final int[] bigrams;
+    
+    /**
+     * All bigrams, sorted, without duplicates.
+     */
+    private final int[] uniqueBigrams;
+    
+    private SimilarityFingerprint(String text, char[] ignoredChars) {
+        this.ignoredChars = ignoredChars;
+        this.text = text;
+        if (text.length() < 2) {
+            bigrams = EMPTY;
+            uniqueBigrams = EMPTY;
+        }
+        else {
+            bigrams = new int[text.length() - 1];
+            for (int i = 0; i < text.length() - 1; i++) {
+                bigrams[i] = text.charAt(i) + (text.charAt(i + 1) << 16);
+            }
+            Arrays.sort(bigrams);
+            int unique = 1;
+            for (int i = 1; i < bigrams.length; i++) {
+                if (bigrams[i] != bigrams[i - 1]) {
+                    unique++;
+                }
+            }
+            uniqueBigrams = new int[unique];
+            uniqueBigrams[0] = bigrams[0];
+            int index = 1;
+            for (int i = 1; i < bigrams.length; i++) {
+                if (bigrams[i] != bigrams[i - 1]) {
+                    uniqueBigrams[index++] = bigrams[i];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Create a fingerprint for the given message.
+     * 
+     * @param input The message text
+     * @param ignoredChars Sorted characters to remove, in addition to
+     * whitespace (may be null)
+     * @return The fingerprint
+     */
+    public static SimilarityFingerprint create(String input, char[] ignoredChars) {
+        return new SimilarityFingerprint(StringUtil.prepareForSimilarityComparison(input, ignoredChars), ignoredChars);
+    }
+    
+    /**
+     * Check if this fingerprint was created with the given ignored characters.
+     * 
+     * @param ignoredChars
+     * @return true if this fingerprint can be used for those ignored
+     * characters
+     */
+    public boolean isFor(char[] ignoredChars) {
+        if (this.ignoredChars == ignoredChars) {
+            return true;
+        }
+        if (isEmpty(this.ignoredChars) && isEmpty(ignoredChars)) {
+            return true;
+        }
+        return Arrays.equals(this.ignoredChars, ignoredChars);
+    }
+    
+    private static boolean isEmpty(char[] chars) {
+        return chars == null || chars.length == 0;
+    }
+    
+    /**
+     * The message text with whitespace and ignored characters removed.
+     * 
+     * @return
+     */
+    public String getText() {
+        return text;
+    }
+    
+    /**
+     * Test the similarity to another fingerprint. Both should have been
+     * created with the same ignored characters.
+     * 
+     * @param other The other fingerprint
+     * @param min The minimum similarity score required
+     * @param method The comparison algorithm (1 or 2)
+     * @return The score if it reaches at least min, 0 otherwise
+     * @see StringUtil#checkSimilarity(String, String, float, int)
+     */
+    public float checkSimilarity(SimilarityFingerprint other, float min, int method) {
+        String a = text;
+        String b = other.text;
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1;
+        }
+        if (a.equals(b)) {
+            return 1 >= min ? 1 : 0;
+        }
+        if (a.length() < 2 || b.length() < 2) {
+            return 0;
+        }
+        float sim;
+        if (method == 2) {
+            int sizes = uniqueBigrams.length + other.uniqueBigrams.length;
+            // Upper bound, as if all bigrams of the smaller set were shared
+            float max = 2f * Math.min(uniqueBigrams.length, other.uniqueBigrams.length) / sizes;
+            if (max < min) {
+                return 0;
+            }
+            sim = 2f * countShared(uniqueBigrams, other.uniqueBigrams) / sizes;
+        }
+        else {
+            if (StringUtil.getLengthSimilarity(a, b) < min) {
+                return 0;
+            }
+            sim = 2f * countShared(bigrams, other.bigrams) / (a.length() + b.length() - 2);
+        }
+        return sim >= min ? sim : 0;
+    }
+    
+    /**
+     * Count the values both sorted arrays contain, where each value can only
+     * be counted as often as it occurs in both arrays.
+     * 
+     * @param a
+     * @param b
+     * @return
+     */
+    private static int countShared(int[] a, int[] b) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                count++;
+                i++;
+                j++;
+            }
+            else if (a[i] < b[j]) {
+                i++;
+            }
+            else {
+                j++;
+            }
+        }
+        return count;
+    }
+    
+}
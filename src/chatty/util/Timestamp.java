@@ -4,6 +4,7 @@ package chatty.util;
 import chatty.Room;
 import chatty.util.api.StreamInfo;
 import chatty.util.api.TwitchApi;
+import chatty.util.commands.CompiledCommand;
 import chatty.util.commands.CustomCommand;
 import chatty.util.commands.Parameters;
 import java.text.SimpleDateFormat;
@@ -58,7 +59,13 @@ public class Timestamp {
     /**
      * Optional CustomCommand to format the timestamp further (may be null).
      */
-    private final CustomCommand command;
+    private final CompiledCommand command;
+    
+    /**
+     * Shared with other Timestamp objects with the same input. Null if the
+     * format contains milliseconds, which the cache doesn't account for.
+     */
+    private final TimestampCache cache;
 
     /**
      * The timestamp input is a SimpleDateFormat format string, but may also
@@ -74,12 +81,14 @@ public class Timestamp {
      * must not be null
      */
     public Timestamp(String timestampInput, String timezone) {
+        String cacheKey = timestampInput+"|"+timezone+"|"+TimeZone.getDefault().getID();
         String customCommandInput = null;
         String[] split = timestampInput.split("###", 2);
         if (split.length == 2) {
             timestampInput = split[0];
             customCommandInput = split[1];
         }
+        cache = hasMilliseconds(timestampInput) ? null : TimestampCache.getShared(cacheKey);
         SimpleDateFormat parsedTimestamp = null;
         if (!timestampInput.equals("off")) {
             try {
@@ -96,12 +105,14 @@ public class Timestamp {
         format = parsedTimestamp;
         hasUptime = UPTIME.matcher(timestampInput).find();
 
-        CustomCommand parsedCommand = null;
+        CompiledCommand parsedCommand = null;
         if (customCommandInput != null) {
-            parsedCommand = CustomCommand.parse(customCommandInput);
-            if (parsedCommand.hasError()) {
-                LOGGER.warning("Timestamp command error: " + parsedCommand.getError());
-                parsedCommand = null;
+            CustomCommand parsed = CustomCommand.parse(customCommandInput);
+            if (parsed.hasError()) {
+                LOGGER.warning("Timestamp command error: " + parsed.getError());
+            }
+            else {
+                parsedCommand = parsed.compile();
             }
         }
         command = parsedCommand;
@@ -137,11 +148,25 @@ public class Timestamp {
      * optional CustomCommand returned null
      */
     public String make(long time, Room room) {
+        return make(time, room, false);
+    }
+    
+    /**
+     * Same as {@link #make(long, Room)}, but optionally with a space appended
+     * (which is also cached).
+     * 
+     * @param time The time to based the timestamp on, -1 for current time
+     * @param room The Room the timestamp belongs to, may be null
+     * @param appendSpace Whether to append a space to the timestamp
+     * @return The timestamp String, or null if isEnabled() is false or the
+     * optional CustomCommand returned null
+     */
+    public String make(long time, Room room, boolean appendSpace) {
         if (format != null && hasUptime && room != null && api != null) {
             StreamInfo info = api.getCachedStreamInfo(room.getStream());
-            return make2(time, info);
+            return make2(time, info, appendSpace);
         }
-        return make2(time, null);
+        return make2(time, null, appendSpace);
     }
 
     /**
@@ -155,10 +180,73 @@ public class Timestamp {
      * optional CustomCommand returned null
      */
     public String make2(long time, StreamInfo info) {
+        return make2(time, info, false);
+    }
+    
+    /**
+     * The result is cached per second (and stream uptime, if used), so the
+     * optional CustomCommand should only depend on the timestamp it is given.
+     */
+    private String make2(long time, StreamInfo info, boolean appendSpace) {
         if (format == null) {
             return null;
         }
-        String result = time > 0 ? DateTime.format(time, format) : DateTime.currentTime(format);
+        if (cache == null) {
+            String result = create(time, info);
+            return result != null && appendSpace ? result + " " : result;
+        }
+        long second = TimestampCache.second(time);
+        StreamInfo source = hasUptime ? info : null;
+        long bucket = (hasUptime ? uptimeBucket(time, info) : 0) * 2 + (appendSpace ? 1 : 0);
+        String cached = cache.get(second, source, bucket);
+        if (cached != null) {
+            return cached;
+        }
+        String result = create(time, info);
+        if (result != null && appendSpace) {
+            result += " ";
+        }
+        if (result != null) {
+            cache.put(second, source, bucket, result);
+        }
+        return result;
+    }
+    
+    /**
+     * Whether the SimpleDateFormat pattern contains the milliseconds field
+     * ("S" outside of quoted text).
+     * 
+     * @param pattern
+     * @return 
+     */
+    private static boolean hasMilliseconds(String pattern) {
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            else if (c == 'S' && !quoted) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Values that the stream uptime output depends on, besides the second.
+     */
+    private static long uptimeBucket(long time, StreamInfo info) {
+        long bucket = 0;
+        if (info != null) {
+            bucket = info.getTimeStarted() * 31 + info.getTimeStartedWithPicnic();
+            bucket = bucket * 2 + (info.isValid() && info.getOnline() ? 1 : 0);
+        }
+        return bucket * 2 + (time > 0 ? 1 : 0);
+    }
+    
+    private String create(long time, StreamInfo info) {
+        String result = DateTime.format(time > 0 ? time : System.currentTimeMillis(), format);
 
         // Uptime
         if (hasUptime) {
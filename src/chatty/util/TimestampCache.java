@@ -0,0 +1,125 @@
+
+package chatty.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches formatted timestamps for the current second, since many messages
+ * (in several channels, chat and log) are usually printed within the same
+ * second, which would all format the same time again.
+ * 
+ * <p>
+ * Instances are shared by key (e.g. the format), so everything using the same
+ * format also uses the same cache. Each instance stores a few entries, each
+ * for a second and an optional source and bucket (e.g. for the stream uptime,
+ * which depends on the stream). Retrieving a cached value doesn't allocate
+ * anything.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class TimestampCache {
+    
+    private static final int MAX_SHARED = 20;
+    private static final int SLOTS = 8;
+    
+    private static final Map<String, TimestampCache> shared = new LinkedHashMap<String, TimestampCache>(16, 0.75f, true) {
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TimestampCache> eldest) {
+            return size() > MAX_SHARED;
+        }
+        
+    };
+    
+    private final Entry[] slots = new Entry[SLOTS];
+    
+    /**
+     * Get the shared instance for the given key, creating it if necessary.
+     * Only a limited number of shared instances are kept, so this should be
+     * called when creating something that uses the cache, not every time the
+     * cache is used.
+     * 
+     * @param key The key (e.g. containing the format and timezone)
+     * @return The shared instance (never null)
+     */
+    public static TimestampCache getShared(String key) {
+        synchronized (shared) {
+            return shared.computeIfAbsent(key, k -> new TimestampCache());
+        }
+    }
+    
+    /**
+     * Get the cached value for the given second.
+     * 
+     * @param second The second (epoch milliseconds divided by 1000)
+     * @param source The source the value depends on (compared by reference),
+     * may be null
+     * @param bucket Additional value the cached value depends on, 0 if not
+     * used
+     * @return The cached value, or null if none is cached
+     */
+    public String get(long second, Object source, long bucket) {
+        Entry entry = slots[index(source, bucket)];
+        if (entry != null
+                && entry.second == second
+                && entry.source == source
+                && entry.bucket == bucket) {
+            return entry.value;
+        }
+        return null;
+    }
+    
+    /**
+     * Cache a value. Replaces whatever was cached for the same source and
+     * bucket (or another that happens to use the same slot).
+     * 
+     * @param second The second (epoch milliseconds divided by 1000)
+     * @param source The source the value depends on (compared by reference),
+     * may be null
+     * @param bucket Additional value the cached value depends on, 0 if not
+     * used
+     * @param value The value to cache
+     */
+    public void put(long second, Object source, long bucket, String value) {
+        slots[index(source, bucket)] = new Entry(second, source, bucket, value);
+    }
+    
+    private static int index(Object source, long bucket) {
+        int hash = System.identityHashCode(source) ^ Long.hashCode(bucket);
+        return (hash ^ (hash >>> 16)) & (SLOTS - 1);
+    }
+    
+    /**
+     * The second for the given time.
+     * 
+     * @param time Epoch milliseconds, 0 or less for the current time
+     * @return
+     */
+    public static long second(long time) {
+        return Math.floorDiv(time > 0 ? time : System.currentTimeMillis(), 1000);
+    }
+    
+    /**
+     * Entries are immutable and the slots array is only ever assigned a whole
+     * entry, so they can be read from several threads without locking (at
+     * worst a value is created again).
+     */
+    private static class Entry {
+        
+        private final long second;
+        private final Object source;
+        private final long bucket;
+        private final String value;
+        
+        private Entry(long second, Object source, long bucket, String value) {
+            this.second = second;
+            this.source = source;
+            this.bucket = bucket;
+            this.value = value;
+        }
+        
+    }
+    
+}
@@ -1,19 +1,29 @@
 
 package chatty.util;
 
-import chatty.Chatty;
+import chatty.util.http.HttpPool;
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
+import org.apache.hc.client5.http.HttpResponseException;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
 
 /**
  * General URL Request that just reads the whole file into a String.
@@ -26,7 +36,32 @@ public class UrlRequest {
     
     private static final Charset CHARSET = Charset.forName("UTF-8");
     
-    private static final String VERSION = "Chatty "+Chatty.VERSION;
+    /**
+     * Reuses threads for async requests. The number of concurrent connections
+     * is limited by the HttpPool. Daemon threads, so pending requests don't
+     * prevent the program from exiting.
+     */
+    private static final ExecutorService EXECUTOR;
+    
+    static {
+        AtomicInteger count = new AtomicInteger();
+        EXECUTOR = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "UrlRequest-"+count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Handles the response bodies of {@link #asyncReader(ResultReaderListener)}
+     * after the request is done, so parsing doesn't use a request thread or
+     * connection.
+     */
+    private static final ExecutorService PARSE_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "UrlRequest-Parse");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     private String url;
     
@@ -74,22 +109,41 @@ public class UrlRequest {
     }
 
     public void async(ResultListener listener) {
-        new Thread(() -> {
+        EXECUTOR.execute(() -> {
             FullResult result = new FullResult();
             performRequest(result);
             if (Debugging.isEnabled("requestresponse") && result.result != null) {
                 LOGGER.info(result.result);
             }
             listener.result(result.getResult(), result.getResponseCode());
-        }).start();
+        });
     }
     
     public void asyncLines(ResultLinesListener listener) {
-        new Thread(() -> {
+        EXECUTOR.execute(() -> {
             LinesResult result = new LinesResult();
             performRequest(result);
             listener.result(result.getResult(), result.getResponseCode());
-        }).start();
+        });
+    }
+    
+    /**
+     * Perform the request and give the response body to the listener as a
+     * Reader, instead of as a String. The body is read completely first, so
+     * the connection is released before the listener is called in a separate
+     * thread (one at a time, in the order the requests finished).
+     * 
+     * @param listener The listener, called once (with a null Reader if the
+     * request failed)
+     */
+    public void asyncReader(ResultReaderListener listener) {
+        EXECUTOR.execute(() -> {
+            ReaderResult result = new ReaderResult();
+            performRequest(result);
+            PARSE_EXECUTOR.execute(() -> {
+                listener.result(result.getReader(), result.getResponseCode());
+            });
+        });
     }
     
     public FullResult sync() {
@@ -112,44 +166,32 @@ public class UrlRequest {
      */
     private void performRequest(Result result) {
         LOGGER.info("<"+label+" "+url);
-        HttpURLConnection connection = null;
         try {
-            connection = (HttpURLConnection) new URL(url).openConnection();
-            connection.setRequestProperty("User-Agent", VERSION);
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            
-            connection.setConnectTimeout(connectTimeout);
-            connection.setReadTimeout(readTimeout);
-            String encoding = connection.getContentEncoding();
-            
-            // Read response
-            InputStream input = connection.getInputStream();
-            if ("gzip".equals(connection.getContentEncoding())) {
-                input = new GZIPInputStream(input);
-            }
-
-            int responseCode = connection.getResponseCode();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, CHARSET))) {
-                result.fill(reader, responseCode);
-            }
+            HttpGet request = new HttpGet(new URI(url));
+            String encoding = HttpPool.execute(request, connectTimeout, readTimeout, response -> {
+                result.responseCode = response.getCode();
+                if (!HttpPool.isSuccess(response)) {
+                    EntityUtils.consume(response.getEntity());
+                    throw new HttpResponseException(response.getCode(), response.getReasonPhrase());
+                }
+                Header encodingHeader = response.getFirstHeader("Content-Encoding");
+                HttpEntity entity = response.getEntity();
+                InputStream input = entity != null ? entity.getContent() : new ByteArrayInputStream(new byte[0]);
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, CHARSET))) {
+                    result.fill(reader, response.getCode());
+                }
+                return encodingHeader != null ? encodingHeader.getValue() : null;
+            });
             LOGGER.info(String.format(">%s (%s, %,d%s): %s",
                     label,
-                    responseCode,
+                    result.getResponseCode(),
                     result.getLength(),
                     (encoding != null ? ", " + encoding : ""),
                     url));
-        } catch (IOException ex) {
-            if (ex instanceof FileNotFoundException) {
-                result.responseCode = 404;
-            }
+        } catch (IOException | URISyntaxException ex) {
             LOGGER.warning(String.format("!%s (%s): %s",
                     label, ex, url));
             result.error = ex.getClass().getSimpleName()+" ("+ex.getLocalizedMessage()+")";
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
     
@@ -162,6 +204,17 @@ public class UrlRequest {
         public void result(List<String> lines, int responseCode);
     }
     
+    public interface ResultReaderListener {
+        
+        /**
+         * The result of the request.
+         * 
+         * @param reader The response body, null if an error occured
+         * @param responseCode The HTTP response code
+         */
+        public void result(Reader reader, int responseCode);
+    }
+    
     
     public static abstract class Result {
         
@@ -211,6 +264,37 @@ public class UrlRequest {
         }
     }
     
+    private static class ReaderResult extends Result {
+        
+        private CharArrayWriter result;
+        
+        @Override
+        public void fill(BufferedReader reader, int responseCode) throws IOException {
+            this.responseCode = responseCode;
+            CharArrayWriter writer = new CharArrayWriter();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                writer.write(buffer, 0, read);
+            }
+            length = writer.size();
+            result = writer;
+        }
+        
+        /**
+         * The response body.
+         * 
+         * @return A new Reader, or null if an error occured
+         */
+        public Reader getReader() {
+            if (result == null || error != null) {
+                return null;
+            }
+            return new CharArrayReader(result.toCharArray());
+        }
+        
+    }
+    
     public static class LinesResult extends Result {
         
         private List<String> result;
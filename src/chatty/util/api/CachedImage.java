@@ -4,22 +4,25 @@ package chatty.util.api;
 import chatty.util.ImageCache;
 import chatty.util.ImageCache.ImageRequest;
 import chatty.util.ImageCache.ImageResult;
+import chatty.util.Pair;
+import chatty.util.api.ImageLoader.Priority;
 import chatty.util.gif.AnimatedImageSource;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.RenderingHints;
+import java.awt.Window;
 import java.awt.image.BufferedImage;
 import java.util.Collections;
 import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 import java.util.logging.Logger;
 import javax.swing.ImageIcon;
-import javax.swing.SwingWorker;
+import javax.swing.SwingUtilities;
 
 /**
  * Used for loading an image concurrently for Emoticon and Usericon.
@@ -47,6 +50,13 @@ public class CachedImage<T> {
      * are refreshed.
      */
     private static final int CACHE_TIME = 60 * 60 * 24 * 14;
+    
+    /**
+     * Loads the images of all CachedImage objects, separately from other
+     * background tasks. Images that are painted (so probably visible) are
+     * loaded first.
+     */
+    private static final ImageLoader LOADER = new ImageLoader("ImageLoader", 4, 5000);
 
     public static interface CachedImageUser {
 
@@ -142,6 +152,7 @@ public class CachedImage<T> {
     private String loadedFrom;
 
     private boolean loading = false;
+    private volatile ImageLoader.Request loadRequest;
     private boolean loadingError = false;
     private boolean isLoaded = false;
     private volatile int loadingAttempts = 0;
@@ -234,7 +245,7 @@ public class CachedImage<T> {
             loadingError = false;
             loadingAttempts++;
             lastLoadingAttempt = System.currentTimeMillis();
-            (new IconLoader(this)).execute();
+            startLoading();
             return true;
         }
         return false;
@@ -309,7 +320,7 @@ public class CachedImage<T> {
      * @return
      */
     private ImageIcon getDefaultIcon(boolean error) {
-        return modifyIconIfNecessary(new ImageIcon(getDefaultImage(error)));
+        return modifyIconIfNecessary(new LoadingIcon(getDefaultImage(error)));
     }
     
     private ImageIcon modifyIconIfNecessary(ImageIcon icon) {
@@ -384,84 +395,137 @@ public class CachedImage<T> {
     //==========================
     // Load Image
     //==========================
+    
+    public static String getLoaderInfo() {
+        return LOADER.getInfo();
+    }
+    
     /**
-     * A Worker class to load the Icon. Not doing this in it's own thread can
-     * lead to lag when a lot of new icons are being loaded.
+     * Request the image from the loader, with background priority. The
+     * priority is raised when the placeholder image is painted.
+     * 
+     * <p>
+     * The request only references this object weakly, so it won't be loaded
+     * if the image isn't used anywhere anymore until the load starts.
+     * Requests for the same image from several CachedImage objects (e.g. the
+     * same emote and size used in different contexts) are only loaded once.
+     * </p>
      */
-    private class IconLoader extends SwingWorker<ImageIcon, Object> {
-
-        private final CachedImage<T> image;
+    private void startLoading() {
+        // Get the assumed size or size loaded from the size cache
+        Dimension defaultSize = requester.getBaseSize();
 
-        public IconLoader(CachedImage<T> image) {
-            this.image = image;
+        /**
+         * Especially Emoji need this, since their emote images aren't the
+         * intended size, this forces the set width/height to be used.
+         */
+        boolean forceBaseSize = requester.forceBaseSize();
+
+        ImageRequest request = new ImageCache.ImageRequest(
+                scale -> requester.getImageUrl(scale, imageType),
+                scaleFactor,
+                maxHeight,
+                defaultSize,
+                forceBaseSize);
+
+        if (!request.valid) {
+            setLoadingError();
+            setLoadingDone();
+            return;
         }
-
-        @Override
-        protected ImageIcon doInBackground() throws Exception {
-
-            // Get the assumed size or size loaded from the size cache
-            Dimension defaultSize = requester.getBaseSize();
-
-            /**
-             * Especially Emoji need this, since their emote images aren't the
-             * intended size, this forces the set width/height to be used.
-             */
-            boolean forceBaseSize = requester.forceBaseSize();
-
-            ImageRequest request = new ImageCache.ImageRequest(
-                    scale -> requester.getImageUrl(scale, image.imageType),
-                    image.scaleFactor,
-                    image.maxHeight,
-                    defaultSize,
-                    forceBaseSize);
-
-            if (!request.valid) {
-                return null;
-            }
-
-            ImageResult result = ImageCache.getImage(request, prefix, CACHE_TIME);
-            image.setSourceUrl(request.getRequestedURL().toString());
-            image.setLoadedFromUrl(request.getLoadFromURL().toString());
-
-            /**
-             * If an error occured loading the image, return null.
-             */
-            if (result == null || !result.isValidImage()) {
-                return null;
-            }
-
-            /**
-             * Max size fallback, just in case.
-             */
-            if (result.icon.getIconWidth() > ImageRequest.MAX_SCALED_WIDTH
-                    || result.icon.getIconHeight() > ImageRequest.MAX_SCALED_HEIGHT) {
-                return null;
-            }
-
-            requester.imageLoaded(result);
-            return modifyIconIfNecessary(result.icon);
+        
+        String key = String.format("%s/%s/%s/%s/%s/%s",
+                prefix,
+                request.getRequestedURL(),
+                scaleFactor,
+                maxHeight,
+                forceBaseSize ? defaultSize : null,
+                forceBaseSize);
+        String cachePrefix = prefix;
+        /**
+         * If several images are merged into one load, only the request of the
+         * first one is actually executed, so pass that along with the result
+         * (the URL it was loaded from may differ, e.g. a cached file).
+         */
+        loadRequest = LOADER.load(key, Priority.BACKGROUND,
+                () -> new Pair<>(request, ImageCache.getImage(request, cachePrefix, CACHE_TIME)),
+                this,
+                (image, loaded) -> {
+                    if (loaded != null) {
+                        image.imageLoaded(loaded.key, loaded.value);
+                    }
+                    else {
+                        image.imageLoaded(request, null);
+                    }
+                });
+    }
+    
+    /**
+     * Raise the priority of the current load, if there is one.
+     * 
+     * @param c The component the image is painted on
+     */
+    private void painted(Component c) {
+        ImageLoader.Request request = loadRequest;
+        if (request != null) {
+            Window window = c != null ? SwingUtilities.getWindowAncestor(c) : null;
+            request.boost(window != null && window.isFocused() ? Priority.FOCUSED : Priority.VISIBLE);
         }
-
+    }
+    
+    /**
+     * Called by the loader in a background thread.
+     * 
+     * @param request The request that was executed, which may be from another
+     * CachedImage with the same key
+     * @param result The result, possibly null if an error occured
+     */
+    private void imageLoaded(ImageRequest request, ImageResult result) {
+        setSourceUrl(request.getRequestedURL().toString());
+        setLoadedFromUrl(request.getLoadFromURL().toString());
+        ImageIcon loadedIcon = null;
         /**
-         * The image should be done loading, replace the defaulticon with the
-         * actual loaded icon and tell the user that it's loaded.
+         * If an error occured loading the image or it is too large (max size
+         * fallback, just in case), the icon stays null.
          */
-        @Override
-        protected void done() {
-            try {
-                // This is null if an error occured
-                ImageIcon loadedIcon = get();
-                if (loadedIcon == null) {
-                    image.setLoadingError();
-                }
-                else {
-                    image.setImageIcon(loadedIcon, true);
-                }
-                image.setLoadingDone();
+        if (result != null && result.isValidImage()
+                && result.icon.getIconWidth() <= ImageRequest.MAX_SCALED_WIDTH
+                && result.icon.getIconHeight() <= ImageRequest.MAX_SCALED_HEIGHT) {
+            requester.imageLoaded(result);
+            // The result may be shared with other images, so don't modify it
+            loadedIcon = modifyIconIfNecessary(new ImageIcon(result.icon.getImage(), result.icon.getDescription()));
+        }
+        ImageIcon finalIcon = loadedIcon;
+        SwingUtilities.invokeLater(() -> {
+            loadRequest = null;
+            if (finalIcon == null) {
+                setLoadingError();
             }
-            catch (InterruptedException | ExecutionException ex) {
-                LOGGER.warning("Unexpected error when loading emoticon: " + ex);
+            else {
+                setImageIcon(finalIcon, true);
             }
+            setLoadingDone();
+        });
+    }
+    
+    /**
+     * The icon given out by this CachedImage. Painting it raises the priority
+     * of the image if it is still loading. It also keeps a reference to this
+     * CachedImage, so the load isn't dropped while the icon is still in use.
+     */
+    private class LoadingIcon extends ImageIcon {
+        
+        private static final long serialVersionUID = 1L;
+        
+        LoadingIcon(Image image) {
+            super(image);
+        }
+        
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            painted(c);
+            super.paintIcon(c, g, x, y);
         }
+        
     }
 }
@@ -125,6 +125,7 @@ public class Emoticon {
     private volatile int width;
     private volatile int height;
 
+    private volatile Pattern pattern;
     private Matcher matcher;
     
     private CachedImageManager<Emoticon> images;
@@ -431,8 +432,8 @@ public class Emoticon {
         "8-)", ":|", ";)", ">(", ":\\", ":)", ":-)", "R)", ":(", ":-(", "B)", "B-)"
     }));
     
-    private void createMatcher() {
-        if (matcher == null) {
+    private Pattern getPattern() {
+        if (pattern == null) {
             // Use separate regex if available (e.g. for smilies)
             String search = !StringUtil.isNullOrEmpty(regex) ? regex : code;
             int flags = 0;
@@ -467,17 +468,53 @@ public class Emoticon {
             
             // Compile the prepared Pattern
             try {
-                matcher = Pattern.compile(search, flags).matcher("");
+                pattern = Pattern.compile(search, flags);
             } catch (PatternSyntaxException ex) {
                 LOGGER.warning(String.format("Error compiling emote pattern: '%s' (id: %s, type: %s) [%s]",
                         search, stringId, type, ex.getLocalizedMessage()));
                 // Compile a pattern that doesn't match anything, so a Matcher
                 // is still available
-                matcher = Pattern.compile("(?!)").matcher("");
+                pattern = Pattern.compile("(?!)");
             }
         }
+        return pattern;
     }
     
+    /**
+     * The exact word this emote matches, if the pattern created in
+     * {@link #getPattern()} is equivalent to matching a single whitespace
+     * separated word. This is the case for most emotes and allows them to be
+     * looked up by word in {@link EmoticonIndex}.
+     * 
+     * @return The word, or null if the emote has to be matched with it's regex
+     */
+    protected String getMatchedWord() {
+        if (type == Type.EMOJI) {
+            return null;
+        }
+        String search = !StringUtil.isNullOrEmpty(regex) ? regex : code;
+        if (search.length() < 4) {
+            search = Emoticons.toRegex(search);
+        }
+        if (search.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < search.length(); i++) {
+            if (Character.isWhitespace(search.charAt(i))) {
+                return null;
+            }
+        }
+        if (literal || LITERAL.contains(search)) {
+            return search;
+        }
+        if (REGEX_CHARS.matcher(search).find()) {
+            return null;
+        }
+        return search;
+    }
+    
+    private static final Pattern REGEX_CHARS = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+    
     /**
      * Gets the stream restrictions set for this Emoticon.
      * 
@@ -593,16 +630,32 @@ public class Emoticon {
     
     /**
      * Gets the matcher that can be used to find this emoticon in the given
-     * text. Should probably only be used out of the EDT.
+     * text. The Matcher is reused, so this should only be used from the
+     * EDT.
      * 
      * @param text
      * @return 
+     * @see #newMatcher(String)
      */
     public Matcher getMatcher(String text) {
-        createMatcher();
+        if (matcher == null) {
+            matcher = getPattern().matcher(text);
+        }
         return matcher.reset(text);
     }
     
+    /**
+     * Creates a new Matcher that can be used to find this emoticon in the
+     * given text. Unlike {@link #getMatcher(String)} this can be used from any
+     * thread.
+     * 
+     * @param text
+     * @return 
+     */
+    public Matcher newMatcher(String text) {
+        return getPattern().matcher(text);
+    }
+    
     /**
      * Get a scaled image for this Emoticon. Should only be called from the EDT.
      *
@@ -0,0 +1,242 @@
+package chatty.util.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+
+/**
+ * Index of a set of emotes for finding them in a message.
+ * 
+ * <p>
+ * Most emotes (e.g. FFZ/BTTV/7TV) are plain codes that only match a whole
+ * whitespace separated word, so those can be looked up by word in a HashMap,
+ * which means the cost of matching a message doesn't really depend on how many
+ * of these emotes there are. Emotes that are actual regex (e.g. some smilies)
+ * are still checked with their Matcher.
+ * </p>
+ * 
+ * <p>
+ * The result is the same as when checking each emote's Matcher in the
+ * iteration order of the emote set, since matches are returned sorted by that
+ * order (and then by position).
+ * </p>
+ * 
+ * <p>
+ * An index is immutable, if the emote set changes a new one has to be created.
+ * Since it creates its own Matchers it can also be used outside the EDT.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class EmoticonIndex {
+    
+    public static final EmoticonIndex EMPTY = new EmoticonIndex(Collections.emptySet());
+    
+    /**
+     * Emotes by the word they match. Emotes with the same code are linked
+     * through {@link Entry#next}, in the order they were added.
+     */
+    private final Map<String, Entry> byWord;
+    
+    /**
+     * Emotes that have to be checked using their regex.
+     */
+    private final List<Entry> regex;
+    
+    private final int size;
+    private final int maxWordLength;
+    
+    public EmoticonIndex(Collection<Emoticon> emotes) {
+        Map<String, Entry> byWord = new HashMap<>();
+        List<Entry> regex = new ArrayList<>();
+        int maxWordLength = 0;
+        int order = 0;
+        for (Emoticon emote : emotes) {
+            Entry entry = new Entry(emote, order++);
+            String word = emote.getMatchedWord();
+            if (word == null) {
+                regex.add(entry);
+            }
+            else {
+                Entry present = byWord.get(word);
+                if (present == null) {
+                    byWord.put(word, entry);
+                }
+                else {
+                    while (present.next != null) {
+                        present = present.next;
+                    }
+                    present.next = entry;
+                }
+                maxWordLength = Math.max(maxWordLength, word.length());
+            }
+        }
+        this.byWord = byWord;
+        this.regex = regex;
+        this.size = order;
+        this.maxWordLength = maxWordLength;
+    }
+    
+    /**
+     * The number of emotes in this index.
+     * 
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * The number of emotes that can't be looked up by word and have to be
+     * checked using regex.
+     * 
+     * @return
+     */
+    public int regexSize() {
+        return regex.size();
+    }
+    
+    /**
+     * Find all matches of the indexed emotes in the given text.
+     * 
+     * @param text The text to search in
+     * @param filter Only emotes this returns true for are matched, may be null
+     * @return The matches, sorted by the order the emotes were added in and
+     * then by start position, empty if none were found (never null)
+     */
+    public List<Match> find(String text, Predicate<Emoticon> filter) {
+        List<Match> result = null;
+        
+        //-------
+        // Words
+        //-------
+        if (!byWord.isEmpty()) {
+            int length = text.length();
+            int i = 0;
+            while (i < length) {
+                while (i < length && isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                int start = i;
+                while (i < length && !isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                if (i > start && i - start <= maxWordLength) {
+                    Entry found = byWord.get(text.substring(start, i));
+                    while (found != null) {
+                        result = add(result, found, start, i - 1, filter);
+                        found = found.next;
+                    }
+                }
+            }
+        }
+        
+        //-------
+        // Regex
+        //-------
+        for (Entry entry : regex) {
+            if (filter != null && !filter.test(entry.emote)) {
+                continue;
+            }
+            Matcher m = entry.emote.newMatcher(text);
+            while (m.find()) {
+                // For Emoji, check for text style variation selector
+                boolean textEmoji = entry.emote.type == Emoticon.Type.EMOJI
+                        && m.group().endsWith("\uFE0E");
+                if (!textEmoji) {
+                    if (result == null) {
+                        result = new ArrayList<>();
+                    }
+                    result.add(new Match(entry, m.start(), m.end() - 1));
+                }
+            }
+        }
+        
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        Collections.sort(result, (a, b) -> {
+            int cmp = Integer.compare(a.order, b.order);
+            return cmp != 0 ? cmp : Integer.compare(a.start, b.start);
+        });
+        return result;
+    }
+    
+    private static List<Match> add(List<Match> result, Entry entry, int start, int end, Predicate<Emoticon> filter) {
+        if (filter != null && !filter.test(entry.emote)) {
+            return result;
+        }
+        if (result == null) {
+            result = new ArrayList<>();
+        }
+        result.add(new Match(entry, start, end));
+        return result;
+    }
+    
+    /**
+     * The characters matched by "\s" in the emote regex.
+     * 
+     * @param c
+     * @return
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+    
+    private static class Entry {
+        
+        private final Emoticon emote;
+        private final int order;
+        
+        /**
+         * The next emote with the same word, only changed while building the
+         * index.
+         */
+        private Entry next;
+        
+        Entry(Emoticon emote, int order) {
+            this.emote = emote;
+            this.order = order;
+        }
+        
+    }
+    
+    /**
+     * A single emote found in a text.
+     */
+    public static class Match {
+        
+        public final Emoticon emote;
+        
+        /**
+         * Start index (inclusive).
+         */
+        public final int start;
+        
+        /**
+         * End index (inclusive).
+         */
+        public final int end;
+        
+        private final int order;
+        
+        private Match(Entry entry, int start, int end) {
+            this.emote = entry.emote;
+            this.order = entry.order;
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        public String toString() {
+            return emote.code+"["+start+"-"+end+"]";
+        }
+        
+    }
+    
+}
@@ -0,0 +1,81 @@
+
+package chatty.util.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The emote indices that are needed to find emotes in messages of other users,
+ * at a certain point in time. Created on the EDT by
+ * {@link Emoticons#getSnapshot()}, but since it's immutable (and the indices
+ * are as well) it can be used to find emotes on any thread.
+ *
+ * <p>
+ * A new snapshot is created whenever any of the included emotes change, so
+ * comparing it to the current one can be used to check if a result based on it
+ * is still valid.
+ * </p>
+ *
+ * @author tduva
+ */
+public class EmoticonSnapshot {
+
+    private final EmoticonIndex custom;
+    private final EmoticonIndex emoji;
+    private final Map<String, EmoticonIndex> byStream;
+    private final EmoticonIndex globalTwitch;
+    private final EmoticonIndex otherGlobal;
+    private final List<CheerEmoticon> cheers;
+
+    public EmoticonSnapshot(EmoticonIndex custom, EmoticonIndex emoji,
+            Map<String, EmoticonIndex> byStream, EmoticonIndex globalTwitch,
+            EmoticonIndex otherGlobal, Collection<CheerEmoticon> cheers) {
+        this.custom = custom;
+        this.emoji = emoji;
+        this.byStream = Collections.unmodifiableMap(new HashMap<>(byStream));
+        this.globalTwitch = globalTwitch;
+        this.otherGlobal = otherGlobal;
+        this.cheers = Collections.unmodifiableList(new ArrayList<>(cheers));
+    }
+
+    public EmoticonIndex getCustom() {
+        return custom;
+    }
+
+    public EmoticonIndex getEmoji() {
+        return emoji;
+    }
+
+    /**
+     * The index of the emotes restricted to the given stream.
+     *
+     * @param stream
+     * @return The index (never null)
+     */
+    public EmoticonIndex getByStream(String stream) {
+        EmoticonIndex index = byStream.get(stream);
+        return index != null ? index : EmoticonIndex.EMPTY;
+    }
+
+    public EmoticonIndex getGlobalTwitch() {
+        return globalTwitch;
+    }
+
+    public EmoticonIndex getOtherGlobal() {
+        return otherGlobal;
+    }
+
+    /**
+     * The cheer emotes, in the same order as the set they were copied from.
+     *
+     * @return An unmodifiable list
+     */
+    public List<CheerEmoticon> getCheers() {
+        return cheers;
+    }
+
+}
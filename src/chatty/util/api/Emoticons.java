@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -159,6 +160,21 @@ public class Emoticons {
     
     private final Map<String, Emoticon> combinedEmotes = new HashMap<>();
     
+    /**
+     * Indices for finding emotes in messages, by the emote set they were
+     * created from. An index is removed when the set it was created from is
+     * modified, cleared or removed from this class, so it is recreated next
+     * time it is requested and no index is kept for a set that isn't used
+     * anymore.
+     */
+    private final Map<Collection<Emoticon>, EmoticonIndex> indices = new IdentityHashMap<>();
+    
+    /**
+     * The current snapshot of the emotes for finding emotes outside the EDT,
+     * set to null whenever any of the emotes change.
+     */
+    private volatile EmoticonSnapshot snapshot;
+    
     //===============
     // Usable Emotes
     //===============
@@ -263,18 +279,20 @@ public class Emoticons {
         if (update.typeToRemove == Emoticon.Type.FFZ
                 || update.typeToRemove == Emoticon.Type.BTTV
                 || update.typeToRemove == Emoticon.Type.SEVENTV) {
-            Iterator<Emoticon> it;
+            Set<Emoticon> source;
             if (update.roomToRemove == null) {
                 // Global Non-Twitch
-                it = otherGlobalEmotes.iterator();
+                source = otherGlobalEmotes;
             }
             else {
                 // Channel-specific
                 if (!streamEmoticons.containsKey(update.roomToRemove)) {
                     return;
                 }
-                it = streamEmoticons.get(update.roomToRemove).iterator();
+                source = streamEmoticons.get(update.roomToRemove);
             }
+            invalidateIndex(source);
+            Iterator<Emoticon> it = source.iterator();
             // Check selected for removal
             while (it.hasNext()) {
                 Emoticon emote = it.next();
@@ -299,8 +317,9 @@ public class Emoticons {
                 if (removed != null) {
                     removedCount += removed.size();
                     removed.forEach(e -> usableGlobalEmotes.remove(e));
+                    invalidateIndex(removed);
                 }
-                followerEmotes.remove(set);
+                invalidateIndex(followerEmotes.remove(set));
             }
         }
         if (update.typeToRemove == Emoticon.Type.CUSTOM2) {
@@ -309,7 +328,10 @@ public class Emoticons {
                 usableGlobalEmotes.remove(emote);
             }
             localEmotes.clear();
+            invalidateIndex(localEmotes);
         }
+        invalidateIndex(usableGlobalEmotes.getTwitch());
+        invalidateIndex(usableGlobalEmotes.getOther());
         if (removedCount >= 0) {
             LOGGER.info(String.format(Locale.ROOT, "Removed %d emotes (%s/%s/%s/%s)",
                     removedCount,
@@ -412,6 +434,8 @@ public class Emoticons {
                  */
                 usableGlobalEmotes.remove(emote);
                 usableGlobalEmotes.add(emote);
+                invalidateIndex(usableGlobalEmotes.getTwitch());
+                invalidateIndex(usableGlobalEmotes.getOther());
             }
         }
         else {
@@ -428,6 +452,77 @@ public class Emoticons {
          */
         collection.remove(emote);
         collection.add(emote);
+        invalidateIndex(collection);
+    }
+    
+    /**
+     * Get an index to find the given emotes in messages. The index is cached
+     * until the emote set is modified through this class.
+     * 
+     * <p>
+     * The given set must be one of the sets returned by this class that are
+     * stored (so not e.g. {@link #getUsableFollowerEmotes(String)}, which is
+     * created on every call), since it is only invalidated when this class
+     * modifies it.
+     * </p>
+     * 
+     * @param emotes The emote set, as returned by a method of this class
+     * @return The index (never null)
+     */
+    public EmoticonIndex getIndex(Set<Emoticon> emotes) {
+        if (emotes == null || emotes.isEmpty()) {
+            return EmoticonIndex.EMPTY;
+        }
+        EmoticonIndex index = indices.get(emotes);
+        if (index == null) {
+            index = new EmoticonIndex(emotes);
+            indices.put(emotes, index);
+        }
+        return index;
+    }
+    
+    private void invalidateIndex(Collection<Emoticon> emotes) {
+        if (emotes != null) {
+            indices.remove(emotes);
+            snapshot = null;
+        }
+    }
+    
+    /**
+     * Get a snapshot of the emotes used for finding emotes in messages of
+     * other users, which can be used on other threads. It stays the same
+     * object until any of the emotes change. Should only be called from the
+     * EDT.
+     * 
+     * @return The snapshot (never null)
+     */
+    public EmoticonSnapshot getSnapshot() {
+        EmoticonSnapshot result = snapshot;
+        if (result == null) {
+            Map<String, EmoticonIndex> byStream = new HashMap<>();
+            for (Map.Entry<String, Set<Emoticon>> entry : streamEmoticons.entrySet()) {
+                byStream.put(entry.getKey(), getIndex(entry.getValue()));
+            }
+            result = new EmoticonSnapshot(
+                    getIndex(customEmotes),
+                    getIndex(emoji),
+                    byStream,
+                    getIndex(globalTwitchEmotes),
+                    getIndex(otherGlobalEmotes),
+                    cheers.get());
+            snapshot = result;
+        }
+        return result;
+    }
+    
+    /**
+     * Get the snapshot created by {@link #getSnapshot()} if the emotes haven't
+     * changed since then. Can be called from any thread.
+     * 
+     * @return The snapshot, or null if none is available currently
+     */
+    public EmoticonSnapshot getCurrentSnapshot() {
+        return snapshot;
     }
     
     /**
@@ -441,6 +536,7 @@ public class Emoticons {
     
     public void setSmilies(Set<Emoticon> emotes) {
         smilies.clear();
+        invalidateIndex(smilies);
         if (emotes != null) {
             smilies.addAll(emotes);
             LOGGER.info("Set " + smilies.size() + " smilies");
@@ -627,6 +723,8 @@ public class Emoticons {
          */
         if (!this.localEmotesets.equals(emotesets)) {
             this.localEmotesets = emotesets;
+            invalidateIndex(usableGlobalEmotes.getTwitch());
+            invalidateIndex(usableGlobalEmotes.getOther());
             //--------------------------
             // By set
             //--------------------------
@@ -1010,6 +1108,7 @@ public class Emoticons {
     public void loadCustomEmotes() {
         customEmotes.clear();
         customEmotesById.clear();
+        invalidateIndex(customEmotes);
         
         Path file = Chatty.getPath(Chatty.PathType.SETTINGS).resolve("emotes.txt");
         try (BufferedReader r = Files.newBufferedReader(file, Charset.forName("UTF-8"))) {
@@ -1294,6 +1393,7 @@ public class Emoticons {
     public void addEmoji(String sourceId) {
         emoji.clear();
         emoji.addAll(EmojiUtil.makeEmoticons(sourceId));
+        invalidateIndex(emoji);
         Map<Pattern, String> replacements = new HashMap<>();
         for (Emoticon e : emoji) {
             if (e.stringId != null) {
@@ -1325,6 +1425,7 @@ public class Emoticons {
     
     public void setCheerEmotes(Set<CheerEmoticon> newCheerEmotes) {
         cheers.add(newCheerEmotes);
+        snapshot = null;
         LOGGER.info("Found "+newCheerEmotes.size()+" cheer emotes");
     }
     
@@ -0,0 +1,367 @@
+
+package chatty.util.api;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Loads images on it's own bounded pool of threads, in order of priority
+ * instead of in the order they were requested.
+ * 
+ * <p>
+ * Requests for the same image (same key) are merged into a single load, with
+ * the result given to every requester. Each load has a base priority, which
+ * can be raised temporarily (e.g. when the placeholder image is painted) and
+ * falls back to the base priority when it isn't raised again for a while (e.g.
+ * because the image was scrolled out of view).
+ * </p>
+ * 
+ * <p>
+ * The requesters are only weakly referenced, so loads for images that aren't
+ * used anywhere anymore (e.g. the chat lines were removed from the buffer) are
+ * dropped before they start.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class ImageLoader {
+    
+    private static final Logger LOGGER = Logger.getLogger(ImageLoader.class.getName());
+    
+    public enum Priority {
+        
+        /**
+         * Visible in the focused window.
+         */
+        FOCUSED,
+        
+        /**
+         * Visible, but not in the focused window.
+         */
+        VISIBLE,
+        
+        /**
+         * Requested to be shown, but not known to be visible.
+         */
+        BACKGROUND,
+        
+        /**
+         * Loaded in advance, in case it will be shown.
+         */
+        PREFETCH
+    }
+    
+    private final Object LOCK = new Object();
+    
+    private final Map<Object, Task> tasks = new HashMap<>();
+    private final Map<Priority, Set<Task>> queues = new EnumMap<>(Priority.class);
+    private final ThreadPoolExecutor executor;
+    private final long boostTime;
+    
+    //---------
+    // Metrics
+    //---------
+    private int requested;
+    private int merged;
+    private int dropped;
+    private int loaded;
+    
+    /**
+     * Create a new loader.
+     * 
+     * @param name The name of the threads
+     * @param threads The max number of images loaded at the same time
+     * @param boostTime How long (milliseconds) a raised priority lasts if not
+     * raised again
+     */
+    public ImageLoader(String name, int threads, long boostTime) {
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new LinkedHashSet<>());
+        }
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, name+"-"+count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.boostTime = boostTime;
+    }
+    
+    /**
+     * Request an image to be loaded. If an image with the same key is already
+     * waiting to be loaded or currently loading, the owner is added to that
+     * request instead.
+     * 
+     * <p>
+     * The owner is only weakly referenced, so if it is garbage collected before
+     * the load starts (and no other owner is waiting for it) the load is
+     * dropped. The result is given to the callback in one of the loader
+     * threads, or not at all if the owner has been garbage collected.
+     * </p>
+     * 
+     * @param <O> The type of the owner
+     * @param <R> The type of the result
+     * @param key The key identifying the image, for merging duplicate requests
+     * @param priority The base priority
+     * @param loader Performs the actual loading, in one of the loader threads,
+     * should not reference the owner
+     * @param owner The owner that receives the result
+     * @param callback Receives the owner and the result (which may be null),
+     * should not reference the owner other than through the parameter
+     * @return A handle that can be used to change the priority
+     */
+    public <O, R> Request load(Object key, Priority priority, Supplier<R> loader, O owner, BiConsumer<O, R> callback) {
+        synchronized (LOCK) {
+            requested++;
+            Task task = tasks.get(key);
+            if (task == null) {
+                task = new Task(key, priority, loader);
+                tasks.put(key, task);
+                queues.get(priority).add(task);
+                executor.execute(this::runNext);
+            }
+            else {
+                merged++;
+                if (priority.compareTo(task.basePriority) < 0) {
+                    task.basePriority = priority;
+                    if (!task.started && task.boostedUntil == 0) {
+                        setPriority(task, priority);
+                    }
+                }
+            }
+            task.waiters.add(new Waiter<>(owner, callback));
+            return new Request(task);
+        }
+    }
+    
+    /**
+     * Load the task with the highest priority that still has owners waiting
+     * for it. Called once for every created task, so there are always enough
+     * runs for all tasks (tasks that are dropped may leave runs that have
+     * nothing to do).
+     */
+    private void runNext() {
+        Task task;
+        synchronized (LOCK) {
+            task = takeNext();
+            if (task == null) {
+                return;
+            }
+            task.started = true;
+        }
+        Object result = null;
+        try {
+            result = task.loader.get();
+        }
+        catch (Exception ex) {
+            LOGGER.warning("Error loading image "+task.key+": "+ex);
+        }
+        List<Waiter<?, ?>> waiters;
+        synchronized (LOCK) {
+            tasks.remove(task.key);
+            waiters = new ArrayList<>(task.waiters);
+            loaded++;
+        }
+        for (Waiter<?, ?> waiter : waiters) {
+            try {
+                waiter.done(result);
+            }
+            catch (Exception ex) {
+                LOGGER.warning("Error handling loaded image "+task.key+": "+ex);
+            }
+        }
+    }
+    
+    /**
+     * Remove and return the next task to load. Must be called while holding
+     * the lock.
+     * 
+     * @return The task, or null if there is none
+     */
+    private Task takeNext() {
+        expireBoosts();
+        for (Set<Task> queue : queues.values()) {
+            Iterator<Task> it = queue.iterator();
+            while (it.hasNext()) {
+                Task task = it.next();
+                it.remove();
+                if (task.hasWaiters()) {
+                    return task;
+                }
+                tasks.remove(task.key);
+                dropped++;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Move tasks whose raised priority has expired back to their base
+     * priority. Must be called while holding the lock.
+     */
+    private void expireBoosts() {
+        long now = System.currentTimeMillis();
+        List<Task> expired = null;
+        for (Set<Task> queue : queues.values()) {
+            for (Task task : queue) {
+                if (task.boostedUntil != 0 && task.boostedUntil < now) {
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(task);
+                }
+            }
+        }
+        if (expired != null) {
+            for (Task task : expired) {
+                task.boostedUntil = 0;
+                setPriority(task, task.basePriority);
+            }
+        }
+    }
+    
+    /**
+     * Move a waiting task into the queue for the given priority. Must be called
+     * while holding the lock.
+     */
+    private void setPriority(Task task, Priority priority) {
+        if (task.priority != priority) {
+            queues.get(task.priority).remove(task);
+            queues.get(priority).add(task);
+            task.priority = priority;
+        }
+    }
+    
+    private void boost(Task task, Priority priority) {
+        synchronized (LOCK) {
+            if (task.started) {
+                return;
+            }
+            if (priority.compareTo(task.basePriority) < 0) {
+                task.boostedUntil = System.currentTimeMillis() + boostTime;
+                if (priority.compareTo(task.priority) < 0) {
+                    setPriority(task, priority);
+                }
+            }
+        }
+    }
+    
+    /**
+     * The number of loads that are waiting to be started, by priority.
+     * 
+     * @return
+     */
+    public Map<Priority, Integer> getQueued() {
+        synchronized (LOCK) {
+            Map<Priority, Integer> result = new EnumMap<>(Priority.class);
+            for (Map.Entry<Priority, Set<Task>> entry : queues.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().size());
+            }
+            return result;
+        }
+    }
+    
+    public String getInfo() {
+        synchronized (LOCK) {
+            return String.format("[ImageLoader] queued: %s, active: %d, requested: %d, merged: %d, dropped: %d, loaded: %d",
+                    getQueued(),
+                    executor.getActiveCount(),
+                    requested,
+                    merged,
+                    dropped,
+                    loaded);
+        }
+    }
+    
+    /**
+     * Handle for a requested load.
+     */
+    public class Request {
+        
+        private final Task task;
+        
+        private Request(Task task) {
+            this.task = task;
+        }
+        
+        /**
+         * Raise the priority of the load if it hasn't started yet. If this
+         * isn't called again, the priority falls back to the base priority
+         * after a while.
+         * 
+         * @param priority The priority, ignored if it is not higher than the
+         * base priority
+         */
+        public void boost(Priority priority) {
+            ImageLoader.this.boost(task, priority);
+        }
+        
+    }
+    
+    private static class Task {
+        
+        private final Object key;
+        private final Supplier<?> loader;
+        private final List<Waiter<?, ?>> waiters = new ArrayList<>();
+        
+        private Priority basePriority;
+        private Priority priority;
+        private long boostedUntil;
+        private boolean started;
+        
+        private Task(Object key, Priority priority, Supplier<?> loader) {
+            this.key = key;
+            this.basePriority = priority;
+            this.priority = priority;
+            this.loader = loader;
+        }
+        
+        private boolean hasWaiters() {
+            for (Waiter<?, ?> waiter : waiters) {
+                if (waiter.owner.get() != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+    }
+    
+    private static class Waiter<O, R> {
+        
+        private final WeakReference<O> owner;
+        private final BiConsumer<O, R> callback;
+        
+        private Waiter(O owner, BiConsumer<O, R> callback) {
+            this.owner = new WeakReference<>(owner);
+            this.callback = callback;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void done(Object result) {
+            O o = owner.get();
+            if (o != null) {
+                callback.accept(o, (R) result);
+            }
+        }
+        
+    }
+    
+}
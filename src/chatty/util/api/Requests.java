@@ -16,6 +16,7 @@ import chatty.util.api.TwitchApi.AutoModActionResult;
 import chatty.util.api.TwitchApi.RequestResultCode;
 import chatty.util.api.TwitchApi.StreamMarkerResult;
 import chatty.util.api.TwitchApiRequest.TwitchApiRequestResult;
+import chatty.util.api.queue.Priority;
 import chatty.util.api.queue.QueuedApi;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -260,7 +261,7 @@ public class Requests {
                 "https://api.twitch.tv/helix/users/follows?from_id=%s&to_id=%s",
                 userID,
                 streamID);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(url, "GET", api.defaultToken, Priority.USER, r -> {
             api.followerManager.receivedSingle(r.responseCode, stream, r.text, user, false);
         });
     }
@@ -287,7 +288,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/channels/followers",
                 "broadcaster_id", streamID,
                 "user_id", userID);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(url, "GET", api.defaultToken, Priority.USER, r -> {
             api.followerManager.receivedSingle(r.responseCode, stream, r.text, user, false);
         });
     }
@@ -299,7 +300,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/channels/followed",
                 "broadcaster_id", streamID,
                 "user_id", userID);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(url, "GET", api.defaultToken, Priority.USER, r -> {
             api.followerManager.receivedSingle(r.responseCode, stream, r.text, user, true);
         });
     }
@@ -348,7 +349,7 @@ public class Requests {
             Logger.getLogger(TwitchApi.class.getName()).log(Level.SEVERE, null, ex);
         }
         final String url = "https://api.twitch.tv/helix/search/categories?query="+encodedGame;
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(url, "GET", api.defaultToken, Priority.USER, r -> {
             if (r.text != null) {
                 Set<StreamCategory> categories = Parsing.parseCategorySearch(r.text);
                 if (categories != null) {
@@ -632,7 +633,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/channels/vips",
                 "broadcaster_id", streamId,
                 "first", "100");
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(url, "GET", api.defaultToken, Priority.USER, r -> {
             handleModerators(r, listener, "VIPs");
         });
     }
@@ -880,6 +881,10 @@ public class Requests {
         });
     }
     
+    public String getQueueInfo() {
+        return newApi.getInfo();
+    }
+    
     public void test() {
         String url = "https://api.twitch.tv/helix/...";
         newApi.add(url, "GET", api.defaultToken, r -> {
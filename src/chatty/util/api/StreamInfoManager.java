@@ -3,6 +3,7 @@ package chatty.util.api;
 
 import chatty.util.DateTime;
 import chatty.util.ElapsedTime;
+import chatty.util.JSONStream;
 import chatty.util.JSONUtil;
 import chatty.util.StringUtil;
 import chatty.util.api.StreamInfo.StreamType;
@@ -10,9 +11,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.logging.Logger;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -363,11 +362,13 @@ public class StreamInfoManager {
     
     protected synchronized void requestResultFollows(String result, int responseCode) {
         if (responseCode == 200 && result != null) {
-            int count = parseStreams(result, null);
+            // Get the cursor in the same pass
+            JSONStream stream = new JSONStream().onValue("pagination.cursor");
+            int count = parseStreams(result, null, stream);
             LOGGER.info("Got "+count+" (limit: "+FOLLOWED_STREAMS_LIMIT+") followed streams.");
-            String cursor = Requests.getCursor(result);
-            if (cursor != null) {
-                getFollowedStreamsNext(cursor);
+            Object cursor = stream.getValue("pagination.cursor");
+            if (cursor instanceof String && !((String) cursor).isEmpty()) {
+                getFollowedStreamsNext((String) cursor);
             }
             followsRequestErrors = 0;
         } else if (responseCode == 401) {
@@ -394,27 +395,25 @@ public class StreamInfoManager {
      * @return The number of items or -1 if the whole json could not be parsed
      */
     private int parseStreams(String json, Set<StreamInfo> streamInfos) {
+        return parseStreams(json, streamInfos, new JSONStream());
+    }
+    
+    /**
+     * Parses a list of stream objects, with each stream object being parsed
+     * and applied as it is encountered, without building a tree of the whole
+     * response.
+     * 
+     * @param json The JSON to parse, can't be null
+     * @param streamInfos The StreamInfo objects that were expected for this
+     *  response, can be null
+     * @param stream The JSONStream to use, which may already have additional
+     * paths registered, which can then be retrieved from it afterwards
+     * @return The number of items or -1 if the whole json could not be parsed
+     */
+    private int parseStreams(String json, Set<StreamInfo> streamInfos, JSONStream stream) {
         try {
-            JSONParser parser = new JSONParser();
-            
-            JSONArray streamsArray;
-            try {
-                JSONObject root = (JSONObject)parser.parse(json);
-                streamsArray = (JSONArray)root.get("data");
-            } catch (ClassCastException ex) {
-                LOGGER.warning("Error parsing streams: unexpected type");
-                streamsRequestError(streamInfos);
-                return -1;
-            }
-            
-            if (streamsArray == null) {
-                LOGGER.warning("Error parsing streams: streams array not found");
-                streamsRequestError(streamInfos);
-                return -1;
-            }
-            
             // Go through all streams, parse and update
-            for (Object obj : streamsArray) {
+            stream.onArrayItem("data", obj -> {
                 if (obj instanceof JSONObject) {
                     StreamInfo parsedInfo =
                             parseStream((JSONObject)obj, streamInfos == null);
@@ -429,18 +428,24 @@ public class StreamInfoManager {
                 } else {
                     LOGGER.warning("Element in array wasn't JSONObject "+obj);
                 }
+            });
+            stream.parse(json);
+            
+            int count = stream.getCount("data");
+            if (count == -1) {
+                LOGGER.warning("Error parsing streams: streams array not found");
+                streamsRequestError(streamInfos);
+                return -1;
             }
+            
             // Anything remaining, that was requested, should be offline
             // (or invalid, but which it is can't be determined)
             if (streamInfos != null) {
-//                if (!streamInfos.isEmpty()) {
-//                    System.out.println(json);
-//                }
                 for (StreamInfo info : streamInfos) {
                     info.setOffline();
                 }
             }
-            return streamsArray.size();
+            return count;
         } catch (ParseException ex) {
             LOGGER.warning("Error parsing streams info: "+ex.getLocalizedMessage());
             streamsRequestError(streamInfos);
@@ -768,6 +768,10 @@ public class TwitchApi {
         requests.test();
     }
     
+    public String getQueueInfo() {
+        return requests.getQueueInfo();
+    }
+    
     public void addEventSub(String body, Consumer<EventSubAddResult> listener) {
         requests.addEventSub(body, listener);
     }
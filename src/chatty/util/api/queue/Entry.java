@@ -15,12 +15,17 @@ public class Entry implements Comparable<Entry> {
     private static final AtomicLong seq = new AtomicLong();
     
     public final long entryNum;
-    public final int priority;
+    public final Priority priority;
     
     public final Request request;
     public final ResultListener listener;
     
-    public Entry(int priority, Request request, ResultListener listener) {
+    /**
+     * How often this request has been retried (e.g. after a 429 response).
+     */
+    public int retries;
+    
+    public Entry(Priority priority, Request request, ResultListener listener) {
         this.entryNum = seq.getAndIncrement();
         this.priority = priority;
         this.request = request;
@@ -32,7 +37,7 @@ public class Entry implements Comparable<Entry> {
         if (priority == o.priority) {
             return -Long.compare(entryNum, o.entryNum);
         }
-        return Integer.compare(priority, o.priority);
+        return priority.compareTo(o.priority);
     }
 
     @Override
@@ -56,7 +61,7 @@ public class Entry implements Comparable<Entry> {
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 53 * hash + this.priority;
+        hash = 53 * hash + Objects.hashCode(this.priority);
         hash = 53 * hash + Objects.hashCode(this.request);
         return hash;
     }
@@ -0,0 +1,56 @@
+
+package chatty.util.api.queue;
+
+/**
+ * The priority of a request in the QueuedApi. Higher priority requests are
+ * performed first and lower priority requests leave more of the ratelimit
+ * unused, so that higher priority requests can still be performed.
+ * 
+ * @author tduva
+ */
+public enum Priority {
+    
+    /**
+     * Requests directly caused by the user (e.g. running a command).
+     */
+    USER(0),
+    
+    /**
+     * Moderation related requests (e.g. bans, AutoMod).
+     */
+    MODERATION(0.05),
+    
+    /**
+     * Requests that are made automatically (e.g. refreshing stream status).
+     */
+    BACKGROUND(0.25);
+    
+    /**
+     * Share of the ratelimit that should be left for higher priorities.
+     */
+    public final double reserve;
+    
+    Priority(double reserve) {
+        this.reserve = reserve;
+    }
+    
+    /**
+     * Determine the default priority for a request. Any moderation endpoints
+     * count as moderation, other requests that change something as user
+     * requests and anything else as background requests.
+     * 
+     * @param url The request URL
+     * @param requestMethod The request method (like GET)
+     * @return The priority, never null
+     */
+    public static Priority getDefault(String url, String requestMethod) {
+        if (url != null && (url.contains("/helix/moderation/") || url.contains("/helix/chat/settings"))) {
+            return MODERATION;
+        }
+        if (requestMethod != null && !requestMethod.equals("GET")) {
+            return USER;
+        }
+        return BACKGROUND;
+    }
+    
+}
@@ -8,7 +8,9 @@ import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -32,25 +34,42 @@ public class QueuedApi {
     private final Set<Entry> requestPending = new HashSet<>();
     
     /**
-     * Rate limit remaining from the most recent request response, or -1 if no
-     * data is available yet.
+     * Estimated ratelimit tokens, requests wait until one is available.
      */
-    private volatile int ratelimitRemaining = -1;
+    private final TokenBucket bucket = new TokenBucket();
+    
+    /**
+     * Max number of times a request is retried after a 429 response.
+     */
+    private static final int MAX_RETRIES = 3;
     
     /**
      * Limits the number of active requests. This is different to active threads
      * which could be more, if a thread e.g. still keeps going after the actual
      * API request (e.g. download badge images).
      * 
-     * This is so that there aren't too many concurrent API requests that could
-     * immediatelly use up all the ratelimit tokens (although this is quite
-     * unlikely with the number of usual requests anyway).
+     * This is so that there aren't too many concurrent API requests, for which
+     * the ratelimit information of the responses would not be known yet.
      */
     private final Semaphore activeRequests = new Semaphore(10);
     
+    /**
+     * Notified when an entry is added to the queue, so that waiting for a
+     * ratelimit token can check the new entry, which may have a higher
+     * priority.
+     */
+    private final Object queueChanged = new Object();
+    
+    private final ScheduledExecutorService retryTimer;
+    
     public QueuedApi() {
         ExecutorService executor = Executors.newCachedThreadPool();
         queue = new PriorityBlockingQueue<>();
+        retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "QueuedApiRetry");
+            thread.setDaemon(true);
+            return thread;
+        });
         
         Thread thread = new Thread(new Runnable() {
             
@@ -58,21 +77,19 @@ public class QueuedApi {
             public void run() {
                 while (true) {
                     try {
-                        if (ratelimitRemaining != -1 && ratelimitRemaining < 60) {
-                            LOGGER.info("Waiting..");
-                            Thread.sleep(10*1000);
-                        }
-                        activeRequests.acquire();
-                        //System.out.println("Waiting for entry.. Permits: "+activeRequests.availablePermits());
-                        Entry entry = queue.take();
-                        //System.out.println("Entry taken: "+entry.request+" Permits: "+activeRequests.availablePermits());
-                        entry.request.setResultListener((result, responseCode, errorResult, ratelimitRemaining) -> {
+                        Entry entry = takeWhenAllowed();
+                        entry.request.setResultListener((result, responseCode, errorResult, ratelimit) -> {
                             /**
                              * Executed in an executor thread.
                              */
                             // Get some data from the response and forward to external listener
-                            QueuedApi.this.ratelimitRemaining = ratelimitRemaining;
+                            long now = System.currentTimeMillis();
+                            bucket.update(ratelimit, now);
                             activeRequests.release();
+                            if (responseCode == 429 && entry.retries < MAX_RETRIES) {
+                                retry(entry, ratelimit, now);
+                                return;
+                            }
                             if (Debugging.isEnabled("requestresponse")) {
                                 if (result != null) {
                                     LOGGER.info(result);
@@ -84,7 +101,6 @@ public class QueuedApi {
                             // This may run a while (e.g. loading images etc.)
                             entry.listener.result(new ResultListener.Result(result, responseCode, errorResult));
                             removePending(entry);
-                            //System.out.println("Entry done: "+entry.request+" Permits: "+activeRequests.availablePermits());
                         });
                         executor.execute(entry.request);
                         
@@ -99,6 +115,70 @@ public class QueuedApi {
         thread.start();
     }
     
+    /**
+     * Wait for the highest priority entry for which a ratelimit token is
+     * available. While waiting a higher priority entry may be added, which
+     * will then be checked instead.
+     * 
+     * <p>
+     * The request permit is not held while waiting for a token, only until
+     * the request has been performed (released in the result listener).
+     * </p>
+     * 
+     * @return The entry, for which a token and a request permit have been
+     * taken
+     * @throws InterruptedException 
+     */
+    private Entry takeWhenAllowed() throws InterruptedException {
+        while (true) {
+            activeRequests.acquire();
+            Entry entry = queue.take();
+            long wait = bucket.tryAcquire(entry.priority, System.currentTimeMillis());
+            if (wait == 0) {
+                return entry;
+            }
+            activeRequests.release();
+            synchronized (queueChanged) {
+                queue.add(entry);
+                // Until a token should be available or an entry is added
+                queueChanged.wait(wait);
+            }
+        }
+    }
+    
+    private void addToQueue(Entry entry) {
+        synchronized (queueChanged) {
+            queue.add(entry);
+            queueChanged.notifyAll();
+        }
+    }
+    
+    /**
+     * Add the entry to the queue again after some time. Uses the reset time
+     * from the response if available, otherwise an increasing delay.
+     * 
+     * @param entry The entry that got a 429 response
+     * @param ratelimit The ratelimit information of the response
+     * @param now The current time in milliseconds
+     */
+    private void retry(Entry entry, RateLimit ratelimit, long now) {
+        entry.retries++;
+        long delay = 1000L << entry.retries;
+        if (ratelimit.reset > 0) {
+            delay = Math.max(delay, ratelimit.reset * 1000 - now);
+        }
+        delay = Math.min(delay, 60*1000);
+        bucket.block(now + delay, now);
+        LOGGER.warning(String.format("Ratelimited, retrying in %dms (%d/%d): %s",
+                delay, entry.retries, MAX_RETRIES, entry.request));
+        retryTimer.schedule(() -> addToQueue(entry), delay, TimeUnit.MILLISECONDS);
+    }
+    
+    public String getInfo() {
+        return String.format("[API] Queued: %d, Ratelimit (estimated): %d/%d",
+                queue.size(), bucket.getTokens(), bucket.getLimit());
+    }
+    
     /**
      * Perform a request.
      * 
@@ -109,10 +189,28 @@ public class QueuedApi {
      */
     public void add(String url, String requestMethod, String token,
             ResultListener listener) {
+        add(url, requestMethod, token, (Priority) null, listener);
+    }
+    
+    /**
+     * Perform a request with the given priority.
+     * 
+     * @param url
+     * @param requestMethod
+     * @param token
+     * @param priority The priority, or null to determine it based on the
+     * request
+     * @param listener 
+     */
+    public void add(String url, String requestMethod, String token,
+            Priority priority, ResultListener listener) {
         Request request = new Request(url);
         request.setToken(token);
         request.setRequestType(requestMethod);
-        addRequest(1, request, listener);
+        if (priority == null) {
+            priority = Priority.getDefault(url, request.getRequestMethod());
+        }
+        addRequest(priority, request, listener);
     }
     
     /**
@@ -131,7 +229,7 @@ public class QueuedApi {
         if (jsonData != null) {
             request.setJSONData(requestMethod, jsonData);
         }
-        addRequest(1, request, listener);
+        addRequest(Priority.getDefault(url, request.getRequestMethod()), request, listener);
     }
     
     public void add(String url, String requestMethod, Map<String, String> data,
@@ -141,13 +239,13 @@ public class QueuedApi {
         if (data != null) {
             request.setJSONData(requestMethod, data);
         }
-        addRequest(1, request, listener);
+        addRequest(Priority.getDefault(url, request.getRequestMethod()), request, listener);
     }
     
-    private void addRequest(int priority, Request request, ResultListener listener) {
+    private void addRequest(Priority priority, Request request, ResultListener listener) {
         Entry entry = new Entry(priority, request, listener);
         if (checkPending(entry)) {
-            queue.add(entry);
+            addToQueue(entry);
         } else {
             System.out.println("Duped "+request);
         }
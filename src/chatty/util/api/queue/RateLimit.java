@@ -0,0 +1,40 @@
+
+package chatty.util.api.queue;
+
+/**
+ * The ratelimit information from the headers of an API response.
+ * 
+ * @author tduva
+ */
+public class RateLimit {
+    
+    public static final RateLimit NONE = new RateLimit(-1, -1, -1);
+    
+    /**
+     * The size of the bucket, or -1 if not present.
+     */
+    public final int limit;
+    
+    /**
+     * Remaining tokens in the bucket, or -1 if not present.
+     */
+    public final int remaining;
+    
+    /**
+     * When the bucket is full again (in seconds since epoch), or -1 if not
+     * present.
+     */
+    public final long reset;
+    
+    public RateLimit(int limit, int remaining, long reset) {
+        this.limit = limit;
+        this.remaining = remaining;
+        this.reset = reset;
+    }
+    
+    @Override
+    public String toString() {
+        return remaining+"/"+limit;
+    }
+    
+}
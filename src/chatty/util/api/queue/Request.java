@@ -2,36 +2,21 @@
 package chatty.util.api.queue;
 
 import chatty.Chatty;
-import java.io.BufferedReader;
+import chatty.util.http.HttpPool;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
-import org.apache.hc.client5.http.config.RequestConfig;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
-import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
-import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
-import org.apache.hc.core5.http.ParseException;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
-import org.apache.hc.core5.util.Timeout;
 import org.json.simple.JSONObject;
 
 /**
@@ -96,6 +81,10 @@ public class Request implements Runnable {
         this.requestMethod = requestMethod;
     }
     
+    public String getRequestMethod() {
+        return requestMethod;
+    }
+    
     /**
      * Set the listener for this request. Should probably not be set when this
      * request is supposed to be performed by QueuedApi, since it will overwrite
@@ -109,36 +98,23 @@ public class Request implements Runnable {
 
     @Override
     public void run() {
-        if (requestMethod.equals("PATCH")) {
-            apache();
-        }
-        else {
-            regular();
-        }
-    }
-    
-    private void apache() {
         if (listener == null) {
             return;
         }
         String responseText = null;
         int responseCode = -1;
-        int ratelimitRemaining = -1;
+        RateLimit ratelimit = RateLimit.NONE;
         String responseEncoding = null;
         String requestError = null;
         String errorText = null;
         
-        LOGGER.info(String.format("%s*: %s%s",
+        LOGGER.info(String.format("%s: %s%s",
                 requestMethod,
                 url,
                 data != null ? " ("+data+")" : ""));
         
-        RequestConfig config = RequestConfig.custom()
-                .setConnectTimeout(Timeout.ofMilliseconds(CONNECT_TIMEOUT))
-                .setResponseTimeout(30, TimeUnit.SECONDS)
-                .build();
-        try (CloseableHttpClient httpclient = HttpClientBuilder.create().setDefaultRequestConfig(config).build()) {
-            ClassicHttpRequest request = new HttpUriRequestBase(requestMethod, new URI(url));
+        try {
+            HttpUriRequestBase request = new HttpUriRequestBase(requestMethod, new URI(url));
             request.addHeader("Client-ID", CLIENT_ID);
             if (token != null) {
                 request.addHeader("Authorization", "Bearer "+token);
@@ -153,22 +129,31 @@ public class Request implements Runnable {
                 }
                 request.setEntity(stringEntity);
             }
-            try (CloseableHttpResponse response = httpclient.execute(request)) {
-                responseCode = response.getCode();
-                responseEncoding = getStringHeader(response.getFirstHeader("Content-Encoding"), null);
-                ratelimitRemaining = getIntHeader(response.getFirstHeader("Ratelimit-Remaining"), -1);
+            Response r = HttpPool.execute(request, CONNECT_TIMEOUT, READ_TIMEOUT, response -> {
+                Response result = new Response();
+                result.code = response.getCode();
+                result.encoding = getStringHeader(response.getFirstHeader("Content-Encoding"), null);
+                result.ratelimit = new RateLimit(
+                        getIntHeader(response.getFirstHeader("Ratelimit-Limit"), -1),
+                        getIntHeader(response.getFirstHeader("Ratelimit-Remaining"), -1),
+                        getIntHeader(response.getFirstHeader("Ratelimit-Reset"), -1));
                 HttpEntity responseEntity = response.getEntity();
                 if (responseEntity != null) {
-                    responseText = EntityUtils.toString(responseEntity, Charset.forName("UTF-8"));
-                    EntityUtils.consume(responseEntity);
-                    if (!String.valueOf(responseCode).startsWith("2")) {
-                        errorText = responseText;
-                        responseText = null;
-                    }
+                    result.text = EntityUtils.toString(responseEntity, CHARSET);
                 }
+                return result;
+            });
+            responseCode = r.code;
+            responseEncoding = r.encoding;
+            ratelimit = r.ratelimit;
+            if (String.valueOf(responseCode).startsWith("2")) {
+                responseText = r.text;
+            }
+            else {
+                errorText = r.text;
             }
         }
-        catch (IOException | URISyntaxException | ParseException ex) {
+        catch (IOException | URISyntaxException ex) {
             requestError = ex.toString();
         }
         
@@ -177,14 +162,22 @@ public class Request implements Runnable {
         //-----------------------
         LOGGER.info(String.format(Locale.ROOT, "GOT (%d/%d, %d%s): %s%s",
                 responseCode,
-                ratelimitRemaining,
+                ratelimit.remaining,
                 responseText != null ? responseText.length() : -1,
                 responseEncoding != null ? ", " + responseEncoding : "",
                 url,
                 makeErrorText(errorText, requestError)));
         
+        listener.requestResult(responseText, responseCode, errorText, ratelimit);
+    }
+    
+    private static class Response {
+        
+        private int code;
+        private String encoding;
+        private RateLimit ratelimit;
+        private String text;
         
-        listener.requestResult(responseText, responseCode, errorText, ratelimitRemaining);
     }
     
     /**
@@ -224,110 +217,6 @@ public class Request implements Runnable {
         return defaultValue;
     }
     
-    private void regular() {
-        if (listener == null) {
-            return;
-        }
-        String responseText = null;
-        String errorText = null;
-        int responseCode = -1;
-        int ratelimitRemaining = -1;
-        String responseEncoding = null;
-        String requestError = null;
-
-        LOGGER.info(String.format("%s: %s%s",
-                requestMethod,
-                url,
-                data != null ? " ("+data+")" : ""));
-        
-        HttpURLConnection connection = null;
-        try {
-            connection = (HttpURLConnection)new URL(url).openConnection();
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-        
-            //---------------------------
-            // Request properties / Data
-            //---------------------------
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            connection.setRequestProperty("Client-ID", CLIENT_ID);
-            if (token != null) {
-                connection.setRequestProperty("Authorization", "Bearer "+token);
-            }
-            connection.setRequestMethod(requestMethod);
-
-            if (data != null) {
-                connection.setRequestProperty("Content-Type", contentType);
-                connection.setDoOutput(true);
-                try (OutputStreamWriter out = new OutputStreamWriter(connection.getOutputStream(), CHARSET)) {
-                    out.write(data);
-                }
-            }
-
-            //------------------
-            // Response Headers
-            //------------------
-            responseEncoding = connection.getContentEncoding();
-            ratelimitRemaining = connection.getHeaderFieldInt("Ratelimit-Remaining", -1);
-
-            //--------------------
-            // Read response text
-            //--------------------
-            InputStream input = checkGZIP(connection.getInputStream(), connection);
-            responseText = readText(input);
-        } catch (SocketTimeoutException ex) {
-            requestError = ex.toString();
-        } catch (IOException ex) {
-            requestError = ex.toString();
-        } finally {
-            if (connection != null) {
-                try {
-                    InputStream errorInput = checkGZIP(connection.getErrorStream(), connection);
-                    if (errorInput != null) {
-                        errorText = readText(errorInput);
-                    }
-                    responseCode = connection.getResponseCode();
-                } catch (IOException ex) {
-                    // Do nothing, responseCode will simply be -1
-                }
-                connection.disconnect();
-            }
-        }
-        
-        //-----------------------
-        // Debug output / Output
-        //-----------------------
-        LOGGER.info(String.format(Locale.ROOT, "GOT (%d/%d, %d%s): %s%s",
-                responseCode,
-                ratelimitRemaining,
-                responseText != null ? responseText.length() : -1,
-                responseEncoding != null ? ", " + responseEncoding : "",
-                url,
-                makeErrorText(errorText, requestError)));
-        
-        listener.requestResult(responseText, responseCode, errorText, ratelimitRemaining);
-    }
-    
-    private static InputStream checkGZIP(InputStream input, HttpURLConnection connection) throws IOException {
-        if (input != null && "gzip".equals(connection.getContentEncoding())) {
-            return new GZIPInputStream(input);
-        }
-        return input;
-    }
-    
-    private static String readText(InputStream input) throws IOException {
-        StringBuilder response;
-        try ( BufferedReader reader
-                = new BufferedReader(new InputStreamReader(input, CHARSET))) {
-            String line;
-            response = new StringBuilder();
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-        }
-        return response.toString();
-    }
-    
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
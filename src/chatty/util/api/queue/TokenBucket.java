@@ -0,0 +1,121 @@
+
+package chatty.util.api.queue;
+
+/**
+ * Models the Helix ratelimit token bucket based on the ratelimit headers of
+ * the responses, so that requests can be spread out instead of running into
+ * the limit. The bucket is refilled continuously over a minute, so requests
+ * that have to wait for tokens are performed at the refill rate.
+ * 
+ * <p>
+ * Lower priority requests leave some tokens unused, so that higher priority
+ * requests don't have to wait behind them.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class TokenBucket {
+    
+    /**
+     * Assumed limit, until a response provides the actual one.
+     */
+    private static final int DEFAULT_LIMIT = 800;
+    
+    /**
+     * The time it takes to refill the bucket from empty, in milliseconds.
+     */
+    private static final long REFILL_TIME = 60*1000;
+    
+    private int limit = DEFAULT_LIMIT;
+    private double tokens = DEFAULT_LIMIT;
+    private long lastRefill;
+    
+    /**
+     * No tokens are available before this time (e.g. after a 429 response).
+     */
+    private long blockedUntil;
+    
+    /**
+     * Take a token for a request, if available.
+     * 
+     * @param priority The priority of the request
+     * @param now The current time in milliseconds
+     * @return 0 if a token was taken, otherwise the time in milliseconds until
+     * a token should be available for this priority
+     */
+    public synchronized long tryAcquire(Priority priority, long now) {
+        refill(now);
+        if (now < blockedUntil) {
+            return blockedUntil - now;
+        }
+        double required = 1 + limit * priority.reserve;
+        if (tokens >= required) {
+            tokens--;
+            return 0;
+        }
+        return Math.max((long) Math.ceil((required - tokens) / getRate()), 1);
+    }
+    
+    /**
+     * Update the state with the ratelimit information of a response.
+     * 
+     * @param rateLimit The ratelimit information
+     * @param now The current time in milliseconds
+     */
+    public synchronized void update(RateLimit rateLimit, long now) {
+        refill(now);
+        if (rateLimit.limit > 0) {
+            limit = rateLimit.limit;
+        }
+        if (rateLimit.remaining >= 0) {
+            /**
+             * Other requests may have been started after this response was
+             * sent, which the remaining value doesn't include yet, so only
+             * lower the estimate.
+             */
+            tokens = Math.min(tokens, rateLimit.remaining);
+        }
+        tokens = Math.min(tokens, limit);
+    }
+    
+    /**
+     * Don't allow any requests until the given time and assume the bucket is
+     * empty, for example after receiving a 429 response.
+     * 
+     * @param until The time in milliseconds
+     * @param now The current time in milliseconds
+     */
+    public synchronized void block(long until, long now) {
+        refill(now);
+        blockedUntil = Math.max(blockedUntil, until);
+        tokens = 0;
+        // Refilling starts after the block
+        lastRefill = Math.max(lastRefill, until);
+    }
+    
+    public synchronized int getTokens() {
+        return (int) tokens;
+    }
+    
+    public synchronized int getLimit() {
+        return limit;
+    }
+    
+    private void refill(long now) {
+        if (lastRefill == 0) {
+            lastRefill = now;
+        }
+        if (now > lastRefill) {
+            tokens = Math.min(limit, tokens + (now - lastRefill) * getRate());
+            lastRefill = now;
+        }
+    }
+    
+    /**
+     * Tokens per millisecond.
+     */
+    private double getRate() {
+        return (double) limit / REFILL_TIME;
+    }
+    
+}
@@ -11,13 +11,19 @@ import chatty.util.Timestamp;
 import chatty.util.api.StreamInfo.ViewerStats;
 import chatty.util.api.UserInfo;
 import chatty.util.api.eventsub.payloads.ModActionPayload;
+import chatty.util.commands.CompiledCommand;
 import chatty.util.commands.CustomCommand;
 import chatty.util.commands.Parameters;
 import chatty.util.settings.Settings;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
@@ -31,7 +37,7 @@ public class ChatLog {
     private static final Logger LOGGER = Logger.getLogger(ChatLog.class.getName());
     
     private Timestamp timestamp;
-    private final CustomCommand messageTemplate;
+    private final CompiledCommand messageTemplate;
     
     private final Map<String, Compact> compactForChannels;
     
@@ -44,6 +50,11 @@ public class ChatLog {
      */
     private final LogManager log;
     
+    /**
+     * Runs searches of the indexed log. Created when first used.
+     */
+    private ExecutorService queryExecutor;
+    
     public ChatLog(Settings settings) {
         this.settings = settings;
 
@@ -54,7 +65,9 @@ public class ChatLog {
             String logSplit = settings.getString("logSplit");
             boolean logSubdirectories = settings.getBoolean("logSubdirectories");
             boolean lockFiles = settings.getBoolean("logLockFiles");
-            this.log = new LogManager(path, logSplit, logSubdirectories, lockFiles);
+            long flushDelay = settings.getLong("logFlushDelay") * 1000;
+            boolean indexed = settings.getBoolean("logIndexed");
+            this.log = new LogManager(path, logSplit, logSubdirectories, lockFiles, flushDelay, indexed);
         }
         compactForChannels = new HashMap<>();
         try {
@@ -70,7 +83,7 @@ public class ChatLog {
             LOGGER.warning("Error in logMessageTemplate: "+c.getSingleLineError());
             c = CustomCommand.parse(settings.getStringDefault("logMessageTemplate"));
         }
-        this.messageTemplate = c;
+        this.messageTemplate = c.compile();
     }
     
     /**
@@ -129,15 +142,19 @@ public class ChatLog {
      */
     public void message(String channel, User user, String message, boolean action, String includedChannel) {
         if (isSettingEnabled("logMessage") && isChanEnabled(channel)) {
-            Parameters param = messageParam(
-                            user,
-                            message,
-                            action,
-                            settings,
-                            timestamp(user.getRoom(), includedChannel, false));
+            Parameters param = messageParam(user, message, action, settings, null);
+            if (messageTemplate.references("timestamp")) {
+                // Only created if actually used (may be in a condition)
+                param.putLazy("timestamp", () -> timestamp(user.getRoom(), includedChannel, false));
+            }
             String line = messageTemplate.replace(param);
             if (line != null && !line.isEmpty()) {
-                writeLine(channel, line);
+                IndexedLog.Record record = null;
+                if (includedChannel == null) {
+                    record = new IndexedLog.Record(System.currentTimeMillis(),
+                            user.getName(), action, message);
+                }
+                writeLine(channel, line, record);
             }
         }
     }
@@ -195,10 +212,57 @@ public class ChatLog {
     }
     
     private void writeLine(String channel, String message) {
+        writeLine(channel, message, null);
+    }
+    
+    private void writeLine(String channel, String message, IndexedLog.Record record) {
         if (log != null) {
             compactClose(channel);
-            log.writeLine(channel, message);
+            log.writeLine(channel, message, record);
+        }
+    }
+    
+    /**
+     * Whether the indexed log is written and can be searched.
+     * 
+     * @return 
+     */
+    public boolean isIndexedEnabled() {
+        return log != null && settings.getBoolean("logIndexed");
+    }
+    
+    /**
+     * Search the indexed log of a channel in a separate thread. Messages that
+     * have been logged recently may not be found yet.
+     * 
+     * @param channel The channel
+     * @param query The search parameters
+     * @param result Receives the found messages (oldest first), or null if an
+     * error occured or the indexed log is not enabled, called in the search
+     * thread
+     */
+    public void queryIndexed(String channel, IndexedLog.Query query, Consumer<List<IndexedLog.Record>> result) {
+        if (!isIndexedEnabled()) {
+            result.accept(null);
+            return;
         }
+        synchronized (this) {
+            if (queryExecutor == null) {
+                queryExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "IndexedLogQuery");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        queryExecutor.execute(() -> {
+            try {
+                result.accept(IndexedLog.query(LogWriter.getIndexedPath(path), channel, query));
+            } catch (IOException ex) {
+                LOGGER.warning("Error searching log: "+ex);
+                result.accept(null);
+            }
+        });
     }
     
     public void userBanned(String channel, String nick, long duration,
@@ -274,7 +338,8 @@ public class ChatLog {
         }
         else {
             if (timestamp != null) {
-                return timestamp.make(-1, room)+space;
+                // Cached with the space, so usually no new String is created
+                return timestamp.make(-1, room, appendSpace);
             }
             return "";
         }
@@ -0,0 +1,531 @@
+
+package chatty.util.chatlog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact log of chat messages that can be searched quickly, written in
+ * addition to the regular text logs.
+ * 
+ * <p>
+ * Each channel has a data file, which consists of Deflate compressed blocks of
+ * about 64KB of messages each, and an index file with a fixed size entry for
+ * each block, containing the position of the block, the time range of the
+ * messages in it and a Bloom filter of the usernames. When searching, only
+ * the blocks that can contain matching messages have to be decompressed.
+ * </p>
+ * 
+ * <p>
+ * Both files are only appended to, with the block written before the index
+ * entry, so reading while writing only ever sees complete blocks. Messages are
+ * only readable after their block has been written, which happens when it is
+ * full, when it is older than a few minutes or when the log is closed.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class IndexedLog {
+    
+    private static final Logger LOGGER = Logger.getLogger(IndexedLog.class.getName());
+    
+    private static final String DATA_EXT = ".clog";
+    private static final String INDEX_EXT = ".cidx";
+    
+    /**
+     * Uncompressed size after which a block is written.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+    
+    /**
+     * Max age of the oldest message in a block before it is written, in
+     * milliseconds.
+     */
+    private static final long MAX_BLOCK_AGE = 5 * 60 * 1000;
+    
+    private static final int BLOOM_LONGS = 32;
+    private static final int BLOOM_BITS = BLOOM_LONGS * 64;
+    private static final int BLOOM_HASHES = 4;
+    
+    /**
+     * Offset (8), length (4), count (4), first time (8), last time (8), bloom
+     * filter.
+     */
+    private static final int ENTRY_SIZE = 8 + 4 + 4 + 8 + 8 + BLOOM_LONGS * 8;
+    
+    /**
+     * A chat message in the log.
+     */
+    public static class Record {
+        
+        public final long time;
+        public final String username;
+        public final boolean action;
+        public final String text;
+        
+        public Record(long time, String username, boolean action, String text) {
+            this.time = time;
+            this.username = username.toLowerCase(Locale.ENGLISH);
+            this.action = action;
+            this.text = text;
+        }
+        
+        @Override
+        public String toString() {
+            return time+" "+username+(action ? "* " : ": ")+text;
+        }
+        
+    }
+    
+    /**
+     * Parameters for searching the log.
+     */
+    public static class Query {
+        
+        private String username;
+        private String text;
+        private long from = Long.MIN_VALUE;
+        private long to = Long.MAX_VALUE;
+        private int limit = Integer.MAX_VALUE;
+        
+        /**
+         * Only messages by this user.
+         * 
+         * @param username
+         * @return 
+         */
+        public Query user(String username) {
+            this.username = username != null ? username.toLowerCase(Locale.ENGLISH) : null;
+            return this;
+        }
+        
+        /**
+         * Only messages containing this text (case-insensitive).
+         * 
+         * @param text
+         * @return 
+         */
+        public Query text(String text) {
+            this.text = text != null ? text.toLowerCase(Locale.ROOT) : null;
+            return this;
+        }
+        
+        /**
+         * Only messages within this time range.
+         * 
+         * @param from Start time in milliseconds (inclusive)
+         * @param to End time in milliseconds (exclusive)
+         * @return 
+         */
+        public Query time(long from, long to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+        
+        /**
+         * Only return this many of the most recent matching messages.
+         * 
+         * @param limit
+         * @return 
+         */
+        public Query limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+        
+        private boolean matches(Record r) {
+            return r.time >= from && r.time < to
+                    && (username == null || username.equals(r.username))
+                    && (text == null || r.text.toLowerCase(Locale.ROOT).contains(text));
+        }
+        
+        private boolean matches(IndexEntry e) {
+            return e.lastTime >= from && e.firstTime < to
+                    && (username == null || e.mightContain(username));
+        }
+        
+    }
+    
+    //==========================
+    // Writing
+    //==========================
+    
+    /**
+     * Writes the messages of a single channel. Not thread-safe.
+     */
+    public static class Writer {
+        
+        private final Path dataFile;
+        private final FileChannel data;
+        private final FileChannel index;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+        private final DataOutputStream out = new DataOutputStream(buffer);
+        private final long[] bloom = new long[BLOOM_LONGS];
+        private int count;
+        private long firstTime;
+        private long lastTime;
+        private long blockStarted;
+        
+        private Writer(Path dir, String channel) throws IOException {
+            Files.createDirectories(dir);
+            dataFile = dir.resolve(getFileName(channel) + DATA_EXT);
+            Path indexFile = dir.resolve(getFileName(channel) + INDEX_EXT);
+            data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            // Remove partially written entry (e.g. after a crash)
+            long completeEntries = index.size() / ENTRY_SIZE;
+            index.truncate(completeEntries * ENTRY_SIZE);
+            index.position(index.size());
+            data.position(data.size());
+        }
+        
+        /**
+         * Open the log for the given channel.
+         * 
+         * @param dir The directory containing the files
+         * @param channel The channel
+         * @return The writer, or null if the files couldn't be opened
+         */
+        public static Writer open(Path dir, String channel) {
+            try {
+                return new Writer(dir, channel);
+            } catch (IOException ex) {
+                LOGGER.warning("Log: Failed to open indexed log for " + channel + " (" + ex + ")");
+                return null;
+            }
+        }
+        
+        public boolean add(Record record) {
+            try {
+                if (count == 0) {
+                    firstTime = record.time;
+                    blockStarted = System.currentTimeMillis();
+                }
+                out.writeLong(record.time);
+                out.writeUTF(record.username);
+                out.writeBoolean(record.action);
+                out.writeUTF(record.text);
+                lastTime = Math.max(lastTime, record.time);
+                firstTime = Math.min(firstTime, record.time);
+                bloomAdd(bloom, record.username);
+                count++;
+                if (buffer.size() >= BLOCK_SIZE) {
+                    writeBlock();
+                }
+                return true;
+            } catch (IOException ex) {
+                LOGGER.warning("Log: Error writing to " + dataFile + " (" + ex + ")");
+                return false;
+            }
+        }
+        
+        /**
+         * When the current block should be written by
+         * {@link #writeIfOld(long)}.
+         * 
+         * @return The time in milliseconds, or -1 if there is nothing to write
+         */
+        public long getWriteDue() {
+            return count > 0 ? blockStarted + MAX_BLOCK_AGE + 1 : -1;
+        }
+        
+        /**
+         * Write the current block if the oldest message in it has been waiting
+         * for too long, so it becomes searchable.
+         * 
+         * @param now The current time in milliseconds
+         */
+        public void writeIfOld(long now) {
+            if (count > 0 && now - blockStarted > MAX_BLOCK_AGE) {
+                try {
+                    writeBlock();
+                } catch (IOException ex) {
+                    LOGGER.warning("Log: Error writing to " + dataFile + " (" + ex + ")");
+                }
+            }
+        }
+        
+        private void writeBlock() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            out.flush();
+            byte[] raw = buffer.toByteArray();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                compressed.write(chunk, 0, length);
+            }
+            byte[] block = compressed.toByteArray();
+            
+            long offset = data.size();
+            writeFully(data, ByteBuffer.wrap(block));
+            
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.putLong(offset);
+            entry.putInt(block.length);
+            entry.putInt(count);
+            entry.putLong(firstTime);
+            entry.putLong(lastTime);
+            for (long l : bloom) {
+                entry.putLong(l);
+            }
+            entry.flip();
+            writeFully(index, entry);
+            
+            buffer.reset();
+            count = 0;
+            firstTime = 0;
+            lastTime = 0;
+            for (int i = 0; i < bloom.length; i++) {
+                bloom[i] = 0;
+            }
+        }
+        
+        public void close() {
+            try {
+                writeBlock();
+            } catch (IOException ex) {
+                LOGGER.warning("Log: Error writing to " + dataFile + " (" + ex + ")");
+            }
+            deflater.end();
+            try {
+                data.close();
+                index.close();
+            } catch (IOException ex) {
+                LOGGER.warning("Log: Error closing " + dataFile + " (" + ex + ")");
+            }
+        }
+        
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private static String getFileName(String channel) {
+        // Same as LogFile
+        return channel.replace("*", "_");
+    }
+    
+    //==========================
+    // Bloom filter
+    //==========================
+    
+    private static void bloomAdd(long[] bloom, String value) {
+        int h1 = value.hashCode();
+        int h2 = secondHash(value);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, BLOOM_BITS);
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+    
+    private static boolean bloomContains(long[] bloom, String value) {
+        int h1 = value.hashCode();
+        int h2 = secondHash(value);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, BLOOM_BITS);
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * FNV-1a, forced to be odd so all bits can be reached.
+     */
+    private static int secondHash(String value) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x01000193;
+        }
+        return h | 1;
+    }
+    
+    //==========================
+    // Reading
+    //==========================
+    
+    private static class IndexEntry {
+        
+        private final long offset;
+        private final int length;
+        private final long firstTime;
+        private final long lastTime;
+        private final long[] bloom = new long[BLOOM_LONGS];
+        
+        private IndexEntry(ByteBuffer b) {
+            offset = b.getLong();
+            length = b.getInt();
+            b.getInt(); // Count
+            firstTime = b.getLong();
+            lastTime = b.getLong();
+            for (int i = 0; i < BLOOM_LONGS; i++) {
+                bloom[i] = b.getLong();
+            }
+        }
+        
+        private boolean mightContain(String username) {
+            return bloomContains(bloom, username);
+        }
+        
+    }
+    
+    private static final int MAX_CACHED_INDICES = 50;
+    
+    /**
+     * Index entries already read, by index file. Since entries are only ever
+     * appended, only new entries have to be read for the next query. Only the
+     * most recently queried files are kept.
+     */
+    private static final Map<Path, List<IndexEntry>> indexCache = new LinkedHashMap<Path, List<IndexEntry>>(16, 0.75f, true) {
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, List<IndexEntry>> eldest) {
+            return size() > MAX_CACHED_INDICES;
+        }
+        
+    };
+    
+    private static List<IndexEntry> readIndex(Path file) throws IOException {
+        synchronized (indexCache) {
+            List<IndexEntry> entries = indexCache.get(file);
+            if (entries == null) {
+                entries = new ArrayList<>();
+                indexCache.put(file, entries);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size() / ENTRY_SIZE * ENTRY_SIZE;
+                long position = (long) entries.size() * ENTRY_SIZE;
+                if (position > size) {
+                    // File was replaced, read again
+                    entries.clear();
+                    position = 0;
+                }
+                if (position < size) {
+                    ByteBuffer buffer = ByteBuffer.allocate((int) (size - position));
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) == -1) {
+                            break;
+                        }
+                    }
+                    buffer.flip();
+                    while (buffer.remaining() >= ENTRY_SIZE) {
+                        entries.add(new IndexEntry(buffer));
+                    }
+                }
+            }
+            return new ArrayList<>(entries);
+        }
+    }
+    
+    /**
+     * Search the log of a channel. Blocks are checked from most recent to
+     * oldest, so the limit of the query applies to the most recent messages.
+     * 
+     * @param dir The directory containing the files
+     * @param channel The channel
+     * @param query The search parameters
+     * @return The matching messages, oldest first (empty if none were found or
+     * no log exists for this channel)
+     * @throws IOException If an error occured reading the files
+     */
+    public static List<Record> query(Path dir, String channel, Query query) throws IOException {
+        Path indexFile = dir.resolve(getFileName(channel) + INDEX_EXT);
+        Path dataFile = dir.resolve(getFileName(channel) + DATA_EXT);
+        if (!Files.exists(indexFile) || !Files.exists(dataFile)) {
+            return Collections.emptyList();
+        }
+        List<IndexEntry> entries = readIndex(indexFile);
+        List<Record> result = new ArrayList<>();
+        Inflater inflater = new Inflater();
+        try (FileChannel data = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            for (int i = entries.size() - 1; i >= 0 && result.size() < query.limit; i--) {
+                IndexEntry entry = entries.get(i);
+                if (!query.matches(entry)) {
+                    continue;
+                }
+                List<Record> blockResult = new ArrayList<>();
+                for (Record r : readBlock(data, entry, inflater)) {
+                    if (query.matches(r)) {
+                        blockResult.add(r);
+                    }
+                }
+                // Add most recent first, reversed at the end
+                for (int j = blockResult.size() - 1; j >= 0 && result.size() < query.limit; j--) {
+                    result.add(blockResult.get(j));
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        Collections.reverse(result);
+        return result;
+    }
+    
+    private static List<Record> readBlock(FileChannel data, IndexEntry entry, Inflater inflater) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(entry.length);
+        while (compressed.hasRemaining()) {
+            if (data.read(compressed, entry.offset + compressed.position()) == -1) {
+                throw new EOFException("Block incomplete");
+            }
+        }
+        inflater.reset();
+        inflater.setInput(compressed.array());
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+        byte[] chunk = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int length = inflater.inflate(chunk);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Block incomplete");
+                }
+                raw.write(chunk, 0, length);
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        }
+        List<Record> result = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw.toByteArray()));
+        while (in.available() > 0) {
+            long time = in.readLong();
+            String username = in.readUTF();
+            boolean action = in.readBoolean();
+            String text = in.readUTF();
+            result.add(new Record(time, username, action, text));
+        }
+        return result;
+    }
+    
+}
@@ -34,6 +34,12 @@ public class LogFile {
      */
     private static final int MAX_ATTEMPTS = 3;
 
+    /**
+     * Size of the write buffer in chars, so that lines can be collected
+     * before writing them to the file.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * Write buffer for the LogFile instance.
      */
@@ -108,6 +114,17 @@ public class LogFile {
      * @return Returns true if the message is successfully logged.
      */
     public boolean write(String line) {
+        return append(line) && flush();
+    }
+
+    /**
+     * Attempt to add a new line to the write buffer, which is only written to
+     * the file when the buffer is full or {@link #flush()} is called.
+     *
+     * @param line The message to be written to the file.
+     * @return Returns true if the message was successfully added.
+     */
+    public boolean append(String line) {
         if (!valid) {
             LOGGER.warning("Log: Tried writing to invalid file " + file + "");
             return false;
@@ -116,6 +133,24 @@ public class LogFile {
         try {
             writer.write(line);
             writer.newLine();
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warning("Log: Error writing to " + file + " (" + ex.getLocalizedMessage() + ")");
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Write any buffered lines to the file.
+     *
+     * @return Returns true if the lines were successfully written.
+     */
+    public boolean flush() {
+        if (!valid) {
+            return false;
+        }
+        try {
             writer.flush();
             return true;
         } catch (IOException ex) {
@@ -164,12 +199,12 @@ public class LogFile {
             if (lockFile) {
                 FileLock lock = channel.tryLock();
                 if (lock != null) {
-                    writer = new BufferedWriter(Channels.newWriter(channel, CHARSET));
+                    writer = new BufferedWriter(Channels.newWriter(channel, CHARSET), BUFFER_SIZE);
                     valid = true;
                     return true;
                 }
             } else {
-                writer = new BufferedWriter(Channels.newWriter(channel, CHARSET));
+                writer = new BufferedWriter(Channels.newWriter(channel, CHARSET), BUFFER_SIZE);
                 valid = true;
                 return true;
             }
@@ -26,14 +26,25 @@ public class LogManager {
     private final BlockingQueue<LogItem> queue;
     private final Thread writerThread;
 
+    /**
+     * Create a new LogManager.
+     * 
+     * @param path The log directory
+     * @param splitLogs How to split logs (never, daily, weekly, monthly)
+     * @param useSubdirectories Whether to create a directory for each channel
+     * @param lockFiles Whether to lock the log files
+     * @param flushDelay Max time in milliseconds that lines are buffered
+     * before writing them to the file, 0 to write every line immediately
+     * @param indexed Whether to also write chat messages to an indexed log
+     */
     public LogManager(Path path, String splitLogs, boolean useSubdirectories,
-            boolean lockFiles) {
+            boolean lockFiles, long flushDelay, boolean indexed) {
         path.toFile().mkdirs();
         if (!path.toFile().exists()) {
             LOGGER.warning("Log: Failed to create path: "+path);
         }
         this.queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
-        this.writerThread = new Thread(new LogWriter(queue, path, splitLogs, useSubdirectories, lockFiles), "LogWriter");
+        this.writerThread = new Thread(new LogWriter(queue, path, splitLogs, useSubdirectories, lockFiles, flushDelay, indexed), "LogWriter");
     }
     
     public void start() {
@@ -60,7 +71,19 @@ public class LogManager {
 
     
     public void writeLine(String channel, String line) {
-        boolean added = queue.offer(new LogItem(channel, line));
+        writeLine(channel, line, null);
+    }
+    
+    /**
+     * Write a line to the log of the given channel.
+     * 
+     * @param channel The channel
+     * @param line The line to write, null to close the channel's log
+     * @param record The chat message to add to the indexed log (if enabled),
+     * can be null
+     */
+    public void writeLine(String channel, String line, IndexedLog.Record record) {
+        boolean added = queue.offer(new LogItem(channel, line, record));
         if (!added) {
             int current = errors.incrementAndGet();
             if (current % 20 == 0) {
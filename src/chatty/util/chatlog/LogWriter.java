@@ -1,19 +1,37 @@
 
 package chatty.util.chatlog;
 
+import chatty.util.TimestampCache;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
  * Handles writing the log files. Retrieves data from a queue and manages files
  * to write the log into.
+ * 
+ * <p>
+ * If a flush delay is set, lines are taken from the queue in batches and only
+ * buffered, with the buffers of all files written when the oldest buffered
+ * line is older than the flush delay, when enough data has been buffered or
+ * when the files are closed. This means less writes to the disk, but lines
+ * from up to the flush delay may be lost if the program is ended abruptly.
+ * </p>
+ * 
+ * <p>
+ * If enabled, chat messages are also written to an {@link IndexedLog} for each
+ * channel, which can be searched.
+ * </p>
  *
  * @author tduva
  */
@@ -26,13 +44,42 @@ public class LogWriter implements Runnable {
     private static final int STATS_INTERVAL = 25000;
     private static final int STATS_TIME_INTERVAL = 15 * 60 * 1000;
 
+    /**
+     * Max number of items taken from the queue at once.
+     */
+    private static final int BATCH_SIZE = 200;
+
+    /**
+     * Write buffered lines when this many chars are buffered in total.
+     */
+    private static final int FLUSH_SIZE = 64 * 1024;
+
     private final Map<String, LogFile> files = new HashMap<>();
+    
+    /**
+     * The date prefix each open file was created with.
+     */
+    private final Map<String, String> filePrefixes = new HashMap<>();
     private final Set<String> errors = new HashSet<>();
     private final BlockingQueue<LogItem> queue;
     private final Path path;
     private final String splitLogs;
     private final boolean useSubdirectories;
     private final boolean lockFiles;
+    private final long flushDelay;
+    private final boolean indexed;
+    private final TimestampCache datePrefixCache;
+
+    private final Map<String, IndexedLog.Writer> indexedLogs = new HashMap<>();
+    private final Set<String> indexedErrors = new HashSet<>();
+
+    /**
+     * Files with buffered lines.
+     */
+    private final Set<LogFile> unflushed = new HashSet<>();
+    private long unflushedSince = -1;
+    private int unflushedChars;
+    private int flushCount;
 
     private long addedQueueSize;
     private int addedQueueSizeCount;
@@ -41,38 +88,62 @@ public class LogWriter implements Runnable {
     private int maxQueueSize;
     private int totalLines;
 
+    /**
+     * Create a new LogWriter.
+     * 
+     * @param queue The queue to take the lines from
+     * @param path The log directory
+     * @param splitLogs How to split logs (never, daily, weekly, monthly)
+     * @param useSubdirectories Whether to create a directory for each channel
+     * @param lockFiles Whether to lock the log files
+     * @param flushDelay Max time in milliseconds that lines are buffered
+     * before writing them to the file, 0 to write every line immediately
+     * @param indexed Whether to also write chat messages to an indexed log
+     */
     public LogWriter(BlockingQueue<LogItem> queue, Path path, String splitLogs,
-            boolean useSubdirectories, boolean lockFiles) {
+            boolean useSubdirectories, boolean lockFiles, long flushDelay,
+            boolean indexed) {
         this.queue = queue;
         this.path = path;
         this.splitLogs = splitLogs;
+        this.datePrefixCache = TimestampCache.getShared("LogWriter|"+splitLogs+"|"+TimeZone.getDefault().getID());
         this.useSubdirectories = useSubdirectories;
         this.lockFiles = lockFiles;
+        this.flushDelay = Math.max(flushDelay, 0);
+        this.indexed = indexed;
     }
 
     @Override
     public void run() {
         boolean run = true;
+        List<LogItem> batch = new ArrayList<>();
         try {
             while (run) {
                 //System.out.println("Waiting for a new item..");
-                LogItem item = queue.take();
-                stats(queue.size());
-                if (item.channel == null) {
-                    if (item.message == null) {
-                        outputStats();
-                        run = false;
-                        closeAllFiles();
-                    } else {
-                        // Can't close any files here because it would
-                        // remove an item during iteration
-                        for (String channel : files.keySet()) {
-                            handleMessage(channel, item.message);
+                LogItem item;
+                long due = getNextDue();
+                if (due == -1) {
+                    item = queue.take();
+                } else {
+                    long wait = due - System.currentTimeMillis();
+                    item = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+                if (item != null) {
+                    batch.add(item);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    for (LogItem batchItem : batch) {
+                        stats(queue.size());
+                        if (!handleItem(batchItem)) {
+                            run = false;
+                            break;
                         }
                     }
-                } else {
-                    handleMessage(item.channel, item.message);
+                    batch.clear();
                 }
+                // Also when idle, so the last block of a quiet channel is
+                // still written eventually
+                writeOldIndexedBlocks();
+                checkFlush();
             }
         } catch (InterruptedException ex) {
             System.out.println("Interrupted");
@@ -81,12 +152,74 @@ public class LogWriter implements Runnable {
         }
     }
 
+    /**
+     * Handle a single item from the queue.
+     * 
+     * @param item The item
+     * @return false if this item closed the log, true otherwise
+     */
+    private boolean handleItem(LogItem item) {
+        if (item.channel == null) {
+            if (item.message == null) {
+                outputStats();
+                closeAllFiles();
+                return false;
+            } else {
+                // Can't close any files here because it would
+                // remove an item during iteration
+                for (String channel : files.keySet()) {
+                    handleMessage(channel, item.message);
+                }
+            }
+        } else {
+            handleMessage(item.channel, item.message);
+            if (item.record != null) {
+                writeIndexed(item.channel, item.record);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the buffered lines of all files, if the oldest line has been
+     * buffered long enough or enough has been buffered.
+     */
+    private void checkFlush() {
+        if (unflushedSince == -1) {
+            return;
+        }
+        if (unflushedChars >= FLUSH_SIZE
+                || System.currentTimeMillis() - unflushedSince >= flushDelay) {
+            flushAll();
+        }
+    }
+
+    private void flushAll() {
+        for (LogFile file : unflushed) {
+            // Closed files have already been flushed
+            if (file.isValid()) {
+                file.flush();
+            }
+        }
+        if (!unflushed.isEmpty()) {
+            flushCount++;
+        }
+        unflushed.clear();
+        unflushedSince = -1;
+        unflushedChars = 0;
+    }
+
     private void closeAllFiles() {
         for (String channel : files.keySet()) {
             LogFile file = files.get(channel);
             closeFile(file);
         }
         files.clear();
+        flushAll();
+        for (IndexedLog.Writer writer : indexedLogs.values()) {
+            writer.close();
+        }
+        indexedLogs.clear();
     }
 
     private void handleMessage(String channel, String message) {
@@ -99,21 +232,45 @@ public class LogWriter implements Runnable {
 
     private void writeLine(String channel, String line) {
         LogFile file = getFile(channel);
-        if (file == null || !file.write(line)) {
+        if (file == null || !write(file, line)) {
             fileError(channel);
         }
     }
 
+    /**
+     * Write the line immediately or just buffer it, depending on the flush
+     * delay.
+     * 
+     * @param file The file to write to
+     * @param line The line
+     * @return true if successful
+     */
+    private boolean write(LogFile file, String line) {
+        if (flushDelay == 0) {
+            return file.write(line);
+        }
+        if (!file.append(line)) {
+            return false;
+        }
+        unflushed.add(file);
+        unflushedChars += line.length() + 1;
+        if (unflushedSince == -1) {
+            unflushedSince = System.currentTimeMillis();
+        }
+        return true;
+    }
+
     private LogFile getFile(String channel) {
         LogFile file = files.get(channel);
         String datePrefix = "";
 
         if (!splitLogs.equals("never")) {
-            datePrefix = getDatePrefix() + "_";
+            datePrefix = getCachedDatePrefix();
         }
 
         if (file != null && file.isValid()) {
-            if (!datePrefix.isEmpty() && shouldSplitLog(file.getDate())) {
+            // The filename would be different now, so start a new file
+            if (!datePrefix.equals(filePrefixes.get(channel))) {
                 file.close();
                 return addFile(channel, datePrefix);
             }
@@ -156,31 +313,19 @@ public class LogWriter implements Runnable {
     }
 
     /**
-     * Determine if we should split the log file before writing.
+     * Get the date prefix (including separator), which is only created again
+     * once per second (this is called for every line written).
      *
-     * @param fileDate The date that the LogFile instance was created
-     * @return Returns true if the log file should be split before writing
+     * @return 
      */
-    private boolean shouldSplitLog(Calendar fileDate) {
-        Calendar date = Calendar.getInstance();
-
-        if (splitLogs.equals("daily")) {
-            if (fileDate.get(Calendar.DAY_OF_YEAR) != date.get(Calendar.DAY_OF_YEAR)) {
-                return true;
-            }
+    private String getCachedDatePrefix() {
+        long second = TimestampCache.second(-1);
+        String result = datePrefixCache.get(second, null, 0);
+        if (result == null) {
+            result = getDatePrefix() + "_";
+            datePrefixCache.put(second, null, 0, result);
         }
-        else if (splitLogs.equals("weekly")) {
-            if (fileDate.get(Calendar.WEEK_OF_YEAR) != date.get(Calendar.WEEK_OF_YEAR)) {
-                return true;
-            }
-        }
-        else if (splitLogs.equals("monthly")) {
-            if (fileDate.get(Calendar.MONTH) != date.get(Calendar.MONTH)) {
-                return true;
-            }
-        }
-        
-        return false;
+        return result;
     }
 
     private LogFile addFile(String channel, String datePrefix) {
@@ -200,7 +345,8 @@ public class LogWriter implements Runnable {
             errors.add(channel);
         } else {
             files.put(channel, file);
-            file.write("# Log started: " + getDateTime());
+            filePrefixes.put(channel, datePrefix);
+            write(file, "# Log started: " + getDateTime());
             LOGGER.info("Log: Opened file " + file.getPath()+(file.isLocked() ? " (locked)" : ""));
         }
         return file;
@@ -217,6 +363,75 @@ public class LogWriter implements Runnable {
         LogFile file = files.get(channel);
         closeFile(file);
         files.remove(channel);
+        IndexedLog.Writer writer = indexedLogs.remove(channel);
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    //==========================
+    // Indexed log
+    //==========================
+
+    private void writeIndexed(String channel, IndexedLog.Record record) {
+        if (!indexed) {
+            return;
+        }
+        IndexedLog.Writer writer = indexedLogs.get(channel);
+        if (writer == null) {
+            if (indexedErrors.contains(channel)) {
+                return;
+            }
+            writer = IndexedLog.Writer.open(getIndexedPath(path), channel);
+            if (writer == null) {
+                indexedErrors.add(channel);
+                return;
+            }
+            indexedLogs.put(channel, writer);
+        }
+        if (!writer.add(record)) {
+            writer.close();
+            indexedLogs.remove(channel);
+            errorCount++;
+        }
+    }
+
+    /**
+     * Write blocks that have been buffered for a while, so they become
+     * searchable even in channels with few messages.
+     */
+    /**
+     * When something has to be done next without a new item, either flushing
+     * buffered lines or writing an indexed block.
+     * 
+     * @return The time in milliseconds, or -1 if nothing is pending
+     */
+    private long getNextDue() {
+        long result = unflushedSince == -1 ? -1 : unflushedSince + flushDelay;
+        for (IndexedLog.Writer writer : indexedLogs.values()) {
+            long due = writer.getWriteDue();
+            if (due != -1 && (result == -1 || due < result)) {
+                result = due;
+            }
+        }
+        return result;
+    }
+    
+    private void writeOldIndexedBlocks() {
+        long now = System.currentTimeMillis();
+        for (IndexedLog.Writer writer : indexedLogs.values()) {
+            writer.writeIfOld(now);
+        }
+    }
+
+    /**
+     * The directory containing the indexed logs.
+     * 
+     * @param path The base log directory
+     * @return The directory
+     */
+    public static Path getIndexedPath(Path path) {
+        return path.resolve("indexed");
     }
 
     private void closeFile(LogFile file) {
@@ -248,10 +463,11 @@ public class LogWriter implements Runnable {
     private void outputStats() {
         long avg = addedQueueSizeCount > 0 ? addedQueueSize / addedQueueSizeCount : 0;
         LOGGER.info("Log: total: " + totalLines + " / queue size (avg: " + avg + ", max: " + maxQueueSize
-                + ") / errors: " + errorCount);
+                + ") / errors: " + errorCount + " / flushes: " + flushCount);
         addedQueueSize = 0;
         addedQueueSizeCount = 0;
         errorCount = 0;
+        flushCount = 0;
         maxQueueSize = 0;
         lastStatsTime = System.currentTimeMillis();
     }
@@ -260,10 +476,16 @@ public class LogWriter implements Runnable {
 
         public final String channel;
         public final String message;
+        public final IndexedLog.Record record;
 
         public LogItem(String channel, String message) {
+            this(channel, message, null);
+        }
+
+        public LogItem(String channel, String message, IndexedLog.Record record) {
             this.channel = channel;
             this.message = message;
+            this.record = record;
         }
     }
 
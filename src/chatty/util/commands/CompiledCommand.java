@@ -0,0 +1,120 @@
+
+package chatty.util.commands;
+
+import java.util.Set;
+
+/**
+ * A CustomCommand prepared for being replaced very often with different
+ * Parameters (e.g. for every chat message being logged).
+ *
+ * <p>
+ * The top-level elements of the command are resolved once: Literals are
+ * stored as text and Identifiers are looked up directly in the Parameters,
+ * while all other elements are replaced as usual. Parameters that are
+ * expensive to create can be added with
+ * {@link Parameters#putLazy(String, java.util.function.Supplier)}, or skipped
+ * if not referenced by the command at all (see {@link #references(String)}).
+ * </p>
+ *
+ * @author tduva
+ */
+public class CompiledCommand {
+
+    private final CustomCommand command;
+    private final Part[] parts;
+    private final String literal;
+    private final Set<String> identifiers;
+
+    /**
+     * Estimated length of the result, so the StringBuilder doesn't have to
+     * grow in most cases.
+     */
+    private volatile int lengthEstimate = 16;
+
+    CompiledCommand(CustomCommand command, Items items) {
+        this.command = command;
+        this.identifiers = items.getIdentifiersWithPrefix("");
+        this.parts = new Part[items.size()];
+        boolean onlyLiterals = true;
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.getItem(i);
+            if (item instanceof Literal) {
+                String text = ((Literal) item).getLiteral();
+                parts[i] = parameters -> text;
+            }
+            else if (item instanceof Identifier
+                    && !((Identifier) item).getName().startsWith("_")) {
+                // Names with "_" may refer to presets, so replace as usual
+                String name = ((Identifier) item).getName();
+                parts[i] = parameters -> {
+                    String value = parameters.get(name);
+                    return value != null ? value : "";
+                };
+                onlyLiterals = false;
+            }
+            else {
+                parts[i] = item::replace;
+                onlyLiterals = false;
+            }
+        }
+        this.literal = onlyLiterals ? items.replace(null) : null;
+    }
+
+    /**
+     * Same result as {@link CustomCommand#replace(Parameters)}.
+     *
+     * @param parameters
+     * @return The result, or null if a required parameter was not found
+     */
+    public String replace(Parameters parameters) {
+        if (literal != null) {
+            return literal;
+        }
+        if (parameters.hasPresets()) {
+            // Identifiers may refer to presets, which isn't handled here
+            return command.replace(parameters);
+        }
+        StringBuilder b = new StringBuilder(lengthEstimate);
+        for (Part part : parts) {
+            String replaced = part.replace(parameters);
+            if (replaced == null) {
+                return null;
+            }
+            b.append(replaced);
+        }
+        if (b.length() > lengthEstimate) {
+            lengthEstimate = b.length() + 16;
+        }
+        return b.toString();
+    }
+
+    /**
+     * Whether the command contains the given identifier anywhere (including
+     * function parameters), so the parameter can be skipped if not.
+     *
+     * @param identifier The identifier, all-lowercase
+     * @return
+     */
+    public boolean references(String identifier) {
+        return identifiers.contains(identifier);
+    }
+
+    /**
+     * The command this was compiled from.
+     *
+     * @return
+     */
+    public CustomCommand getCommand() {
+        return command;
+    }
+
+    @Override
+    public String toString() {
+        return command.toString();
+    }
+
+    private interface Part {
+        String replace(Parameters parameters);
+    }
+
+}
@@ -42,6 +42,18 @@ public class CustomCommand {
         return items.replace(parameters);
     }
     
+    /**
+     * Create a form of this command that is faster to replace repeatedly.
+     * 
+     * @return The compiled command, or null if this command has an error
+     */
+    public CompiledCommand compile() {
+        if (items == null) {
+            return null;
+        }
+        return new CompiledCommand(this, items);
+    }
+    
     /**
      * The raw input this command was created with.
      * 
@@ -31,7 +31,7 @@ class Identifier implements Item {
     @Override
     public String replace(Parameters parameters) {
         String value = parameters.get(name);
-        if (value == null && name.startsWith("_") || parameters.hasKey("-presets-")) {
+        if (value == null && name.startsWith("_") || parameters.hasPresets()) {
             Object o = parameters.getObject(name);
             CustomCommand command = null;
             if (o instanceof CustomCommand) {
@@ -52,6 +52,10 @@ class Identifier implements Item {
         return value != null ? value : "";
     }
 
+    String getName() {
+        return name;
+    }
+    
     @Override
     public String toString() {
         return "$" + name;
@@ -48,6 +48,10 @@ class Items implements Item {
     public boolean isEmpty() {
         return collection.isEmpty();
     }
+    
+    public int size() {
+        return collection.size();
+    }
 
     @Override
     public String replace(Parameters parameters) {
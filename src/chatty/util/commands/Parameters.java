@@ -10,6 +10,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Allows adding values for use in Custom Commands replacements.
@@ -21,6 +22,7 @@ public class Parameters {
     private final Map<String, String> parameters;
     private String[] args;
     private final Map<String, Object> objectParameters = new HashMap<>();
+    private Map<String, Supplier<String>> lazyParameters;
 
     public Parameters(Map<String, String> parameters) {
         this.parameters = parameters;
@@ -40,6 +42,9 @@ public class Parameters {
     public synchronized Parameters copy() {
         Parameters result = new Parameters(new HashMap<>(parameters));
         result.objectParameters.putAll(objectParameters);
+        if (lazyParameters != null) {
+            result.lazyParameters = new HashMap<>(lazyParameters);
+        }
         return result;
     }
 
@@ -52,6 +57,9 @@ public class Parameters {
      */
     public synchronized String get(String key) {
         String result = parameters.get(key);
+        if (result == null && lazyParameters != null) {
+            result = getLazy(key);
+        }
         if (result == null) {
             result = getUserParameter(key, (User)getObject("user"));
         }
@@ -69,6 +77,17 @@ public class Parameters {
         return get(key) != null;
     }
     
+    /**
+     * Whether the "-presets-" parameter is set, which is checked for every
+     * identifier, so this is a faster version of
+     * {@code hasKey("-presets-")}.
+     * 
+     * @return 
+     */
+    synchronized boolean hasPresets() {
+        return parameters.containsKey("-presets-");
+    }
+    
     /**
      * Check that all of the given parameters are not null or empty (this
      * includes ones that are based on objects such as "user" and "localUser",
@@ -122,6 +141,9 @@ public class Parameters {
      */
     public synchronized void put(String key, String value) {
         if (key != null && value != null && !value.isEmpty()) {
+            if (lazyParameters != null) {
+                lazyParameters.remove(key);
+            }
             parameters.put(key, value);
             if (key.equals("args")) {
                 updateArgs();
@@ -137,6 +159,9 @@ public class Parameters {
      */
     public synchronized void remove(String key) {
         if (key != null) {
+            if (lazyParameters != null) {
+                lazyParameters.remove(key);
+            }
             parameters.remove(key);
             if (key.equals("args")) {
                 updateArgs();
@@ -144,6 +169,40 @@ public class Parameters {
         }
     }
     
+    /**
+     * Set a parameter for the given key that is only computed when it is
+     * retrieved for the first time, for values that are expensive to create
+     * and may not be used by the command. The value is then handled as if
+     * added with {@link #put(String, String)}, so a null or empty value means
+     * the parameter doesn't exist.
+     * 
+     * @param key The key, should be all-lowercase
+     * @param value Creates the value, may be called in any thread that
+     * retrieves it
+     */
+    public synchronized void putLazy(String key, Supplier<String> value) {
+        if (key != null && value != null) {
+            if (lazyParameters == null) {
+                lazyParameters = new HashMap<>();
+            }
+            parameters.remove(key);
+            lazyParameters.put(key, value);
+        }
+    }
+    
+    private String getLazy(String key) {
+        Supplier<String> supplier = lazyParameters.remove(key);
+        if (supplier == null) {
+            return null;
+        }
+        String value = supplier.get();
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        parameters.put(key, value);
+        return value;
+    }
+    
     /**
      * Set the object parameter for the given key, if both key and value are
      * non-null. Object parameters may be used by function replacements, but
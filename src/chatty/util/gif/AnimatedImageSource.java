@@ -30,7 +30,8 @@ public class AnimatedImageSource implements ImageProducer {
     
     private int[] pixels;
     private int currentFrame = -1;
-    private Thread thread;
+    private boolean scheduled;
+    private long nextFrameTime;
     private ElapsedTime noConsumersTime;
     private boolean errorOccured;
     
@@ -58,7 +59,7 @@ public class AnimatedImageSource implements ImageProducer {
         consumers.add(ic);
         initConsumer(ic);
         sendFrame(ic);
-        startThread();
+        startAnimation();
     }
     
     @Override
@@ -86,60 +87,71 @@ public class AnimatedImageSource implements ImageProducer {
     
     public static volatile int ANIMATION_PAUSE = -1;
     
-    private void startThread() {
+    private void startAnimation() {
         if (errorOccured) {
             return;
         }
-        if (thread == null || !thread.isAlive()) {
-            thread = new Thread(() -> {
-                do {
-                    if (isActive()) {
-                        nextFrame();
-                    }
-                    else {
-                        // Animation is paused, switch frame if necessary
-                        int pauseFrame = 0;
-                        switch (ANIMATION_PAUSE) {
-                            case 0:
-                                pauseFrame = 0;
-                                break;
-                            case 1:
-                                pauseFrame = currentFrame;
-                                break;
-                            case 2:
-                                pauseFrame = image.getPreferredPauseFrame();
-                                break;
-                        }
-                        
-                        // If it hadn't played yet could be -1 from currentFrame
-                        if (pauseFrame < 0) {
-                            pauseFrame = 0;
-                        }
-                        
-                        if (pauseFrame != currentFrame || !hasPixels()) {
-                            currentFrame = pauseFrame - 1;
-                            nextFrame();
-                        }
-                    }
-                    try {
-                        Thread.sleep(getDelay());
-                    }
-                    catch (InterruptedException ex) {
-                        // Do nothing
-                    }
-                    if (checkStopThread() || Thread.interrupted()) {
-                        threadStopped();
-                        return;
-                    }
-                } while (true);
-            }, "AnimatedImage"+(image.getName() != null ? "-"+image.getName() : ""));
-            thread.setDaemon(true);
-            // ImageFetcher is setting a lower priority, so may make sense?
-            thread.setPriority(2);
-            thread.start();
+        if (!scheduled) {
+            scheduled = true;
+            nextFrameTime = 0;
+            AnimationScheduler.add(this);
         }
     }
     
+    /**
+     * Called by the {@link AnimationScheduler} on every tick, to update the
+     * frame if it is due.
+     * 
+     * @param now The current time in milliseconds
+     */
+    synchronized void tick(long now) {
+        if (checkStop()) {
+            stopped();
+            return;
+        }
+        if (now < nextFrameTime) {
+            return;
+        }
+        if (isActive()) {
+            nextFrame();
+        }
+        else {
+            // Animation is paused, switch frame if necessary
+            int pauseFrame = 0;
+            switch (ANIMATION_PAUSE) {
+                case 0:
+                    pauseFrame = 0;
+                    break;
+                case 1:
+                    pauseFrame = currentFrame;
+                    break;
+                case 2:
+                    pauseFrame = image.getPreferredPauseFrame();
+                    break;
+            }
+            
+            // If it hadn't played yet could be -1 from currentFrame
+            if (pauseFrame < 0) {
+                pauseFrame = 0;
+            }
+            
+            if (pauseFrame != currentFrame || !hasPixels()) {
+                currentFrame = pauseFrame - 1;
+                nextFrame();
+            }
+        }
+        /**
+         * Base the next frame on when this one was due, so that the delay of
+         * waiting for the next tick doesn't add up, unless it is too far
+         * behind (e.g. first frame or the system was busy).
+         */
+        long base = nextFrameTime;
+        if (base == 0 || now - base > 1000) {
+            base = now;
+        }
+        nextFrameTime = base + getDelay();
+    }
+    
     private synchronized int getDelay() {
         return image.getDelay(currentFrame);
     }
@@ -154,11 +166,11 @@ public class AnimatedImageSource implements ImageProducer {
     
     /**
      * Check if enough time has passed with no consumers registered for the
-     * thread to stop.
+     * animation to stop.
      * 
      * @return 
      */
-    private synchronized boolean checkStopThread() {
+    private synchronized boolean checkStop() {
         if (errorOccured) {
             return true;
         }
@@ -172,8 +184,10 @@ public class AnimatedImageSource implements ImageProducer {
         return noConsumersTime.secondsElapsed(INACTIVITY_SECONDS);
     }
     
-    private synchronized void threadStopped() {
-        thread = null;
+    private synchronized void stopped() {
+        // Remove while holding the lock, so it can't be added again in between
+        AnimationScheduler.remove(this);
+        scheduled = false;
         pixels = null;
     }
     
@@ -224,7 +238,7 @@ public class AnimatedImageSource implements ImageProducer {
                  * This class is only for animated images, but just in case only
                  * one frame is available, this would probably cause the
                  * consumer to unregister themselves, which would then
-                 * eventually cause the thread to stop.
+                 * eventually cause the animation to stop.
                  */
                 ic.imageComplete(ImageConsumer.STATICIMAGEDONE);
             }
@@ -0,0 +1,145 @@
+
+package chatty.util.gif;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Advances all running animations on a single thread with a shared tick,
+ * instead of each animated image having it's own thread sleeping between
+ * frames.
+ * 
+ * <p>
+ * On every tick all images whose next frame is due are updated together, so
+ * the resulting repaints are requested at about the same time and can be
+ * combined by Swing into one repaint. Images without consumers (e.g. no longer
+ * visible) are removed centrally when they have been inactive for a while. The
+ * tick only runs while there are images to animate.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class AnimationScheduler {
+    
+    private static final Logger LOGGER = Logger.getLogger(AnimationScheduler.class.getName());
+    
+    /**
+     * How often to check for frames that are due, in milliseconds.
+     */
+    private static final int TICK = 10;
+    
+    private static final ScheduledExecutorService EXECUTOR;
+    
+    static {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "AnimatedImage");
+            thread.setDaemon(true);
+            // ImageFetcher is setting a lower priority, so may make sense?
+            thread.setPriority(2);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        EXECUTOR = executor;
+    }
+    
+    private static final Set<AnimatedImageSource> sources = new LinkedHashSet<>();
+    private static final List<AnimatedImageSource> current = new ArrayList<>();
+    private static ScheduledFuture<?> future;
+    
+    //---------
+    // Metrics
+    //---------
+    private static volatile int activeCount;
+    private static volatile long lastTickNanos;
+    private static volatile long maxTickNanos;
+    private static long totalTickNanos;
+    private static long tickCount;
+    
+    /**
+     * Add an image to be animated, until it removes itself.
+     * 
+     * @param source
+     */
+    static synchronized void add(AnimatedImageSource source) {
+        sources.add(source);
+        activeCount = sources.size();
+        if (future == null) {
+            future = EXECUTOR.scheduleAtFixedRate(AnimationScheduler::tick,
+                    0, TICK, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Remove an image, which should be done by the image itself while holding
+     * it's lock.
+     * 
+     * @param source 
+     */
+    static synchronized void remove(AnimatedImageSource source) {
+        sources.remove(source);
+        activeCount = sources.size();
+    }
+    
+    private static void tick() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        synchronized (AnimationScheduler.class) {
+            current.addAll(sources);
+        }
+        for (AnimatedImageSource source : current) {
+            try {
+                source.tick(now);
+            }
+            catch (Exception ex) {
+                LOGGER.warning("Error animating "+source.getAnimatedImage().getName()+": "+ex);
+            }
+        }
+        current.clear();
+        long duration = System.nanoTime() - start;
+        synchronized (AnimationScheduler.class) {
+            if (sources.isEmpty() && future != null) {
+                future.cancel(false);
+                future = null;
+            }
+            lastTickNanos = duration;
+            maxTickNanos = Math.max(maxTickNanos, duration);
+            totalTickNanos += duration;
+            tickCount++;
+        }
+    }
+    
+    /**
+     * The number of images currently being animated.
+     * 
+     * @return
+     */
+    public static int getActiveCount() {
+        return activeCount;
+    }
+    
+    /**
+     * How long the last tick took to update all images.
+     * 
+     * @return The duration in nanoseconds
+     */
+    public static long getLastTickNanos() {
+        return lastTickNanos;
+    }
+    
+    public static synchronized String getInfo() {
+        return String.format("[Animations] active: %d, tick: %.2fms last / %.2fms avg / %.2fms max (%d ticks)",
+                activeCount,
+                lastTickNanos / 1000000.0,
+                tickCount > 0 ? totalTickNanos / tickCount / 1000000.0 : 0,
+                maxTickNanos / 1000000.0,
+                tickCount);
+    }
+    
+}
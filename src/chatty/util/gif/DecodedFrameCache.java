@@ -0,0 +1,105 @@
+
+package chatty.util.gif;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps decoded pixels of recently shown ListAnimatedImageFrame instances, so
+ * the PNG compressed frames don't have to be decoded again on every frame
+ * update while an image is animating. All frames share a single size limit and
+ * the least recently used frames are removed first, which then just have to be
+ * decoded from the compressed data again.
+ * 
+ * @author tduva
+ */
+public class DecodedFrameCache {
+    
+    private static final LinkedHashMap<ListAnimatedImageFrame, int[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private static long maxBytes = 32 * 1024 * 1024;
+    private static long bytes;
+    private static long hits;
+    private static long misses;
+    
+    /**
+     * Set the max size of all decoded frames. Removes frames if necessary.
+     * 
+     * @param limit The size in bytes, 0 to disable caching
+     */
+    public static synchronized void setMaxBytes(long limit) {
+        maxBytes = Math.max(limit, 0);
+        trim(maxBytes);
+    }
+    
+    /**
+     * Copy the cached pixels of the given frame into the array.
+     * 
+     * @param frame The frame
+     * @param pixels The array to copy to
+     * @return true if the frame was cached, false otherwise (in which case
+     * nothing was copied)
+     */
+    static synchronized boolean get(ListAnimatedImageFrame frame, int[] pixels) {
+        int[] cached = cache.get(frame);
+        if (cached == null) {
+            misses++;
+            return false;
+        }
+        hits++;
+        System.arraycopy(cached, 0, pixels, 0, Math.min(cached.length, pixels.length));
+        return true;
+    }
+    
+    /**
+     * Add a copy of the decoded pixels of the given frame, if it fits into the
+     * size limit (removing the least recently used frames if necessary).
+     * 
+     * @param frame The frame
+     * @param pixels The decoded pixels, the amount of which should be the
+     * number of pixels in the frame
+     * @param length How many of the pixels to store
+     */
+    static synchronized void put(ListAnimatedImageFrame frame, int[] pixels, int length) {
+        long size = getSize(length);
+        if (size > maxBytes || cache.containsKey(frame)) {
+            return;
+        }
+        trim(maxBytes - size);
+        int[] copy = new int[length];
+        System.arraycopy(pixels, 0, copy, 0, length);
+        cache.put(frame, copy);
+        bytes += size;
+    }
+    
+    private static void trim(long target) {
+        Iterator<Map.Entry<ListAnimatedImageFrame, int[]>> it = cache.entrySet().iterator();
+        while (bytes > target && it.hasNext()) {
+            bytes -= getSize(it.next().getValue().length);
+            it.remove();
+        }
+    }
+    
+    /**
+     * Estimated memory used by an array with the given number of pixels.
+     */
+    private static long getSize(int length) {
+        return length * 4L + 16;
+    }
+    
+    public static synchronized long getBytes() {
+        return bytes;
+    }
+    
+    public static synchronized void clear() {
+        cache.clear();
+        bytes = 0;
+    }
+    
+    public static synchronized String getInfo() {
+        return String.format("[Frame Cache] %d frames, %dKB/%dKB, %d hits, %d misses",
+                cache.size(), bytes / 1024, maxBytes / 1024, hits, misses);
+    }
+    
+}
@@ -7,7 +7,7 @@ import java.awt.KeyboardFocusManager;
 
 /**
  * Update animation state based on the settings and whether an app window is
- * active.
+ * active. Also applies other animation related settings.
  *
  * @author tduva
  */
@@ -15,8 +15,10 @@ public class FocusUpdates {
 
     private static final String PAUSE_SETTING = "animationPause";
     private static final String PAUSE_FRAME_SETTING = "animationPauseFrame";
+    private static final String FRAME_CACHE_SETTING = "animationFrameCache";
     
     public static void set(Settings settings) {
+        updateFrameCache(settings);
         KeyboardFocusManager.getCurrentKeyboardFocusManager().addPropertyChangeListener("focusedWindow", e -> {
             /**
              * When focus switches aways from Chatty the "new value" is null,
@@ -31,6 +33,9 @@ public class FocusUpdates {
         });
         
         settings.addSettingChangeListener((setting, type, value) -> {
+            if (setting.equals(FRAME_CACHE_SETTING)) {
+                updateFrameCache(settings);
+            }
             if (setting.equals(PAUSE_SETTING)) {
                 /**
                  * Window always counts as active for this update, which might
@@ -52,4 +57,8 @@ public class FocusUpdates {
         AnimatedImage.setAnimationPause(pauseState);
     }
     
+    private static void updateFrameCache(Settings settings) {
+        DecodedFrameCache.setMaxBytes(settings.getLong(FRAME_CACHE_SETTING) * 1024 * 1024);
+    }
+    
 }
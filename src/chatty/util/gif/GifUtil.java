@@ -41,24 +41,36 @@ public class GifUtil {
      * @throws Exception When an error occured loading the image
      */
     public static ImageResult getGifFromUrl(ImageRequest request) throws Exception {
-        ImageResult result = null;
         URLConnection c = request.getLoadFromURL().openConnection();
         try (InputStream input = c.getInputStream()) {
             // Use readAllBytes() because GifDecoder doesn't handle streams well
-            byte[] imageData = readAllBytes(input);
-            // Attempt decoding various formats
-            result = loadAsGif(imageData, request);
-            if (result == null) {
-                result = loadDefault(imageData, request);
-            }
-            if (result == null) {
-                result = WebPUtil.decode(imageData, request);
-            }
-            // Done with decode attempts
-            if (result != null && !result.isValidImage()) {
-                result.icon.getImage().flush();
-                return null;
-            }
+            return getGifFromBytes(readAllBytes(input), request);
+        }
+    }
+    
+    /**
+     * Loads a GIF from the given image data, fixing FPS, or just creates an
+     * ImageIcon directly if it's not a valid GIF.
+     * 
+     * @param imageData The image data, for example read from a cache file
+     * @param request Contains information on how to create the image
+     * @return The created ImageIcon, or null if an error occured creating the
+     * image
+     * @throws Exception When an error occured loading the image
+     */
+    public static ImageResult getGifFromBytes(byte[] imageData, ImageRequest request) throws Exception {
+        // Attempt decoding various formats
+        ImageResult result = loadAsGif(imageData, request);
+        if (result == null) {
+            result = loadDefault(imageData, request);
+        }
+        if (result == null) {
+            result = WebPUtil.decode(imageData, request);
+        }
+        // Done with decode attempts
+        if (result != null && !result.isValidImage()) {
+            result.icon.getImage().flush();
+            return null;
         }
         return result;
     }
@@ -10,8 +10,9 @@ import java.io.IOException;
 /**
  * A single frame of a ListAnimatedImage. The pixel data is compressed in the
  * PNG format. Decoding the pixel data on each frame may cause higher CPU usage
- * than just storing the entire frame uncompressed, however the difference seems
- * fairly small. It might make sense to make compression optional though.
+ * than just storing the entire frame uncompressed, so the decoded pixels of
+ * recently used frames are kept in the {@link DecodedFrameCache}, as far as
+ * it's size limit allows.
  * 
  * @author tduva
  */
@@ -46,12 +47,28 @@ public class ListAnimatedImageFrame {
     }
     
     /**
-     * Fill the given pixels array with the decoded pixels.
+     * Fill the given pixels array with the decoded pixels, using the cache if
+     * possible.
      * 
      * @param pixels
      * @throws IOException 
      */
     public void getImage(int[] pixels) throws IOException {
+        if (DecodedFrameCache.get(this, pixels)) {
+            return;
+        }
+        decode(pixels);
+        DecodedFrameCache.put(this, pixels, Math.min(width * height, pixels.length));
+    }
+    
+    /**
+     * Fill the given pixels array with the pixels decoded from the compressed
+     * data.
+     * 
+     * @param pixels
+     * @throws IOException 
+     */
+    public void decode(int[] pixels) throws IOException {
         PNGDecoder decoder = new PNGDecoder(new ByteArrayInputStream(compressed));
         decoder.decode(new ARGBBuffer(pixels), width * 4, PNGDecoder.Format.RGBA);
     }
@@ -8,6 +8,7 @@ import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 
+import chatty.Chatty;
 import chatty.Room;
 import chatty.User;
 import chatty.gui.components.settings.ChannelFormatter;
@@ -29,6 +30,11 @@ import org.json.simple.parser.ParseException;
 /**
  * History Manager which should be the entry point for getting historic Chat messages from external services.
  * Currently, only robotty https://recent-messages.robotty.de is implemented
+ * 
+ * Recently received messages are also stored locally (if enabled), so when
+ * first joining a channel they can be shown right away and only newer messages
+ * have to be requested.
+ * 
  * @author m00hlti
  */
 public class HistoryManager {
@@ -36,12 +42,20 @@ public class HistoryManager {
     private static final Logger LOGGER = Logger.getLogger(HistoryManager.class.getName());
 
     private final Settings settings;
+    private final HistoryStore store;
     private static final ChannelFormatter channelFormater = new ChannelFormatter();
 
     private final static String STRHISTORYURL = "https://recent-messages.robotty.de/api/v2/recent-messages/";
 
     private final Object LOCK = new Object();
     
+    /**
+     * Locally stored messages may have been received at a different time than
+     * the history service received them, so request messages from a bit
+     * earlier and remove the ones already loaded by their id.
+     */
+    private static final long STORE_OVERLAP = 60*1000;
+    
     private final Map<String, Long> latestMessageSeen = new HashMap<>();
     
     private final Set<String> requestPendingChannels = new HashSet<>();
@@ -54,6 +68,7 @@ public class HistoryManager {
      */
     public HistoryManager(Settings settings) {
         this.settings = settings;
+        this.store = new HistoryStore(Chatty.getPath(Chatty.PathType.CACHE).resolve("history"));
     }
     
     public void setMessageSeen(String stream) {
@@ -62,6 +77,30 @@ public class HistoryManager {
         }
     }
     
+    /**
+     * A regular chat message has been received (and output).
+     * 
+     * @param user
+     * @param text
+     * @param action
+     * @param tags 
+     */
+    public void messageReceived(User user, String text, boolean action, MsgTags tags) {
+        String stream = user.getStream();
+        setMessageSeen(stream);
+        if (isStoreEnabled() && !isChannelExcluded(stream)
+                && (tags == null || !tags.isHistoricMsg())) {
+            store.add(stream, System.currentTimeMillis(), user.getName(), text, action, tags);
+        }
+    }
+    
+    /**
+     * Write any locally stored messages that haven't been written yet.
+     */
+    public void close() {
+        store.close();
+    }
+    
     public void channelClosed(String stream) {
         synchronized (LOCK) {
             latestMessageSeen.remove(stream);
@@ -88,6 +127,18 @@ public class HistoryManager {
     public boolean isEnabled() {
         return settings.getBoolean("historyServiceEnabled");
     }
+    
+    private boolean isStoreEnabled() {
+        return isEnabled() && settings.getBoolean("historyServiceStore");
+    }
+    
+    private long getLimit() {
+        long limit = settings.getLong("historyServiceLimit");
+        if (limit <= 0) {
+            limit = 30;
+        }
+        return limit;
+    }
 
     /**
      * Detects input from the API with regex and transforms it into a History
@@ -130,15 +181,14 @@ public class HistoryManager {
      * Executes the actual HTTP request for historical Data
      *
      * @param stream Channel to start the request for
+     * @param skipIds Ids of messages that have already been output and should
+     * not be returned again, may be null
      * @return A JSONObject with all messages requested accordingly to the parameters
      */
-    private void executeRequest(String stream, Consumer<List<HistoryMessage>> listener) {
+    private void executeRequest(String stream, Set<String> skipIds, Consumer<List<HistoryMessage>> listener) {
         String url = STRHISTORYURL + stream;
 
-        long limit = settings.getLong("historyServiceLimit");
-        if (limit <= 0) {
-            limit = 30;
-        }
+        long limit = getLimit();
 
         // -24h until now.
         long timestampBefore = System.currentTimeMillis();
@@ -167,10 +217,16 @@ public class HistoryManager {
                     JSONParser parser = new JSONParser();
                     JSONObject root = (JSONObject) parser.parse(resultText);
                     JSONArray jsArray = (JSONArray) root.get("messages");
+                    boolean storeEnabled = isStoreEnabled();
                     for (int i = 0; i < jsArray.size(); i++) {
-                        HistoryMessage historyMsg = this.transformStringToMessage((String) jsArray.get(i));
-                        if (historyMsg != null) {
+                        String raw = (String) jsArray.get(i);
+                        HistoryMessage historyMsg = this.transformStringToMessage(raw);
+                        if (historyMsg != null
+                                && (skipIds == null || !skipIds.contains(historyMsg.tags.getId()))) {
                             result.add(historyMsg);
+                            if (storeEnabled) {
+                                store.add(stream, historyMsg.tags.getHistoricTimeStamp(), raw);
+                            }
                         }
                     }
                 } catch (ParseException ex) {
@@ -184,20 +240,67 @@ public class HistoryManager {
     
     /**
      * Get all the chat messages from the room in the given constraints from the settings
+     * 
+     * If enabled and the channel hasn't been joined yet this session, locally
+     * stored messages are returned first and only the messages received since
+     * then are requested from the history service.
+     * 
      * @param room
-     * @param listener
+     * @param localListener Receives locally stored messages (not called if
+     * there are none)
+     * @param listener Receives the messages from the history service (always
+     * called, even if empty)
      */
-    public void getHistoricChatMessages(Room room, Consumer<List<HistoryMessage>> listener) {
+    public void getHistoricChatMessages(Room room, Consumer<List<HistoryMessage>> localListener, Consumer<List<HistoryMessage>> listener) {
         //?hide_moderation_messages=true/false: Omits CLEARCHAT and CLEARMSG messages from the response. Optional, defaults to false.
         //?hide_moderated_messages=true/false: Omits all messages from the response that have been deleted by a CLEARCHAT or CLEARMSG message. Optional, defaults to false.
         //?clearchat_to_notice=true/false: Converts CLEARCHAT messages into NOTICE messages with a user-presentable message.
 
+        String stream = room.getStream();
+        boolean firstJoin;
         synchronized (LOCK) {
-            requestPendingChannels.add(room.getStream());
-            queuedMessages.remove(room.getStream());
+            requestPendingChannels.add(stream);
+            queuedMessages.remove(stream);
+            firstJoin = !latestMessageSeen.containsKey(stream);
         }
         
-        this.executeRequest(room.getStream(), listener);
+        if (firstJoin && isStoreEnabled()) {
+            /**
+             * Messages received from now on are queued and output separately,
+             * so don't load them from the store.
+             */
+            long now = System.currentTimeMillis();
+            long after = now - 24 * 60 * 60 * 1000;
+            store.load(stream, after, now, (int) getLimit(), stored -> {
+                List<HistoryMessage> result = new ArrayList<>();
+                Set<String> ids = new HashSet<>();
+                for (HistoryStore.StoredMessage msg : stored) {
+                    HistoryMessage historyMsg = transformStringToMessage(msg.raw);
+                    if (historyMsg != null) {
+                        result.add(historyMsg);
+                        if (historyMsg.tags.hasId()) {
+                            ids.add(historyMsg.tags.getId());
+                        }
+                    }
+                }
+                if (!stored.isEmpty()) {
+                    synchronized (LOCK) {
+                        /**
+                         * Only request what has been missed since then. The
+                         * stored time may differ from the service's time, so
+                         * overlap and remove duplicates by id instead.
+                         */
+                        long resume = stored.get(stored.size() - 1).time - STORE_OVERLAP;
+                        latestMessageSeen.put(stream, Math.max(resume, after));
+                    }
+                    localListener.accept(result);
+                }
+                this.executeRequest(stream, ids, listener);
+            });
+        }
+        else {
+            this.executeRequest(stream, null, listener);
+        }
     }
     
     //-------
@@ -0,0 +1,276 @@
+
+package chatty.util.history;
+
+import chatty.util.irc.MsgTags;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Stores the most recent chat messages of each channel on disk, so that when
+ * joining a channel after a restart they can be shown right away and only
+ * messages since then have to be requested from the history service.
+ * 
+ * <p>
+ * Messages are stored as raw IRC lines (same as returned by the history
+ * service), prefixed with the time received. New messages are only appended
+ * to a channel's file, in batches. When a file contains enough old messages
+ * it is rewritten with just the most recent ones, so it works like a ring
+ * buffer.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class HistoryStore {
+    
+    private static final Logger LOGGER = Logger.getLogger(HistoryStore.class.getName());
+    
+    /**
+     * Number of messages to keep for each channel (at least the max value of
+     * the "historyServiceLimit" setting).
+     */
+    private static final int KEEP_MESSAGES = 200;
+    
+    /**
+     * Delay in milliseconds before writing added messages, so several can be
+     * written at once.
+     */
+    private static final int WRITE_DELAY = 2000;
+    
+    private final Path dir;
+    private final ScheduledExecutorService executor;
+    
+    private final Object LOCK = new Object();
+    private final Map<String, List<String>> pending = new HashMap<>();
+    private boolean writeScheduled;
+    
+    /**
+     * Number of lines in each file, only accessed in the executor thread.
+     */
+    private final Map<String, Integer> lineCounts = new HashMap<>();
+    
+    public HistoryStore(Path dir) {
+        this.dir = dir;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "HistoryStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Add a message received in chat.
+     * 
+     * @param stream The channel name (without leading #)
+     * @param time The time the message was received
+     * @param userName The username of the sender
+     * @param text The message text
+     * @param action Whether it is an action message
+     * @param tags The message tags
+     */
+    public void add(String stream, long time, String userName, String text, boolean action, MsgTags tags) {
+        add(stream, time, makeRaw(stream, time, userName, text, action, tags));
+    }
+    
+    /**
+     * Add a raw message, for example as returned by the history service.
+     * 
+     * @param stream The channel name (without leading #)
+     * @param time The time the message was received
+     * @param raw The raw IRC message
+     */
+    public void add(String stream, long time, String raw) {
+        synchronized (LOCK) {
+            List<String> lines = pending.get(stream);
+            if (lines == null) {
+                lines = new ArrayList<>();
+                pending.put(stream, lines);
+            }
+            lines.add(time + " " + raw);
+            if (!writeScheduled) {
+                writeScheduled = true;
+                executor.schedule(this::writePending, WRITE_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    
+    /**
+     * Load the most recent stored messages of a channel, in a separate thread
+     * (after any previously added messages have been written).
+     * 
+     * @param stream The channel name (without leading #)
+     * @param after Only messages received after this time
+     * @param before Only messages received before this time
+     * @param limit The max number of messages
+     * @param result Receives the raw messages and the time they were received
+     * (oldest first), called in the store thread
+     */
+    public void load(String stream, long after, long before, int limit, Consumer<List<StoredMessage>> result) {
+        executor.execute(() -> {
+            writePending();
+            List<StoredMessage> messages = new ArrayList<>();
+            for (String line : readLines(stream)) {
+                StoredMessage msg = StoredMessage.parse(line);
+                if (msg != null && msg.time > after && msg.time < before) {
+                    messages.add(msg);
+                }
+            }
+            if (messages.size() > limit) {
+                messages = new ArrayList<>(messages.subList(messages.size() - limit, messages.size()));
+            }
+            result.accept(messages);
+        });
+    }
+    
+    /**
+     * Write all pending messages and wait for it to finish.
+     */
+    public void close() {
+        try {
+            executor.submit(this::writePending).get(5, TimeUnit.SECONDS);
+        }
+        catch (Exception ex) {
+            LOGGER.warning("Error writing history: "+ex);
+        }
+    }
+    
+    private void writePending() {
+        Map<String, List<String>> toWrite;
+        synchronized (LOCK) {
+            toWrite = new HashMap<>(pending);
+            pending.clear();
+            writeScheduled = false;
+        }
+        for (Map.Entry<String, List<String>> entry : toWrite.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    private void write(String stream, List<String> lines) {
+        Path file = getFile(stream);
+        try {
+            Integer count = lineCounts.get(stream);
+            if (count == null) {
+                count = readLines(stream).size();
+            }
+            Files.createDirectories(dir);
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            count += lines.size();
+            if (count > KEEP_MESSAGES * 2) {
+                count = compact(stream);
+            }
+            lineCounts.put(stream, count);
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Error writing history file "+file+": "+ex);
+        }
+    }
+    
+    /**
+     * Rewrite the file with only the most recent messages.
+     * 
+     * @param stream The channel name
+     * @return The number of lines now in the file
+     */
+    private int compact(String stream) throws IOException {
+        List<String> lines = readLines(stream);
+        if (lines.size() > KEEP_MESSAGES) {
+            lines = lines.subList(lines.size() - KEEP_MESSAGES, lines.size());
+        }
+        Path file = getFile(stream);
+        Path tempFile = file.resolveSibling(file.getFileName()+"-temp");
+        Files.write(tempFile, lines, StandardCharsets.UTF_8);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        return lines.size();
+    }
+    
+    private List<String> readLines(String stream) {
+        Path file = getFile(stream);
+        if (!Files.exists(file)) {
+            return new ArrayList<>();
+        }
+        try {
+            return Files.readAllLines(file, StandardCharsets.UTF_8);
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Error reading history file "+file+": "+ex);
+            return new ArrayList<>();
+        }
+    }
+    
+    private Path getFile(String stream) {
+        return dir.resolve(stream + ".txt");
+    }
+    
+    /**
+     * Create a raw PRIVMSG line, with the time received as tag, same as the
+     * history service does it.
+     */
+    private static String makeRaw(String stream, long time, String userName, String text, boolean action, MsgTags tags) {
+        Map<String, String> map = new HashMap<>();
+        if (tags != null) {
+            tags.fill(map);
+        }
+        // Remove tags added by Chatty
+        Iterator<String> it = map.keySet().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            if (key.startsWith("chatty-") || key.equals("historic-timestamp")) {
+                it.remove();
+            }
+        }
+        map.put("rm-received-ts", String.valueOf(time));
+        String tagsString = new MsgTags(map, null).toTagsString();
+        if (action) {
+            text = (char) 1 + "ACTION " + text + (char) 1;
+        }
+        return String.format("@%s :%s!%s@%s.tmi.twitch.tv PRIVMSG #%s :%s",
+                tagsString, userName, userName, userName, stream, text);
+    }
+    
+    public static class StoredMessage {
+        
+        public final long time;
+        public final String raw;
+        
+        private StoredMessage(long time, String raw) {
+            this.time = time;
+            this.raw = raw;
+        }
+        
+        private static StoredMessage parse(String line) {
+            int split = line.indexOf(' ');
+            if (split == -1) {
+                return null;
+            }
+            try {
+                return new StoredMessage(Long.parseLong(line.substring(0, split)), line.substring(split + 1));
+            }
+            catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,158 @@
+
+package chatty.util.http;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects request timings per endpoint, which is the host and the first two
+ * parts of the path (e.g. "api.twitch.tv/helix/streams"), so that images or
+ * other requests with an id in the path don't each count as separate endpoint.
+ * 
+ * @author tduva
+ */
+public class HttpMetrics {
+    
+    private static final int MAX_ENDPOINTS = 200;
+    
+    private static final Map<String, Stats> endpoints = new LinkedHashMap<>();
+    
+    /**
+     * The timing of a single request, in nanoseconds. DNS, connect and TLS are
+     * 0 if an existing connection was reused.
+     */
+    public static class Timing {
+        
+        private final long start = System.nanoTime();
+        long dns;
+        long connect;
+        long tls;
+        private long ttfb = -1;
+        private long total;
+        
+        void responseReceived() {
+            ttfb = System.nanoTime() - start;
+        }
+        
+        void done() {
+            total = System.nanoTime() - start;
+        }
+        
+        public long getTotal() {
+            return total;
+        }
+        
+        public boolean isNewConnection() {
+            return connect > 0;
+        }
+        
+    }
+    
+    private static class Stats {
+        
+        private int count;
+        private int errors;
+        private int newConnections;
+        private long dns;
+        private long connect;
+        private long tls;
+        private long ttfb;
+        private int ttfbCount;
+        private long total;
+        private long maxTotal;
+        
+        private void add(Timing timing, boolean error) {
+            count++;
+            if (error) {
+                errors++;
+            }
+            if (timing.isNewConnection()) {
+                newConnections++;
+                dns += timing.dns;
+                connect += timing.connect;
+                tls += timing.tls;
+            }
+            if (timing.ttfb != -1) {
+                ttfb += timing.ttfb;
+                ttfbCount++;
+            }
+            total += timing.total;
+            maxTotal = Math.max(maxTotal, timing.total);
+        }
+        
+    }
+    
+    static void add(URI uri, Timing timing, boolean error) {
+        String endpoint = getEndpoint(uri);
+        synchronized (endpoints) {
+            Stats stats = endpoints.get(endpoint);
+            if (stats == null) {
+                if (endpoints.size() >= MAX_ENDPOINTS) {
+                    endpoint = "other";
+                    stats = endpoints.get(endpoint);
+                }
+                if (stats == null) {
+                    stats = new Stats();
+                    endpoints.put(endpoint, stats);
+                }
+            }
+            stats.add(timing, error);
+        }
+    }
+    
+    /**
+     * Get the endpoint name for the given URI.
+     * 
+     * @param uri
+     * @return The endpoint, never null
+     */
+    public static String getEndpoint(URI uri) {
+        String path = uri.getRawPath();
+        StringBuilder b = new StringBuilder();
+        b.append(uri.getHost());
+        if (path != null) {
+            int segments = 0;
+            for (String part : path.split("/")) {
+                if (!part.isEmpty()) {
+                    b.append("/").append(part);
+                    segments++;
+                    if (segments == 2) {
+                        break;
+                    }
+                }
+            }
+        }
+        return b.toString();
+    }
+    
+    /**
+     * Get the averages for each endpoint, one line each.
+     * 
+     * @return 
+     */
+    public static List<String> getInfo() {
+        List<String> result = new ArrayList<>();
+        synchronized (endpoints) {
+            for (Map.Entry<String, Stats> entry : endpoints.entrySet()) {
+                Stats s = entry.getValue();
+                int n = Math.max(s.newConnections, 1);
+                result.add(String.format(Locale.ROOT,
+                        "%s: %d requests (%d errors, %d new connections) avg %dms (max %dms) ttfb %dms / new connection dns %dms connect %dms tls %dms",
+                        entry.getKey(), s.count, s.errors, s.newConnections,
+                        ms(s.total / s.count), ms(s.maxTotal),
+                        ms(s.ttfbCount > 0 ? s.ttfb / s.ttfbCount : 0),
+                        ms(s.dns / n), ms(s.connect / n), ms(s.tls / n)));
+            }
+        }
+        return result;
+    }
+    
+    private static long ms(long nanos) {
+        return nanos / 1000000;
+    }
+    
+}
@@ -0,0 +1,257 @@
+
+package chatty.util.http;
+
+import chatty.Chatty;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLContext;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * A single HTTP client shared by all requests, so that connections (and their
+ * TLS sessions) can be reused instead of connecting again for every request.
+ * The number of connections is limited in total and per host, requests that
+ * exceed that wait for a connection to become available.
+ * 
+ * <p>
+ * Each request is timed (DNS, connecting, TLS handshake, time until the
+ * response headers were received and total), with the results added to the
+ * {@link HttpMetrics}. The timing for DNS, connecting and TLS is only present
+ * if a new connection had to be opened.
+ * </p>
+ * 
+ * @author tduva
+ */
+public class HttpPool {
+    
+    private static final Logger LOGGER = Logger.getLogger(HttpPool.class.getName());
+    
+    private static final int MAX_TOTAL = 40;
+    private static final int MAX_PER_HOST = 8;
+    
+    /**
+     * How long to wait for a connection from the pool, in milliseconds.
+     */
+    private static final int POOL_TIMEOUT = 60*1000;
+    
+    private static final String USER_AGENT = "Chatty "+Chatty.VERSION;
+    
+    /**
+     * The timing of the request currently performed on this thread. Since
+     * classic requests are executed completely on the calling thread, the
+     * socket factories and DNS resolver can add their timing to it.
+     */
+    private static final ThreadLocal<HttpMetrics.Timing> CURRENT = new ThreadLocal<>();
+    
+    private static PoolingHttpClientConnectionManager manager;
+    private static CloseableHttpClient client;
+    
+    private static synchronized CloseableHttpClient getClient() {
+        if (client == null) {
+            RegistryBuilder<ConnectionSocketFactory> sockets = RegistryBuilder.<ConnectionSocketFactory>create();
+            sockets.register("http", new TimedPlainSocketFactory());
+            try {
+                // Use the default context, which may have been changed by SSLUtil
+                sockets.register("https", new TimedSSLSocketFactory(SSLContext.getDefault()));
+            }
+            catch (NoSuchAlgorithmException ex) {
+                LOGGER.warning("Failed to get default SSL context: "+ex);
+                sockets.register("https", SSLConnectionSocketFactory.getSystemSocketFactory());
+            }
+            manager = new PoolingHttpClientConnectionManager(sockets.build(),
+                    PoolConcurrencyPolicy.STRICT, PoolReusePolicy.LIFO,
+                    TimeValue.ofMinutes(5), null, new TimedDnsResolver(), null);
+            manager.setMaxTotal(MAX_TOTAL);
+            manager.setDefaultMaxPerRoute(MAX_PER_HOST);
+            manager.setValidateAfterInactivity(TimeValue.ofSeconds(10));
+            client = HttpClientBuilder.create()
+                    .setConnectionManager(manager)
+                    .setUserAgent(USER_AGENT)
+                    .evictIdleConnections(TimeValue.ofSeconds(60))
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectionRequestTimeout(Timeout.ofMilliseconds(POOL_TIMEOUT))
+                            .build())
+                    .build();
+        }
+        return client;
+    }
+    
+    /**
+     * Perform a request using the shared client. The connection is returned to
+     * the pool after the handler is done.
+     * 
+     * @param <T> The type of the result
+     * @param request The request
+     * @param connectTimeout Timeout for connecting in milliseconds
+     * @param responseTimeout Timeout for receiving data in milliseconds
+     * @param handler Reads the response, must not keep a reference to it
+     * @return The result of the handler
+     * @throws IOException 
+     */
+    public static <T> T execute(HttpUriRequestBase request,
+                                int connectTimeout, int responseTimeout,
+                                HttpClientResponseHandler<T> handler) throws IOException {
+        request.setConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(POOL_TIMEOUT))
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeout))
+                .build());
+        HttpMetrics.Timing timing = new HttpMetrics.Timing();
+        CURRENT.set(timing);
+        boolean error = true;
+        try {
+            T result = getClient().execute(request, response -> {
+                timing.responseReceived();
+                return handler.handleResponse(response);
+            });
+            error = false;
+            return result;
+        }
+        finally {
+            CURRENT.remove();
+            timing.done();
+            try {
+                HttpMetrics.add(request.getUri(), timing, error);
+            }
+            catch (Exception ex) {
+                // Metrics just won't be recorded
+            }
+        }
+    }
+    
+    /**
+     * Checks if the given response code is in the 2xx range.
+     * 
+     * @param response
+     * @return 
+     */
+    public static boolean isSuccess(ClassicHttpResponse response) {
+        return response.getCode() >= 200 && response.getCode() < 300;
+    }
+    
+    public static synchronized String getInfo() {
+        if (manager == null) {
+            return "[HTTP] Not used yet";
+        }
+        PoolStats stats = manager.getTotalStats();
+        return String.format("[HTTP] Connections: %d leased, %d idle, %d waiting (max %d, %d/host)",
+                stats.getLeased(), stats.getAvailable(), stats.getPending(),
+                stats.getMax(), MAX_PER_HOST);
+    }
+    
+    //==========================
+    // Timing
+    //==========================
+    
+    private static class TimedDnsResolver implements DnsResolver {
+        
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            long start = System.nanoTime();
+            try {
+                return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+            }
+            finally {
+                HttpMetrics.Timing timing = CURRENT.get();
+                if (timing != null) {
+                    timing.dns += System.nanoTime() - start;
+                }
+            }
+        }
+        
+        @Override
+        public String resolveCanonicalHostname(String host) throws UnknownHostException {
+            return SystemDefaultDnsResolver.INSTANCE.resolveCanonicalHostname(host);
+        }
+        
+    }
+    
+    private static class TimedPlainSocketFactory extends PlainConnectionSocketFactory {
+        
+        @Override
+        public Socket connectSocket(TimeValue connectTimeout, Socket socket,
+                HttpHost host, InetSocketAddress remoteAddress,
+                InetSocketAddress localAddress, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            }
+            finally {
+                HttpMetrics.Timing timing = CURRENT.get();
+                if (timing != null) {
+                    timing.connect += System.nanoTime() - start;
+                }
+            }
+        }
+        
+    }
+    
+    private static class TimedSSLSocketFactory extends SSLConnectionSocketFactory {
+        
+        TimedSSLSocketFactory(SSLContext context) {
+            super(context);
+        }
+        
+        /**
+         * Connects and performs the TLS handshake (in createLayeredSocket).
+         */
+        @Override
+        public Socket connectSocket(TimeValue connectTimeout, Socket socket,
+                HttpHost host, InetSocketAddress remoteAddress,
+                InetSocketAddress localAddress, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            HttpMetrics.Timing timing = CURRENT.get();
+            long tlsBefore = timing != null ? timing.tls : 0;
+            try {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            }
+            finally {
+                if (timing != null) {
+                    timing.connect += System.nanoTime() - start - (timing.tls - tlsBefore);
+                }
+            }
+        }
+        
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target,
+                int port, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.createLayeredSocket(socket, target, port, context);
+            }
+            finally {
+                HttpMetrics.Timing timing = CURRENT.get();
+                if (timing != null) {
+                    timing.tls += System.nanoTime() - start;
+                }
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,196 @@
+
+package chatty.util.irc;
+
+import chatty.Helper;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only Map of IRCv3 tags that keeps the raw line and only stores the
+ * offsets of the keys and values. Values are only unescaped (and a String
+ * created for them) when they are accessed, since most tags of a message are
+ * never read.
+ * 
+ * <p>
+ * Keys are looked up by comparing the hash and then the characters of the key
+ * in the raw line, so no String has to be created for a key either. Anything
+ * that needs all entries (like iterating or {@link #size()}) creates a regular
+ * Map once and uses that.
+ * </p>
+ * 
+ * <p>
+ * The result is the same as {@link IrcMsgTags#parseTags(String)}, so empty
+ * tags are skipped, tags without "=" have a null value and if a key occurs
+ * several times the last value is used.
+ * </p>
+ * 
+ * @author tduva
+ */
+class LazyTagsMap extends AbstractMap<String, String> {
+    
+    private static final int KEY_START = 0;
+    private static final int KEY_END = 1;
+    private static final int VALUE_START = 2;
+    private static final int VALUE_END = 3;
+    private static final int FIELDS = 4;
+    
+    private final String raw;
+    
+    /**
+     * Offsets for each tag in the raw line (see field constants), value start
+     * is -1 if the tag has no value.
+     */
+    private final int[] offsets;
+    private final int[] hashes;
+    private final int count;
+    
+    /**
+     * Already decoded values, by tag index. Strings are immutable, so it
+     * doesn't matter if another thread sees a value late (it would just be
+     * decoded again).
+     */
+    private final String[] values;
+    
+    private volatile Map<String, String> full;
+    
+    /**
+     * Parse the tags in the given section of the line.
+     * 
+     * @param raw The line containing the tags
+     * @param start The start of the tags (after the "@")
+     * @param end The end of the tags (exclusive)
+     */
+    LazyTagsMap(String raw, int start, int end) {
+        this.raw = raw;
+        int max = 1;
+        for (int i = start; i < end; i++) {
+            if (raw.charAt(i) == ';') {
+                max++;
+            }
+        }
+        int[] offsets = new int[max * FIELDS];
+        int[] hashes = new int[max];
+        int count = 0;
+        int pos = start;
+        while (pos <= end) {
+            int segmentEnd = raw.indexOf(';', pos);
+            if (segmentEnd == -1 || segmentEnd > end) {
+                segmentEnd = end;
+            }
+            if (segmentEnd > pos) {
+                int equals = raw.indexOf('=', pos);
+                int keyEnd = equals == -1 || equals >= segmentEnd ? segmentEnd : equals;
+                int index = count * FIELDS;
+                offsets[index + KEY_START] = pos;
+                offsets[index + KEY_END] = keyEnd;
+                offsets[index + VALUE_START] = keyEnd < segmentEnd ? keyEnd + 1 : -1;
+                offsets[index + VALUE_END] = segmentEnd;
+                hashes[count] = hash(raw, pos, keyEnd);
+                count++;
+            }
+            pos = segmentEnd + 1;
+        }
+        this.offsets = offsets;
+        this.hashes = hashes;
+        this.count = count;
+        this.values = new String[count];
+    }
+    
+    /**
+     * Same as {@link String#hashCode()}, but for a section of a String.
+     */
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+    
+    /**
+     * Find the tag with the given key.
+     * 
+     * @param key
+     * @return The index of the last tag with the key, or -1 if none exists
+     */
+    private int find(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        String k = (String) key;
+        int h = k.hashCode();
+        for (int i = count - 1; i >= 0; i--) {
+            if (hashes[i] == h) {
+                int keyStart = offsets[i * FIELDS + KEY_START];
+                int keyEnd = offsets[i * FIELDS + KEY_END];
+                if (keyEnd - keyStart == k.length()
+                        && raw.regionMatches(keyStart, k, 0, k.length())) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    private String getValue(int index) {
+        String value = values[index];
+        if (value == null) {
+            int valueStart = offsets[index * FIELDS + VALUE_START];
+            if (valueStart == -1) {
+                return null;
+            }
+            int valueEnd = offsets[index * FIELDS + VALUE_END];
+            value = raw.substring(valueStart, valueEnd);
+            if (value.indexOf('\\') != -1) {
+                value = Helper.tagsvalue_decode(value);
+            }
+            values[index] = value;
+        }
+        return value;
+    }
+    
+    @Override
+    public String get(Object key) {
+        int index = find(key);
+        return index == -1 ? null : getValue(index);
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != -1;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+    
+    @Override
+    public int size() {
+        return getFull().size();
+    }
+    
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return getFull().entrySet();
+    }
+    
+    private Map<String, String> getFull() {
+        Map<String, String> result = full;
+        if (result == null) {
+            Map<String, String> map = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                int keyStart = offsets[i * FIELDS + KEY_START];
+                int keyEnd = offsets[i * FIELDS + KEY_END];
+                map.put(raw.substring(keyStart, keyEnd), getValue(i));
+            }
+            result = Collections.unmodifiableMap(map);
+            full = result;
+        }
+        return result;
+    }
+    
+}
@@ -170,11 +170,24 @@ public class MsgTags extends IrcMsgTags {
      * @return MsgTags object, empty if tags was null
      */
     public static MsgTags parse(String tags) {
-        Map<String, String> parsedTags = parseTags(tags);
-        if (parsedTags == null) {
+        if (tags == null) {
             return EMPTY;
         }
-        return new MsgTags(parsedTags, null);
+        return parse(tags, 0, tags.length());
+    }
+    
+    /**
+     * Parse the IRCv3 tags in the given section of a String (no leading @)
+     * into a MsgTags object. The values are only decoded when accessed, so
+     * this keeps a reference to the whole String.
+     * 
+     * @param line The String containing the tags (e.g. the whole IRC line)
+     * @param start Where the tags start
+     * @param end Where the tags end (exclusive)
+     * @return MsgTags object
+     */
+    public static MsgTags parse(String line, int start, int end) {
+        return new MsgTags(new LazyTagsMap(line, start, end), null);
     }
     
     /**
@@ -53,6 +53,8 @@ public class ParsedMsg {
         //------
         // Tags
         //------
+        // Work with offsets into the input, instead of creating substrings
+        int pos = 0;
         MsgTags tags = MsgTags.EMPTY;
         if (input.startsWith("@")) {
             int endOfTags = input.indexOf(" ");
@@ -60,8 +62,8 @@ public class ParsedMsg {
                 LOGGER.warning("Parsing error: Couldn't find whitespace after tags: "+input);
                 return null;
             }
-            tags = MsgTags.parse(input.substring(1, endOfTags));
-            input = input.substring(endOfTags+1);
+            tags = MsgTags.parse(input, 1, endOfTags);
+            pos = endOfTags+1;
         }
         //System.out.println("Tags: "+tags);
         
@@ -72,16 +74,16 @@ public class ParsedMsg {
         String command = null;
         MsgParameters parameters = new MsgParameters();
         
-        int endOfPrefix = -1;
+        int endOfPrefix = pos-1;
         
         // Get prefix if available
-        if (input.startsWith(":")) {
-            endOfPrefix = input.indexOf(" ");
+        if (input.startsWith(":", pos)) {
+            endOfPrefix = input.indexOf(" ", pos);
             if (endOfPrefix == -1) {
                 LOGGER.warning("Parsing error: Couldn't find whitespace after prefix: "+input);
                 return null;
             }
-            prefix = input.substring(1,endOfPrefix);
+            prefix = input.substring(pos+1,endOfPrefix);
         }
         
         //------------
@@ -109,8 +111,8 @@ public class ParsedMsg {
                 end = next;
             }
             // Set as command if not set yet, as parameter otherwise
-            String part = input.substring(start, end);
-            if (!part.isEmpty()) {
+            if (end > start) {
+                String part = input.substring(start, end);
                 if (command == null) {
                     command = part;
                 } else {
@@ -0,0 +1,172 @@
+
+package chatty.util.settings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A typed handle for a single setting, holding a snapshot of the current value
+ * that {@link Settings} replaces whenever the value changes. Reading the value
+ * is just a field access, without looking up the setting name or waiting for
+ * the Settings lock, so this is meant for settings that are read very often
+ * (e.g. for every chat message).
+ * 
+ * <p>
+ * Handles are retrieved through Settings (e.g.
+ * {@link Settings#booleanKey(String)}), which always returns the same handle
+ * for the same setting, so they can be retrieved once and stored.
+ * </p>
+ * 
+ * @author tduva
+ */
+public abstract class SettingKey {
+    
+    public final String name;
+    
+    private SettingKey(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Set the new value. Called by Settings while holding the lock, whenever
+     * the value may have changed.
+     * 
+     * @param value The current value of the setting
+     */
+    abstract void update(Object value);
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+    
+    public static class BooleanKey extends SettingKey {
+        
+        private volatile boolean value;
+        
+        BooleanKey(String name) {
+            super(name);
+        }
+        
+        public boolean get() {
+            return value;
+        }
+        
+        @Override
+        void update(Object value) {
+            this.value = (Boolean) value;
+        }
+        
+    }
+    
+    public static class LongKey extends SettingKey {
+        
+        private volatile long value;
+        
+        LongKey(String name) {
+            super(name);
+        }
+        
+        public long get() {
+            return value;
+        }
+        
+        public int getInt() {
+            return (int) value;
+        }
+        
+        @Override
+        void update(Object value) {
+            this.value = ((Number) value).longValue();
+        }
+        
+    }
+    
+    public static class StringKey extends SettingKey {
+        
+        private volatile String value;
+        
+        StringKey(String name) {
+            super(name);
+        }
+        
+        public String get() {
+            return value;
+        }
+        
+        @Override
+        void update(Object value) {
+            this.value = (String) value;
+        }
+        
+    }
+    
+    /**
+     * For List settings, which provides both a List and a Set (for quick
+     * lookup) of the current values.
+     */
+    public static class ListKey extends SettingKey {
+        
+        private volatile Snapshot snapshot;
+        
+        ListKey(String name) {
+            super(name);
+        }
+        
+        /**
+         * An unmodifiable copy of the current List.
+         * 
+         * @return
+         */
+        public List<Object> get() {
+            return snapshot.list;
+        }
+        
+        /**
+         * An unmodifiable Set containing the current values.
+         * 
+         * @return
+         */
+        public Set<Object> getSet() {
+            return snapshot.set;
+        }
+        
+        /**
+         * Same as {@link Settings#listContains(String, Object)}, but using a
+         * hashed lookup on the current values.
+         * 
+         * @param value
+         * @return
+         */
+        public boolean contains(Object value) {
+            return snapshot.set.contains(value);
+        }
+        
+        @Override
+        void update(Object value) {
+            snapshot = new Snapshot((Collection<?>) value);
+        }
+        
+    }
+    
+    /**
+     * Both views of the same List setting value, so they can be replaced
+     * together.
+     */
+    private static class Snapshot {
+        
+        private final List<Object> list;
+        private final Set<Object> set;
+        
+        private Snapshot(Collection<?> values) {
+            list = Collections.unmodifiableList(new ArrayList<>(values));
+            set = Collections.unmodifiableSet(new HashSet<>(values));
+        }
+        
+    }
+    
+}
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.util.Map.Entry;
 import java.util.*;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -31,6 +32,12 @@ public class Settings {
      * lookup case-insenstive while still retaining the case for display.
      */
     private final Map<String,Setting> settings = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    
+    /**
+     * Typed handles that have been requested, which are updated with the
+     * current value on every change, so they can be read without the lock.
+     */
+    private final Map<String,SettingKey> keys = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     private final Set<SettingChangeListener> listeners = new HashSet<>();
     private final Set<SettingsListener> settingsListeners = new HashSet<>();
     private final String defaultFile;
@@ -207,6 +214,9 @@ public class Settings {
         else {
             settings.put(settingName, new Setting(value, type, save, defaultFile));
         }
+        synchronized(LOCK) {
+            updateKey(settingName);
+        }
     }
     
     /**
@@ -231,6 +241,9 @@ public class Settings {
             } else {
                 changed = setting.setValue(value);
             }
+            if (changed) {
+                updateKey(settingName);
+            }
         }
         if (changed) {
             settingChanged(settingName,type,value);
@@ -372,6 +385,7 @@ public class Settings {
             boolean changed = !settingMap.equals(map);
             settingMap.clear();
             settingMap.putAll(map);
+            updateKey(settingName);
             return changed;
         }
     }
@@ -405,6 +419,7 @@ public class Settings {
     public void mapPut(String settingName, Object key, Object value) {
         synchronized(LOCK) {
             getMapInternal(settingName).put(key, value);
+            updateKey(settingName);
         }
     }
     
@@ -420,6 +435,7 @@ public class Settings {
     public void mapClear(String settingName) {
         synchronized(LOCK) {
             getMapInternal(settingName).clear();
+            updateKey(settingName);
         }
     }
     
@@ -436,7 +452,9 @@ public class Settings {
      */
     public Object mapRemove(String settingName, Object key) {
         synchronized (LOCK) {
-            return getMapInternal(settingName).remove(key);
+            Object removed = getMapInternal(settingName).remove(key);
+            updateKey(settingName);
+            return removed;
         }
     }
     
@@ -490,6 +508,7 @@ public class Settings {
             Collection settingList = (Collection) get(settingName, Setting.LIST);
             settingList.clear();
             settingList.addAll(list);
+            updateKey(settingName);
         }
     }
     
@@ -519,19 +538,23 @@ public class Settings {
      */
     public boolean listRemove(String settingName, Object value) {
         synchronized(LOCK) {
-            return getListInternal(settingName).remove(value);
+            boolean removed = getListInternal(settingName).remove(value);
+            updateKey(settingName);
+            return removed;
         }
     }
     
     public void listAdd(String settingName, Object value) {
         synchronized(LOCK) {
             getListInternal(settingName).add(value);
+            updateKey(settingName);
         }
     }
     
     public void listClear(String settingName) {
         synchronized(LOCK) {
             getListInternal(settingName).clear();
+            updateKey(settingName);
         }
     }
     
@@ -549,6 +572,7 @@ public class Settings {
             Collection settingList = getListInternal(settingName);
             if (!settingList.contains(value)) {
                 settingList.add(value);
+                updateKey(settingName);
                 return true;
             }
             return false;
@@ -580,6 +604,107 @@ public class Settings {
         return (Collection) get(settingName, Setting.LIST);
     }
     
+    //==========================
+    // Typed handles
+    //==========================
+    
+    /**
+     * Get a handle for a Boolean setting, that always contains the current
+     * value and can be read without locking.
+     * 
+     * @param settingName The name of the setting
+     * @return The handle, always the same one for the same setting
+     * @throws SettingNotFoundException if a setting with this name doesn't
+     * exist or isn't a Boolean setting
+     */
+    public SettingKey.BooleanKey booleanKey(String settingName) {
+        return (SettingKey.BooleanKey) getKey(settingName, Setting.BOOLEAN, SettingKey.BooleanKey::new);
+    }
+    
+    /**
+     * Get a handle for a Long setting, that always contains the current value
+     * and can be read without locking.
+     * 
+     * @param settingName The name of the setting
+     * @return The handle, always the same one for the same setting
+     * @throws SettingNotFoundException if a setting with this name doesn't
+     * exist or isn't a Long setting
+     */
+    public SettingKey.LongKey longKey(String settingName) {
+        return (SettingKey.LongKey) getKey(settingName, Setting.LONG, SettingKey.LongKey::new);
+    }
+    
+    /**
+     * Get a handle for a String setting, that always contains the current
+     * value and can be read without locking.
+     * 
+     * @param settingName The name of the setting
+     * @return The handle, always the same one for the same setting
+     * @throws SettingNotFoundException if a setting with this name doesn't
+     * exist or isn't a String setting
+     */
+    public SettingKey.StringKey stringKey(String settingName) {
+        return (SettingKey.StringKey) getKey(settingName, Setting.STRING, SettingKey.StringKey::new);
+    }
+    
+    /**
+     * Get a handle for a List setting, that always contains a copy of the
+     * current List (and a Set of the values) and can be read without locking.
+     * 
+     * @param settingName The name of the setting
+     * @return The handle, always the same one for the same setting
+     * @throws SettingNotFoundException if a setting with this name doesn't
+     * exist or isn't a List setting
+     */
+    public SettingKey.ListKey listKey(String settingName) {
+        return (SettingKey.ListKey) getKey(settingName, Setting.LIST, SettingKey.ListKey::new);
+    }
+    
+    private SettingKey getKey(String settingName, int type, Function<String, SettingKey> creator) {
+        synchronized(LOCK) {
+            if (!isOfType(settingName, type)) {
+                throw new SettingNotFoundException("Could not find setting: " + settingName);
+            }
+            SettingKey key = keys.get(settingName);
+            if (key == null) {
+                key = creator.apply(settingName);
+                key.update(settings.get(settingName).getValue());
+                keys.put(settingName, key);
+            }
+            return key;
+        }
+    }
+    
+    /**
+     * Update the handle for the given setting with the current value, if a
+     * handle exists. Must be called while holding the lock, whenever the value
+     * may have changed.
+     * 
+     * @param settingName The name of the setting
+     */
+    private void updateKey(String settingName) {
+        SettingKey key = keys.get(settingName);
+        if (key != null) {
+            Setting setting = settings.get(settingName);
+            if (setting.isOfType(keyType(key))) {
+                key.update(setting.getValue());
+            }
+        }
+    }
+    
+    private static int keyType(SettingKey key) {
+        if (key instanceof SettingKey.BooleanKey) {
+            return Setting.BOOLEAN;
+        }
+        if (key instanceof SettingKey.LongKey) {
+            return Setting.LONG;
+        }
+        if (key instanceof SettingKey.StringKey) {
+            return Setting.STRING;
+        }
+        return Setting.LIST;
+    }
+    
     /**
      * Manually set a List or Map setting as changed, since those can't properly
      * detect it themselves.
@@ -1162,6 +1287,9 @@ public class Settings {
                     success = false;
                 }
             }
+            for (String settingName : keys.keySet()) {
+                updateKey(settingName);
+            }
             return success;
         }
     }
@@ -4,6 +4,7 @@ package chatty.util.seventv;
 import chatty.Helper;
 import chatty.util.Debugging;
 import chatty.util.EmoticonListener;
+import chatty.util.JSONStream;
 import chatty.util.JSONUtil;
 import chatty.util.MiscUtil;
 import chatty.util.RetryManager;
@@ -12,6 +13,8 @@ import chatty.util.UrlRequest;
 import chatty.util.api.Emoticon;
 import chatty.util.api.EmoticonUpdate;
 import chatty.util.api.TwitchApi;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -19,7 +22,7 @@ import java.util.Set;
 import java.util.logging.Logger;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 
 /**
  *
@@ -93,25 +96,32 @@ public class SevenTV {
         UrlRequest request = new UrlRequest();
         request.setLabel("SevenTV/"+stream);
         request.setUrl(url);
-        request.async((result, responseCode) -> {
+        request.asyncReader((reader, responseCode) -> {
             if (Integer.toString(responseCode).startsWith("4")) {
                 RetryManager.getInstance().setNotFound(url);
             }
-            else if (responseCode != 200 && result == null) {
+            else if (reader == null) {
                 RetryManager.getInstance().setError(url);
             }
             else {
-                RetryManager.getInstance().setSuccess(url);
+                try {
+                    Set<Emoticon> emotes = parseEmoteList(type, stream, reader);
+                    RetryManager.getInstance().setSuccess(url);
+                    parseResult(type, stream, emotes);
+                }
+                catch (IOException ex) {
+                    LOGGER.warning("Error reading SevenTV emote list: "+ex);
+                    RetryManager.getInstance().setError(url);
+                }
+                catch (ParseException ex) {
+                    LOGGER.warning("Error parsing SevenTV emote list: "+ex);
+                    RetryManager.getInstance().setSuccess(url);
+                }
             }
-            parseResult(type, stream, result);
         });
     }
     
-    private void parseResult(Type type, String stream, String json) {
-        if (json == null) {
-            return;
-        }
-        Set<Emoticon> emotes = parseEmoteList(type, stream, json);
+    private void parseResult(Type type, String stream, Set<Emoticon> emotes) {
         LOGGER.info(String.format("|[SevenTV] (%s): %d emotes received.",
                 stream, emotes.size()));
         
@@ -123,30 +133,29 @@ public class SevenTV {
         listener.receivedEmoticons(updateBuilder.build());
     }
     
-    private Set<Emoticon> parseEmoteList(Type type, String stream, String json) {
+    /**
+     * Parse the emotes one after another from the response, so only one emote
+     * at a time has to be kept as JSON, which matters for sets with many
+     * emotes.
+     * 
+     * @param type The request type
+     * @param stream The stream (for channel emotes)
+     * @param reader The response
+     * @return The emotes
+     * @throws IOException
+     * @throws ParseException 
+     */
+    private Set<Emoticon> parseEmoteList(Type type, String stream, Reader reader) throws IOException, ParseException {
         Set<Emoticon> result = new HashSet<>();
-        try {
-            JSONParser parser = new JSONParser();
-            JSONObject root = (JSONObject) parser.parse(json);
-            JSONObject set = root;
-            if (type == Type.CHANNEL) {
-                set = (JSONObject) root.get("emote_set");
-            }
-            if (set != null) {
-                JSONArray emotes = (JSONArray) set.get("emotes");
-                for (Object o : emotes) {
-                    if (o instanceof JSONObject) {
-                        Emoticon emote = parseEmote(stream, (JSONObject) o);
-                        if (emote != null) {
-                            result.add(emote);
-                        }
-                    }
+        String path = type == Type.CHANNEL ? "emote_set.emotes" : "emotes";
+        new JSONStream().onArrayItem(path, o -> {
+            if (o instanceof JSONObject) {
+                Emoticon emote = parseEmote(stream, (JSONObject) o);
+                if (emote != null) {
+                    result.add(emote);
                 }
             }
-        }
-        catch (Exception ex) {
-            LOGGER.warning("Error parsing SevenTV emote list: "+ex);
-        }
+        }).parse(reader);
         return result;
     }
     
@@ -0,0 +1,75 @@
+
+package chatty;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class ConnectionPoolTest {
+    
+    @Test
+    public void testAssign() {
+        ConnectionPool<String> pool = new ConnectionPool<>();
+        // No connection yet
+        assertNull(pool.assign("#a", 2));
+        
+        pool.add("main");
+        pool.add("second");
+        assertEquals("main", pool.assign("#a", 2));
+        assertEquals("main", pool.assign("#b", 2));
+        // Already assigned
+        assertEquals("main", pool.assign("#a", 2));
+        assertEquals("second", pool.assign("#c", 2));
+        assertEquals("second", pool.assign("#d", 2));
+        // Full
+        assertNull(pool.assign("#e", 2));
+        assertNull(pool.get("#e"));
+        
+        // Room again after unassigning
+        pool.unassign("#b");
+        assertEquals("main", pool.assign("#e", 2));
+        
+        // Only unassigned if on the given connection
+        pool.unassign("#e", "second");
+        assertEquals("main", pool.get("#e"));
+        pool.unassign("#e", "main");
+        assertNull(pool.get("#e"));
+        
+        // No limit
+        assertEquals("main", pool.assign("#f", 0));
+        assertEquals("main", pool.assign("#g", 0));
+        assertEquals(new HashSet<>(Arrays.asList("#a", "#f", "#g")), pool.getChannels("main"));
+    }
+    
+    @Test
+    public void testRemove() {
+        ConnectionPool<String> pool = new ConnectionPool<>();
+        pool.add("main");
+        pool.assign("#a", 1);
+        pool.assign("#b", "second");
+        assertEquals("second", pool.get("#b"));
+        assertTrue(pool.contains("second"));
+        assertEquals(Arrays.asList("main", "second"), pool.getConnections());
+        
+        // Channels are returned so they can be assigned to another connection
+        assertEquals(new HashSet<>(Arrays.asList("#b")), pool.remove("second"));
+        assertFalse(pool.contains("second"));
+        assertNull(pool.get("#b"));
+        assertTrue(pool.remove("second").isEmpty());
+        
+        pool.add("third");
+        assertEquals("third", pool.assign("#b", 1));
+        
+        // Moved to another connection
+        pool.assign("#a", "third");
+        assertEquals("third", pool.get("#a"));
+        assertTrue(pool.getChannels("main").isEmpty());
+        assertEquals("main", pool.assign("#c", 1));
+    }
+    
+}
@@ -0,0 +1,89 @@
+
+package chatty;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class MessageHistoryTest {
+    
+    @Test
+    public void testRing() {
+        MessageHistory h = new MessageHistory(10);
+        assertTrue(h.isEmpty());
+        for (int i = 0; i < 25; i++) {
+            h.add(new User.Message(i));
+            assertEquals(Math.min(i + 1, 10), h.size());
+            assertEquals(i, h.get(h.size() - 1).getTime());
+        }
+        List<User.Message> list = h.toList();
+        assertEquals(10, list.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(15 + i, list.get(i).getTime());
+            assertEquals(15 + i, h.get(i).getTime());
+        }
+        int index = 15;
+        for (User.Message m : h) {
+            assertEquals(index++, m.getTime());
+        }
+        
+        h.set(0, new User.Message(100));
+        assertEquals(100, h.get(0).getTime());
+        // List not affected by changes
+        assertEquals(15, list.get(0).getTime());
+        h.add(new User.Message(25));
+        assertEquals(16, h.get(0).getTime());
+        assertEquals(10, list.size());
+        
+        MessageHistory none = new MessageHistory(0);
+        none.add(new User.Message(0));
+        assertEquals(0, none.size());
+        assertEquals(0, none.toList().size());
+    }
+    
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndex() {
+        MessageHistory h = new MessageHistory(10);
+        h.add(new User.Message(0));
+        h.get(1);
+    }
+    
+    @Test
+    public void testBudget() throws InterruptedException {
+        MessageHistoryBudget budget = new MessageHistoryBudget(100);
+        User.UserSettings settings = new User.UserSettings(50, null, null, null, budget);
+        User a = new User("a", Room.EMPTY);
+        User b = new User("b", Room.EMPTY);
+        User c = new User("c", Room.EMPTY);
+        a.setUserSettings(settings);
+        b.setUserSettings(settings);
+        c.setUserSettings(settings);
+        
+        for (int i = 0; i < 40; i++) {
+            a.addMessage("a", false, null);
+            b.addMessage("b", false, null);
+        }
+        assertEquals(80, budget.getTotal());
+        
+        // Exceed limit, the least recently active user is cleared
+        for (int i = 0; i < 30; i++) {
+            c.addMessage("c", false, null);
+        }
+        for (int i = 0; i < 50 && !a.getMessages().isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(70, budget.getTotal());
+        assertEquals(0, a.getMessages().size());
+        assertTrue(a.linesCleared());
+        assertEquals(40, b.getMessages().size());
+        assertEquals(30, c.getMessages().size());
+        
+        b.clearLines();
+        assertEquals(30, budget.getTotal());
+    }
+    
+}
@@ -0,0 +1,90 @@
+
+package chatty;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class UserManagerTest {
+    
+    @Test
+    public void testLookup() {
+        UserManager m = new UserManager();
+        Room a = Room.createRegular("#a");
+        Room b = Room.createRegular("#b");
+        User userA = m.getUser(a, "Abc");
+        User userB = m.getUser(b, "abc");
+        m.getUser(b, "other");
+        assertSame(userA, m.getUser(a, "abc"));
+        assertSame(userA, m.getUserIfExists("#a", "abc"));
+        assertNull(m.getUserIfExists("#a", "other"));
+        assertNull(m.getUserIfExists("#c", "abc"));
+        
+        assertEquals(2, m.getUsersByName("ABC").size());
+        assertTrue(m.getUsersByName("abc").contains(userA));
+        assertTrue(m.getUsersByName("abc").contains(userB));
+        assertEquals(userB, m.getChannelsAndUsersByUserName("abc").get("#b"));
+        assertEquals(2, m.getUsersByChannel("#b").size());
+        
+        m.clear("#b");
+        assertEquals(1, m.getUsersByName("abc").size());
+        assertEquals(0, m.getUsersByName("other").size());
+        assertEquals(0, m.getUsersByChannel("#b").size());
+        assertNotSame(userB, m.getUser(b, "abc"));
+        assertEquals(2, m.getUsersByName("abc").size());
+        
+        m.clear();
+        assertEquals(0, m.getUsersByName("abc").size());
+        assertNull(m.getUserIfExists("#a", "abc"));
+    }
+    
+    @Test
+    public void testHistoryBudget() {
+        UserManager m = new UserManager();
+        MessageHistoryBudget budget = new MessageHistoryBudget(0);
+        m.setUserSettings(new User.UserSettings(100, null, null, null, budget));
+        User userA = m.getUser(Room.createRegular("#a"), "abc");
+        User userB = m.getUser(Room.createRegular("#b"), "abc");
+        userA.addMessage("a", false, null);
+        userB.addMessage("b", false, null);
+        userB.addMessage("b2", false, null);
+        assertEquals(3, budget.getTotal());
+        
+        // Removed users are not counted anymore
+        m.clear("#b");
+        assertEquals(1, budget.getTotal());
+        m.clear();
+        assertEquals(0, budget.getTotal());
+    }
+    
+    @Test
+    public void testConcurrentCreate() throws Exception {
+        UserManager m = new UserManager();
+        Room room = Room.createRegular("#test");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<User>> results = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String name = "user"+(i % 10);
+            results.add(executor.submit(() -> m.getUser(room, name)));
+        }
+        Set<User> users = new HashSet<>();
+        for (Future<User> result : results) {
+            users.add(result.get());
+        }
+        executor.shutdown();
+        assertEquals(10, users.size());
+        assertEquals(10, m.getUsersByChannel("#test").size());
+        assertEquals(1, m.getUsersByName("user1").size());
+    }
+    
+}
@@ -1184,6 +1184,32 @@ public class HighlighterTest {
         assertFalse(highlighter.check(user, "fawefeawf"));
     }
     
+    @Test
+    public void testMatchResult() {
+        highlighter.setIncludeAllTextMatches(false);
+        update("color:red cat", "nice cat");
+        Highlighter.Result result = highlighter.match(Type.REGULAR, "What a nice cat!", -1, -1, null, null, user, null, MsgTags.EMPTY, false);
+        assertNotNull(result);
+        assertEquals(Color.RED, result.getColor());
+        assertEquals(1, result.textMatches.size());
+        assertEquals(1, result.items.size());
+        assertSame(result.item, result.getColorSource());
+        
+        // Doesn't change the last match variables
+        highlighter.resetLastMatchVariables();
+        assertNull(highlighter.match(Type.REGULAR, "abc", -1, -1, null, null, user, null, MsgTags.EMPTY, false));
+        assertNotNull(highlighter.match(Type.REGULAR, "cat", -1, -1, null, null, user, null, MsgTags.EMPTY, false));
+        assertNull(highlighter.getLastMatchItem());
+        assertNull(highlighter.getLastMatchColor());
+        assertNull(highlighter.getLastTextMatches());
+        
+        highlighter.setIncludeAllTextMatches(true);
+        result = highlighter.match(Type.REGULAR, "What a nice cat!", -1, -1, null, null, user, null, MsgTags.EMPTY, false);
+        assertEquals(2, result.textMatches.size());
+        assertEquals(2, result.items.size());
+        highlighter.setIncludeAllTextMatches(false);
+    }
+    
     @Test
     public void testMatches() {
         highlighter.setIncludeAllTextMatches(false);
@@ -1222,6 +1248,65 @@ public class HighlighterTest {
         assertEquals(highlighter.getLastMatchItems().size(), 3);
     }
     
+    @Test
+    public void testPrefilter() {
+        update();
+        updateBlacklist();
+        highlighter.setIncludeAllTextMatches(false);
+        
+        // Literal prefixes
+        updateTrue(user, "Hello World", "text:world");
+        updateTrue(user, "Hello World", "w:world");
+        updateTrue(user, "Hello World", "world");
+        updateFalse(user, "Hello World", "cs:world");
+        updateTrue(user, "Hello World", "cs:World");
+        updateFalse(user, "Hello World", "wcs:world");
+        updateTrue(user, "Hello World", "start:hello");
+        updateFalse(user, "Hello World", "start:world");
+        updateTrue(user, "Hello World", "+text:hello reg:W.rld");
+        updateFalse(user, "Hello World", "+text:abc reg:W.rld");
+        updateTrue(user, "Hello World", "!text:abc");
+        updateTrue(user, "Hello World", "user:testuser");
+        updateFalse(user, "Hello World", "user:testuser2");
+        updateTrue(user, "Hello World", "user:testuser text:world");
+        updateFalse(user, "Hello World", "user:testuser2 text:world");
+        updateFalse(user, "Hello World", "user:testuser text:abc");
+        
+        // Same case-insensitive matching as regex
+        updateTrue(user, "ſ", "text:s");
+        updateTrue(user, "Ä", "text:ä");
+        updateTrue(user, "\u212A", "text:k");
+        
+        // First match
+        update("abc", "cs:world", "text:world", "start:hello", "user:testuser", "reg:.*");
+        assertTrue(highlighter.check(user, "Hello World"));
+        assertEquals("text:world", highlighter.getLastMatchItem().getRaw());
+        assertTrue(highlighter.check(user, "hello world"));
+        assertEquals("cs:world", highlighter.getLastMatchItem().getRaw());
+        assertTrue(highlighter.check(user, "Hello"));
+        assertEquals("start:hello", highlighter.getLastMatchItem().getRaw());
+        assertTrue(highlighter.check(user, "abc"));
+        assertEquals("abc", highlighter.getLastMatchItem().getRaw());
+        assertTrue(highlighter.check(user, "123"));
+        assertEquals("user:testuser", highlighter.getLastMatchItem().getRaw());
+        assertTrue(highlighter.check(user2, "123"));
+        assertEquals("reg:.*", highlighter.getLastMatchItem().getRaw());
+        
+        // All matches
+        highlighter.setIncludeAllTextMatches(true);
+        update("cs:world", "text:world", "text:hello", "text:abc");
+        assertTrue(highlighter.check(user, "hello world"));
+        assertEquals(2, highlighter.getLastTextMatches().size());
+        assertEquals(2, highlighter.getLastMatchItems().size());
+        highlighter.setIncludeAllTextMatches(false);
+        
+        // Blacklist
+        updateBlacklist("world");
+        updateFalse(user, "Hello World", "text:world");
+        updateTrue(user, "Hello World", "text:hello");
+        updateBlacklist();
+    }
+    
     @Test
     public void testSubstitutes() {
         update();
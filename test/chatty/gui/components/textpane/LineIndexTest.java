@@ -0,0 +1,81 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.Room;
+import chatty.User;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class LineIndexTest {
+    
+    @Test
+    public void test() throws BadLocationException {
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        LineIndex index = new LineIndex(doc);
+        User a = new User("a", Room.EMPTY);
+        User b = new User("b", Room.EMPTY);
+        
+        addLine(doc, index, "a: first", Arrays.asList(a), "1", null);
+        addLine(doc, index, "info", Collections.emptyList(), null, null);
+        addLine(doc, index, "b: hello", Arrays.asList(b), "2", null);
+        addLine(doc, index, "a: second", Arrays.asList(a), "3", "object");
+        assertEquals(3, index.size());
+        
+        assertLines(index.getLines(a), "a: second", "a: first");
+        assertLines(index.getLines(b), "b: hello");
+        assertEquals("b: hello", getText(index.getLineById("2")));
+        assertEquals("a: second", getText(index.getLineByObjectId("object")));
+        
+        // Change text in a line, following lines should still be found
+        doc.insertString(doc.getDefaultRootElement().getElement(0).getEndOffset() - 1, " (deleted)", null);
+        assertLines(index.getLines(a), "a: second", "a: first (deleted)");
+        assertEquals("b: hello", getText(index.getLineById("2")));
+        
+        // Remove first two lines
+        Element second = doc.getDefaultRootElement().getElement(1);
+        index.removeBefore(second.getEndOffset());
+        doc.remove(0, second.getEndOffset());
+        assertEquals(2, index.size());
+        assertLines(index.getLines(a), "a: second");
+        assertNull(index.getLineById("1"));
+        assertEquals("b: hello", getText(index.getLineById("2")));
+        
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.getLines(a).size());
+    }
+    
+    private static void addLine(DefaultStyledDocument doc, LineIndex index, String text, List<User> users, String id, Object objectId) throws BadLocationException {
+        String newline = doc.getLength() > 0 ? "\n" : "";
+        doc.insertString(doc.getLength(), newline+text, null);
+        Element root = doc.getDefaultRootElement();
+        index.add(root.getElement(root.getElementCount() - 1), users, id, objectId);
+    }
+    
+    private static void assertLines(List<Element> lines, String... expected) {
+        assertEquals(expected.length, lines.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], getText(lines.get(i)));
+        }
+    }
+    
+    private static String getText(Element line) {
+        try {
+            return line.getDocument().getText(line.getStartOffset(), line.getEndOffset() - line.getStartOffset() - 1);
+        } catch (BadLocationException ex) {
+            return null;
+        }
+    }
+    
+}
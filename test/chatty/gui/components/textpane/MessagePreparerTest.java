@@ -0,0 +1,112 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.Room;
+import chatty.User;
+import chatty.gui.components.textpane.MessagePreparer.EmoteMatches;
+import chatty.gui.components.textpane.MessagePreparer.LinkMatch;
+import chatty.util.api.CheerEmoticon;
+import chatty.util.api.Emoticon;
+import chatty.util.api.EmoticonIndex;
+import chatty.util.api.EmoticonSnapshot;
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class MessagePreparerTest {
+    
+    @Test
+    public void testFindLinks() {
+        List<LinkMatch> links = MessagePreparer.findLinks("abc (twitch.tv/test) https://example.com/a(b) end");
+        assertEquals(2, links.size());
+        assertEquals(5, links.get(0).start);
+        assertEquals(19, links.get(0).matchEnd);
+        assertEquals(18, links.get(0).end);
+        assertEquals("http://twitch.tv/test", links.get(0).url);
+        assertEquals("https://example.com/a(b)", links.get(1).url);
+        
+        assertEquals(0, MessagePreparer.findLinks("no links here").size());
+    }
+    
+    @Test
+    public void testPrepared() throws InterruptedException {
+        MessagePreparer.Prepared prepared = MessagePreparer.prepare("test twitch.tv");
+        List<LinkMatch> links = null;
+        for (int i = 0; i < 100 && links == null; i++) {
+            links = prepared.getLinks("test twitch.tv");
+            Thread.sleep(10);
+        }
+        assertEquals(1, links.size());
+        assertNull(prepared.getLinks("test twitch.tv abc"));
+    }
+    
+    @Test
+    public void testFindEmotes() {
+        EmoticonSnapshot snapshot = createSnapshot();
+        EmoteMatches matches = MessagePreparer.findEmotes("Kappa abc Cheer100 cheer1 LUL 😀", null, false, true, snapshot);
+        assertEquals(1, matches.custom.size());
+        assertEquals(0, matches.custom.get(0).start);
+        assertEquals(4, matches.custom.get(0).end);
+        assertEquals(1, matches.emoji.size());
+        assertEquals(0, matches.stream.size());
+        assertEquals(1, matches.globalTwitch.size());
+        assertEquals(26, matches.globalTwitch.get(0).start);
+        assertEquals(1, matches.otherGlobal.size());
+        // cheer1 is below the minimum
+        assertEquals(1, matches.bits.size());
+        assertEquals(10, matches.bits.get(0).start);
+        assertEquals(17, matches.bits.get(0).end);
+        assertEquals(3, matches.bits.get(0).bitsLength);
+        
+        matches = MessagePreparer.findEmotes("Kappa", null, true, false, snapshot);
+        assertNull(matches.emoji);
+        assertNull(matches.globalTwitch);
+        assertNull(matches.bits);
+    }
+    
+    @Test
+    public void testPreparedEmotes() throws InterruptedException {
+        EmoticonSnapshot snapshot = createSnapshot();
+        User user = new User("a", Room.EMPTY);
+        MessagePreparer.Prepared prepared = MessagePreparer.prepare("Kappa", user, false, false, snapshot);
+        EmoteMatches matches = null;
+        for (int i = 0; i < 100 && matches == null; i++) {
+            matches = prepared.getEmotes("Kappa", snapshot);
+            Thread.sleep(10);
+        }
+        assertNotNull(matches);
+        assertEquals(2, matches.custom.size() + matches.otherGlobal.size());
+        // Emotes changed or different text
+        assertNull(prepared.getEmotes("Kappa", createSnapshot()));
+        assertNull(prepared.getEmotes("Kappa ", snapshot));
+        
+        // No snapshot
+        prepared = MessagePreparer.prepare("Kappa", user, false, false, null);
+        Thread.sleep(100);
+        assertNull(prepared.getEmotes("Kappa", snapshot));
+    }
+    
+    private static EmoticonSnapshot createSnapshot() {
+        return new EmoticonSnapshot(
+                index(new Emoticon.Builder(Emoticon.Type.CUSTOM, "Kappa").build()),
+                index(new Emoticon.Builder(Emoticon.Type.EMOJI, "😀").build()),
+                Collections.emptyMap(),
+                index(new Emoticon.Builder(Emoticon.Type.TWITCH, "LUL").build()),
+                index(new Emoticon.Builder(Emoticon.Type.BTTV, "Kappa").build()),
+                Arrays.asList(CheerEmoticon.create("cheer", 100, Color.BLUE, Collections.emptySet(), null)));
+    }
+    
+    private static EmoticonIndex index(Emoticon emote) {
+        return new EmoticonIndex(Collections.singleton(emote));
+    }
+    
+}
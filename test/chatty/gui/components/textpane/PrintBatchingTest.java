@@ -0,0 +1,70 @@
+
+package chatty.gui.components.textpane;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class PrintBatchingTest {
+    
+    @Test
+    public void testModes() {
+        List<List<Runnable>> batches = new ArrayList<>();
+        PrintBatching batching = new PrintBatching(batches::add);
+        assertFalse(batching.isEnabled());
+        
+        batching.setMode(PrintBatching.ON, 0);
+        assertTrue(batching.isEnabled());
+        
+        batching.setMode(PrintBatching.AUTO, 5);
+        for (int i = 0; i < 4; i++) {
+            batching.messageReceived();
+            assertFalse(batching.isEnabled());
+        }
+        batching.messageReceived();
+        assertTrue(batching.isEnabled());
+        
+        batching.setMode(PrintBatching.AUTO, 0);
+        assertFalse(batching.isEnabled());
+    }
+    
+    @Test
+    public void testFlush() {
+        List<String> printed = new ArrayList<>();
+        List<List<Runnable>> batches = new ArrayList<>();
+        PrintBatching batching = new PrintBatching(prints -> {
+            batches.add(prints);
+            prints.forEach(Runnable::run);
+        });
+        batching.setMode(PrintBatching.ON, 0);
+        batching.add(() -> printed.add("a"));
+        batching.add(() -> printed.add("b"));
+        assertEquals(0, printed.size());
+        batching.flush();
+        assertEquals("[a, b]", printed.toString());
+        assertEquals(1, batches.size());
+        
+        // Nothing to flush
+        batching.flush();
+        assertEquals(1, batches.size());
+        
+        // Turning off prints what's left
+        batching.add(() -> printed.add("c"));
+        batching.setMode(PrintBatching.OFF, 0);
+        assertEquals("[a, b, c]", printed.toString());
+        assertEquals(2, batches.size());
+        
+        batching.add(() -> printed.add("d"));
+        batching.cleanUp();
+        batching.flush();
+        assertEquals("[a, b, c]", printed.toString());
+    }
+    
+}
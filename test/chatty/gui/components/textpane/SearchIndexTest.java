@@ -0,0 +1,149 @@
+
+package chatty.gui.components.textpane;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.PatternSyntaxException;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class SearchIndexTest {
+    
+    @Test
+    public void testQuery() throws Exception {
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        SearchIndex index = new SearchIndex(doc);
+        SwingUtilities.invokeAndWait(() -> {
+            addLine(doc, index, "a: Hello World");
+            addLine(doc, index, "b: hello there");
+            addLine(doc, index, "c: abc123");
+        });
+        
+        assertEquals(2, search(index, new SearchIndex.Query("hello", false, false)).size());
+        assertEquals(1, search(index, new SearchIndex.Query("Hello", true, false)).size());
+        assertEquals(1, search(index, new SearchIndex.Query("[a-c]\\d+", false, true)).size());
+        assertEquals(2, search(index, new SearchIndex.Query("^. ?: h", false, true)).size());
+        assertEquals(0, search(index, new SearchIndex.Query("HELLO", true, true)).size());
+        assertEquals(0, search(index, new SearchIndex.Query("[a-c]\\d+", false, false)).size());
+        
+        assertTrue(new SearchIndex.Query("abc", false, false).isSame(new SearchIndex.Query("abc", false, false)));
+        assertTrue(!new SearchIndex.Query("abc", false, false).isSame(new SearchIndex.Query("abc", true, false)));
+        assertTrue(!new SearchIndex.Query("abc", false, false).isSame(new SearchIndex.Query("abc", false, true)));
+    }
+    
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidRegex() {
+        new SearchIndex.Query("(abc", false, true);
+    }
+    
+    @Test
+    public void testChanges() throws Exception {
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        SearchIndex index = new SearchIndex(doc);
+        SearchIndex.Query query = new SearchIndex.Query("message", false, false);
+        SwingUtilities.invokeAndWait(() -> {
+            addLine(doc, index, "a: first message");
+            addLine(doc, index, "info");
+            addLine(doc, index, "b: second message");
+        });
+        // Appending lines doesn't change the previous ones
+        assertTrue(!index.hasChanges());
+        assertEquals(2, search(index, query).size());
+        
+        // Changed text is noticed
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                Element info = doc.getDefaultRootElement().getElement(1);
+                doc.insertString(info.getEndOffset() - 1, " message", null);
+            } catch (BadLocationException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        assertTrue(index.hasChanges());
+        List<SearchIndex.Line> result = search(index, query);
+        assertTrue(!index.hasChanges());
+        assertEquals(3, result.size());
+        
+        // Remove first two lines
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                Element second = doc.getDefaultRootElement().getElement(1);
+                index.removeBefore(second.getEndOffset());
+                doc.remove(0, second.getEndOffset());
+            } catch (BadLocationException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        assertEquals(1, index.size());
+        assertTrue(!index.hasChanges());
+        assertTrue(result.get(0).isRemoved());
+        assertTrue(result.get(1).isRemoved());
+        assertTrue(!result.get(2).isRemoved());
+        assertEquals(0, result.get(2).getOffset());
+        assertEquals(1, search(index, query).size());
+        
+        SwingUtilities.invokeAndWait(() -> index.clear());
+        assertEquals(0, search(index, query).size());
+        assertTrue(result.get(2).isRemoved());
+    }
+    
+    @Test
+    public void testStaleSearch() throws Exception {
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        SearchIndex index = new SearchIndex(doc);
+        List<String> results = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        SwingUtilities.invokeAndWait(() -> {
+            addLine(doc, index, "a: first message");
+            addLine(doc, index, "b: second");
+            index.search(new SearchIndex.Query("message", false, false), found -> {
+                results.add("first");
+            });
+            // Replaces the previous search
+            index.search(new SearchIndex.Query("second", false, false), found -> {
+                results.add("second");
+                latch.countDown();
+            });
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(() -> {});
+        assertEquals(1, results.size());
+        assertEquals("second", results.get(0));
+    }
+    
+    private static List<SearchIndex.Line> search(SearchIndex index, SearchIndex.Query query) throws Exception {
+        List<SearchIndex.Line> result = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        SwingUtilities.invokeAndWait(() -> {
+            index.search(query, found -> {
+                result.addAll(found);
+                latch.countDown();
+            });
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return result;
+    }
+    
+    private static void addLine(DefaultStyledDocument doc, SearchIndex index, String text) {
+        try {
+            String newline = doc.getLength() > 0 ? "\n" : "";
+            doc.insertString(doc.getLength(), newline+text, null);
+            Element root = doc.getDefaultRootElement();
+            index.add(root.getElement(root.getElementCount() - 1));
+        } catch (BadLocationException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+    
+}
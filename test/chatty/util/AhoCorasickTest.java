@@ -0,0 +1,53 @@
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class AhoCorasickTest {
+    
+    @Test
+    public void test() {
+        AhoCorasick<String> m = new AhoCorasick<>(false);
+        m.add("he", "he");
+        m.add("she", "she");
+        m.add("his", "his");
+        m.add("hers", "hers");
+        m.add("", "empty");
+        m.build();
+        assertEquals(4, m.size());
+        
+        test(m, "ushers", "he", "hers", "she");
+        test(m, "his", "his");
+        test(m, "HIS");
+        test(m, "");
+        test(m, "abc");
+        test(m, "hehe", "he", "he");
+        test(m, "sshe", "he", "she");
+        
+        AhoCorasick<String> ci = new AhoCorasick<>(true);
+        ci.add("Kappa", "kappa");
+        ci.add("ab", "ab");
+        ci.add("abc", "abc");
+        ci.add("s", "s");
+        ci.build();
+        test(ci, "kappa", "kappa");
+        test(ci, "KAPPA xABC", "ab", "abc", "kappa");
+        test(ci, "ſ", "s");
+    }
+    
+    private static void test(AhoCorasick<String> m, String text, String... expected) {
+        List<String> found = new ArrayList<>();
+        m.find(text, v -> found.add(v));
+        Collections.sort(found);
+        assertEquals(Arrays.asList(expected), found);
+    }
+    
+}
@@ -0,0 +1,38 @@
+
+package chatty.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author tduva
+ */
+public class ChannelRepeatCounterTest {
+    
+    @Test
+    public void test() {
+        ChannelRepeatCounter counter = new ChannelRepeatCounter();
+        assertEquals(0, counter.add("abc", "a", 1000, 10000));
+        // Same user doesn't count
+        assertEquals(0, counter.add("abc", "a", 2000, 10000));
+        assertEquals(2, counter.add("abc", "b", 3000, 10000));
+        assertEquals(1, counter.add("abc", "a", 4000, 10000));
+        assertEquals(0, counter.add("other", "c", 5000, 10000));
+        assertEquals(4, counter.add("abc", "c", 6000, 10000));
+        assertEquals(6, counter.size());
+        
+        // First two messages from "a" are too old now
+        assertEquals(3, counter.add("abc", "d", 12500, 10000));
+        assertEquals(5, counter.size());
+        
+        // Everything too old
+        assertEquals(0, counter.add("abc", "e", 30000, 10000));
+        assertEquals(1, counter.size());
+        
+        counter.clear();
+        assertEquals(0, counter.size());
+        assertEquals(0, counter.add("abc", "a", 30000, 10000));
+    }
+    
+}
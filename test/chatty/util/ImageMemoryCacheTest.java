@@ -0,0 +1,98 @@
+
+package chatty.util;
+
+import chatty.util.ImageCache.ImageRequest;
+import chatty.util.ImageCache.ImageResult;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class ImageMemoryCacheTest {
+    
+    private Path dir;
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("chattyimagetest");
+        ImageMemoryCache.clear();
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        ImageMemoryCache.clear();
+        ImageMemoryCache.setMaxBytes(32 * 1024 * 1024);
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+    
+    @Test
+    public void testLimit() {
+        ImageMemoryCache.setMaxBytes(300);
+        ImageMemoryCache.putEncoded("a", new byte[100]);
+        ImageMemoryCache.putEncoded("b", new byte[100]);
+        // Access "a", so "b" is the least recently used
+        assertNotNull(ImageMemoryCache.getEncoded("a"));
+        ImageMemoryCache.putEncoded("c", new byte[100]);
+        assertNotNull(ImageMemoryCache.getEncoded("a"));
+        assertNull(ImageMemoryCache.getEncoded("b"));
+        assertNotNull(ImageMemoryCache.getEncoded("c"));
+        
+        // Too large for the limit
+        ImageMemoryCache.putEncoded("d", new byte[400]);
+        assertNull(ImageMemoryCache.getEncoded("d"));
+        assertNotNull(ImageMemoryCache.getEncoded("a"));
+        
+        ImageMemoryCache.setMaxBytes(0);
+        assertNull(ImageMemoryCache.getEncoded("a"));
+        assertEquals(0, ImageMemoryCache.getBytes());
+    }
+    
+    @Test
+    public void testLoadFromMemory() throws IOException {
+        URL url = new URL("https://example.com/emote/1.png");
+        String id = ImageCache.sha1(url.toString());
+        Path file = dir.resolve("imgcache-test").resolve(id.substring(0, 1)).resolve("imgcache-test__"+id);
+        Files.createDirectories(file.getParent());
+        ImageIO.write(new BufferedImage(28, 28, BufferedImage.TYPE_INT_ARGB), "png", file.toFile());
+        
+        ImageResult result = ImageCache.getImage(createRequest(url, 1), dir, "test", 60);
+        assertNotNull(result);
+        assertEquals(28, result.icon.getIconWidth());
+        
+        // Should be loaded without the file now
+        Files.delete(file);
+        ImageResult fromMemory = ImageCache.getImage(createRequest(url, 1), dir, "test", 60);
+        assertNotNull(fromMemory);
+        assertEquals(28, fromMemory.icon.getIconWidth());
+        assertNotSame(result.icon, fromMemory.icon);
+        assertSame(result.icon.getImage(), fromMemory.icon.getImage());
+        assertEquals(file.toUri().toURL(), createRequestLoaded(url, dir));
+    }
+    
+    private static ImageRequest createRequest(URL url, float scale) {
+        return new ImageRequest(factor -> factor == 1 ? url.toString() : null,
+                scale, 0, new Dimension(28, 28), false);
+    }
+    
+    private static URL createRequestLoaded(URL url, Path dir) {
+        ImageRequest request = createRequest(url, 1);
+        ImageCache.getImage(request, dir, "test", 60);
+        return request.getLoadFromURL();
+    }
+    
+}
@@ -0,0 +1,73 @@
+
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author tduva
+ */
+public class JSONStreamTest {
+    
+    private static final String JSON = "{\"data\":[{\"id\":1,\"tags\":[\"a\",\"b\"],\"user\":{\"name\":\"abc\"}},"
+            + "{\"id\":2,\"tags\":[],\"user\":null},\"text\",[1,[2]]],"
+            + "\"pagination\":{\"cursor\":\"xyz\"},"
+            + "\"sets\":{\"3\":{\"emoticons\":[{\"name\":\"a\"}]},\"4\":{\"emoticons\":[{\"name\":\"b\"},{\"name\":\"c\"}]}},"
+            + "\"other\":[{\"data\":[5]}]}";
+    
+    @Test
+    public void testItems() throws ParseException {
+        List<Object> items = new ArrayList<>();
+        JSONStream stream = new JSONStream()
+                .onArrayItem("data", items::add)
+                .onValue("pagination.cursor");
+        stream.parse(JSON);
+        
+        // Items should be equal to the ones parsed as a whole
+        JSONObject root = (JSONObject) new JSONParser().parse(JSON);
+        assertEquals(root.get("data"), items);
+        assertEquals(4, stream.getCount("data"));
+        assertEquals(JSONObject.class, items.get(0).getClass());
+        assertEquals(JSONArray.class, items.get(3).getClass());
+        assertEquals("xyz", stream.getValue("pagination.cursor"));
+        assertEquals(-1, new JSONStream().getCount("data"));
+    }
+    
+    @Test
+    public void testWildcard() throws ParseException {
+        List<Object> items = new ArrayList<>();
+        JSONStream stream = new JSONStream()
+                .onArrayItem("sets.*.emoticons", items::add);
+        stream.parse(JSON);
+        assertEquals(3, items.size());
+        assertEquals("c", ((JSONObject) items.get(2)).get("name"));
+        assertEquals(3, stream.getCount("sets.*.emoticons"));
+    }
+    
+    @Test
+    public void testRoot() throws ParseException {
+        List<Object> items = new ArrayList<>();
+        JSONStream stream = new JSONStream().onArrayItem("", items::add);
+        stream.parse("[{\"a\":1},2,null]");
+        assertEquals(3, items.size());
+        assertEquals(2L, items.get(1));
+        assertNull(items.get(2));
+        
+        stream = new JSONStream().onArrayItem("data", items::add);
+        stream.parse("{\"abc\":1}");
+        assertEquals(-1, stream.getCount("data"));
+    }
+    
+    @Test(expected = ParseException.class)
+    public void testInvalid() throws ParseException {
+        new JSONStream().onArrayItem("data", o -> {}).parse("{\"data\":[{\"a\":1},");
+    }
+    
+}
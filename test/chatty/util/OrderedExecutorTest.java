@@ -0,0 +1,110 @@
+
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class OrderedExecutorTest {
+    
+    @Test
+    public void testOrder() throws InterruptedException {
+        OrderedExecutor executor = new OrderedExecutor("Test", 4);
+        Map<String, List<Integer>> results = new HashMap<>();
+        String[] keys = new String[]{"a", "b", "c"};
+        for (String key : keys) {
+            results.put(key, new ArrayList<>());
+        }
+        CountDownLatch done = new CountDownLatch(keys.length * 200);
+        for (int i = 0; i < 200; i++) {
+            for (String key : keys) {
+                int number = i;
+                executor.execute(key, () -> {
+                    List<Integer> list = results.get(key);
+                    synchronized (list) {
+                        list.add(number);
+                    }
+                    done.countDown();
+                });
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (String key : keys) {
+            List<Integer> list = results.get(key);
+            synchronized (list) {
+                assertEquals(200, list.size());
+                for (int i = 0; i < 200; i++) {
+                    assertEquals(i, (int) list.get(i));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testParallel() throws InterruptedException {
+        OrderedExecutor executor = new OrderedExecutor("Test", 2);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute("a", () -> {
+            try {
+                blocked.await();
+            }
+            catch (InterruptedException ex) {
+                // Just continue
+            }
+        });
+        // Different key, so not waiting for the blocked task
+        executor.execute("b", () -> done.countDown());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // Same key, has to wait
+        CountDownLatch done2 = new CountDownLatch(1);
+        executor.execute("a", () -> done2.countDown());
+        assertFalse(done2.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, executor.getQueued());
+        blocked.countDown();
+        assertTrue(done2.await(5, TimeUnit.SECONDS));
+    }
+    
+    /**
+     * A ban added after a message (that takes a while to classify) must be
+     * applied after the message has been printed.
+     */
+    @Test
+    public void testExecuteAfter() throws InterruptedException {
+        OrderedExecutor executor = new OrderedExecutor("Test", 2);
+        ExecutorService edt = Executors.newSingleThreadExecutor();
+        List<String> printed = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute("#chan", () -> {
+            try {
+                // Classifying
+                Thread.sleep(100);
+            }
+            catch (InterruptedException ex) {
+                // Just continue
+            }
+            edt.execute(() -> printed.add("message"));
+        });
+        executor.executeAfter("#chan", edt, () -> {
+            printed.add("ban");
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        edt.shutdown();
+        assertEquals(2, printed.size());
+        assertEquals("message", printed.get(0));
+        assertEquals("ban", printed.get(1));
+    }
+    
+}
@@ -0,0 +1,65 @@
+
+package chatty.util;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * 
+ * @author tduva
+ */
+public class SimilarityFingerprintTest {
+    
+    /**
+     * The result should be the same as comparing the prepared Strings.
+     */
+    @Test
+    public void testSameAsStringUtil() {
+        Random random = new Random(1);
+        String chars = "aab c!";
+        float[] mins = new float[]{0, 0.2f, 0.5f, 0.8f, 1};
+        char[][] ignored = new char[][]{null, new char[]{'!'}};
+        for (int i = 0; i < 5000; i++) {
+            String a = randomString(random, chars, 12);
+            String b = random.nextInt(5) == 0 ? a : randomString(random, chars, 12);
+            for (char[] ignoredChars : ignored) {
+                SimilarityFingerprint fa = SimilarityFingerprint.create(a, ignoredChars);
+                SimilarityFingerprint fb = SimilarityFingerprint.create(b, ignoredChars);
+                String pa = StringUtil.prepareForSimilarityComparison(a, ignoredChars);
+                String pb = StringUtil.prepareForSimilarityComparison(b, ignoredChars);
+                for (float min : mins) {
+                    for (int method = 1; method <= 2; method++) {
+                        assertEquals(a + "/" + b + " " + min + " " + method,
+                                StringUtil.checkSimilarity(pa, pb, min, method),
+                                fa.checkSimilarity(fb, min, method), 0);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testIsFor() {
+        SimilarityFingerprint f = SimilarityFingerprint.create("a b!", null);
+        assertEquals("ab!", f.getText());
+        assertTrue(f.isFor(null));
+        assertTrue(f.isFor(new char[0]));
+        assertFalse(f.isFor(new char[]{'!'}));
+        
+        f = SimilarityFingerprint.create("a b!", new char[]{'!'});
+        assertEquals("ab", f.getText());
+        assertTrue(f.isFor(new char[]{'!'}));
+        assertFalse(f.isFor(null));
+    }
+    
+    private static String randomString(Random random, String chars, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            b.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return b.toString();
+    }
+    
+}
@@ -9,6 +9,8 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.LinkedHashMap;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import org.junit.Test;
 
 /**
@@ -108,6 +110,54 @@ public class TimestampTest {
                 createStreamInfo(time, 30*HOUR+10*MINUTE));
     }
     
+    @Test
+    public void testCache() {
+        ZonedDateTime datetimeDefault = ZonedDateTime.of(2022, 3, 2, 18, 3, 20, 0, ZoneId.systemDefault());
+        long time = datetimeDefault.toEpochSecond() * 1000;
+        
+        // Same input shares the cache, within the same second
+        Timestamp timestamp = new Timestamp("HH:mm:ss", "");
+        Timestamp timestamp2 = new Timestamp("HH:mm:ss", "");
+        String result = timestamp.make2(time, null);
+        assertEquals("18:03:20", result);
+        assertSame(result, timestamp2.make2(time + 999, null));
+        assertEquals("18:03:21", timestamp2.make2(time + 1000, null));
+        assertEquals("18:03:20 ", timestamp.make(time, null, true));
+        assertSame(timestamp.make(time, null, true), timestamp2.make(time, null, true));
+        
+        // Uptime depends on the stream
+        Timestamp uptime = new Timestamp("HH:mm:ss'{ ,uptime}'", "");
+        assertEquals("18:03:20 30m", uptime.make2(time, createStreamInfo(time, 30*MINUTE)));
+        assertEquals("18:03:20 40m", uptime.make2(time, createStreamInfo(time, 40*MINUTE)));
+        assertEquals("18:03:20", uptime.make2(time, null));
+        
+        TimestampCache cache = new TimestampCache();
+        Object source = new Object();
+        cache.put(10, source, 1, "a");
+        assertEquals("a", cache.get(10, source, 1));
+        assertNull(cache.get(11, source, 1));
+        assertNull(cache.get(10, new Object(), 1));
+        assertNull(cache.get(10, source, 2));
+    }
+    
+    @Test
+    public void testCacheMilliseconds() {
+        ZonedDateTime datetimeDefault = ZonedDateTime.of(2022, 3, 2, 18, 3, 20, 0, ZoneId.systemDefault());
+        long time = datetimeDefault.toEpochSecond() * 1000;
+        
+        // Milliseconds differ within the same second
+        Timestamp timestamp = new Timestamp("HH:mm:ss.SSS", "");
+        assertEquals("18:03:20.000", timestamp.make2(time, null));
+        assertEquals("18:03:20.500", timestamp.make2(time + 500, null));
+        assertEquals("18:03:20.999 ", timestamp.make(time + 999, null, true));
+        
+        // Quoted "S" is not the milliseconds field, so cached per second
+        Timestamp quoted = new Timestamp("'S'HH:mm:ss", "");
+        String result = quoted.make2(time, null);
+        assertEquals("S18:03:20", result);
+        assertSame(result, quoted.make2(time + 500, null));
+    }
+    
     private static void t(String input, String timezone, long time, String expected) {
         t(input, timezone, time, expected, null);
     }
@@ -0,0 +1,53 @@
+
+package chatty.util.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares the time of the old way of finding emotes (checking each emote's
+ * regex) with using the {@link EmoticonIndex}, on 5000 emotes.
+ * 
+ * Not run as part of the tests, run the main method manually.
+ * 
+ * @author tduva
+ */
+public class EmoticonIndexBenchmark {
+    
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        List<String> codes = new ArrayList<>();
+        Set<Emoticon> emotes = EmoticonIndexTest.createEmotes(random, codes);
+        List<String> messages = EmoticonIndexTest.createMessages(random, codes);
+        EmoticonIndex index = new EmoticonIndex(emotes);
+        
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round "+(round + 1));
+            int rounds = 10;
+            long oldTime = 0;
+            long newTime = 0;
+            int found = 0;
+            for (int r = 0; r < rounds; r++) {
+                long start = System.nanoTime();
+                for (String message : messages) {
+                    found += EmoticonIndexTest.findOld(emotes, message).size();
+                }
+                oldTime += System.nanoTime() - start;
+                
+                start = System.nanoTime();
+                for (String message : messages) {
+                    found += index.find(message, null).size();
+                }
+                newTime += System.nanoTime() - start;
+            }
+            int count = rounds * messages.size();
+            System.out.println(String.format("EmoticonIndex (%d emotes, %d matches): regex %.3fms/msg, index %.4fms/msg",
+                    emotes.size(), found,
+                    oldTime / 1000000.0 / count,
+                    newTime / 1000000.0 / count));
+        }
+    }
+    
+}
@@ -0,0 +1,166 @@
+package chatty.util.api;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class EmoticonIndexTest {
+    
+    @Test
+    public void testMatchedWord() {
+        assertEquals("Kappa", emote("Kappa").getMatchedWord());
+        assertEquals("D:", emote("D:").getMatchedWord());
+        assertEquals("(ditto)", literal("(ditto)").getMatchedWord());
+        assertEquals(null, emote("(ditto)").getMatchedWord());
+        assertEquals(null, emote(":)").getMatchedWord());
+        assertEquals(null, emote("[oO](_|\\.)[oO]").getMatchedWord());
+        assertEquals(null, new Emoticon.Builder(Emoticon.Type.EMOJI, "😀").build().getMatchedWord());
+    }
+    
+    @Test
+    public void testFind() {
+        Set<Emoticon> emotes = new LinkedHashSet<>();
+        emotes.add(emote("Kappa"));
+        emotes.add(emote("D:"));
+        emotes.add(emote(":)"));
+        emotes.add(literal("(ditto)"));
+        emotes.add(emote("pepe?Laugh"));
+        emotes.add(new Emoticon.Builder(Emoticon.Type.FFZ, "Kappa").addStreamRestriction("abc").build());
+        emotes.add(literal("Kappa"));
+        
+        test(emotes, "Kappa");
+        test(emotes, " Kappa ");
+        test(emotes, "Kappa Kappa\tKappa\nKappa");
+        test(emotes, "KappaKappa Kappa. .Kappa");
+        test(emotes, "D: :) :):) (ditto) ditto pepLaugh pepeLaugh");
+        test(emotes, "");
+        test(emotes, "   ");
+        test(emotes, "abc Kappa");
+        
+        EmoticonIndex index = new EmoticonIndex(emotes);
+        assertEquals(7, index.size());
+        assertEquals(2, index.regexSize());
+        assertEquals(0, index.find("Kappa", e -> false).size());
+        assertEquals(1, index.find("Kappa", e -> e.hasStreamRestrictions()).size());
+        assertEquals(3, index.find("Kappa", null).size());
+    }
+    
+    /**
+     * Check that the index finds the same as the old way of finding emotes
+     * (checking each emote's regex) on many random emotes and messages. See
+     * {@link EmoticonIndexBenchmark} for comparing the time.
+     */
+    @Test
+    public void testManyEmotes() {
+        Random random = new Random(1);
+        List<String> codes = new ArrayList<>();
+        Set<Emoticon> emotes = createEmotes(random, codes);
+        List<String> messages = createMessages(random, codes);
+        
+        EmoticonIndex index = new EmoticonIndex(emotes);
+        for (String message : messages) {
+            assertEquals(findOld(emotes, message), toString(index.find(message, null)));
+        }
+    }
+    
+    /**
+     * Create 5000 random emotes (and a few regex ones).
+     * 
+     * @param random
+     * @param codes The codes of the random emotes are added to this
+     * @return 
+     */
+    static Set<Emoticon> createEmotes(Random random, List<String> codes) {
+        Set<Emoticon> emotes = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            String code = randomCode(random);
+            codes.add(code);
+            emotes.add(i % 4 == 0 ? literal(code) : emote(code));
+        }
+        emotes.add(emote(":)"));
+        emotes.add(emote(";)"));
+        return emotes;
+    }
+    
+    /**
+     * Create 50 random messages, which contain some of the given emote codes.
+     * 
+     * @param random
+     * @param codes
+     * @return 
+     */
+    static List<String> createMessages(Random random, List<String> codes) {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            StringBuilder b = new StringBuilder();
+            int words = random.nextInt(15) + 1;
+            for (int w = 0; w < words; w++) {
+                if (random.nextInt(4) == 0) {
+                    b.append(codes.get(random.nextInt(codes.size())));
+                }
+                else {
+                    b.append(randomCode(random).toLowerCase());
+                }
+                b.append(" ");
+            }
+            messages.add(b.toString());
+        }
+        return messages;
+    }
+    
+    private static void test(Set<Emoticon> emotes, String text) {
+        EmoticonIndex index = new EmoticonIndex(emotes);
+        assertEquals(findOld(emotes, text), toString(index.find(text, null)));
+    }
+    
+    /**
+     * Same as ChannelTextPane did before using the index.
+     */
+    static List<String> findOld(Set<Emoticon> emotes, String text) {
+        List<String> result = new ArrayList<>();
+        for (Emoticon emote : emotes) {
+            Matcher m = emote.getMatcher(text);
+            while (m.find()) {
+                result.add(emote.code+"["+m.start()+"-"+(m.end() - 1)+"]");
+            }
+        }
+        return result;
+    }
+    
+    private static List<String> toString(List<EmoticonIndex.Match> matches) {
+        List<String> result = new ArrayList<>();
+        for (EmoticonIndex.Match match : matches) {
+            result.add(match.toString());
+        }
+        return result;
+    }
+    
+    private static String randomCode(Random random) {
+        StringBuilder b = new StringBuilder();
+        int length = random.nextInt(8) + 4;
+        for (int i = 0; i < length; i++) {
+            char c = (char) ('a' + random.nextInt(26));
+            b.append(i == 0 || random.nextInt(3) == 0 ? Character.toUpperCase(c) : c);
+        }
+        return b.toString();
+    }
+    
+    private static Emoticon emote(String code) {
+        return new Emoticon.Builder(Emoticon.Type.BTTV, code).build();
+    }
+    
+    private static Emoticon literal(String code) {
+        return new Emoticon.Builder(Emoticon.Type.SEVENTV, code).setLiteral(true).build();
+    }
+    
+}
@@ -0,0 +1,116 @@
+
+package chatty.util.api;
+
+import chatty.util.api.ImageLoader.Priority;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class ImageLoaderTest {
+    
+    private final List<String> loadOrder = new ArrayList<>();
+    private final List<String> results = new ArrayList<>();
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    
+    /**
+     * Occupy the only loader thread until the latch is released, so the
+     * following requests are queued.
+     */
+    private void block(ImageLoader loader, Object owner) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        loader.load("block", Priority.BACKGROUND, () -> {
+            started.countDown();
+            try {
+                blocked.await();
+            }
+            catch (InterruptedException ex) {
+                // Just continue
+            }
+            return "block";
+        }, owner, (o, r) -> {});
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+    
+    private ImageLoader.Request load(ImageLoader loader, String key, Priority priority, Object owner) {
+        return loader.load(key, priority, () -> {
+            synchronized (loadOrder) {
+                loadOrder.add(key);
+            }
+            return key;
+        }, owner, (o, r) -> {
+            synchronized (results) {
+                results.add(r);
+            }
+        });
+    }
+    
+    private void waitFor(ImageLoader loader, int count) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            synchronized (results) {
+                if (results.size() >= count) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        fail("Not loaded: "+results);
+    }
+    
+    @Test
+    public void testPriority() throws InterruptedException {
+        Object owner = new Object();
+        ImageLoader loader = new ImageLoader("Test", 1, 10000);
+        block(loader, owner);
+        load(loader, "prefetch", Priority.PREFETCH, owner);
+        load(loader, "background", Priority.BACKGROUND, owner);
+        load(loader, "background2", Priority.BACKGROUND, owner).boost(Priority.VISIBLE);
+        load(loader, "visible", Priority.VISIBLE, owner).boost(Priority.FOCUSED);
+        load(loader, "focused", Priority.FOCUSED, owner);
+        // Lower than base priority is ignored
+        load(loader, "background3", Priority.BACKGROUND, owner).boost(Priority.PREFETCH);
+        assertEquals(1, (int) loader.getQueued().get(Priority.PREFETCH));
+        assertEquals(2, (int) loader.getQueued().get(Priority.FOCUSED));
+        blocked.countDown();
+        waitFor(loader, 6);
+        assertEquals(Arrays.asList("visible", "focused", "background2",
+                "background", "background3", "prefetch"), loadOrder);
+    }
+    
+    @Test
+    public void testBoostExpired() throws InterruptedException {
+        Object owner = new Object();
+        ImageLoader loader = new ImageLoader("Test", 1, 50);
+        block(loader, owner);
+        load(loader, "background", Priority.BACKGROUND, owner);
+        load(loader, "background2", Priority.BACKGROUND, owner).boost(Priority.FOCUSED);
+        Thread.sleep(200);
+        blocked.countDown();
+        waitFor(loader, 2);
+        assertEquals(Arrays.asList("background", "background2"), loadOrder);
+    }
+    
+    @Test
+    public void testMerge() throws InterruptedException {
+        Object owner = new Object();
+        Object owner2 = new Object();
+        ImageLoader loader = new ImageLoader("Test", 1, 10000);
+        block(loader, owner);
+        load(loader, "a", Priority.PREFETCH, owner);
+        load(loader, "b", Priority.BACKGROUND, owner);
+        // Merged with "a" and raises the base priority of it
+        load(loader, "a", Priority.VISIBLE, owner2);
+        blocked.countDown();
+        waitFor(loader, 3);
+        assertEquals(Arrays.asList("a", "b"), loadOrder);
+        assertEquals(Arrays.asList("a", "a", "b"), results);
+    }
+    
+}
@@ -0,0 +1,67 @@
+
+package chatty.util.api.queue;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class TokenBucketTest {
+    
+    @Test
+    public void testPriority() {
+        TokenBucket bucket = new TokenBucket();
+        long now = 1000;
+        bucket.update(new RateLimit(100, 30, -1), now);
+        assertEquals(30, bucket.getTokens());
+        
+        // Background requests leave 25 tokens
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire(Priority.BACKGROUND, now));
+        }
+        assertTrue(bucket.tryAcquire(Priority.BACKGROUND, now) > 0);
+        
+        // Moderation requests leave 5 tokens
+        for (int i = 0; i < 20; i++) {
+            assertEquals(0, bucket.tryAcquire(Priority.MODERATION, now));
+        }
+        assertTrue(bucket.tryAcquire(Priority.MODERATION, now) > 0);
+        
+        // User requests can use all
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire(Priority.USER, now));
+        }
+        long wait = bucket.tryAcquire(Priority.USER, now);
+        // 100 tokens per minute
+        assertEquals(600, wait);
+        assertEquals(0, bucket.tryAcquire(Priority.USER, now + wait));
+    }
+    
+    @Test
+    public void testUpdate() {
+        TokenBucket bucket = new TokenBucket();
+        long now = 1000;
+        bucket.update(new RateLimit(800, 500, -1), now);
+        assertEquals(500, bucket.getTokens());
+        // Higher remaining value doesn't increase estimate
+        bucket.update(new RateLimit(800, 700, -1), now);
+        assertEquals(500, bucket.getTokens());
+        // Refills over time
+        bucket.update(RateLimit.NONE, now + 6000);
+        assertEquals(580, bucket.getTokens());
+    }
+    
+    @Test
+    public void testBlock() {
+        TokenBucket bucket = new TokenBucket();
+        long now = 1000;
+        bucket.block(now + 5000, now);
+        assertEquals(5000, bucket.tryAcquire(Priority.USER, now));
+        assertEquals(0, bucket.getTokens());
+        // Refilled 1 token after the block
+        assertEquals(0, bucket.tryAcquire(Priority.USER, now + 5000 + 75));
+    }
+    
+}
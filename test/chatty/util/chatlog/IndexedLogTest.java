@@ -0,0 +1,120 @@
+
+package chatty.util.chatlog;
+
+import chatty.util.chatlog.IndexedLog.Query;
+import chatty.util.chatlog.IndexedLog.Record;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class IndexedLogTest {
+    
+    private Path dir;
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("chattyindexedlogtest");
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        for (Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+    
+    /**
+     * Writes enough messages for several blocks.
+     */
+    private void write(int count) {
+        IndexedLog.Writer writer = IndexedLog.Writer.open(dir, "#test");
+        for (int i = 0; i < count; i++) {
+            String user = "user" + (i % 10);
+            writer.add(new Record(1000 + i, user, i % 7 == 0, "message number " + i + " from " + user));
+        }
+        writer.close();
+    }
+    
+    @Test
+    public void testQuery() throws IOException {
+        write(20000);
+        
+        List<Record> all = IndexedLog.query(dir, "#test", new Query());
+        assertEquals(20000, all.size());
+        assertEquals(1000, all.get(0).time);
+        assertEquals(20999, all.get(19999).time);
+        
+        List<Record> user = IndexedLog.query(dir, "#test", new Query().user("User3"));
+        assertEquals(2000, user.size());
+        for (Record r : user) {
+            assertEquals("user3", r.username);
+            assertEquals((r.time - 1000) % 7 == 0, r.action);
+        }
+        
+        List<Record> range = IndexedLog.query(dir, "#test", new Query().user("user3").time(1100, 1200));
+        assertEquals(10, range.size());
+        assertEquals(1103, range.get(0).time);
+        assertEquals(1193, range.get(9).time);
+        
+        List<Record> text = IndexedLog.query(dir, "#test", new Query().text("NUMBER 1234 "));
+        assertEquals(1, text.size());
+        assertEquals("message number 1234 from user4", text.get(0).text);
+        
+        // Most recent, but oldest first
+        List<Record> limited = IndexedLog.query(dir, "#test", new Query().user("user5").limit(3));
+        assertEquals(3, limited.size());
+        assertEquals(20975, limited.get(0).time);
+        assertEquals(20995, limited.get(2).time);
+        
+        assertTrue(IndexedLog.query(dir, "#test", new Query().user("abc")).isEmpty());
+        assertTrue(IndexedLog.query(dir, "#other", new Query()).isEmpty());
+    }
+    
+    @Test
+    public void testAppend() throws IOException {
+        write(10);
+        assertEquals(10, IndexedLog.query(dir, "#test", new Query()).size());
+        write(10);
+        assertEquals(20, IndexedLog.query(dir, "#test", new Query()).size());
+    }
+    
+    @Test
+    public void testIncompleteIndex() throws IOException {
+        write(10);
+        // Partially written index entry
+        Files.write(dir.resolve("#test.cidx"), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        assertEquals(10, IndexedLog.query(dir, "#test", new Query()).size());
+        write(10);
+        assertEquals(20, IndexedLog.query(dir, "#test", new Query()).size());
+    }
+    
+    @Test
+    public void testWriteIfOld() throws IOException {
+        IndexedLog.Writer writer = IndexedLog.Writer.open(dir, "#test");
+        assertEquals(-1, writer.getWriteDue());
+        writer.add(new Record(1000, "user", false, "message"));
+        long due = writer.getWriteDue();
+        assertTrue(due > System.currentTimeMillis());
+        
+        // Not old enough yet
+        writer.writeIfOld(due - 1);
+        assertEquals(0, IndexedLog.query(dir, "#test", new Query()).size());
+        
+        writer.writeIfOld(due);
+        assertEquals(1, IndexedLog.query(dir, "#test", new Query()).size());
+        assertEquals(-1, writer.getWriteDue());
+        writer.close();
+    }
+    
+}
@@ -0,0 +1,89 @@
+
+package chatty.util.chatlog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class LogManagerTest {
+    
+    private Path dir;
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("chattylogtest");
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        for (Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+    
+    @Test
+    public void testBuffered() throws Exception {
+        LogManager log = new LogManager(dir, "never", false, false, 60*1000, false);
+        log.start();
+        log.writeLine("#a", "line1");
+        log.writeLine("#b", "line2");
+        log.writeLine("#a", "line3");
+        Thread.sleep(300);
+        // Not written yet
+        assertFalse(read("#a").contains("line1"));
+        log.close();
+        // Written when closing
+        List<String> a = read("#a");
+        assertEquals("line1", a.get(1));
+        assertEquals("line3", a.get(2));
+        assertTrue(a.get(3).startsWith("# Log closed"));
+        assertEquals("line2", read("#b").get(1));
+    }
+    
+    @Test
+    public void testFlushDelay() throws Exception {
+        LogManager log = new LogManager(dir, "never", false, false, 100, false);
+        log.start();
+        log.writeLine("#a", "line1");
+        long start = System.currentTimeMillis();
+        while (!read("#a").contains("line1")) {
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            Thread.sleep(20);
+        }
+        log.close();
+    }
+    
+    @Test
+    public void testImmediate() throws Exception {
+        LogManager log = new LogManager(dir, "never", false, false, 0, false);
+        log.start();
+        log.writeLine("#a", "line1");
+        long start = System.currentTimeMillis();
+        while (!read("#a").contains("line1")) {
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            Thread.sleep(20);
+        }
+        log.close();
+    }
+    
+    private List<String> read(String channel) throws IOException {
+        Path file = dir.resolve(channel+".log");
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+    
+}
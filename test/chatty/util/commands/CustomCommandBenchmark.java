@@ -0,0 +1,93 @@
+package chatty.util.commands;
+
+import chatty.Helper;
+import chatty.Room;
+import chatty.User;
+import chatty.util.DateTime;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.function.Function;
+
+/**
+ * Compares replacing typical log message and timestamp templates with the
+ * regular {@link CustomCommand#replace(Parameters)} and all parameters
+ * created beforehand (how it was done before), and with the
+ * {@link CompiledCommand} and lazy parameters, in time and bytes allocated.
+ * 
+ * Not run as part of the tests, run the main method manually.
+ * 
+ * @author tduva
+ */
+public class CustomCommandBenchmark {
+    
+    private static final String LOG_TEMPLATE = "$if(timestamp,$(timestamp) )<$(full-nick2)>$if(action,*) $(msg)";
+    private static final String LOG_TEMPLATE_NO_TIMESTAMP = "<$(full-nick2)>$if(action,*) $(msg)";
+    private static final String TIMESTAMP_TEMPLATE = "[$1-]";
+    
+    private static final SimpleDateFormat FORMAT = new SimpleDateFormat("[yyyy-MM-dd HH:mm:ss]");
+    
+    private static final User USER = new User("somebody", Room.createRegular("#channel"));
+    private static final String[] MESSAGES = new String[]{
+        "Kappa hello Kappa",
+        "is this the right stream? I was looking for the speedrun",
+        "@another_user yes it is"
+    };
+    
+    public static void main(String[] args) {
+        USER.setDisplayNick("Somebody");
+        int iterations = 200000;
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round "+(round + 1));
+            runLog("log", LOG_TEMPLATE, iterations);
+            runLog("log-nots", LOG_TEMPLATE_NO_TIMESTAMP, iterations);
+            CustomCommand command = CustomCommand.parse(TIMESTAMP_TEMPLATE);
+            CompiledCommand compiled = command.compile();
+            run("ts-regular", iterations, msg -> command.replace(Parameters.create("12:34:56")));
+            run("ts-compiled", iterations, msg -> compiled.replace(Parameters.create("12:34:56")));
+        }
+    }
+    
+    private static void runLog(String name, String template, int iterations) {
+        CustomCommand command = CustomCommand.parse(template);
+        CompiledCommand compiled = command.compile();
+        run(name+"-regular", iterations, msg -> {
+            Parameters p = createParameters(msg);
+            p.put("timestamp", DateTime.currentTime(FORMAT));
+            return command.replace(p);
+        });
+        run(name+"-compiled", iterations, msg -> {
+            Parameters p = createParameters(msg);
+            p.putLazy("timestamp", () -> DateTime.currentTime(FORMAT));
+            return compiled.replace(p);
+        });
+    }
+    
+    /**
+     * Same as the ChatLog message parameters.
+     */
+    private static Parameters createParameters(String msg) {
+        Parameters p = Parameters.create("");
+        Helper.addUserParameters(USER, null, null, p);
+        p.put("msg", msg);
+        return p;
+    }
+    
+    private static void run(String name, int iterations, Function<String, String> replacer) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = bean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        int sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (String msg : MESSAGES) {
+                sum += replacer.apply(msg).length();
+            }
+        }
+        long time = System.nanoTime() - start;
+        long bytes = bean.getThreadAllocatedBytes(threadId) - bytesBefore;
+        long count = (long) iterations * MESSAGES.length;
+        System.out.println(String.format("%-20s %5d ns/replace %6d bytes/replace (%d)",
+                name, time / count, bytes / count, sum));
+    }
+    
+}
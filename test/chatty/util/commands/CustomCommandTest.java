@@ -284,9 +284,50 @@ public class CustomCommandTest {
                 }
             }
             assertEquals(tests[i+1], c.replace(parameters));
+            // Compiled should always have the same result
+            assertEquals(tests[i+1], c.compile().replace(parameters));
         }
     }
     
+    @Test
+    public void testCompiled() {
+        CompiledCommand c = CustomCommand.parse("$if(timestamp,$(timestamp) )<$(nick)>$if(action,*) $(msg)").compile();
+        assertTrue(c.references("timestamp"));
+        assertTrue(c.references("msg"));
+        assertFalse(c.references("abc"));
+        
+        int[] created = new int[1];
+        Parameters parameters = Parameters.create("");
+        parameters.put("nick", "Name");
+        parameters.put("msg", "Hello");
+        parameters.putLazy("timestamp", () -> {
+            created[0]++;
+            return "[12:00]";
+        });
+        assertEquals("[12:00] <Name> Hello", c.replace(parameters));
+        assertEquals("[12:00] <Name> Hello", c.replace(parameters));
+        assertEquals(1, created[0]);
+        
+        // Not referenced, so not created
+        CompiledCommand c2 = CustomCommand.parse("<$(nick)> $(msg)").compile();
+        parameters.putLazy("timestamp", () -> {
+            created[0]++;
+            return "[12:00]";
+        });
+        assertEquals("<Name> Hello", c2.replace(parameters));
+        assertEquals(1, created[0]);
+        
+        // Empty value is handled like not set
+        parameters.putLazy("timestamp", () -> "");
+        assertEquals("<Name> Hello", c.replace(parameters));
+        parameters.putLazy("timestamp", () -> "[13:00]");
+        parameters.put("timestamp", "[14:00]");
+        assertEquals("[14:00] <Name> Hello", c.replace(parameters));
+        
+        assertEquals("abc", CustomCommand.parse("abc").compile().replace(null));
+        assertNull(CustomCommand.parse("$(abc").compile());
+    }
+    
     @Test
     public void testRandom() {
         CustomCommand random1 = CustomCommand.parse("$rand($1,b,c)");
@@ -0,0 +1,115 @@
+
+package chatty.util.gif;
+
+import java.awt.Dimension;
+import java.awt.image.ColorModel;
+import java.awt.image.ImageConsumer;
+import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class AnimationSchedulerTest {
+    
+    @Test
+    public void testFrames() throws InterruptedException {
+        AnimatedImageSource a = new AnimatedImageSource(new TestImage("a", 20));
+        AnimatedImageSource b = new AnimatedImageSource(new TestImage("b", 30));
+        TestConsumer ca = new TestConsumer(5);
+        TestConsumer cb = new TestConsumer(5);
+        a.addConsumer(ca);
+        b.addConsumer(cb);
+        assertTrue(AnimationScheduler.getActiveCount() >= 2);
+        assertTrue(ca.frames.await(5, TimeUnit.SECONDS));
+        assertTrue(cb.frames.await(5, TimeUnit.SECONDS));
+        a.removeConsumer(ca);
+        b.removeConsumer(cb);
+    }
+    
+    private static class TestImage implements AnimatedImage {
+        
+        private final String name;
+        private final int delay;
+        
+        TestImage(String name, int delay) {
+            this.name = name;
+            this.delay = delay;
+        }
+        
+        @Override
+        public void getFrame(int frame, int[] pixels) throws Exception {
+            pixels[0] = frame;
+        }
+        
+        @Override
+        public int getFrameCount() {
+            return 3;
+        }
+        
+        @Override
+        public int getDelay(int frame) {
+            return delay;
+        }
+        
+        @Override
+        public Dimension getSize() {
+            return new Dimension(2, 2);
+        }
+        
+        @Override
+        public String getName() {
+            return name;
+        }
+        
+        @Override
+        public int getPreferredPauseFrame() {
+            return 0;
+        }
+        
+    }
+    
+    private static class TestConsumer implements ImageConsumer {
+        
+        private final CountDownLatch frames;
+        
+        TestConsumer(int count) {
+            frames = new CountDownLatch(count);
+        }
+        
+        @Override
+        public void setDimensions(int width, int height) {
+        }
+        
+        @Override
+        public void setProperties(Hashtable<?, ?> props) {
+        }
+        
+        @Override
+        public void setColorModel(ColorModel model) {
+        }
+        
+        @Override
+        public void setHints(int hintflags) {
+        }
+        
+        @Override
+        public void setPixels(int x, int y, int w, int h, ColorModel model, byte[] pixels, int off, int scansize) {
+        }
+        
+        @Override
+        public void setPixels(int x, int y, int w, int h, ColorModel model, int[] pixels, int off, int scansize) {
+        }
+        
+        @Override
+        public void imageComplete(int status) {
+            frames.countDown();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,81 @@
+
+package chatty.util.gif;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class DecodedFrameCacheTest {
+    
+    @After
+    public void tearDown() {
+        DecodedFrameCache.setMaxBytes(32 * 1024 * 1024);
+        DecodedFrameCache.clear();
+    }
+    
+    @Test
+    public void testCache() throws IOException {
+        DecodedFrameCache.clear();
+        ListAnimatedImageFrame frame = createFrame(0xFF112233);
+        int[] decoded = new int[16];
+        frame.decode(decoded);
+        assertEquals(0xFF112233, decoded[5]);
+        
+        int[] pixels = new int[16];
+        assertFalse(DecodedFrameCache.get(frame, pixels));
+        frame.getImage(pixels);
+        assertArrayEquals(decoded, pixels);
+        assertTrue(DecodedFrameCache.getBytes() > 0);
+        
+        // From cache
+        int[] cached = new int[16];
+        assertTrue(DecodedFrameCache.get(frame, cached));
+        assertArrayEquals(decoded, cached);
+        // Changing the array that was used to add doesn't affect cache
+        pixels[0] = 0;
+        frame.getImage(cached);
+        assertArrayEquals(decoded, cached);
+    }
+    
+    @Test
+    public void testLimit() throws IOException {
+        DecodedFrameCache.clear();
+        ListAnimatedImageFrame a = createFrame(1);
+        ListAnimatedImageFrame b = createFrame(2);
+        ListAnimatedImageFrame c = createFrame(3);
+        int[] pixels = new int[16];
+        // Space for two frames
+        DecodedFrameCache.setMaxBytes(2 * (16 * 4 + 16));
+        a.getImage(pixels);
+        b.getImage(pixels);
+        // Access a, so b is least recently used
+        assertTrue(DecodedFrameCache.get(a, pixels));
+        c.getImage(pixels);
+        assertTrue(DecodedFrameCache.get(a, pixels));
+        assertFalse(DecodedFrameCache.get(b, pixels));
+        assertTrue(DecodedFrameCache.get(c, pixels));
+        
+        // Disabled
+        DecodedFrameCache.setMaxBytes(0);
+        assertEquals(0, DecodedFrameCache.getBytes());
+        a.getImage(pixels);
+        assertFalse(DecodedFrameCache.get(a, pixels));
+    }
+    
+    private static ListAnimatedImageFrame createFrame(int color) throws IOException {
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 4; y++) {
+                image.setRGB(x, y, color);
+            }
+        }
+        return new ListAnimatedImageFrame(image, 50);
+    }
+    
+}
@@ -0,0 +1,106 @@
+
+package chatty.util.history;
+
+import chatty.util.history.HistoryStore.StoredMessage;
+import chatty.util.irc.MsgTags;
+import chatty.util.irc.ParsedMsg;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class HistoryStoreTest {
+    
+    private Path dir;
+    
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("chattyhistorytest");
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        for (Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+    
+    private static List<StoredMessage> load(HistoryStore store, String stream, long after, long before, int limit) throws Exception {
+        CompletableFuture<List<StoredMessage>> result = new CompletableFuture<>();
+        store.load(stream, after, before, limit, result::complete);
+        return result.get(5, TimeUnit.SECONDS);
+    }
+    
+    @Test
+    public void testRaw() throws Exception {
+        HistoryStore store = new HistoryStore(dir);
+        store.add("abc", 1000, "user", "Hello; World", false, MsgTags.create("id", "123", "chatty-highlighted", "1"));
+        store.add("abc", 2000, "user", "waves", true, null);
+        List<StoredMessage> result = load(store, "abc", 0, Long.MAX_VALUE, 10);
+        assertEquals(2, result.size());
+        
+        ParsedMsg msg = ParsedMsg.parse(result.get(0).raw);
+        assertEquals("PRIVMSG", msg.getCommand());
+        assertEquals("user", msg.getNick());
+        assertEquals("#abc", msg.getParameters().get(0));
+        assertEquals("Hello; World", msg.getParameters().get(1));
+        assertEquals("123", msg.getTags().get("id"));
+        assertEquals("1000", msg.getTags().get("rm-received-ts"));
+        assertFalse(msg.getTags().containsKey("chatty-highlighted"));
+        
+        ParsedMsg action = ParsedMsg.parse(result.get(1).raw);
+        assertEquals((char) 1 + "ACTION waves" + (char) 1, action.getParameters().get(1));
+        assertEquals(2000, result.get(1).time);
+    }
+    
+    @Test
+    public void testLoad() throws Exception {
+        HistoryStore store = new HistoryStore(dir);
+        for (int i = 0; i < 50; i++) {
+            store.add("abc", i, "raw" + i);
+        }
+        List<StoredMessage> result = load(store, "abc", 10, 40, 100);
+        assertEquals(29, result.size());
+        assertEquals("raw11", result.get(0).raw);
+        
+        result = load(store, "abc", 0, 40, 5);
+        assertEquals(5, result.size());
+        assertEquals("raw35", result.get(0).raw);
+        assertEquals("raw39", result.get(4).raw);
+        
+        assertTrue(load(store, "other", 0, 100, 10).isEmpty());
+        
+        // New instance reads file
+        assertEquals(49, load(new HistoryStore(dir), "abc", 0, 100, 100).size());
+    }
+    
+    @Test
+    public void testCompact() throws Exception {
+        HistoryStore store = new HistoryStore(dir);
+        for (int i = 0; i < 1000; i++) {
+            store.add("abc", i, "raw" + i);
+            if (i % 100 == 0) {
+                store.close();
+            }
+        }
+        store.close();
+        int lines = Files.readAllLines(dir.resolve("abc.txt"), StandardCharsets.UTF_8).size();
+        assertTrue(lines <= 400);
+        List<StoredMessage> result = load(store, "abc", -1, 1000, 1000);
+        assertEquals("raw999", result.get(result.size() - 1).raw);
+        assertTrue(result.size() >= 200);
+    }
+    
+}
@@ -0,0 +1,83 @@
+
+package chatty.util.http;
+
+import chatty.util.UrlRequest;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class HttpPoolTest {
+    
+    private HttpServer server;
+    private String base;
+    
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/test/ok", exchange -> {
+            byte[] response = "abc\n123".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.createContext("/test/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        base = "http://127.0.0.1:"+server.getAddress().getPort();
+    }
+    
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+    
+    @Test
+    public void testRequests() {
+        for (int i = 0; i < 3; i++) {
+            UrlRequest.FullResult result = new UrlRequest(base+"/test/ok").sync();
+            assertEquals(200, result.getResponseCode());
+            assertEquals("abc\n123\n", result.getResult());
+        }
+        UrlRequest.FullResult result = new UrlRequest(base+"/test/missing").sync();
+        assertEquals(404, result.getResponseCode());
+        assertNull(result.getResult());
+        
+        List<String> info = HttpMetrics.getInfo();
+        String ok = find(info, "127.0.0.1/test/ok:");
+        assertTrue(ok, ok.contains("3 requests (0 errors, 1 new connections)"));
+        String missing = find(info, "127.0.0.1/test/missing:");
+        assertTrue(missing, missing.contains("1 requests (1 errors"));
+    }
+    
+    @Test
+    public void testEndpoint() {
+        assertEquals("api.twitch.tv/helix/streams", HttpMetrics.getEndpoint(URI.create("https://api.twitch.tv/helix/streams?user_id=123")));
+        assertEquals("static-cdn.jtvnw.net/emoticons/v2", HttpMetrics.getEndpoint(URI.create("https://static-cdn.jtvnw.net/emoticons/v2/25/default/dark/1.0")));
+        assertEquals("example.com", HttpMetrics.getEndpoint(URI.create("https://example.com")));
+    }
+    
+    private static String find(List<String> lines, String prefix) {
+        for (String line : lines) {
+            if (line.startsWith(prefix)) {
+                return line;
+            }
+        }
+        return "";
+    }
+    
+}
@@ -53,6 +53,41 @@ public class MsgTagsTest {
         assertEquals(tags4.getLong("ban-duration", -1), 1);
     }
     
+    @Test
+    public void testLazy() {
+        String[] inputs = new String[]{
+            "",
+            ";",
+            "abc",
+            "a=1;;b=2;",
+            ";a=1;a=2;a",
+            "=x;key=",
+            "ban-duration=1;ban-reason=test\\smessage\\:\\stest\\\\",
+            "badges=subscriber/0,bits/100;color=#B22222;display-name=Name;emotes=;id=123;system-msg=Name\\sgifted\\sa\\sTier\\s1\\ssub!;user-type="
+        };
+        for (String input : inputs) {
+            MsgTags eager = new MsgTags(IrcMsgTags.parseTags(input), null);
+            MsgTags lazy = MsgTags.parse(input);
+            assertEquals(input, eager, lazy);
+            assertEquals(input, eager.isEmpty(), lazy.isEmpty());
+            for (String key : eager.keys()) {
+                assertTrue(lazy.containsKey(key));
+                assertEquals(eager.get(key), lazy.get(key));
+            }
+            assertEquals(eager.keys(), lazy.keys());
+            assertFalse(lazy.containsKey("not-a-key"));
+        }
+        
+        // Section of a line
+        String line = "@a=1;b=x\\sy :tmi.twitch.tv PRIVMSG #channel :c=3;d";
+        MsgTags tags = MsgTags.parse(line, 1, line.indexOf(' '));
+        assertEquals("1", tags.get("a"));
+        assertEquals("x y", tags.get("b"));
+        assertFalse(tags.containsKey("c"));
+        assertFalse(tags.containsKey("d"));
+        assertEquals(MsgTags.create("a", "1", "b", "x y"), tags);
+    }
+    
     @Test
     public void testToTagsString() {
         MsgTags tags1 = MsgTags.parse("ban-duration=1;ban-reason=test\\smessage\\:\\stest\\\\");
@@ -0,0 +1,90 @@
+
+package chatty.util.irc;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares parsing IRC lines with the tags decoded eagerly (how it was done
+ * before) and lazily (the current {@link ParsedMsg#parse(String)}), in time
+ * and bytes allocated, accessing only the tags typically used for a chat
+ * message.
+ * 
+ * Not run as part of the tests, run the main method manually.
+ * 
+ * @author tduva
+ */
+public class ParsedMsgBenchmark {
+    
+    private static final String[] LINES = new String[]{
+        "@badge-info=subscriber/14;badges=subscriber/12,bits/1000;client-nonce=8d6bb1ac1e7a0c2a2fb24a9ad4f9e5e3;color=#1E90FF;display-name=Somebody;emotes=25:0-4,12-16;first-msg=0;flags=;id=b34ccfc7-4977-403a-8a94-33c6bac34fb8;mod=0;returning-chatter=0;room-id=22484632;subscriber=1;tmi-sent-ts=1700000000000;turbo=0;user-id=12345678;user-type= :somebody!somebody@somebody.tmi.twitch.tv PRIVMSG #channel :Kappa hello Kappa",
+        "@badge-info=;badges=;color=;display-name=another_user;emotes=;first-msg=0;flags=;id=9a1c0b6e-51f2-4d3e-a7a4-3a6b0fb8e6d1;mod=0;returning-chatter=0;room-id=22484632;subscriber=0;tmi-sent-ts=1700000000100;turbo=0;user-id=87654321;user-type= :another_user!another_user@another_user.tmi.twitch.tv PRIVMSG #channel :is this the right stream? I was looking for the speedrun",
+        "@badge-info=subscriber/3;badges=moderator/1,subscriber/3;color=#B22222;display-name=ModName;emotes=;first-msg=0;flags=;id=1f0c3e2a-8a8b-4b7e-9f7a-2c2d3e4f5a6b;mod=1;reply-parent-display-name=another_user;reply-parent-msg-body=is\\sthis\\sthe\\sright\\sstream?;reply-parent-msg-id=9a1c0b6e-51f2-4d3e-a7a4-3a6b0fb8e6d1;reply-parent-user-id=87654321;reply-parent-user-login=another_user;returning-chatter=0;room-id=22484632;subscriber=1;tmi-sent-ts=1700000000200;turbo=0;user-id=11223344;user-type=mod :modname!modname@modname.tmi.twitch.tv PRIVMSG #channel :@another_user yes it is",
+        "@badge-info=subscriber/0;badges=subscriber/0,premium/1;color=#8A2BE2;display-name=Name;emotes=;flags=;id=2b3c4d5e-6f70-4182-93a4-b5c6d7e8f901;login=name;mod=0;msg-id=resub;msg-param-cumulative-months=6;msg-param-months=0;msg-param-multimonth-duration=0;msg-param-multimonth-tenure=0;msg-param-should-share-streak=0;msg-param-sub-plan-name=Channel\\sSubscription;msg-param-sub-plan=Prime;msg-param-was-gifted=false;room-id=22484632;subscriber=1;system-msg=Name\\ssubscribed\\swith\\sPrime.\\sThey've\\ssubscribed\\sfor\\s6\\smonths!;tmi-sent-ts=1700000000300;user-id=99887766;user-type=;vip=0 :tmi.twitch.tv USERNOTICE #channel :great stream",
+        ":tmi.twitch.tv PONG tmi.twitch.tv :tmi.twitch.tv"
+    };
+    
+    private static final String[] ACCESSED_TAGS = new String[]{
+        "id", "display-name", "color", "badges", "badge-info", "emotes",
+        "tmi-sent-ts", "user-id", "room-id", "msg-id", "source-room-id"
+    };
+    
+    public static void main(String[] args) {
+        int iterations = 200000;
+        for (int round = 0; round < 3; round++) {
+            run("eager", iterations, ParsedMsgBenchmark::parseEager);
+            run("lazy", iterations, line -> {
+                ParsedMsg p = ParsedMsg.parse(line);
+                return use(p.getTags()) + p.getParameters().size();
+            });
+        }
+    }
+    
+    private static void run(String name, int iterations, Parser parser) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = bean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        int sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (String line : LINES) {
+                sum += parser.parse(line);
+            }
+        }
+        long time = System.nanoTime() - start;
+        long bytes = bean.getThreadAllocatedBytes(threadId) - bytesBefore;
+        long lines = (long) iterations * LINES.length;
+        System.out.println(String.format("%-6s %5d ns/line %6d bytes/line (%d)",
+                name, time / lines, bytes / lines, sum));
+    }
+    
+    private static int use(MsgTags tags) {
+        int result = 0;
+        for (String tag : ACCESSED_TAGS) {
+            String value = tags.get(tag);
+            if (value != null) {
+                result += value.length();
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * The previous parsing, decoding all tags and creating a substring of the
+     * rest of the line.
+     */
+    private static int parseEager(String input) {
+        MsgTags tags = MsgTags.EMPTY;
+        if (input.startsWith("@")) {
+            int endOfTags = input.indexOf(" ");
+            tags = new MsgTags(IrcMsgTags.parseTags(input.substring(1, endOfTags)), null);
+            input = input.substring(endOfTags + 1);
+        }
+        ParsedMsg p = ParsedMsg.parse(input);
+        return use(tags) + p.getParameters().size();
+    }
+    
+    private interface Parser {
+        int parse(String line);
+    }
+    
+}
@@ -0,0 +1,87 @@
+
+package chatty.util.settings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 
+ * @author tduva
+ */
+public class SettingKeyTest {
+    
+    private Settings settings;
+    
+    @Before
+    public void setUp() {
+        settings = new Settings("test", null);
+        settings.addBoolean("bool", true);
+        settings.addLong("long", 5);
+        settings.addString("string", "abc");
+        settings.addList("list", new ArrayList<>(Arrays.asList("a", "b")), Setting.STRING);
+    }
+    
+    @Test
+    public void testValues() {
+        SettingKey.BooleanKey boolKey = settings.booleanKey("bool");
+        SettingKey.LongKey longKey = settings.longKey("long");
+        SettingKey.StringKey stringKey = settings.stringKey("string");
+        assertTrue(boolKey.get());
+        assertEquals(5, longKey.get());
+        assertEquals("abc", stringKey.get());
+        
+        settings.setBoolean("bool", false);
+        settings.setLong("long", 10);
+        settings.setString("string", "def");
+        assertFalse(boolKey.get());
+        assertEquals(10, longKey.getInt());
+        assertEquals("def", stringKey.get());
+        
+        settings.toggleBoolean("bool");
+        assertTrue(boolKey.get());
+        settings.resetTextual("long");
+        assertEquals(5, longKey.get());
+        
+        // Same handle, setting names are case-insensitive
+        assertSame(boolKey, settings.booleanKey("BOOL"));
+    }
+    
+    @Test
+    public void testList() {
+        SettingKey.ListKey key = settings.listKey("list");
+        assertTrue(key.contains("a"));
+        assertFalse(key.contains("c"));
+        
+        settings.listAdd("list", "c");
+        assertTrue(key.contains("c"));
+        settings.listRemove("list", "a");
+        assertFalse(key.contains("a"));
+        assertEquals(Arrays.asList("b", "c"), key.get());
+        
+        settings.setAdd("list", "d");
+        settings.setAdd("list", "d");
+        assertEquals(Arrays.asList("b", "c", "d"), key.get());
+        
+        settings.putList("list", Arrays.asList("e"));
+        assertEquals(Arrays.asList("e"), key.get());
+        assertTrue(key.getSet().contains("e"));
+        
+        settings.listClear("list");
+        assertTrue(key.get().isEmpty());
+        assertFalse(key.contains("e"));
+    }
+    
+    @Test(expected = SettingNotFoundException.class)
+    public void testWrongType() {
+        settings.booleanKey("long");
+    }
+    
+    @Test(expected = SettingNotFoundException.class)
+    public void testNotFound() {
+        settings.longKey("abc");
+    }
+    
+}